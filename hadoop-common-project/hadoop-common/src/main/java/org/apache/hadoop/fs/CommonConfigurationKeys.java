@@ -90,6 +90,34 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final String IPC_CALLQUEUE_NAMESPACE = "ipc";
   public static final String IPC_CALLQUEUE_IMPL_KEY = "callqueue.impl";
   public static final String IPC_CALLQUEUE_IDENTITY_PROVIDER_KEY = "identity-provider.impl";
+  /** Number of priority levels, and sub-queues, of the FairCallQueue */
+  public static final String IPC_CALLQUEUE_PRIORITY_LEVELS_KEY =
+    "faircallqueue.priority-levels";
+  public static final int IPC_CALLQUEUE_PRIORITY_LEVELS_DEFAULT = 4;
+  /** RpcScheduler assigning the calls of the FairCallQueue a priority level */
+  public static final String IPC_CALLQUEUE_SCHEDULER_IMPL_KEY =
+    "faircallqueue.scheduler.impl";
+  /** Weights of the priority levels in the round robin dequeue of handlers */
+  public static final String IPC_CALLQUEUE_MULTIPLEXER_WEIGHTS_KEY =
+    "faircallqueue.multiplexer.weights";
+  /** How often the DecayRpcScheduler decays the call counts */
+  public static final String IPC_CALLQUEUE_DECAYSCHEDULER_PERIOD_KEY =
+    "faircallqueue.decay-scheduler.period-ms";
+  public static final long IPC_CALLQUEUE_DECAYSCHEDULER_PERIOD_DEFAULT = 5000;
+  /** Factor the call counts are multiplied with on every decay */
+  public static final String IPC_CALLQUEUE_DECAYSCHEDULER_FACTOR_KEY =
+    "faircallqueue.decay-scheduler.decay-factor";
+  public static final double IPC_CALLQUEUE_DECAYSCHEDULER_FACTOR_DEFAULT = 0.5;
+  /**
+   * Share of all the calls a caller needs to get priority level i + 1, one
+   * value per level but the first
+   */
+  public static final String IPC_CALLQUEUE_DECAYSCHEDULER_THRESHOLDS_KEY =
+    "faircallqueue.decay-scheduler.thresholds";
+  /** Number of heaviest callers whose call volume is published as metric */
+  public static final String IPC_CALLQUEUE_DECAYSCHEDULER_TOP_CALLERS_KEY =
+    "faircallqueue.decay-scheduler.metrics.top-callers";
+  public static final int IPC_CALLQUEUE_DECAYSCHEDULER_TOP_CALLERS_DEFAULT = 10;
 
   /** Internal buffer size for Lzo compressor/decompressors */
   public static final String  IO_COMPRESSION_CODEC_LZO_BUFFERSIZE_KEY =
@@ -0,0 +1,269 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.Interns;
+
+/**
+ * Counts the calls of every identity, decaying the counts periodically, and
+ * gives the callers with the biggest share of the recent calls the lowest
+ * priority. With the default thresholds of 4 priority levels a caller making
+ * 1/8 of the calls gets level 1, 1/4 gets level 2 and 1/2 gets level 3.
+ */
+public class DecayRpcScheduler implements RpcScheduler {
+  public static final Log LOG = LogFactory.getLog(DecayRpcScheduler.class);
+
+  static final String UNKNOWN_IDENTITY = "IdentityProvider.Unknown";
+
+  private final ConcurrentHashMap<Object, AtomicLong> callCounts =
+      new ConcurrentHashMap<Object, AtomicLong>();
+  private final AtomicLong totalCalls = new AtomicLong();
+
+  private final int numLevels;
+  private final double decayFactor;
+  private final double[] thresholds;
+  private final int topCallers;
+  private final IdentityProvider identityProvider;
+
+  public DecayRpcScheduler(int numLevels, String ns, Configuration conf) {
+    if (numLevels <= 0) {
+      throw new IllegalArgumentException("Number of levels must be positive");
+    }
+    this.numLevels = numLevels;
+    this.decayFactor = conf.getDouble(ns + "." +
+        CommonConfigurationKeys.IPC_CALLQUEUE_DECAYSCHEDULER_FACTOR_KEY,
+        CommonConfigurationKeys.IPC_CALLQUEUE_DECAYSCHEDULER_FACTOR_DEFAULT);
+    if (decayFactor <= 0 || decayFactor >= 1) {
+      throw new IllegalArgumentException("Decay factor must be in (0, 1)");
+    }
+    long period = conf.getLong(ns + "." +
+        CommonConfigurationKeys.IPC_CALLQUEUE_DECAYSCHEDULER_PERIOD_KEY,
+        CommonConfigurationKeys.IPC_CALLQUEUE_DECAYSCHEDULER_PERIOD_DEFAULT);
+    if (period <= 0) {
+      throw new IllegalArgumentException("Decay period must be positive");
+    }
+    this.thresholds = parseThresholds(numLevels, ns, conf);
+    this.topCallers = conf.getInt(ns + "." +
+        CommonConfigurationKeys.IPC_CALLQUEUE_DECAYSCHEDULER_TOP_CALLERS_KEY,
+        CommonConfigurationKeys.IPC_CALLQUEUE_DECAYSCHEDULER_TOP_CALLERS_DEFAULT);
+
+    List<IdentityProvider> providers = conf.getInstances(ns + "." +
+        CommonConfigurationKeys.IPC_CALLQUEUE_IDENTITY_PROVIDER_KEY,
+        IdentityProvider.class);
+    this.identityProvider = providers.isEmpty() ? new UserIdentityProvider() :
+        providers.get(0);
+
+    Timer timer = new Timer("DecayRpcScheduler " + ns, true);
+    timer.scheduleAtFixedRate(new DecayTask(this, timer), period, period);
+    MetricsProxy.getInstance(ns).setDelegate(this);
+  }
+
+  private static double[] parseThresholds(int numLevels, String ns,
+      Configuration conf) {
+    String key = ns + "." +
+        CommonConfigurationKeys.IPC_CALLQUEUE_DECAYSCHEDULER_THRESHOLDS_KEY;
+    String[] configured = conf.getTrimmedStrings(key);
+    double[] thresholds = new double[numLevels - 1];
+    if (configured.length == 0) {
+      for (int i = 0; i < thresholds.length; i++) {
+        thresholds[i] = 1.0 / (1 << (numLevels - i - 1));
+      }
+    } else if (configured.length != thresholds.length) {
+      throw new IllegalArgumentException(
+          key + " must have " + thresholds.length + " values");
+    } else {
+      for (int i = 0; i < thresholds.length; i++) {
+        thresholds[i] = Double.parseDouble(configured[i]);
+      }
+    }
+    return thresholds;
+  }
+
+  /**
+   * Decays the counts of a scheduler until it is garbage collected, e.g. after
+   * the call queue was swapped.
+   */
+  private static class DecayTask extends TimerTask {
+    private final WeakReference<DecayRpcScheduler> scheduler;
+    private final Timer timer;
+
+    DecayTask(DecayRpcScheduler scheduler, Timer timer) {
+      this.scheduler = new WeakReference<DecayRpcScheduler>(scheduler);
+      this.timer = timer;
+    }
+
+    @Override
+    public void run() {
+      DecayRpcScheduler sched = scheduler.get();
+      if (sched != null) {
+        sched.decayCurrentCounts();
+      } else {
+        timer.cancel();
+      }
+    }
+  }
+
+  /**
+   * Multiply every count by the decay factor, forgetting the callers whose
+   * count drops to zero. Calls counted while the decay runs may be lost, the
+   * counts only need to be approximate.
+   */
+  void decayCurrentCounts() {
+    long total = 0;
+    Iterator<Map.Entry<Object, AtomicLong>> it =
+        callCounts.entrySet().iterator();
+    while (it.hasNext()) {
+      AtomicLong count = it.next().getValue();
+      long decayed = (long) (count.get() * decayFactor);
+      if (decayed == 0) {
+        it.remove();
+      } else {
+        count.set(decayed);
+        total += decayed;
+      }
+    }
+    totalCalls.set(total);
+  }
+
+  @Override
+  public int getPriorityLevel(Schedulable obj) {
+    String identity = identityProvider.makeIdentity(obj);
+    if (identity == null) {
+      identity = UNKNOWN_IDENTITY;
+    }
+    AtomicLong count = callCounts.get(identity);
+    if (count == null) {
+      count = new AtomicLong();
+      AtomicLong existing = callCounts.putIfAbsent(identity, count);
+      if (existing != null) {
+        count = existing;
+      }
+    }
+    long calls = count.incrementAndGet();
+    long total = totalCalls.incrementAndGet();
+    return computePriorityLevel((double) calls / total);
+  }
+
+  private int computePriorityLevel(double share) {
+    for (int i = numLevels - 2; i >= 0; i--) {
+      if (share >= thresholds[i]) {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  long getTotalCallVolume() {
+    return totalCalls.get();
+  }
+
+  /**
+   * @return the decayed call counts of the heaviest callers
+   */
+  Map<Object, Long> getTopCallers(int n) {
+    List<Map.Entry<Object, Long>> counts =
+        new ArrayList<Map.Entry<Object, Long>>(callCounts.size());
+    for (Map.Entry<Object, AtomicLong> entry : callCounts.entrySet()) {
+      counts.add(new AbstractMap.SimpleEntry<Object, Long>(
+          entry.getKey(), entry.getValue().get()));
+    }
+    Collections.sort(counts, new Comparator<Map.Entry<Object, Long>>() {
+      @Override
+      public int compare(Map.Entry<Object, Long> a, Map.Entry<Object, Long> b) {
+        return b.getValue().compareTo(a.getValue());
+      }
+    });
+    Map<Object, Long> top = new HashMap<Object, Long>();
+    for (int i = 0; i < Math.min(n, counts.size()); i++) {
+      top.put(counts.get(i).getKey(), counts.get(i).getValue());
+    }
+    return top;
+  }
+
+  private void getMetrics(MetricsCollector collector) {
+    MetricsRecordBuilder rb = collector.addRecord("DecayRpcScheduler")
+        .setContext("rpc")
+        .addGauge(Interns.info("CallVolume", "Decayed number of calls"),
+            getTotalCallVolume())
+        .addGauge(Interns.info("UniqueCallers", "Number of recent callers"),
+            callCounts.size());
+    for (Map.Entry<Object, Long> caller : getTopCallers(topCallers)
+        .entrySet()) {
+      rb.addGauge(Interns.info("Caller(" + caller.getKey() + ").Volume",
+          "Decayed number of calls of the caller"), caller.getValue());
+    }
+  }
+
+  /**
+   * The metrics source of a call queue namespace outlives the schedulers, as
+   * the call queue, and with it the scheduler, can be swapped at runtime.
+   */
+  private static final class MetricsProxy implements MetricsSource {
+    private static final Map<String, MetricsProxy> INSTANCES =
+        new HashMap<String, MetricsProxy>();
+
+    private volatile WeakReference<DecayRpcScheduler> delegate;
+
+    static synchronized MetricsProxy getInstance(String ns) {
+      MetricsProxy proxy = INSTANCES.get(ns);
+      if (proxy == null) {
+        proxy = new MetricsProxy();
+        DefaultMetricsSystem.instance().register("DecayRpcScheduler." + ns,
+            "Call volume of the callers of " + ns, proxy);
+        INSTANCES.put(ns, proxy);
+      }
+      return proxy;
+    }
+
+    void setDelegate(DecayRpcScheduler scheduler) {
+      delegate = new WeakReference<DecayRpcScheduler>(scheduler);
+    }
+
+    @Override
+    public void getMetrics(MetricsCollector collector, boolean all) {
+      WeakReference<DecayRpcScheduler> ref = delegate;
+      DecayRpcScheduler scheduler = ref == null ? null : ref.get();
+      if (scheduler != null) {
+        scheduler.getMetrics(collector);
+      }
+    }
+  }
+}
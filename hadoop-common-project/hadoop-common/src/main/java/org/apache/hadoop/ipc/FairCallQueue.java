@@ -0,0 +1,320 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.Interns;
+
+/**
+ * A call queue with one sub-queue per priority level. The {@link RpcScheduler}
+ * decides the level of every call, by default the callers making the most
+ * calls get the lowest priority. The handlers take the calls from the
+ * sub-queues in weighted round robin order, so the calls of a heavy caller
+ * cannot starve everyone else. A call goes to a lower priority sub-queue if
+ * its own is full.
+ * <p/>
+ * It is enabled per RPC port, e.g. for 8020:
+ * ipc.8020.callqueue.impl = org.apache.hadoop.ipc.FairCallQueue
+ * and can be swapped in and out at runtime by refreshing the call queue.
+ */
+public class FairCallQueue<E extends Schedulable> extends AbstractQueue<E>
+    implements BlockingQueue<E> {
+  public static final Log LOG = LogFactory.getLog(FairCallQueue.class);
+
+  private final List<BlockingQueue<E>> queues;
+  private final RpcScheduler scheduler;
+  private final RpcMultiplexer multiplexer;
+
+  // signalled when a call is put in any of the sub-queues
+  private final ReentrantLock takeLock = new ReentrantLock();
+  private final Condition notEmpty = takeLock.newCondition();
+
+  public FairCallQueue(int capacity, String ns, Configuration conf) {
+    int numLevels = conf.getInt(
+        ns + "." + CommonConfigurationKeys.IPC_CALLQUEUE_PRIORITY_LEVELS_KEY,
+        CommonConfigurationKeys.IPC_CALLQUEUE_PRIORITY_LEVELS_DEFAULT);
+    if (numLevels <= 0) {
+      throw new IllegalArgumentException(
+          "Number of priority levels must be positive");
+    }
+    int queueCapacity = Math.max(1, capacity / numLevels);
+    queues = new ArrayList<BlockingQueue<E>>(numLevels);
+    for (int i = 0; i < numLevels; i++) {
+      queues.add(new LinkedBlockingQueue<E>(queueCapacity));
+    }
+    scheduler = createScheduler(numLevels, ns, conf);
+    multiplexer = new WeightedRoundRobinMultiplexer(numLevels, ns, conf);
+    MetricsProxy.getInstance(ns).setDelegate(this);
+    LOG.info("FairCallQueue with " + numLevels + " priority levels of " +
+        queueCapacity + " calls, using " + scheduler.getClass().getName());
+  }
+
+  private static RpcScheduler createScheduler(int numLevels, String ns,
+      Configuration conf) {
+    Class<? extends RpcScheduler> schedulerClass = conf.getClass(
+        ns + "." + CommonConfigurationKeys.IPC_CALLQUEUE_SCHEDULER_IMPL_KEY,
+        DecayRpcScheduler.class, RpcScheduler.class);
+    try {
+      Constructor<? extends RpcScheduler> ctor = schedulerClass
+          .getDeclaredConstructor(int.class, String.class, Configuration.class);
+      return ctor.newInstance(numLevels, ns, conf);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(
+          schedulerClass.getName() + " could not be constructed.", e);
+    }
+  }
+
+  private void signalNotEmpty() {
+    takeLock.lock();
+    try {
+      notEmpty.signal();
+    } finally {
+      takeLock.unlock();
+    }
+  }
+
+  /**
+   * Put the call in the sub-queue of its priority level, or the first lower
+   * priority sub-queue with room. Blocks on the lowest priority sub-queue if
+   * all of them are full.
+   */
+  @Override
+  public void put(E e) throws InterruptedException {
+    int level = scheduler.getPriorityLevel(e);
+    if (!offerFrom(level, e)) {
+      queues.get(queues.size() - 1).put(e);
+      signalNotEmpty();
+    }
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    int level = scheduler.getPriorityLevel(e);
+    if (offerFrom(level, e)) {
+      return true;
+    }
+    if (queues.get(queues.size() - 1).offer(e, timeout, unit)) {
+      signalNotEmpty();
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean offer(E e) {
+    return offerFrom(scheduler.getPriorityLevel(e), e);
+  }
+
+  private boolean offerFrom(int level, E e) {
+    for (int i = Math.min(Math.max(level, 0), queues.size() - 1);
+         i < queues.size(); i++) {
+      if (queues.get(i).offer(e)) {
+        signalNotEmpty();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    takeLock.lockInterruptibly();
+    try {
+      E e;
+      while ((e = pollFromQueues()) == null) {
+        notEmpty.await();
+      }
+      return e;
+    } finally {
+      takeLock.unlock();
+    }
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    takeLock.lockInterruptibly();
+    try {
+      E e;
+      while ((e = pollFromQueues()) == null) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return e;
+    } finally {
+      takeLock.unlock();
+    }
+  }
+
+  @Override
+  public E poll() {
+    return pollFromQueues();
+  }
+
+  /**
+   * Take a call from the sub-queue the multiplexer picks, or from the next
+   * non empty sub-queue after it.
+   */
+  private E pollFromQueues() {
+    int start = multiplexer.getAndAdvanceCurrentIndex();
+    for (int i = 0; i < queues.size(); i++) {
+      E e = queues.get((start + i) % queues.size()).poll();
+      if (e != null) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public E peek() {
+    for (BlockingQueue<E> q : queues) {
+      E e = q.peek();
+      if (e != null) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (BlockingQueue<E> q : queues) {
+      size += q.size();
+    }
+    return size;
+  }
+
+  @Override
+  public int remainingCapacity() {
+    int remaining = 0;
+    for (BlockingQueue<E> q : queues) {
+      remaining += q.remainingCapacity();
+    }
+    return remaining;
+  }
+
+  /**
+   * @return a snapshot of the queued calls, highest priority first
+   */
+  @Override
+  public Iterator<E> iterator() {
+    List<E> calls = new ArrayList<E>();
+    for (BlockingQueue<E> q : queues) {
+      calls.addAll(q);
+    }
+    return Collections.unmodifiableList(calls).iterator();
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    int drained = 0;
+    for (BlockingQueue<E> q : queues) {
+      drained += q.drainTo(c, maxElements - drained);
+    }
+    return drained;
+  }
+
+  int[] getQueueSizes() {
+    int[] sizes = new int[queues.size()];
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = queues.get(i).size();
+    }
+    return sizes;
+  }
+
+  private void getMetrics(MetricsCollector collector) {
+    MetricsRecordBuilder rb =
+        collector.addRecord("FairCallQueue").setContext("rpc");
+    int[] sizes = getQueueSizes();
+    for (int i = 0; i < sizes.length; i++) {
+      rb.addGauge(Interns.info("Priority." + i + ".QueueLength",
+          "Calls queued at priority level " + i), sizes[i]);
+    }
+  }
+
+  /**
+   * The metrics source of a call queue namespace outlives the call queues, as
+   * the call queue can be swapped at runtime.
+   */
+  private static final class MetricsProxy implements MetricsSource {
+    private static final Map<String, MetricsProxy> INSTANCES =
+        new HashMap<String, MetricsProxy>();
+
+    private volatile WeakReference<FairCallQueue<?>> delegate;
+
+    static synchronized MetricsProxy getInstance(String ns) {
+      MetricsProxy proxy = INSTANCES.get(ns);
+      if (proxy == null) {
+        proxy = new MetricsProxy();
+        DefaultMetricsSystem.instance().register("FairCallQueue." + ns,
+            "Queue lengths of the priority levels of " + ns, proxy);
+        INSTANCES.put(ns, proxy);
+      }
+      return proxy;
+    }
+
+    void setDelegate(FairCallQueue<?> queue) {
+      delegate = new WeakReference<FairCallQueue<?>>(queue);
+    }
+
+    @Override
+    public void getMetrics(MetricsCollector collector, boolean all) {
+      WeakReference<FairCallQueue<?>> ref = delegate;
+      FairCallQueue<?> queue = ref == null ? null : ref.get();
+      if (queue != null) {
+        queue.getMetrics(collector);
+      }
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+
+/**
+ * Takes weight[i] calls from sub-queue i before moving on to sub-queue i + 1.
+ * By default the weights halve with every priority level, so with 4 levels
+ * the handlers take 8, 4, 2 and 1 calls from the sub-queues in turn.
+ */
+public class WeightedRoundRobinMultiplexer implements RpcMultiplexer {
+
+  private final int[] weights;
+  private int currentIndex = 0;
+  private int takenFromCurrent = 0;
+
+  public WeightedRoundRobinMultiplexer(int numQueues, String ns,
+      Configuration conf) {
+    if (numQueues <= 0) {
+      throw new IllegalArgumentException("Number of queues must be positive");
+    }
+    int[] configured = conf.getInts(
+        ns + "." + CommonConfigurationKeys.IPC_CALLQUEUE_MULTIPLEXER_WEIGHTS_KEY);
+    if (configured.length == 0) {
+      weights = new int[numQueues];
+      for (int i = 0; i < numQueues; i++) {
+        weights[i] = 1 << (numQueues - i - 1);
+      }
+    } else if (configured.length != numQueues) {
+      throw new IllegalArgumentException(ns + "." +
+          CommonConfigurationKeys.IPC_CALLQUEUE_MULTIPLEXER_WEIGHTS_KEY +
+          " must have " + numQueues + " weights");
+    } else {
+      for (int weight : configured) {
+        if (weight <= 0) {
+          throw new IllegalArgumentException("Weights must be positive");
+        }
+      }
+      weights = configured;
+    }
+  }
+
+  @Override
+  public synchronized int getAndAdvanceCurrentIndex() {
+    int index = currentIndex;
+    if (++takenFromCurrent >= weights[currentIndex]) {
+      currentIndex = (currentIndex + 1) % weights.length;
+      takenFromCurrent = 0;
+    }
+    return index;
+  }
+}
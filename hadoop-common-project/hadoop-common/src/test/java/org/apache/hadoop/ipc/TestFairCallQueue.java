@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFairCallQueue {
+  private static final String NS = "ipc.9999";
+
+  private Configuration conf;
+
+  public static class FakeCall implements Schedulable {
+    private final UserGroupInformation ugi;
+
+    public FakeCall(String user) {
+      this.ugi = UserGroupInformation.createRemoteUser(user);
+    }
+
+    @Override
+    public UserGroupInformation getUserGroupInformation() {
+      return ugi;
+    }
+  }
+
+  /**
+   * Schedules the calls of user "levelN" at priority level N.
+   */
+  public static class FixedScheduler implements RpcScheduler {
+    public FixedScheduler(int numLevels, String ns, Configuration conf) {
+    }
+
+    @Override
+    public int getPriorityLevel(Schedulable obj) {
+      String user = obj.getUserGroupInformation().getUserName();
+      return Integer.parseInt(user.substring("level".length()));
+    }
+  }
+
+  @Before
+  public void setUp() {
+    conf = new Configuration();
+    conf.setInt(NS + "." +
+        CommonConfigurationKeys.IPC_CALLQUEUE_PRIORITY_LEVELS_KEY, 2);
+    conf.setClass(NS + "." +
+        CommonConfigurationKeys.IPC_CALLQUEUE_SCHEDULER_IMPL_KEY,
+        FixedScheduler.class, RpcScheduler.class);
+  }
+
+  @Test
+  public void testOverflowToLowerPriority() {
+    FairCallQueue<FakeCall> fcq = new FairCallQueue<FakeCall>(4, NS, conf);
+    assertEquals(4, fcq.remainingCapacity());
+
+    assertTrue(fcq.offer(new FakeCall("level0")));
+    assertTrue(fcq.offer(new FakeCall("level0")));
+    // level 0 is full, the call goes to level 1
+    assertTrue(fcq.offer(new FakeCall("level0")));
+    assertTrue(fcq.offer(new FakeCall("level1")));
+    // there is no level below 1
+    assertFalse(fcq.offer(new FakeCall("level1")));
+
+    assertEquals(4, fcq.size());
+    assertEquals(0, fcq.remainingCapacity());
+    assertEquals(2, fcq.getQueueSizes()[0]);
+    assertEquals(2, fcq.getQueueSizes()[1]);
+  }
+
+  @Test
+  public void testWeightedRoundRobinTake() throws InterruptedException {
+    FairCallQueue<FakeCall> fcq = new FairCallQueue<FakeCall>(20, NS, conf);
+    for (int i = 0; i < 5; i++) {
+      fcq.put(new FakeCall("level0"));
+      fcq.put(new FakeCall("level1"));
+    }
+
+    // default weights are 2 for level 0 and 1 for level 1
+    String[] expected = {"level0", "level0", "level1", "level0", "level0",
+        "level1", "level0", "level1", "level1", "level1"};
+    for (String user : expected) {
+      assertEquals(user,
+          fcq.take().getUserGroupInformation().getUserName());
+    }
+    assertNull(fcq.poll(10, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testDecaySchedulerDeprioritizesHeavyCallers() {
+    conf.setInt(NS + "." +
+        CommonConfigurationKeys.IPC_CALLQUEUE_PRIORITY_LEVELS_KEY, 4);
+    conf.setLong(NS + "." +
+        CommonConfigurationKeys.IPC_CALLQUEUE_DECAYSCHEDULER_PERIOD_KEY,
+        Long.MAX_VALUE / 2);
+    DecayRpcScheduler scheduler = new DecayRpcScheduler(4, NS, conf);
+
+    FakeCall heavy = new FakeCall("heavy");
+    for (int i = 0; i < 9; i++) {
+      scheduler.getPriorityLevel(heavy);
+    }
+    assertEquals(0, scheduler.getPriorityLevel(new FakeCall("light")));
+    assertEquals(3, scheduler.getPriorityLevel(heavy));
+    assertEquals(11, scheduler.getTotalCallVolume());
+
+    scheduler.decayCurrentCounts();
+    assertEquals(5, scheduler.getTotalCallVolume());
+    assertEquals(1, scheduler.getTopCallers(10).size());
+  }
+}
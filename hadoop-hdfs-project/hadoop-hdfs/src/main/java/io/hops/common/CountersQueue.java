@@ -15,28 +15,56 @@
  */
 package io.hops.common;
 
-import java.util.ArrayDeque;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Queue of id ranges fetched from the database. Ids are handed out without
+ * locking: every thread takes a chunk of up to chunkSize ids from the head
+ * range with a compare and set and then allocates from its own chunk.
+ */
 public class CountersQueue {
 
   public static class Counter {
     private final long start;
     private final long end;
-    private long current;
+    private final AtomicLong current;
 
     public Counter(long start, long end) {
       this.start = start;
       this.end = end;
-      this.current = start;
+      this.current = new AtomicLong(start);
     }
 
     public long next() {
-      return current++;
+      return current.getAndIncrement();
     }
 
     public boolean hasNext() {
-      return current < end;
+      return current.get() < end;
+    }
+
+    /**
+     * Takes up to size ids off the front of this counter.
+     *
+     * @return the ids taken, or null if the counter is used up
+     */
+    Counter take(int size) {
+      while (true) {
+        long from = current.get();
+        if (from >= end) {
+          return null;
+        }
+        long to = Math.min(end, from + size);
+        if (current.compareAndSet(from, to)) {
+          return new Counter(from, to);
+        }
+      }
+    }
+
+    long size() {
+      return end - start;
     }
 
     @Override
@@ -48,40 +76,58 @@ public String toString() {
   public class EmptyCountersQueueException extends RuntimeException {
   }
   
-  private int available;
-  private Queue<Counter> queue;
+  private final AtomicLong available = new AtomicLong(0);
+  private final Queue<Counter> queue = new ConcurrentLinkedQueue<Counter>();
+  private final int chunkSize;
+  private final ThreadLocal<Counter> chunks = new ThreadLocal<Counter>();
 
   public CountersQueue() {
-    queue = new ArrayDeque<CountersQueue.Counter>();
-    available = 0;
+    this(1);
   }
 
-  public synchronized void addCounter(long start, long end) {
+  public CountersQueue(int chunkSize) {
+    this.chunkSize = Math.max(1, chunkSize);
+  }
+
+  public void addCounter(long start, long end) {
     addCounter(new Counter(start, end));
   }
 
-  public synchronized void addCounter(Counter counter) {
+  public void addCounter(Counter counter) {
     queue.offer(counter);
-    available += counter.end - counter.start;
+    available.addAndGet(counter.size());
   }
   
   
-  public synchronized long next() {
+  public long next() {
+    Counter chunk = chunks.get();
+    if (chunk == null || !chunk.hasNext()) {
+      chunk = takeChunk();
+      chunks.set(chunk);
+    }
+    return chunk.next();
+  }
+
+  private Counter takeChunk() {
     Counter c = queue.peek();
     while (c != null) {
-      if (c.hasNext()) {
-        available--;
-        return c.next();
+      Counter chunk = c.take(chunkSize);
+      if (chunk != null) {
+        available.addAndGet(-chunk.size());
+        return chunk;
       } else {
-        queue.remove();
+        queue.remove(c);
         c = queue.peek();
       }
     }
     throw new EmptyCountersQueueException();
   }
   
-  public synchronized boolean has(int expectedNumOfIds) {
-    return available >= expectedNumOfIds;
+  /**
+   * Ids already taken into the chunk of a thread are not counted.
+   */
+  public boolean has(int expectedNumOfIds) {
+    return available.get() >= expectedNumOfIds;
   }
 
   @Override
@@ -23,14 +23,24 @@
   private int threshold;
   private CountersQueue cQ;
 
-  IDsGenerator(int batchSize, float threshold){
+  IDsGenerator(int batchSize, float threshold, int chunkSize){
     this.batchSize = batchSize;
     this.threshold = (int)(threshold * batchSize);
-    cQ = new CountersQueue();
+    cQ = new CountersQueue(chunkSize);
   }
 
   public long getUniqueID() {
-    return cQ.next();
+    IDsMonitor monitor = IDsMonitor.getInstance();
+    long start = System.nanoTime();
+    try {
+      return cQ.next();
+    } finally {
+      monitor.addAllocationLatency(System.nanoTime() - start);
+      // refill below the low-water mark without waiting for the next check
+      if (!cQ.has(threshold)) {
+        monitor.requestRefill();
+      }
+    }
   }
 
   protected synchronized  boolean getMoreIdsIfNeeded()
@@ -28,8 +28,8 @@ public class IDsGeneratorFactory {
   private static final Log LOG = LogFactory.getLog(IDsGeneratorFactory.class);
 
   private class INodeIDGen extends IDsGenerator{
-    INodeIDGen(int batchSize, float threshold) {
-      super(batchSize, threshold);
+    INodeIDGen(int batchSize, float threshold, int chunkSize) {
+      super(batchSize, threshold, chunkSize);
     }
 
     @Override
@@ -39,8 +39,8 @@ CountersQueue.Counter incrementCounter(int inc) throws IOException {
   }
 
   private class BlockIDGen extends IDsGenerator{
-    BlockIDGen(int batchSize, float threshold) {
-      super(batchSize, threshold);
+    BlockIDGen(int batchSize, float threshold, int chunkSize) {
+      super(batchSize, threshold, chunkSize);
     }
 
     @Override
@@ -50,8 +50,8 @@ CountersQueue.Counter incrementCounter(int inc) throws IOException {
   }
 
   private class QuotaUpdateIDGen extends IDsGenerator{
-    QuotaUpdateIDGen(int batchSize, float threshold) {
-      super(batchSize, threshold);
+    QuotaUpdateIDGen(int batchSize, float threshold, int chunkSize) {
+      super(batchSize, threshold, chunkSize);
     }
 
     @Override
@@ -74,11 +74,14 @@ public static IDsGeneratorFactory getInstance(){
   private List<IDsGenerator> iDsGenerators = Lists.newArrayList();
   void setConfiguration(int inodeIdsBatchSize, int blockIdsBatchSize,
       int quotaUpdateIdsBatchSize, float inodeIdsThreshold,
-      float blockIdsThreshold, float quotaUpdateIdsThreshold) {
-    iDsGenerators.add(new INodeIDGen(inodeIdsBatchSize, inodeIdsThreshold));
-    iDsGenerators.add(new BlockIDGen(blockIdsBatchSize, blockIdsThreshold));
+      float blockIdsThreshold, float quotaUpdateIdsThreshold,
+      int chunkSize) {
+    iDsGenerators.add(new INodeIDGen(inodeIdsBatchSize, inodeIdsThreshold,
+        chunkSize));
+    iDsGenerators.add(new BlockIDGen(blockIdsBatchSize, blockIdsThreshold,
+        chunkSize));
     iDsGenerators.add(new QuotaUpdateIDGen(quotaUpdateIdsBatchSize,
-        quotaUpdateIdsThreshold));
+        quotaUpdateIdsThreshold, chunkSize));
   }
 
   public int getUniqueINodeID(){
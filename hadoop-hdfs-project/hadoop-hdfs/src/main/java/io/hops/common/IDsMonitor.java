@@ -21,6 +21,8 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 
 import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class IDsMonitor implements Runnable {
 
@@ -29,6 +31,9 @@ public class IDsMonitor implements Runnable {
   private Thread th = null;
 
   private int checkInterval;
+  private final Semaphore refillRequests = new Semaphore(0);
+  private final LatencyHistogram allocationLatencies = new LatencyHistogram();
+
   private IDsMonitor() {
   }
 
@@ -53,7 +58,9 @@ public void setConfiguration(Configuration conf) {
             DFSConfigKeys.DFS_NAMENODE_BLOCKID_UPDATE_THRESHOLD_DEFAULT),
         conf.getFloat(
             DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_ID_UPDATE_THRESHOLD,
-            DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_ID_UPDATE_THRESHOLD_DEFAULT)
+            DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_ID_UPDATE_THRESHOLD_DEFAULT),
+        conf.getInt(DFSConfigKeys.DFS_NAMENODE_ID_ALLOCATION_CHUNK_SIZE,
+            DFSConfigKeys.DFS_NAMENODE_ID_ALLOCATION_CHUNK_SIZE_DEFAULT)
         );
 
     checkInterval = conf.getInt(DFSConfigKeys.DFS_NAMENODE_IDSMONITOR_CHECK_INTERVAL_IN_MS,
@@ -81,11 +88,40 @@ private void getNewIds() {
 
       IDsGeneratorFactory.getInstance().getNewIDs();
 
-      Thread.sleep(checkInterval);
+      if (refillRequests.tryAcquire(checkInterval, TimeUnit.MILLISECONDS)) {
+        refillRequests.drainPermits();
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("id allocation latency (ns) p50=" +
+            allocationLatencies.getPercentile(50) + " p99=" +
+            allocationLatencies.getPercentile(99));
+      }
     } catch (InterruptedException ex) {
       LOG.warn("IDsMonitor interrupted: " + ex);
     } catch (IOException ex) {
       LOG.warn("IDsMonitor got exception: " + ex);
     }
   }
+
+  /**
+   * Wakes the monitor up to fetch more ids before its next periodic check.
+   */
+  void requestRefill() {
+    if (refillRequests.availablePermits() == 0) {
+      refillRequests.release();
+    }
+  }
+
+  void addAllocationLatency(long nanos) {
+    allocationLatencies.record(nanos);
+  }
+
+  /**
+   * @return the upper bound in nanoseconds of the histogram bucket holding
+   * the given percentile of the id allocation latencies, published by
+   * {@link org.apache.hadoop.hdfs.server.namenode.FSNamesystem}
+   */
+  public long getAllocationLatencyPercentile(double percentile) {
+    return allocationLatencies.getPercentile(percentile);
+  }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in power of two nanosecond buckets, bucket i counts
+ * the latencies in [2^(i-1), 2^i) ns. The buckets are striped by thread id
+ * so that concurrent recording rarely contends, the stripes are summed up
+ * when the histogram is read.
+ */
+class LatencyHistogram {
+  static final int BUCKETS = 64;
+  private static final int STRIPES = 16;
+
+  private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+
+  LatencyHistogram() {
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new AtomicLongArray(BUCKETS);
+    }
+  }
+
+  void record(long nanos) {
+    long threadId = Thread.currentThread().getId();
+    int stripe = (int) (threadId ^ (threadId >>> 32)) & (STRIPES - 1);
+    stripes[stripe].incrementAndGet(bucket(nanos));
+  }
+
+  static int bucket(long nanos) {
+    return nanos <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(nanos);
+  }
+
+  /**
+   * The stripes are read one after the other, the counts can miss records
+   * made while they are summed up.
+   */
+  long[] getCounts() {
+    long[] counts = new long[BUCKETS];
+    for (AtomicLongArray stripe : stripes) {
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] += stripe.get(i);
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * @return the upper bound in nanoseconds of the bucket holding the given
+   * percentile, or 0 if nothing was recorded
+   */
+  long getPercentile(double percentile) {
+    long[] counts = getCounts();
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(total * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return i == 0 ? 0 : 1L << Math.min(i, BUCKETS - 2);
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+}
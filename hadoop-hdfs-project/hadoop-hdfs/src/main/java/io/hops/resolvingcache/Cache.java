@@ -23,6 +23,8 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.server.namenode.INode;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -37,6 +39,8 @@ public abstract class Cache {
 
   private boolean isStarted;
   private boolean isEnabled;
+  private int localCacheMaxSize;
+  private volatile LocalCache localCache;
 
   protected Cache() {
   }
@@ -75,6 +79,15 @@ public static Cache getInstance() {
   protected void setConfiguration(Configuration conf) throws IOException {
     isEnabled = conf.getBoolean(DFSConfigKeys.DFS_RESOLVING_CACHE_ENABLED,
         DFSConfigKeys.DFS_RESOLVING_CACHE_ENABLED_DEFAULT);
+    // the in memory implementation is already local, a first tier in front
+    // of it would only double the memory
+    if (!(this instanceof InMemoryCache) && conf.getBoolean(
+        DFSConfigKeys.DFS_RESOLVING_CACHE_LOCAL_ENABLED,
+        DFSConfigKeys.DFS_RESOLVING_CACHE_LOCAL_ENABLED_DEFAULT)) {
+      localCacheMaxSize =
+          conf.getInt(DFSConfigKeys.DFS_RESOLVING_CACHE_LOCAL_MAX_SIZE,
+              DFSConfigKeys.DFS_RESOLVING_CACHE_LOCAL_MAX_SIZE_DEFAULT);
+    }
 
     if (isEnabled) {
       start();
@@ -87,6 +100,9 @@ private void start() throws IOException {
       LOG.info("starting Resolving Cache [" + instance.getClass()
           .getSimpleName() +"]");
       startInternal();
+      if (localCacheMaxSize > 0) {
+        localCache = new LocalCache(localCacheMaxSize);
+      }
       isStarted = true;
     }
   }
@@ -95,6 +111,7 @@ private void stop() {
     if (isStarted) {
       LOG.info("stopping Resolving Cache [" + instance.getClass()
           .getSimpleName() +"]");      stopInternal();
+      localCache = null;
       isStarted = false;
     }
   }
@@ -115,6 +132,10 @@ public final void set(final String path, final INode[] inodes){
   public final void set(final String path, final List<INode> inodes){
     if(isStarted){
      setInternal(path, inodes);
+      LocalCache local = localCache;
+      if (local != null) {
+        local.set(inodes);
+      }
       if(TransactionsStats.getInstance().isEnabled()){
         TransactionsStats.getInstance().pushResolvingCacheStats(
             new ResolvingCacheStat(
@@ -124,17 +145,53 @@ public final void set(final String path, final List<INode> inodes){
     }
   }
 
+  /**
+   * Only the local tier caches single inodes, the second tier is filled with
+   * whole paths by {@link #set(String, List)}.
+   */
   public final void set(final INode inode){
     if(isStarted){
-
+      LocalCache local = localCache;
+      if (local != null) {
+        local.set(inode);
+      }
     }
   }
 
   public final int[] get(final String path) throws IOException{
     if(isStarted){
+      LocalCache local = localCache;
+      if (local != null) {
+        int[] result = local.get(path);
+        NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+        if (result != null) {
+          if (metrics != null) {
+            metrics.incrResolvingCacheLocalHits();
+          }
+          // zero round trips marks a hit in the local tier
+          if(TransactionsStats.getInstance().isEnabled()){
+            TransactionsStats.getInstance().pushResolvingCacheStats(
+                new ResolvingCacheStat(ResolvingCacheStat.Op.GET, 0, 0));
+          }
+          return result;
+        }
+        if (metrics != null) {
+          metrics.incrResolvingCacheLocalMisses();
+        }
+      }
+
       final long startTime = System.currentTimeMillis();
       int[] result = getInternal(path);
       final long elapsed =  (System.currentTimeMillis() - startTime);
+      if (local != null) {
+        if (result != null) {
+          local.set(path, result);
+        }
+        NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+        if (metrics != null) {
+          metrics.addResolvingCacheRemoteGet(elapsed);
+        }
+      }
       LOG.debug("GET for path (" + path + ")  got value = " + Arrays.toString
           (result) + " in " + elapsed + " " +
           "msec");
@@ -151,18 +208,30 @@ public final int[] get(final String path) throws IOException{
 
   public final void delete(final String path){
     if(isStarted){
+      LocalCache local = localCache;
+      if (local != null) {
+        local.delete(path);
+      }
       deleteInternal(path);
     }
   }
 
   public final void delete(final INode inode){
     if(isStarted){
+      LocalCache local = localCache;
+      if (local != null) {
+        local.delete(inode);
+      }
       deleteInternal(inode);
     }
   }
 
   public final void flush(){
     if(isStarted){
+      LocalCache local = localCache;
+      if (local != null) {
+        local.clear();
+      }
      flushInternal();
     }
   }
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.resolvingcache;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import org.apache.hadoop.hdfs.server.namenode.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
+
+import java.util.List;
+
+/**
+ * Bounded, in-process first tier of the resolving cache. It sits in front of
+ * the memcached based implementations so that hot paths are resolved without
+ * a network round trip.
+ *
+ * Entries are kept per path component, (parent id, name) to inode id, like
+ * {@link InMemoryCache}, so that invalidating an inode only drops that inode
+ * and not every cached path it is part of.
+ */
+class LocalCache {
+
+  private final ConcurrentLinkedHashMap<String, Integer> cache;
+
+  LocalCache(int maxSize) {
+    cache = new ConcurrentLinkedHashMap.Builder<String, Integer>()
+        .maximumWeightedCapacity(maxSize).build();
+  }
+
+  /**
+   * @return the ids of all the components of the path, or null unless every
+   * component is cached
+   */
+  int[] get(String path) {
+    String[] names = INode.getPathNames(path);
+    int[] inodeIds = new int[names.length];
+    int parentId = INodeDirectory.ROOT_PARENT_ID;
+    for (int i = 0; i < names.length; i++) {
+      Integer inodeId = cache.get(INode.nameParentKey(parentId, names[i]));
+      if (inodeId == null) {
+        return null;
+      }
+      inodeIds[i] = inodeId;
+      parentId = inodeId;
+    }
+    return inodeIds;
+  }
+
+  void set(List<INode> inodes) {
+    for (INode inode : inodes) {
+      set(inode);
+    }
+  }
+
+  void set(INode inode) {
+    cache.put(inode.nameParentKey(), inode.getId());
+  }
+
+  /**
+   * Caches the ids returned by the second tier, they belong to the first
+   * inodeIds.length components of the path.
+   */
+  void set(String path, int[] inodeIds) {
+    String[] names = INode.getPathNames(path);
+    int parentId = INodeDirectory.ROOT_PARENT_ID;
+    for (int i = 0; i < inodeIds.length && i < names.length; i++) {
+      cache.put(INode.nameParentKey(parentId, names[i]), inodeIds[i]);
+      parentId = inodeIds[i];
+    }
+  }
+
+  /**
+   * Drops every cached component of the path as it is not known which one of
+   * them is stale.
+   */
+  void delete(String path) {
+    String[] names = INode.getPathNames(path);
+    int parentId = INodeDirectory.ROOT_PARENT_ID;
+    for (String name : names) {
+      Integer inodeId = cache.remove(INode.nameParentKey(parentId, name));
+      if (inodeId == null) {
+        return;
+      }
+      parentId = inodeId;
+    }
+  }
+
+  void delete(INode inode) {
+    cache.remove(inode.nameParentKey());
+  }
+
+  void clear() {
+    cache.clear();
+  }
+}
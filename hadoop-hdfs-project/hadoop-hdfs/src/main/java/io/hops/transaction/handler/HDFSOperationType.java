@@ -51,6 +51,7 @@ public enum HDFSOperationType implements OperationType {
   FSYNC,
   COMMIT_BLOCK_SYNCHRONIZATION,
   RENEW_LEASE,
+  FLUSH_LEASE_RENEWALS,
   GET_LISTING,
   REGISTER_DATANODE,
   HANDLE_HEARTBEAT,
@@ -275,6 +276,7 @@ public enum HDFSOperationType implements OperationType {
   SUBTREE_PERMISSION_CHECK,
   SUBTREE_RENAME,
   SUBTREE_DELETE,
+  SUBTREE_BATCHED_DELETE,
   SUBTREE_DEPRICATED_RENAME,
   SUBTREE_SETPERMISSION,
   GET_SUBTREE_ATTRIBUTES,
@@ -93,4 +93,28 @@ protected void acquire(TransactionLocks locks) throws IOException {
           inodeId);
     }
   }
+
+  final static class BatchedEncodingStatusLock extends BaseEncodingStatusLock {
+    private final int[] inodeIds;
+
+    BatchedEncodingStatusLock(TransactionLockTypes.LockType lockType,
+        int[] inodeIds) {
+      super(lockType);
+      this.inodeIds = Arrays.copyOf(inodeIds, inodeIds.length);
+      Arrays.sort(this.inodeIds);
+    }
+
+    @Override
+    protected void acquire(TransactionLocks locks) throws IOException {
+      for (int inodeId : inodeIds) {
+        EncodingStatus status = acquireLock(
+            getLockType(), EncodingStatus.Finder.ByInodeId, inodeId);
+        if (status == null) {
+          // It's a parity file
+          acquireLock(getLockType(), EncodingStatus.Finder.ByParityInodeId,
+              inodeId);
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.transaction.lock;
+
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
+import org.apache.hadoop.hdfs.server.namenode.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeFile;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Block lock for reading the block locations of a byte range of a file. The
+ * block rows of the file are needed to map the range to blocks. If only a
+ * few blocks overlap [offset, offset + length), those and the last block of
+ * the file are handed to the block related locks, which read the replicas,
+ * corrupt and excess replicas of each of them by block id. Wider ranges, like
+ * the prefetch of a stream or a whole file, are read like a {@link BlockLock}
+ * with one scan by inode id per table, since a read per block costs a round
+ * trip per block.
+ */
+final class BlockRangeLock extends IndividualBlockLock {
+
+  /**
+   * The most blocks of a file whose related rows are read block by block.
+   */
+  static final int MAX_BLOCKS_READ_INDIVIDUALLY = 2;
+
+  private final long offset;
+  private final long length;
+  private final List<INodeFile> files;
+
+  BlockRangeLock(long offset, long length) {
+    super();
+    this.offset = offset;
+    this.length = length;
+    this.files = new ArrayList<INodeFile>();
+  }
+
+  @Override
+  protected void acquire(TransactionLocks locks) throws IOException {
+    BaseINodeLock inodeLock = (BaseINodeLock) locks.getLock(Type.INode);
+    for (INode inode : inodeLock.getAllResolvedINodes()) {
+      if (inode instanceof INodeFile) {
+        Collection<BlockInfo> inodeBlocks =
+            acquireLockList(DEFAULT_LOCK_TYPE, BlockInfo.Finder.ByINodeId,
+                inode.getId());
+        if (inodeBlocks == null || inodeBlocks.isEmpty()) {
+          announceEmptyFile(inode.getId());
+          continue;
+        }
+        addRowsRead(inodeBlocks.size());
+
+        List<BlockInfo> sorted = new ArrayList<BlockInfo>(inodeBlocks);
+        Collections.sort(sorted, BlockInfo.Order.ByBlockIndex);
+        BlockInfo[] fileBlocks = sorted.toArray(new BlockInfo[sorted.size()]);
+        int[] range = BlockManager
+            .getBlockRange(fileBlocks, offset, length, Integer.MAX_VALUE);
+        int inRange = range[1] - range[0];
+        if (range[1] < fileBlocks.length) {
+          inRange++;
+        }
+        if (inRange > MAX_BLOCKS_READ_INDIVIDUALLY) {
+          files.add((INodeFile) inode);
+          continue;
+        }
+        for (int i = range[0]; i < range[1]; i++) {
+          blocks.add(fileBlocks[i]);
+        }
+        if (range[1] < fileBlocks.length) {
+          blocks.add(fileBlocks[fileBlocks.length - 1]);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the files whose related rows are read by inode id
+   */
+  Collection<INodeFile> getFiles() {
+    return files;
+  }
+
+  /**
+   * Accounts rows read on behalf of a getBlockLocations call, by this lock
+   * and by the block related locks that follow it.
+   */
+  void addRowsRead(int rows) {
+    NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.incrBlockLocationsRowsRead(rows);
+    }
+  }
+}
@@ -27,6 +27,7 @@
 import org.apache.hadoop.hdfs.server.namenode.INodeFile;
 
 import java.io.IOException;
+import java.util.Collection;
 
 final class BlockRelatedLock extends LockWithType {
 
@@ -42,14 +43,29 @@ protected void acquire(TransactionLocks locks) throws IOException {
       BaseIndividualBlockLock individualBlockLock =
           (BaseIndividualBlockLock) lock;
       //get by blocksId
+      int rows = 0;
       for (BlockInfo blk : individualBlockLock.getBlocks()) {
         if (isList()) {
-          acquireLockList(DEFAULT_LOCK_TYPE, getFinderType(true),
-              blk.getBlockId(), blk.getInodeId());
+          Collection<Object> result =
+              acquireLockList(DEFAULT_LOCK_TYPE, getFinderType(true),
+                  blk.getBlockId(), blk.getInodeId());
+          rows += result == null ? 0 : result.size();
         } else {
-          acquireLock(DEFAULT_LOCK_TYPE, getFinderType(true), blk.getBlockId(),
-              blk.getInodeId());
+          Object result = acquireLock(DEFAULT_LOCK_TYPE, getFinderType(true),
+              blk.getBlockId(), blk.getInodeId());
+          rows += result == null ? 0 : 1;
+        }
+      }
+      if (lock instanceof BlockRangeLock) {
+        //get by inodeId for the ranges that cover many blocks
+        BlockRangeLock blockRangeLock = (BlockRangeLock) lock;
+        for (INodeFile file : blockRangeLock.getFiles()) {
+          Collection<Object> result =
+              acquireLockList(DEFAULT_LOCK_TYPE, getFinderType(false),
+                  file.getId());
+          rows += result == null ? 0 : result.size();
         }
+        blockRangeLock.addRowsRead(rows);
       }
       if (lock instanceof BlockLock) {
         //get by inodeId
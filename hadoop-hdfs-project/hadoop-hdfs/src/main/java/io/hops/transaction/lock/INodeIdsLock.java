@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.transaction.lock;
+
+import io.hops.metadata.hdfs.entity.INodeIdentifier;
+import org.apache.hadoop.hdfs.server.namenode.INode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Locks a set of inodes that are known by their ids. The inodes whose
+ * parent id and name are known as well are read and locked with one batched
+ * primary key read. There is no batched finder by inode id, so the others,
+ * and those that were not found under the given parent and name, e.g.
+ * because they were moved, are read with an index scan each, in ascending id
+ * order.
+ */
+final class INodeIdsLock extends BaseINodeLock {
+
+  private static final Comparator<INodeIdentifier> BY_INODE_ID =
+      new Comparator<INodeIdentifier>() {
+        @Override
+        public int compare(INodeIdentifier o1, INodeIdentifier o2) {
+          return o1.getInodeId().compareTo(o2.getInodeId());
+        }
+      };
+
+  private final TransactionLockTypes.INodeLockType lockType;
+  private final List<INodeIdentifier> inodeIdentifiers;
+
+  INodeIdsLock(TransactionLockTypes.INodeLockType lockType,
+      List<INodeIdentifier> inodeIdentifiers) {
+    this.lockType = lockType;
+    this.inodeIdentifiers = new ArrayList<INodeIdentifier>(inodeIdentifiers);
+    Collections.sort(this.inodeIdentifiers, BY_INODE_ID);
+    if (lockType.equals(
+        TransactionLockTypes.INodeLockType.WRITE_ON_TARGET_AND_PARENT)) {
+      throw new IllegalArgumentException(
+          "Locking the parents of inodes by id is not supported");
+    }
+  }
+
+  @Override
+  protected void acquire(TransactionLocks locks) throws IOException {
+    if (inodeIdentifiers.isEmpty()) {
+      return;
+    }
+    setPartitioningKey(inodeIdentifiers.get(0).getInodeId());
+
+    Set<Integer> found = new HashSet<Integer>();
+    List<INodeIdentifier> named = getNamedINodes();
+    if (!named.isEmpty()) {
+      String[] names = new String[named.size()];
+      int[] parentIds = new int[named.size()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = named.get(i).getName();
+        parentIds[i] = named.get(i).getPid();
+      }
+      Set<Integer> requested = new HashSet<Integer>();
+      for (INodeIdentifier inodeIdentifier : named) {
+        requested.add(inodeIdentifier.getInodeId());
+      }
+      List<INode> inodes = find(lockType, names, parentIds, false);
+      if (inodes != null) {
+        for (INode inode : inodes) {
+          if (inode != null && requested.contains(inode.getId())) {
+            found.add(inode.getId());
+            addIndividualINode(inode);
+          }
+        }
+      }
+    }
+
+    for (INodeIdentifier inodeIdentifier : inodeIdentifiers) {
+      if (found.contains(inodeIdentifier.getInodeId())) {
+        continue;
+      }
+      INode inode = find(lockType, inodeIdentifier.getInodeId());
+      if (inode != null) {
+        addIndividualINode(inode);
+      }
+    }
+    acquireINodeAttributes();
+  }
+
+  /**
+   * @return the inodes that can be read by parent id and name
+   */
+  List<INodeIdentifier> getNamedINodes() {
+    List<INodeIdentifier> named = new ArrayList<INodeIdentifier>();
+    for (INodeIdentifier inodeIdentifier : inodeIdentifiers) {
+      if (inodeIdentifier.getName() != null &&
+          inodeIdentifier.getPid() != null) {
+        named.add(inodeIdentifier);
+      }
+    }
+    return named;
+  }
+
+  int[] getINodeIds() {
+    int[] inodeIds = new int[inodeIdentifiers.size()];
+    for (int i = 0; i < inodeIds.length; i++) {
+      inodeIds[i] = inodeIdentifiers.get(i).getInodeId();
+    }
+    return inodeIds;
+  }
+}
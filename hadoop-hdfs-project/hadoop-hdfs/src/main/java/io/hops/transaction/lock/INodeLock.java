@@ -29,6 +29,8 @@
 import org.apache.hadoop.hdfs.protocol.UnresolvedPathException;
 import org.apache.hadoop.hdfs.server.namenode.INode;
 import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -47,12 +49,28 @@ class INodeLock extends BaseINodeLock {
   private final boolean ignoreLocalSubtreeLocks;
   private final long namenodeId;
   private final boolean skipReadingQuotaAttr;
+  private final boolean batchedResolution;
 
+  private static boolean batchedResolutionEnabled = false;
+
+  static void enableBatchedResolution(boolean enable) {
+    batchedResolutionEnabled = enable;
+  }
 
   INodeLock(TransactionLockTypes.INodeLockType lockType,
       TransactionLockTypes.INodeResolveType resolveType, boolean resolveLink,
       boolean ignoreLocalSubtreeLocks, boolean skipReadingQuotaAttr, long namenodeId,
       Collection<ActiveNode> activeNamenodes, String... paths) {
+    this(lockType, resolveType, resolveLink, ignoreLocalSubtreeLocks,
+        skipReadingQuotaAttr, batchedResolutionEnabled, namenodeId,
+        activeNamenodes, paths);
+  }
+
+  INodeLock(TransactionLockTypes.INodeLockType lockType,
+      TransactionLockTypes.INodeResolveType resolveType, boolean resolveLink,
+      boolean ignoreLocalSubtreeLocks, boolean skipReadingQuotaAttr,
+      boolean batchedResolution, long namenodeId,
+      Collection<ActiveNode> activeNamenodes, String... paths) {
     super();
     this.lockType = lockType;
     this.resolveType = resolveType;
@@ -62,6 +80,7 @@ class INodeLock extends BaseINodeLock {
     this.namenodeId = namenodeId;
     this.paths = paths;
     this.skipReadingQuotaAttr = skipReadingQuotaAttr;
+    this.batchedResolution = batchedResolution;
   }
 
   INodeLock(TransactionLockTypes.INodeLockType lockType,
@@ -184,18 +203,8 @@ protected List<INode> readINodesWhileRespectingLocks(final String path,
         final String[] names, final int[] parentIds)
         throws TransactionContextException, StorageException,
         UnresolvedPathException {
-      int rowsToReadWithDefaultLock = names.length;
-      if (!lockType.equals(DEFAULT_INODE_LOCK_TYPE)) {
-        if (lockType.equals(
-            TransactionLockTypes.INodeLockType.WRITE_ON_TARGET_AND_PARENT)) {
-          rowsToReadWithDefaultLock -= 2;
-        } else {
-          rowsToReadWithDefaultLock -= 1;
-        }
-      }
-
-      rowsToReadWithDefaultLock = Math.min(rowsToReadWithDefaultLock,
-          parentIds.length);
+      int rowsToReadWithDefaultLock = Math.min(
+          getRowsToReadWithDefaultLock(names.length), parentIds.length);
 
       List<INode> inodes = null;
       if (rowsToReadWithDefaultLock > 0) {
@@ -222,6 +231,21 @@ protected List<INode> readINodesWhileRespectingLocks(final String path,
       return inodes;
     }
 
+    /**
+     * @return the number of leading path components that are neither the
+     * target nor its parent when those have to be locked for write
+     */
+    protected int getRowsToReadWithDefaultLock(int numComponents) {
+      if (lockType.equals(DEFAULT_INODE_LOCK_TYPE)) {
+        return numComponents;
+      } else if (lockType.equals(
+          TransactionLockTypes.INodeLockType.WRITE_ON_TARGET_AND_PARENT)) {
+        return numComponents - 2;
+      } else {
+        return numComponents - 1;
+      }
+    }
+
     protected void resolveRestOfThePath(String path, List<INode> inodes)
         throws StorageException, TransactionContextException,
         UnresolvedPathException {
@@ -332,6 +356,124 @@ protected void tryResolvingTheRest(String path, List<INode> inodes,
     }
   }
 
+  /**
+   * Resolves a path with one batched primary key read using the inode ids in
+   * the resolving cache, whatever the type of the cache. The cache may only
+   * know a prefix of the path. The parent ids of the cached components and
+   * of the first component after them are known, so they are all read by
+   * name and parent id in the same batch. Only the ids of the cached
+   * components are checked, the components the cache did not know are read
+   * under a verified parent. The path is walked from the last verified
+   * component, and only a stale cache entry is invalidated.
+   */
+  private class BatchedPathResolver extends FullPathResolver {
+
+    @Override
+    List<INode> fetchINodes(String path, boolean tryToSetParitionKey)
+        throws IOException {
+      final int[] inodeIds = Cache.getInstance().get(path);
+      final String[] names = INode.getPathNames(path);
+      List<INode> inodes = null;
+      boolean hit = false;
+      if (inodeIds != null && inodeIds.length > 0 &&
+          inodeIds.length <= names.length) {
+        final boolean partial = inodeIds.length < names.length;
+        if (tryToSetParitionKey) {
+          setPartitionKey(inodeIds, partial);
+        }
+        final int[] parentIds = getParentIds(inodeIds, partial);
+        final int rowsToRead = Math.min(
+            getRowsToReadWithDefaultLock(names.length), parentIds.length);
+        if (rowsToRead > 0) {
+          inodes = readVerifiedINodes(path, names, parentIds, inodeIds,
+              rowsToRead);
+          hit = inodes.size() >= Math.min(rowsToRead, inodeIds.length);
+        }
+      }
+
+      NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      if (metrics != null) {
+        if (hit) {
+          metrics.incrBatchedPathResolutionHits();
+        } else {
+          metrics.incrBatchedPathResolutionMisses();
+        }
+      }
+
+      if (inodes == null || inodes.isEmpty()) {
+        return null;
+      }
+      if (inodes.size() < names.length) {
+        resolveRestOfThePath(path, inodes);
+      }
+      addPathINodes(path, inodes);
+      if (!isCached(inodes, inodeIds)) {
+        updateResolvingCache(path, inodes);
+      }
+      return inodes;
+    }
+
+    /**
+     * @return the leading components read in one batch whose cached ids are
+     * still valid, followed by the first component the cache did not know if
+     * it exists
+     */
+    private List<INode> readVerifiedINodes(String path, String[] names,
+        int[] parentIds, int[] inodeIds, int rowsToRead)
+        throws StorageException, TransactionContextException {
+      List<INode> inodes = new ArrayList<INode>(names.length);
+      List<INode> rows = find(DEFAULT_INODE_LOCK_TYPE,
+          Arrays.copyOf(names, rowsToRead), Arrays.copyOf(parentIds,
+              rowsToRead), true);
+      if (rows == null) {
+        return inodes;
+      }
+
+      int verified = verifyINodesPartial(rows, names, parentIds, inodeIds);
+      inodes.addAll(rows.subList(0, verified));
+      if (verified < Math.min(rows.size(), inodeIds.length)) {
+        invalidate(path, names.length, verified, rows.get(verified));
+      } else if (verified < rows.size() && rows.get(verified) != null) {
+        // not in the cache, but read under the verified parent
+        inodes.add(rows.get(verified));
+      }
+      return inodes;
+    }
+
+    private boolean isCached(List<INode> inodes, int[] inodeIds) {
+      if (inodes.size() > inodeIds.length) {
+        return false;
+      }
+      for (int i = 0; i < inodes.size(); i++) {
+        if (inodes.get(i).getId() != inodeIds[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Deletes the cache entry of a path component whose cached id is stale,
+     * the entries of the components before it are still valid.
+     */
+    private void invalidate(String path, int numComponents, int index,
+        INode stale) {
+      Cache cache = Cache.getInstance();
+      if (cache instanceof OptimalMemcache) {
+        // the parent path is cached as a whole, the target by itself
+        if (index < numComponents - 1) {
+          cache.delete(path);
+        } else if (stale != null) {
+          cache.delete(stale);
+        }
+      } else if (cache instanceof PathMemcache) {
+        cache.delete(path);
+      } else if (stale != null) {
+        cache.delete(stale);
+      }
+    }
+  }
+
   @Override
   protected void acquire(TransactionLocks locks) throws IOException {
     /*
@@ -385,7 +527,8 @@ protected void acquireINodeLocks() throws IOException {
 
   private List<INode> resolveUsingMemcache(String path,
       boolean tryToSetParitionKey) throws IOException {
-    CacheResolver memcacheResolver = getCacheResolver();
+    CacheResolver memcacheResolver =
+        batchedResolution ? new BatchedPathResolver() : getCacheResolver();
     if(memcacheResolver == null)
       return null;
     List<INode> resolvedINodes = memcacheResolver.fetchINodes(path,
@@ -532,7 +675,7 @@ private List<INode> acquireLockOnRestOfPath(
     return resolved;
   }
 
-  private List<INode> findImmediateChildren(INode lastINode)
+  protected List<INode> findImmediateChildren(INode lastINode)
       throws StorageException, TransactionContextException {
     List<INode> children = new ArrayList<INode>();
     if (lastINode != null) {
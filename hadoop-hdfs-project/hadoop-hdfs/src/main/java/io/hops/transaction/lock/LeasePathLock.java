@@ -18,8 +18,8 @@
 import io.hops.exception.StorageException;
 import io.hops.exception.TransactionContextException;
 import io.hops.metadata.hdfs.entity.LeasePath;
-import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.namenode.Lease;
+import org.apache.hadoop.hdfs.server.namenode.LeaseManager;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -83,8 +83,8 @@ private void acquireLeasePaths(Lease lease)
     Collection<LeasePath> result =
         acquireLockList(lockType, LeasePath.Finder.ByHolderId,
             lease.getHolderID());
-    if (!lease.getHolder().equals(
-        HdfsServerConstants.NAMENODE_LEASE_HOLDER)) { // We don't need to keep the lps result for namenode-lease.
+    if (!LeaseManager.isNameNodeLeaseHolder(
+        lease.getHolder())) { // We don't need to keep the lps result for namenode-leases.
       leasePaths.addAll(result);
     }
   }
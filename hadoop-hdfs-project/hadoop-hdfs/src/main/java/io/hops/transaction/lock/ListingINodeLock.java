@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.transaction.lock;
+
+import io.hops.exception.StorageException;
+import io.hops.exception.TransactionContextException;
+import io.hops.leader_election.node.ActiveNode;
+import org.apache.hadoop.hdfs.server.namenode.INode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resolves the directory of a listing and its immediate children like a
+ * PATH_AND_IMMEDIATE_CHILDREN read lock, but hands on only the page of
+ * children that is returned to the client, i.e. the children that sort after
+ * startAfter, up to the listing limit. All children are still read, and read
+ * locked, by the ByParentId scan as there is no paged finder by parent, only
+ * the locks that act on all resolved inodes, like the block lock, are bounded
+ * by the page size instead of the size of the directory.
+ */
+final class ListingINodeLock extends INodeLock {
+
+  private final byte[] startAfter;
+  private final int limit;
+
+  ListingINodeLock(boolean skipReadingQuotaAttr, long namenodeId,
+      Collection<ActiveNode> activeNamenodes, String path, byte[] startAfter,
+      int limit) {
+    super(TransactionLockTypes.INodeLockType.READ,
+        TransactionLockTypes.INodeResolveType.PATH_AND_IMMEDIATE_CHILDREN,
+        true, false, skipReadingQuotaAttr, namenodeId, activeNamenodes, path);
+    this.startAfter = startAfter == null ? new byte[0] : startAfter;
+    this.limit = limit;
+  }
+
+  @Override
+  protected List<INode> findImmediateChildren(INode lastINode)
+      throws StorageException, TransactionContextException {
+    return getPage(super.findImmediateChildren(lastINode), startAfter, limit);
+  }
+
+  /**
+   * Selects the children returned by a listing the same way
+   * FSDirectory#getListing does, the children are sorted by name.
+   */
+  static List<INode> getPage(List<INode> children, byte[] startAfter,
+      int limit) {
+    int start = 0;
+    if (startAfter.length != 0) {
+      int nextPos = Collections.binarySearch(children, startAfter) + 1;
+      start = nextPos >= 0 ? nextPos : -nextPos;
+    }
+    int end = (int) Math.min((long) start + limit, children.size());
+    if (start >= end) {
+      return new ArrayList<INode>();
+    }
+    return new ArrayList<INode>(children.subList(start, end));
+  }
+}
@@ -81,6 +81,16 @@ public Lock getBlockLock(long blockId, INodeIdentifier inode) {
     return new BlockLock(blockId, inode);
   }
 
+  /**
+   * Block lock on the blocks of the file that overlap the byte range
+   * [offset, offset + length) and on its last block. Ranges of more than
+   * {@link BlockRangeLock#MAX_BLOCKS_READ_INDIVIDUALLY} blocks lock the
+   * related rows of the whole file, like {@link #getBlockLock()}.
+   */
+  public Lock getBlockRangeLock(long offset, long length) {
+    return new BlockRangeLock(offset, length);
+  }
+
   public Lock getReplicaLock() {
     return new BlockRelatedLock(Lock.Type.Replica);
   }
@@ -149,6 +159,18 @@ public Lock getBatchedINodesLock(List<INodeIdentifier> inodeIdentifiers) {
     return new BatchedINodeLock(inodeIdentifiers);
   }
 
+  public Lock getINodeIdsLock(
+      TransactionLockTypes.INodeLockType lockType,
+      List<INodeIdentifier> inodeIdentifiers) {
+    return new INodeIdsLock(lockType, inodeIdentifiers);
+  }
+
+  public Lock getSiblingINodesLock(
+      TransactionLockTypes.INodeLockType lockType, int parentId,
+      String[] names) {
+    return new SiblingINodesLock(lockType, parentId, names);
+  }
+
   public Lock getIndividualINodeAttributesLock(
           TransactionLockTypes.LockType lockType,
           INodeIdentifier inodeIdentifier) {
@@ -189,6 +211,22 @@ public Lock getINodeLock(NameNode nameNode,
         nameNode.getActiveNameNodes().getActiveNodes(), paths);
   }
 
+  /**
+   * @param batchedResolution
+   *     read all the path components in one batched read using the inode
+   *     ids in the resolving cache, and walk the path component by component
+   *     only if they are missing or do not chain correctly
+   */
+  public Lock getINodeLock(NameNode nameNode,
+      TransactionLockTypes.INodeLockType lockType,
+      TransactionLockTypes.INodeResolveType resolveType, boolean resolveLink,
+      boolean ignoreLocalSubtreeLocks, boolean batchedResolution,
+      String... paths) {
+    return new INodeLock(lockType, resolveType, resolveLink,
+        ignoreLocalSubtreeLocks, false, batchedResolution, nameNode.getId(),
+        nameNode.getActiveNameNodes().getActiveNodes(), paths);
+  }
+
   public Lock getINodeLock(NameNode nameNode,
       TransactionLockTypes.INodeLockType lockType,
       TransactionLockTypes.INodeResolveType resolveType, boolean resolveLink,
@@ -222,6 +260,18 @@ public Lock getINodeLock(boolean skipReadingQuotaAttr, NameNode nameNode,
         nameNode.getActiveNameNodes().getActiveNodes(), paths);
   }
 
+  /**
+   * Read lock on the directory of a listing and its children. Only the page
+   * of children that sort after startAfter, at most limit of them, is passed
+   * on to the locks that follow, e.g. the block locks.
+   */
+  public Lock getListingINodeLock(NameNode nameNode, String path,
+      byte[] startAfter, int limit) {
+    return new ListingINodeLock(true, nameNode.getId(),
+        nameNode.getActiveNameNodes().getActiveNodes(), path, startAfter,
+        limit);
+  }
+
   public Lock getRenameINodeLock(NameNode nameNode,
       TransactionLockTypes.INodeLockType lockType,
       TransactionLockTypes.INodeResolveType resolveType,
@@ -261,6 +311,11 @@ public Lock getLeaseLock(TransactionLockTypes.LockType lockType,
     return new LeaseLock(lockType, leaseHolder);
   }
 
+  public Lock getLeaseLock(TransactionLockTypes.LockType lockType,
+      Collection<String> leaseHolders) {
+    return new LeaseLock(lockType, leaseHolders);
+  }
+
   public Lock getLeaseLock(TransactionLockTypes.LockType lockType) {
     return new LeaseLock(lockType);
   }
@@ -287,6 +342,10 @@ public Lock getQuotaUpdateLock(boolean includeChildren, String... targets) {
     return new QuotaUpdateLock(includeChildren, targets);
   }
 
+  public Lock getQuotaUpdateLock(int[] inodeIds) {
+    return new QuotaUpdateLock(inodeIds);
+  }
+
   public Lock getQuotaUpdateLock(String... targets) {
     return new QuotaUpdateLock(targets);
   }
@@ -325,6 +384,12 @@ public Lock getIndivdualEncodingStatusLock(
     return new BaseEncodingStatusLock.IndividualEncodingStatusLock(lockType,
         inodeId);
   }
+
+  public Lock getBatchedEncodingStatusLock(
+      TransactionLockTypes.LockType lockType, int[] inodeIds) {
+    return new BaseEncodingStatusLock.BatchedEncodingStatusLock(lockType,
+        inodeIds);
+  }
   
   public Lock getSubTreeOpsLock(TransactionLockTypes.LockType lockType, 
           String pathPrefix) {
@@ -400,6 +465,9 @@ public void setConfiguration(Configuration conf) {
         .DFS_SET_RANDOM_PARTITION_KEY_ENABLED, DFSConfigKeys
         .DFS_SET_RANDOM_PARTITION_KEY_ENABLED_DEFAULT));
     BaseINodeLock.setDefaultLockType(getPrecedingPathLockType(conf));
+    INodeLock.enableBatchedResolution(
+        conf.getBoolean(DFSConfigKeys.DFS_BATCHED_PATH_RESOLUTION_ENABLED,
+            DFSConfigKeys.DFS_BATCHED_PATH_RESOLUTION_ENABLED_DEFAULT));
   }
   
   private TransactionLockTypes.INodeLockType getPrecedingPathLockType(
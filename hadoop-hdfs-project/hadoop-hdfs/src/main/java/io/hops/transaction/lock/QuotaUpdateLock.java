@@ -28,10 +28,22 @@
 final class QuotaUpdateLock extends Lock {
   private final String[] targets;
   private final boolean includeChildren;
+  private final int[] inodeIds;
 
   QuotaUpdateLock(boolean includeChildren, String... targets) {
     this.includeChildren = includeChildren;
     this.targets = targets;
+    this.inodeIds = null;
+  }
+
+  /**
+   * Reads the quota updates of inodes that are known by their ids. Does not
+   * depend on the paths resolved by an {@link INodeLock}.
+   */
+  QuotaUpdateLock(int[] inodeIds) {
+    this.includeChildren = false;
+    this.targets = null;
+    this.inodeIds = inodeIds;
   }
 
   QuotaUpdateLock(String... paths) {
@@ -40,6 +52,13 @@ final class QuotaUpdateLock extends Lock {
 
   @Override
   protected void acquire(TransactionLocks locks) throws IOException {
+    if (inodeIds != null) {
+      for (int inodeId : inodeIds) {
+        acquireLockList(DEFAULT_LOCK_TYPE, QuotaUpdate.Finder.ByINodeId,
+            inodeId);
+      }
+      return;
+    }
     INodeLock inodeLock = (INodeLock) locks.getLock(Type.INode);
     for (String target : targets) {
       acquireQuotaUpdate(inodeLock.getTargetINode(target));
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.transaction.lock;
+
+import org.apache.hadoop.hdfs.server.namenode.INode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Locks a directory by its id and a batch of its children by their names.
+ * The children are read in one batched primary key read. The directory is
+ * locked before its children, the same order in which paths are locked.
+ */
+final class SiblingINodesLock extends BaseINodeLock {
+
+  private final TransactionLockTypes.INodeLockType lockType;
+  private final int parentId;
+  private final String[] names;
+
+  SiblingINodesLock(TransactionLockTypes.INodeLockType lockType,
+      int parentId, String[] names) {
+    this.lockType = lockType;
+    this.parentId = parentId;
+    this.names = Arrays.copyOf(names, names.length);
+    Arrays.sort(this.names);
+    if (lockType.equals(
+        TransactionLockTypes.INodeLockType.WRITE_ON_TARGET_AND_PARENT)) {
+      throw new IllegalArgumentException(
+          "The parent is always locked, use the lock type of the siblings");
+    }
+  }
+
+  @Override
+  protected void acquire(TransactionLocks locks) throws IOException {
+    INode parent = find(lockType, parentId);
+    if (parent == null) {
+      return;
+    }
+    addIndividualINode(parent);
+
+    if (names.length > 0) {
+      int[] parentIds = new int[names.length];
+      Arrays.fill(parentIds, parentId);
+      List<INode> children = find(lockType, names, parentIds, false);
+      if (children != null) {
+        for (INode child : children) {
+          if (child != null) {
+            addIndividualINode(child);
+          }
+        }
+      }
+    }
+    acquireINodeAttributes();
+  }
+
+  int getParentId() {
+    return parentId;
+  }
+}
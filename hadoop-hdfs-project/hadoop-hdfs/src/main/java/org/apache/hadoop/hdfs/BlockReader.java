@@ -76,4 +76,12 @@ public interface BlockReader extends ByteBufferReadable {
    * @return a reference to the streams this block reader is using.
    */
   IOStreamPair getStreams();
+
+  /**
+   * Get a referenced memory mapping of the block file, which the caller must
+   * release. Only a local reader of a finalized block can map it.
+   *
+   * @return the mapping, or null if the block cannot be mapped
+   */
+  ClientMmapManager.ClientMmap getClientMmap(ClientMmapManager mmapManager);
 }
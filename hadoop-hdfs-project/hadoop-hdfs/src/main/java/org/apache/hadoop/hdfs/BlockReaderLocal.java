@@ -158,6 +158,8 @@ private void removeBlockLocalPathInfo(ExtendedBlock b) {
    */
   private long startOffset;
   private final String filename;
+  private final ExtendedBlock block;
+  private final String blockPath;
   
   /**
    * The only way this object can be instantiated.
@@ -316,6 +318,8 @@ private BlockReaderLocal(Configuration conf, String hdfsfile,
       boolean verifyChecksum, FileInputStream dataIn, long firstChunkOffset,
       FileInputStream checksumIn) throws IOException {
     this.filename = hdfsfile;
+    this.block = block;
+    this.blockPath = pathinfo.getBlockPath();
     this.checksum = checksum;
     this.verifyChecksum = verifyChecksum;
     this.startOffset = Math.max(startOffset, 0);
@@ -717,4 +721,15 @@ public boolean hasSentStatusCode() {
   public IOStreamPair getStreams() {
     return null;
   }
+
+  @Override
+  public ClientMmapManager.ClientMmap getClientMmap(
+      ClientMmapManager mmapManager) {
+    try {
+      return mmapManager.fetch(blockPath, block, dataIn);
+    } catch (IOException e) {
+      LOG.warn("Failed to mmap " + blockPath + " of " + filename, e);
+      return null;
+    }
+  }
 }
@@ -0,0 +1,262 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.io.nativeio.NativeIO;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of memory mapped, finalized local block files, shared by all the
+ * clients of the process. A mapping is reference counted, every stream that
+ * reads from it and every buffer handed out to the application holds a
+ * reference. A mapping without references stays in the cache until it is
+ * reused, it times out, or its slot is needed for another block.
+ */
+class ClientMmapManager {
+  private static final Log LOG = LogFactory.getLog(ClientMmapManager.class);
+
+  /**
+   * A memory mapped block file
+   */
+  static class ClientMmap {
+    private final ClientMmapManager manager;
+    private final Key key;
+    private final MappedByteBuffer map;
+    private int refCount = 0;
+    private long lastUsed;
+
+    private ClientMmap(ClientMmapManager manager, Key key,
+        MappedByteBuffer map) {
+      this.manager = manager;
+      this.key = key;
+      this.map = map;
+    }
+
+    MappedByteBuffer getMappedByteBuffer() {
+      return map;
+    }
+
+    void ref() {
+      manager.ref(this);
+    }
+
+    void unref() {
+      manager.unref(this);
+    }
+  }
+
+  /**
+   * A replica is identified by its block file. The generation stamp and the
+   * length tell a finalized replica apart from the one it was appended to.
+   */
+  private static class Key {
+    private final String blockPath;
+    private final long generationStamp;
+    private final long numBytes;
+
+    Key(String blockPath, ExtendedBlock block) {
+      this.blockPath = blockPath;
+      this.generationStamp = block.getGenerationStamp();
+      this.numBytes = block.getNumBytes();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return blockPath.equals(other.blockPath) &&
+          generationStamp == other.generationStamp &&
+          numBytes == other.numBytes;
+    }
+
+    @Override
+    public int hashCode() {
+      return blockPath.hashCode() ^
+          (int) (generationStamp ^ (generationStamp >>> 32));
+    }
+
+    @Override
+    public String toString() {
+      return blockPath + "_" + generationStamp + "_" + numBytes;
+    }
+  }
+
+  private static ClientMmapManager instance = null;
+
+  private final int capacity;
+  private final long timeoutMs;
+  private final Map<Key, ClientMmap> mmaps = new HashMap<Key, ClientMmap>();
+  /**
+   * The mappings without references, least recently released first
+   */
+  private final LinkedHashMap<Key, ClientMmap> evictable =
+      new LinkedHashMap<Key, ClientMmap>();
+  private Daemon cleaner = null;
+
+  static synchronized ClientMmapManager getInstance(int capacity,
+      long timeoutMs) {
+    // like the socket cache, the first client configures the cache
+    if (instance == null) {
+      instance = new ClientMmapManager(capacity, timeoutMs);
+    } else if (instance.capacity != capacity ||
+        instance.timeoutMs != timeoutMs) {
+      LOG.info("mmap cache capacity and timeout already set to " +
+          instance.capacity + " and " + instance.timeoutMs +
+          " respectively. Cannot set it to " + capacity + " and " + timeoutMs);
+    }
+    return instance;
+  }
+
+  @VisibleForTesting
+  ClientMmapManager(int capacity, long timeoutMs) {
+    this.capacity = capacity;
+    this.timeoutMs = timeoutMs;
+  }
+
+  /**
+   * Get a referenced mapping of the block file, mapping it if it is not in
+   * the cache yet.
+   *
+   * @return the mapping, or null if the cache is disabled or full
+   */
+  synchronized ClientMmap fetch(String blockPath, ExtendedBlock block,
+      FileInputStream blockFile) throws IOException {
+    if (capacity <= 0) {
+      return null;
+    }
+    Key key = new Key(blockPath, block);
+    ClientMmap mmap = mmaps.get(key);
+    if (mmap == null) {
+      if (block.getNumBytes() > Integer.MAX_VALUE) {
+        return null;
+      }
+      if (mmaps.size() >= capacity && !evictOldest()) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Not mapping " + key + ", all " + capacity +
+              " cached mappings are in use");
+        }
+        return null;
+      }
+      FileChannel channel = blockFile.getChannel();
+      if (channel.size() < block.getNumBytes()) {
+        throw new IOException("Block file " + blockPath + " is shorter than " +
+            block);
+      }
+      mmap = new ClientMmap(this, key,
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, block.getNumBytes()));
+      mmaps.put(key, mmap);
+      startCleaner();
+    }
+    ref(mmap);
+    return mmap;
+  }
+
+  private synchronized void ref(ClientMmap mmap) {
+    if (mmap.refCount++ == 0) {
+      evictable.remove(mmap.key);
+    }
+  }
+
+  private synchronized void unref(ClientMmap mmap) {
+    if (mmap.refCount <= 0) {
+      throw new IllegalStateException("Unbalanced release of " + mmap.key);
+    }
+    if (--mmap.refCount == 0) {
+      mmap.lastUsed = Time.monotonicNow();
+      evictable.put(mmap.key, mmap);
+    }
+  }
+
+  private boolean evictOldest() {
+    Iterator<ClientMmap> it = evictable.values().iterator();
+    if (!it.hasNext()) {
+      return false;
+    }
+    evict(it.next(), it);
+    return true;
+  }
+
+  private void evict(ClientMmap mmap, Iterator<ClientMmap> it) {
+    it.remove();
+    mmaps.remove(mmap.key);
+    // nobody references the mapping, unmap it now rather than waiting for
+    // the finalizer
+    NativeIO.POSIX.munmap(mmap.map);
+  }
+
+  @VisibleForTesting
+  synchronized void evictStale() {
+    long now = Time.monotonicNow();
+    Iterator<ClientMmap> it = evictable.values().iterator();
+    while (it.hasNext()) {
+      ClientMmap mmap = it.next();
+      if (mmap.lastUsed + timeoutMs > now) {
+        break;
+      }
+      evict(mmap, it);
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int size() {
+    return mmaps.size();
+  }
+
+  @VisibleForTesting
+  synchronized int evictableSize() {
+    return evictable.size();
+  }
+
+  private void startCleaner() {
+    if (cleaner != null) {
+      return;
+    }
+    cleaner = new Daemon(new Runnable() {
+      @Override
+      public void run() {
+        long period = Math.max(1, timeoutMs / 4);
+        while (true) {
+          try {
+            Thread.sleep(period);
+          } catch (InterruptedException e) {
+            return;
+          }
+          evictStale();
+        }
+      }
+    });
+    cleaner.setName("ClientMmapManager cleaner");
+    cleaner.start();
+  }
+}
@@ -101,6 +101,7 @@
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.security.token.TokenRenewer;
+import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.DataChecksum.Type;
 import org.apache.hadoop.util.Progressable;
@@ -130,6 +131,11 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SIZE_DEFAULT;
@@ -150,6 +156,10 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_FAILOVER_SLEEPTIME_MAX_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_MAX_BLOCK_ACQUIRE_FAILURES_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_MAX_BLOCK_ACQUIRE_FAILURES_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_SIZE;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_SIZE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_TIMEOUT_MS;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_TIMEOUT_MS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_READ_PREFETCH_SIZE_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_RETRY_WINDOW_BASE;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_SOCKET_CACHE_CAPACITY_DEFAULT;
@@ -206,6 +216,11 @@ public class DFSClient implements java.io.Closeable {
   final int hdfsTimeout;    // timeout value for a DFS operation.
   private final String authority;
   final SocketCache socketCache;
+  private static ThreadPoolExecutor hedgedReadThreadPool;
+  private static final DFSHedgedReadMetrics HEDGED_READ_METRICS =
+      new DFSHedgedReadMetrics();
+  final ClientMmapManager mmapManager;
+  final PacketBufferPool packetBufferPool;
   final Conf dfsClientConf;
   private Random r = new Random();
   private SocketAddress[] localInterfaceAddrs;
@@ -227,6 +242,11 @@ static class Conf {
     final int socketTimeout;
     final int socketCacheCapacity;
     final long socketCacheExpiry;
+    final int mmapCacheSize;
+    final long mmapCacheTimeoutMs;
+    final int hedgedReadThreadPoolSize;
+    final long hedgedReadThresholdMillis;
+    final int writePacketPoolSize;
     /**
      * Wait time window (in msec) if BlockMissingException is caught
      */
@@ -281,6 +301,19 @@ static class Conf {
           DFS_CLIENT_SOCKET_CACHE_CAPACITY_DEFAULT);
       socketCacheExpiry = conf.getLong(DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY,
           DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_DEFAULT);
+      mmapCacheSize = conf.getInt(DFS_CLIENT_MMAP_CACHE_SIZE,
+          DFS_CLIENT_MMAP_CACHE_SIZE_DEFAULT);
+      mmapCacheTimeoutMs = conf.getLong(DFS_CLIENT_MMAP_CACHE_TIMEOUT_MS,
+          DFS_CLIENT_MMAP_CACHE_TIMEOUT_MS_DEFAULT);
+      hedgedReadThreadPoolSize = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_HEDGED_READ_THREADPOOL_SIZE,
+          DFSConfigKeys.DFS_CLIENT_HEDGED_READ_THREADPOOL_SIZE_DEFAULT);
+      hedgedReadThresholdMillis = conf.getLong(
+          DFSConfigKeys.DFS_CLIENT_HEDGED_READ_THRESHOLD_MILLIS,
+          DFSConfigKeys.DFS_CLIENT_HEDGED_READ_THRESHOLD_MILLIS_DEFAULT);
+      writePacketPoolSize = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_POOL_SIZE_KEY,
+          DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_POOL_SIZE_DEFAULT);
       prefetchSize = conf.getLong(DFS_CLIENT_READ_PREFETCH_SIZE_KEY,
           10 * defaultBlockSize);
       timeWindow = conf.getInt(DFS_CLIENT_RETRY_WINDOW_BASE, 3000);
@@ -456,6 +489,14 @@ public DFSClient(URI nameNodeUri, Configuration conf,
     this.socketCache = SocketCache
         .getInstance(dfsClientConf.socketCacheCapacity,
             dfsClientConf.socketCacheExpiry);
+    this.mmapManager = ClientMmapManager
+        .getInstance(dfsClientConf.mmapCacheSize,
+            dfsClientConf.mmapCacheTimeoutMs);
+    this.packetBufferPool =
+        PacketBufferPool.getInstance(dfsClientConf.writePacketPoolSize);
+    if (dfsClientConf.hedgedReadThreadPoolSize > 0) {
+      initHedgedReadThreadPool(dfsClientConf.hedgedReadThreadPoolSize);
+    }
     
 
     this.MAX_RPC_RETRIES =
@@ -786,6 +827,68 @@ public Object doAction(ClientProtocol namenode)
     }
   }
 
+  /**
+   * Get the client observed latency, outstanding requests, selection count
+   * and ejection state of every namenode.
+   *
+   * @see NamenodeSelector#getNamenodeStats()
+   */
+  public List<String> getNamenodeStats() {
+    return namenodeSelector.getNamenodeStats();
+  }
+
+  /**
+   * Create the thread pool of the hedged reads, shared by all the clients of
+   * the process. A read request that finds every thread busy runs in the
+   * reading thread.
+   */
+  private static synchronized void initHedgedReadThreadPool(int size) {
+    if (hedgedReadThreadPool != null) {
+      return;
+    }
+    hedgedReadThreadPool = new ThreadPoolExecutor(1, size, 60,
+        TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new ThreadFactory() {
+          private final AtomicInteger threadIndex = new AtomicInteger(0);
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Daemon(r);
+            t.setName("hedgedRead-" + threadIndex.getAndIncrement());
+            return t;
+          }
+        }, new ThreadPoolExecutor.CallerRunsPolicy() {
+          @Override
+          public void rejectedExecution(Runnable runnable,
+              ThreadPoolExecutor e) {
+            HEDGED_READ_METRICS.incHedgedReadOpsInCurThread();
+            super.rejectedExecution(runnable, e);
+          }
+        });
+    hedgedReadThreadPool.allowCoreThreadTimeOut(true);
+    LOG.info("Using hedged reads, the pool has at most " + size + " threads");
+  }
+
+  static synchronized ThreadPoolExecutor getHedgedReadThreadPool() {
+    return hedgedReadThreadPool;
+  }
+
+  boolean isHedgedReadsEnabled() {
+    return dfsClientConf.hedgedReadThreadPoolSize > 0 &&
+        dfsClientConf.hedgedReadThresholdMillis >= 0;
+  }
+
+  long getHedgedReadThresholdMillis() {
+    return dfsClientConf.hedgedReadThresholdMillis;
+  }
+
+  /**
+   * @return the hedged read counters of all the clients of the process
+   */
+  public DFSHedgedReadMetrics getHedgedReadMetrics() {
+    return HEDGED_READ_METRICS;
+  }
+
   /**
    * Get server default values for a number of configuration params.
    *
@@ -2808,9 +2911,24 @@ private Object doClientActionWithRetry(ClientActionHandler handler,
         LOG.debug(thisFnID + ") " + callerID + " sending RPC to " +
             handle.getNamenode() + " tries left (" + (MAX_RPC_RETRIES - i) +
             ")");
-        Object obj = handler.doAction(handle.getRPCHandle());
-        //no exception
-        return obj;
+        long startTime = namenodeSelector.requestStarted(handle);
+        boolean answered = false;
+        try {
+          Object obj = handler.doAction(handle.getRPCHandle());
+          answered = true;
+          //no exception
+          return obj;
+        } catch (RemoteException e) {
+          // the namenode answered, only the request failed
+          answered = true;
+          throw e;
+        } finally {
+          if (answered) {
+            namenodeSelector.requestFinished(handle, startTime);
+          } else {
+            namenodeSelector.requestFailed(handle);
+          }
+        }
       } catch (IOException e) {
         exception = e;
         if (ExceptionCheck.isLocalConnectException(e)) {
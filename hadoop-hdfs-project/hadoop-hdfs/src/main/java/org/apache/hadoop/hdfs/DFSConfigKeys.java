@@ -62,6 +62,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.quota.update.limit";
   public static final int DFS_NAMENODE_QUOTA_UPDATE_LIMIT_DEFAULT = 100000;
 
+  public static final String DFS_NAMENODE_QUOTA_UPDATE_THREADS_KEY =
+      "dfs.namenode.quota.update.threads";
+  public static final int DFS_NAMENODE_QUOTA_UPDATE_THREADS_DEFAULT = 4;
+
+  public static final String DFS_NAMENODE_QUOTA_UPDATE_DIRS_PER_TX_KEY =
+      "dfs.namenode.quota.update.dirs-per-transaction";
+  public static final int DFS_NAMENODE_QUOTA_UPDATE_DIRS_PER_TX_DEFAULT = 16;
+
   public static final String DFS_NAMENODE_QUOTA_UPDATE_ID_BATCH_SIZE =
       "dfs.namenode.quota.update.id.batchsize";
   public static final int DFS_NAMENODE_QUOTA_UPDATE_ID_BATCH_SIZ_DEFAULT =
@@ -95,10 +103,38 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int DFS_NAMENODE_IDSMONITOR_CHECK_INTERVAL_IN_MS_DEFAULT =
       1000;
 
+  // number of ids a handler thread takes at once from the shared id ranges
+  public static final String DFS_NAMENODE_ID_ALLOCATION_CHUNK_SIZE =
+      "dfs.namenode.id.allocation.chunksize";
+  public static final int DFS_NAMENODE_ID_ALLOCATION_CHUNK_SIZE_DEFAULT = 8;
+
   public static final String DFS_NAMENODE_PROCESS_REPORT_BATCH_SIZE =
       "dfs.namenode.processReport.batchsize";
   public static final int DFS_NAMENODE_PROCESS_REPORT_BATCH_SIZE_DEFAULT =
       5000;
+
+  // lease renewals are kept in memory and written to the database every
+  // interval, at most batch-size holders per transaction. 0 writes every
+  // renewal in its own transaction
+  public static final String DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_KEY =
+      "dfs.namenode.lease-renewal.flush.interval-ms";
+  public static final long DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_DEFAULT =
+      1000;
+  public static final String DFS_NAMENODE_LEASE_RENEWAL_FLUSH_BATCH_SIZE_KEY =
+      "dfs.namenode.lease-renewal.flush.batch-size";
+  public static final int DFS_NAMENODE_LEASE_RENEWAL_FLUSH_BATCH_SIZE_DEFAULT =
+      100;
+
+  // number of expired leases a namenode recovers concurrently, and whether
+  // the expired holders are partitioned over all the active namenodes or
+  // only recovered by the leader
+  public static final String DFS_NAMENODE_LEASE_RECOVERY_THREADS_KEY =
+      "dfs.namenode.lease-recovery.threads";
+  public static final int DFS_NAMENODE_LEASE_RECOVERY_THREADS_DEFAULT = 8;
+  public static final String DFS_NAMENODE_LEASE_RECOVERY_PARTITIONED_KEY =
+      "dfs.namenode.lease-recovery.partitioned";
+  public static final boolean DFS_NAMENODE_LEASE_RECOVERY_PARTITIONED_DEFAULT =
+      true;
   
   public static final String DFS_NAMENODE_PROCESS_MISREPLICATED_BATCH_SIZE =
       "dfs.namenode.misreplicated.batchsize";
@@ -141,7 +177,29 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_SELECTOR_POLICY_KEY =
       "dfs.namenode.selector-policy";
   public static final String DFS_NAMENODE_SELECTOR_POLICY_DEFAULT =
-      "RANDOM_STICKY";     //RANDOM ROUND_ROBIN RANDOM_STICKY
+      "RANDOM_STICKY";     //RANDOM ROUND_ROBIN RANDOM_STICKY EWMA_LATENCY
+                           //POWER_OF_TWO_CHOICES
+
+  // weight of the latest request in the client observed namenode latency
+  public static final String DFS_CLIENT_NAMENODE_SELECTOR_LATENCY_EWMA_ALPHA_KEY =
+      "dfs.client.namenode-selector.latency-ewma.alpha";
+  public static final float DFS_CLIENT_NAMENODE_SELECTOR_LATENCY_EWMA_ALPHA_DEFAULT =
+      0.3f;
+  // the EWMA_LATENCY and POWER_OF_TWO_CHOICES policies eject a namenode whose
+  // latency is more than factor times the median latency, 0 disables ejection
+  public static final String DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_FACTOR_KEY =
+      "dfs.client.namenode-selector.ejection.factor";
+  public static final float DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_FACTOR_DEFAULT =
+      3.0f;
+  public static final String DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_PERIOD_MS_KEY =
+      "dfs.client.namenode-selector.ejection.period-ms";
+  public static final long DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_PERIOD_MS_DEFAULT =
+      30 * 1000;
+  // latency in ms recorded for a request the namenode did not answer
+  public static final String DFS_CLIENT_NAMENODE_SELECTOR_FAILURE_PENALTY_MS_KEY =
+      "dfs.client.namenode-selector.failure-penalty-ms";
+  public static final long DFS_CLIENT_NAMENODE_SELECTOR_FAILURE_PENALTY_MS_DEFAULT =
+      10 * 1000;
   
   public static final String DFS_BLOCK_POOL_ID_KEY = "dfs.block.pool.id";
   public static final String DFS_BLOCK_POOL_ID_DEFAULT = "HOP_BLOCK_POOL_123";
@@ -202,6 +260,20 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       ".resolvingcache.inmemory.maxsize";
   public static final int DFS_INMEMORY_CACHE_MAX_SIZE_DEFAULT = 100000;
 
+  // in-process tier in front of the memcached resolving cache
+  public static final String DFS_RESOLVING_CACHE_LOCAL_ENABLED =
+      "dfs.resolvingcache.local.enabled";
+  public static final boolean DFS_RESOLVING_CACHE_LOCAL_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_RESOLVING_CACHE_LOCAL_MAX_SIZE =
+      "dfs.resolvingcache.local.maxsize";
+  public static final int DFS_RESOLVING_CACHE_LOCAL_MAX_SIZE_DEFAULT = 100000;
+
+  public static final String DFS_BATCHED_PATH_RESOLUTION_ENABLED =
+      "dfs.namenode.batched-path-resolution.enabled";
+  public static final boolean DFS_BATCHED_PATH_RESOLUTION_ENABLED_DEFAULT =
+      false;
+
   public static final String DFS_LEGACY_DELETE_ENABLE_KEY =
       "dfs.namenode.legacy-delete.enable";
   public static final boolean DFS_LEGACY_DELETE_ENABLE_DEFAULT = false;
@@ -225,6 +297,21 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.subtree-executor-limit";
   public static final int DFS_SUBTREE_EXECUTOR_LIMIT_DEFAULT = 80;
 
+  // max number of child collectors a single subtree operation keeps in
+  // flight, and the number of directories each of them reads per request
+  public static final String DFS_SUBTREE_MAX_ACTIVE_COLLECTORS_KEY =
+      "dfs.namenode.subtree.max-active-collectors";
+  public static final int DFS_SUBTREE_MAX_ACTIVE_COLLECTORS_DEFAULT = 20;
+  public static final String DFS_SUBTREE_COLLECTOR_BATCH_SIZE_KEY =
+      "dfs.namenode.subtree.collector-batch-size";
+  public static final int DFS_SUBTREE_COLLECTOR_BATCH_SIZE_DEFAULT = 10;
+
+  // number of sibling inodes deleted per transaction by a subtree delete,
+  // 1 deletes every inode in its own transaction
+  public static final String DFS_SUBTREE_DELETE_BATCH_SIZE_KEY =
+      "dfs.namenode.subtree-delete.batch-size";
+  public static final int DFS_SUBTREE_DELETE_BATCH_SIZE_DEFAULT = 50;
+
   public static final String ERASURE_CODING_CODECS_KEY =
       "dfs.erasure_coding.codecs.json";
   public static final String ERASURE_CODING_ENABLED_KEY =
@@ -696,6 +783,35 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_BLOCKREPORT_INITIAL_DELAY_KEY =
       "dfs.blockreport.initialDelay";
   public static final int DFS_BLOCKREPORT_INITIAL_DELAY_DEFAULT = 0;
+  // full block reports are hashed in this many buckets by block id, only the
+  // buckets that changed since the last report are sent. 0 sends all blocks
+  public static final String DFS_BLOCKREPORT_BUCKETS_KEY =
+      "dfs.blockreport.buckets";
+  public static final int DFS_BLOCKREPORT_BUCKETS_DEFAULT = 1000;
+  // the leader namenode hands out full block report slots. a namenode takes at
+  // most max-concurrent reports at a time and all namenodes together at most
+  // max-blocks-in-flight blocks, as they all write to the same database. a
+  // slot is reserved for min-window-ms plus the time it takes to process the
+  // report at blocks-per-second
+  public static final String DFS_BLOCKREPORT_ADMISSION_MAX_CONCURRENT_KEY =
+      "dfs.blockreport.admission.max-concurrent-per-namenode";
+  public static final int DFS_BLOCKREPORT_ADMISSION_MAX_CONCURRENT_DEFAULT = 4;
+  public static final String DFS_BLOCKREPORT_ADMISSION_MAX_BLOCKS_KEY =
+      "dfs.blockreport.admission.max-blocks-in-flight";
+  public static final long DFS_BLOCKREPORT_ADMISSION_MAX_BLOCKS_DEFAULT =
+      10 * 1000 * 1000;
+  public static final String DFS_BLOCKREPORT_ADMISSION_BLOCKS_PER_SEC_KEY =
+      "dfs.blockreport.admission.blocks-per-second";
+  public static final long DFS_BLOCKREPORT_ADMISSION_BLOCKS_PER_SEC_DEFAULT =
+      100 * 1000;
+  public static final String DFS_BLOCKREPORT_ADMISSION_MIN_WINDOW_KEY =
+      "dfs.blockreport.admission.min-window-ms";
+  public static final long DFS_BLOCKREPORT_ADMISSION_MIN_WINDOW_DEFAULT =
+      10 * 1000;
+  // how long a datanode waits before it asks again for a slot
+  public static final String DFS_BLOCKREPORT_ADMISSION_RETRY_KEY =
+      "dfs.blockreport.admission.retry-interval-ms";
+  public static final long DFS_BLOCKREPORT_ADMISSION_RETRY_DEFAULT = 5 * 1000;
   public static final String DFS_BLOCK_INVALIDATE_LIMIT_KEY =
       "dfs.block.invalidate.limit";
   public static final int DFS_BLOCK_INVALIDATE_LIMIT_DEFAULT = 1000;
@@ -714,6 +830,30 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.client.read.shortcircuit.buffer.size";
   public static final int DFS_CLIENT_READ_SHORTCIRCUIT_BUFFER_SIZE_DEFAULT =
       1024 * 1024;
+  // memory mapped local block files kept for zero-copy reads, 0 disables them
+  public static final String DFS_CLIENT_MMAP_CACHE_SIZE =
+      "dfs.client.mmap.cache.size";
+  public static final int DFS_CLIENT_MMAP_CACHE_SIZE_DEFAULT = 1024;
+  // how long an unused mapping stays in the cache
+  public static final String DFS_CLIENT_MMAP_CACHE_TIMEOUT_MS =
+      "dfs.client.mmap.cache.timeout.ms";
+  public static final long DFS_CLIENT_MMAP_CACHE_TIMEOUT_MS_DEFAULT =
+      15 * 60 * 1000;
+  // a positional read asks another replica if the first one has not answered
+  // within the threshold. The pool is shared by the clients of the process,
+  // 0 threads disables hedged reads
+  public static final String DFS_CLIENT_HEDGED_READ_THREADPOOL_SIZE =
+      "dfs.client.hedged.read.threadpool.size";
+  public static final int DFS_CLIENT_HEDGED_READ_THREADPOOL_SIZE_DEFAULT = 0;
+  public static final String DFS_CLIENT_HEDGED_READ_THRESHOLD_MILLIS =
+      "dfs.client.hedged.read.threshold.millis";
+  public static final long DFS_CLIENT_HEDGED_READ_THRESHOLD_MILLIS_DEFAULT =
+      500;
+  // packet buffers kept for reuse by the output streams of the process,
+  // 0 disables the pool
+  public static final String DFS_CLIENT_WRITE_PACKET_POOL_SIZE_KEY =
+      "dfs.client.write.packet.pool.size";
+  public static final int DFS_CLIENT_WRITE_PACKET_POOL_SIZE_DEFAULT = 128;
 
   //Keys with no defaults
   public static final String DFS_DATANODE_PLUGINS_KEY = "dfs.datanode.plugins";
@@ -20,8 +20,12 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.fs.ByteBufferReadable;
 import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.fs.ByteBufferUtil;
 import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.HasEnhancedByteBufferAccess;
+import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.UnresolvedLinkException;
+import org.apache.hadoop.hdfs.ClientMmapManager.ClientMmap;
 import org.apache.hadoop.hdfs.SocketCache.SocketAndStreams;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
@@ -33,18 +37,23 @@
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
 import org.apache.hadoop.hdfs.security.token.block.InvalidBlockTokenException;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaNotFoundException;
+import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.IdentityHashStore;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -52,7 +61,14 @@
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * *************************************************************
@@ -62,7 +78,7 @@
  */
 @InterfaceAudience.Private
 public class DFSInputStream extends FSInputStream
-    implements ByteBufferReadable {
+    implements ByteBufferReadable, HasEnhancedByteBufferAccess {
   private final SocketCache socketCache;
 
   private final DFSClient dfsClient;
@@ -103,6 +119,22 @@ public class DFSInputStream extends FSInputStream
 
   private final int nCachedConnRetry;
 
+  /**
+   * The buffers handed out by the enhanced byte buffer reads, mapped to the
+   * ClientMmap or the ByteBufferPool they have to be released to
+   */
+  private final IdentityHashStore<ByteBuffer, Object> extendedReadBuffers =
+      new IdentityHashStore<ByteBuffer, Object>(0);
+  /**
+   * The mapping of the block at clientMmapBlockStart, referenced by this
+   * stream until it moves to another block
+   */
+  private ClientMmap clientMmap = null;
+  private long clientMmapBlockStart = -1;
+
+  private static final ByteBuffer EMPTY_BUFFER =
+      ByteBuffer.allocateDirect(0).asReadOnlyBuffer();
+
   void addToDeadNodes(DatanodeInfo dnInfo) {
     deadNodes.put(dnInfo, dnInfo);
   }
@@ -523,6 +555,12 @@ public synchronized void close() throws IOException {
       closeBlockReader(blockReader);
       blockReader = null;
     }
+    releaseClientMmap();
+    if (!extendedReadBuffers.isEmpty()) {
+      DFSClient.LOG.warn("closing file " + src + ", but there are still " +
+          extendedReadBuffers.numElements() + " unreleased ByteBuffers " +
+          "allocated by read(). Please release them with releaseBuffer().");
+    }
     super.close();
     closed = true;
   }
@@ -726,23 +764,37 @@ public synchronized int read(final ByteBuffer buf) throws IOException {
    */
   private void addIntoCorruptedBlockMap(ExtendedBlock blk, DatanodeInfo node,
       Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap) {
-    Set<DatanodeInfo> dnSet = null;
-    if ((corruptedBlockMap.containsKey(blk))) {
-      dnSet = corruptedBlockMap.get(blk);
-    } else {
-      dnSet = new HashSet<DatanodeInfo>();
-    }
-    if (!dnSet.contains(node)) {
-      dnSet.add(node);
-      corruptedBlockMap.put(blk, dnSet);
+    // hedged reads may add to the map from several threads
+    synchronized (corruptedBlockMap) {
+      Set<DatanodeInfo> dnSet = null;
+      if ((corruptedBlockMap.containsKey(blk))) {
+        dnSet = corruptedBlockMap.get(blk);
+      } else {
+        dnSet = new HashSet<DatanodeInfo>();
+      }
+      if (!dnSet.contains(node)) {
+        dnSet.add(node);
+        corruptedBlockMap.put(blk, dnSet);
+      }
     }
   }
 
   private DNAddrPair chooseDataNode(LocatedBlock block) throws IOException {
+    return chooseDataNode(block, null);
+  }
+
+  /**
+   * Choose a datanode that is neither dead nor in ignoredNodes, refetching
+   * the block locations if there is none. The refetch clears the dead and
+   * the ignored nodes, so callers must only pass nodes that have no request
+   * in flight.
+   */
+  private DNAddrPair chooseDataNode(LocatedBlock block,
+      Collection<DatanodeInfo> ignoredNodes) throws IOException {
     while (true) {
       DatanodeInfo[] nodes = block.getLocations();
       try {
-        DatanodeInfo chosenNode = bestNode(nodes, deadNodes);
+        DatanodeInfo chosenNode = bestNode(nodes, deadNodes, ignoredNodes);
         final String dnAddr =
             chosenNode.getXferAddr(dfsClient.connectToDnViaHostname());
         if (DFSClient.LOG.isDebugEnabled()) {
@@ -783,6 +835,9 @@ private DNAddrPair chooseDataNode(LocatedBlock block) throws IOException {
         } catch (InterruptedException iex) {
         }
         deadNodes.clear(); //2nd option is to remove only nodes[blockId]
+        if (ignoredNodes != null) {
+          ignoredNodes.clear();
+        }
         openInfo();
         block = getBlockAt(block.getStartOffset(), false);
         failures++;
@@ -795,23 +850,43 @@ private void fetchBlockByteRange(LocatedBlock block, long start, long end,
       byte[] buf, int offset,
       Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap)
       throws IOException {
-    //
-    // Connect to best DataNode for desired Block, with potential offset
-    //
-    int refetchToken = 1; // only need to get a new access token once
-    int refetchEncryptionKey = 1; // only need to get a new encryption key once
-    
     while (true) {
       // cached block locations may have been updated by chooseDataNode()
       // or fetchBlockAt(). Always get the latest list of locations at the 
       // start of the loop.
       block = getBlockAt(block.getStartOffset(), false);
       DNAddrPair retval = chooseDataNode(block);
-      DatanodeInfo chosenNode = retval.info;
-      InetSocketAddress targetAddr = retval.addr;
+      try {
+        fetchBlockByteRangeFrom(retval, block, start, end, buf, offset,
+            corruptedBlockMap);
+        return;
+      } catch (IOException e) {
+        // the datanode is already in deadNodes, try the next one
+      }
+    }
+  }
+
+  /**
+   * Read the byte range from one datanode. It is retried on the same
+   * datanode after an invalid block token. On any other failure the datanode
+   * is added to deadNodes and the failure is thrown.
+   */
+  private void fetchBlockByteRangeFrom(DNAddrPair datanode,
+      LocatedBlock block, long start, long end, byte[] buf, int offset,
+      Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap)
+      throws IOException {
+    DatanodeInfo chosenNode = datanode.info;
+    InetSocketAddress targetAddr = datanode.addr;
+    int refetchToken = 1; // only need to get a new access token once
+    int refetchEncryptionKey = 1; // only need to get a new encryption key once
+
+    while (true) {
+      // the block token may have been refetched by an earlier attempt
+      block = getBlockAt(block.getStartOffset(), false);
       BlockReader reader = null;
 
       try {
+        DFSClientFaultInjector.get().fetchFromDatanode(chosenNode);
         Token<BlockTokenIdentifier> blockToken = block.getBlockToken();
 
         int len = (int) (end - start + 1);
@@ -832,6 +907,8 @@ private void fetchBlockByteRange(LocatedBlock block, long start, long end,
         // we want to remember what we have tried
         addIntoCorruptedBlockMap(block.getBlock(), chosenNode,
             corruptedBlockMap);
+        addToDeadNodes(chosenNode);
+        throw e;
       } catch (AccessControlException ex) {
         DFSClient.LOG.warn("Short circuit access failed ", ex);
         dfsClient.disableShortCircuit();
@@ -860,13 +937,129 @@ private void fetchBlockByteRange(LocatedBlock block, long start, long end,
             DFSClient.LOG.debug("Connection failure ", e);
           }
         }
+        // Put chosen node into dead list
+        addToDeadNodes(chosenNode);
+        throw e;
       } finally {
         if (reader != null) {
           closeBlockReader(reader);
         }
       }
-      // Put chosen node into dead list, continue
-      addToDeadNodes(chosenNode);
+    }
+  }
+
+  /**
+   * Like {@link #fetchBlockByteRange}, but if the datanode has not answered
+   * within the hedged read threshold, the range is also requested from
+   * another replica. The first answer wins and the other requests are
+   * cancelled.
+   */
+  private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
+      long end, byte[] buf, int offset,
+      Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap)
+      throws IOException {
+    List<Future<ByteBuffer>> futures = new ArrayList<Future<ByteBuffer>>();
+    CompletionService<ByteBuffer> hedgedService =
+        new ExecutorCompletionService<ByteBuffer>(
+            DFSClient.getHedgedReadThreadPool());
+    List<DatanodeInfo> ignored = new ArrayList<DatanodeInfo>();
+    int len = (int) (end - start + 1);
+    Future<ByteBuffer> firstRequest = null;
+    try {
+      while (true) {
+        block = getBlockAt(block.getStartOffset(), false);
+        if (futures.isEmpty()) {
+          // the first request, or every request so far failed
+          DNAddrPair chosenNode = chooseDataNode(block, ignored);
+          ignored.add(chosenNode.info);
+          firstRequest = hedgedService.submit(
+              getFromOneDataNode(chosenNode, block, start, end, len,
+                  corruptedBlockMap));
+          futures.add(firstRequest);
+          Future<ByteBuffer> future = hedgedService
+              .poll(dfsClient.getHedgedReadThresholdMillis(),
+                  TimeUnit.MILLISECONDS);
+          if (future != null) {
+            futures.remove(future);
+            ByteBuffer result = getResult(future);
+            if (result != null) {
+              System.arraycopy(result.array(), 0, buf, offset, len);
+              return;
+            }
+            continue;
+          }
+          if (DFSClient.LOG.isDebugEnabled()) {
+            DFSClient.LOG.debug("Waited " +
+                dfsClient.getHedgedReadThresholdMillis() + "ms to read from " +
+                chosenNode.info + ", starting a hedged read");
+          }
+          dfsClient.getHedgedReadMetrics().incHedgedReadOps();
+        }
+        DNAddrPair chosenNode = getBestNodeDNAddrPair(block, ignored);
+        if (chosenNode != null) {
+          ignored.add(chosenNode.info);
+          futures.add(hedgedService.submit(
+              getFromOneDataNode(chosenNode, block, start, end, len,
+                  corruptedBlockMap)));
+        }
+        // no other replica to ask, wait for the outstanding requests
+        Future<ByteBuffer> future = hedgedService.take();
+        futures.remove(future);
+        ByteBuffer result = getResult(future);
+        if (result != null) {
+          System.arraycopy(result.array(), 0, buf, offset, len);
+          if (future != firstRequest) {
+            dfsClient.getHedgedReadMetrics().incHedgedReadWins();
+          }
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while reading " + src);
+    } finally {
+      // let the losing requests finish on their own, interrupting them could
+      // leave a half read connection behind
+      for (Future<ByteBuffer> future : futures) {
+        future.cancel(false);
+      }
+    }
+  }
+
+  private Callable<ByteBuffer> getFromOneDataNode(final DNAddrPair datanode,
+      final LocatedBlock block, final long start, final long end,
+      final int len,
+      final Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap) {
+    return new Callable<ByteBuffer>() {
+      @Override
+      public ByteBuffer call() throws Exception {
+        byte[] buf = new byte[len];
+        fetchBlockByteRangeFrom(datanode, block, start, end, buf, 0,
+            corruptedBlockMap);
+        return ByteBuffer.wrap(buf);
+      }
+    };
+  }
+
+  /**
+   * @return the result of the completed request, or null if it failed
+   */
+  private static ByteBuffer getResult(Future<ByteBuffer> future)
+      throws InterruptedException, IOException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof InterruptedIOException) {
+        throw (InterruptedIOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      // the datanode is already in deadNodes
+      return null;
+    } catch (CancellationException e) {
+      return null;
     }
   }
 
@@ -1031,8 +1224,16 @@ public int read(long position, byte[] buffer, int offset, int length)
       long targetStart = position - blk.getStartOffset();
       long bytesToRead = Math.min(remaining, blk.getBlockSize() - targetStart);
       try {
-        fetchBlockByteRange(blk, targetStart, targetStart + bytesToRead - 1,
-            buffer, offset, corruptedBlockMap);
+        // the hedged requests take the stream lock, so only reads that do
+        // not hold it can be hedged
+        if (dfsClient.isHedgedReadsEnabled()) {
+          hedgedFetchBlockByteRange(blk, targetStart,
+              targetStart + bytesToRead - 1, buffer, offset,
+              corruptedBlockMap);
+        } else {
+          fetchBlockByteRange(blk, targetStart, targetStart + bytesToRead - 1,
+              buffer, offset, corruptedBlockMap);
+        }
       } finally {
         // Check and report if any block replicas are corrupted.
         // BlockMissingException may be caught if all block replicas are
@@ -1070,25 +1271,27 @@ public int read(long position, byte[] buffer, int offset, int length)
   private void reportCheckSumFailure(
       Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap,
       int dataNodeCount) {
-    if (corruptedBlockMap.isEmpty()) {
-      return;
-    }
-    Iterator<Entry<ExtendedBlock, Set<DatanodeInfo>>> it =
-        corruptedBlockMap.entrySet().iterator();
-    Entry<ExtendedBlock, Set<DatanodeInfo>> entry = it.next();
-    ExtendedBlock blk = entry.getKey();
-    Set<DatanodeInfo> dnSet = entry.getValue();
-    if (((dnSet.size() < dataNodeCount) && (dnSet.size() > 0)) ||
-        ((dataNodeCount == 1) && (dnSet.size() == dataNodeCount))) {
-      DatanodeInfo[] locs = new DatanodeInfo[dnSet.size()];
-      int i = 0;
-      for (DatanodeInfo dn : dnSet) {
-        locs[i++] = dn;
+    synchronized (corruptedBlockMap) {
+      if (corruptedBlockMap.isEmpty()) {
+        return;
+      }
+      Iterator<Entry<ExtendedBlock, Set<DatanodeInfo>>> it =
+          corruptedBlockMap.entrySet().iterator();
+      Entry<ExtendedBlock, Set<DatanodeInfo>> entry = it.next();
+      ExtendedBlock blk = entry.getKey();
+      Set<DatanodeInfo> dnSet = entry.getValue();
+      if (((dnSet.size() < dataNodeCount) && (dnSet.size() > 0)) ||
+          ((dataNodeCount == 1) && (dnSet.size() == dataNodeCount))) {
+        DatanodeInfo[] locs = new DatanodeInfo[dnSet.size()];
+        int i = 0;
+        for (DatanodeInfo dn : dnSet) {
+          locs[i++] = dn;
+        }
+        LocatedBlock[] lblocks = {new LocatedBlock(blk, locs)};
+        dfsClient.reportChecksumFailure(src, lblocks);
       }
-      LocatedBlock[] lblocks = {new LocatedBlock(blk, locs)};
-      dfsClient.reportChecksumFailure(src, lblocks);
+      corruptedBlockMap.clear();
     }
-    corruptedBlockMap.clear();
   }
 
   @Override
@@ -1223,15 +1426,123 @@ public void reset() throws IOException {
     throw new IOException("Mark/reset not supported");
   }
 
+  @Override
+  public synchronized ByteBuffer read(ByteBufferPool bufferPool,
+      int maxLength, EnumSet<ReadOption> opts)
+      throws IOException, UnsupportedOperationException {
+    if (maxLength == 0) {
+      return EMPTY_BUFFER;
+    } else if (maxLength < 0) {
+      throw new IllegalArgumentException("can't read a negative " +
+          "number of bytes.");
+    }
+    dfsClient.checkOpen();
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (pos >= getFileLength()) {
+      return null;
+    }
+    // a mapped block file is not checksummed while it is read
+    if ((!verifyChecksum || opts.contains(ReadOption.SKIP_CHECKSUMS)) &&
+        !isSmallFile()) {
+      ByteBuffer buffer = tryReadZeroCopy(maxLength);
+      if (buffer != null) {
+        return buffer;
+      }
+    }
+    ByteBuffer buffer = ByteBufferUtil.fallbackRead(this, bufferPool,
+        maxLength);
+    if (buffer != null) {
+      extendedReadBuffers.put(buffer, bufferPool);
+    }
+    return buffer;
+  }
+
+  /**
+   * Hand out a read only slice of the memory mapped block file at the
+   * current position, if the block is read by a local block reader and the
+   * file is not under construction.
+   */
+  private synchronized ByteBuffer tryReadZeroCopy(int maxLength)
+      throws IOException {
+    // the last block of a file under construction still grows, a mapping
+    // would only cover the length the replica had when it was mapped
+    if (locatedBlocks.isUnderConstruction()) {
+      return null;
+    }
+    if (clientMmap == null || pos < clientMmapBlockStart ||
+        pos >= clientMmapBlockStart +
+            clientMmap.getMappedByteBuffer().capacity()) {
+      releaseClientMmap();
+      if (pos > blockEnd || currentNode == null || blockReader == null) {
+        currentNode = blockSeekTo(pos);
+      }
+      clientMmap = blockReader.getClientMmap(dfsClient.mmapManager);
+      if (clientMmap == null) {
+        return null;
+      }
+      clientMmapBlockStart = currentLocatedBlock.getStartOffset();
+    }
+    ByteBuffer mapped = clientMmap.getMappedByteBuffer();
+    int blockPos = (int) (pos - clientMmapBlockStart);
+    int length = Math.min(maxLength, mapped.capacity() - blockPos);
+    ByteBuffer buffer = mapped.duplicate();
+    buffer.position(blockPos);
+    buffer.limit(blockPos + length);
+    buffer = buffer.slice().asReadOnlyBuffer();
+    clientMmap.ref();
+    extendedReadBuffers.put(buffer, clientMmap);
+    pos += length;
+    // the block reader did not move, the next copying read reopens it at pos
+    blockEnd = -1;
+    if (dfsClient.stats != null) {
+      dfsClient.stats.incrementBytesRead(length);
+    }
+    return buffer;
+  }
+
+  private synchronized void releaseClientMmap() {
+    if (clientMmap != null) {
+      clientMmap.unref();
+      clientMmap = null;
+      clientMmapBlockStart = -1;
+    }
+  }
+
+  @Override
+  public synchronized void releaseBuffer(ByteBuffer buffer) {
+    if (buffer == EMPTY_BUFFER) {
+      return;
+    }
+    Object val = extendedReadBuffers.remove(buffer);
+    if (val == null) {
+      throw new IllegalArgumentException("tried to release a buffer " +
+          "that was not created by this stream, " + buffer);
+    }
+    if (val instanceof ClientMmap) {
+      ((ClientMmap) val).unref();
+    } else {
+      ((ByteBufferPool) val).putBuffer(buffer);
+    }
+  }
+
   /**
    * Pick the best node from which to stream the data.
    * Entries in <i>nodes</i> are already in the priority order
    */
   static DatanodeInfo bestNode(DatanodeInfo nodes[],
       AbstractMap<DatanodeInfo, DatanodeInfo> deadNodes) throws IOException {
+    return bestNode(nodes, deadNodes, null);
+  }
+
+  static DatanodeInfo bestNode(DatanodeInfo nodes[],
+      AbstractMap<DatanodeInfo, DatanodeInfo> deadNodes,
+      Collection<DatanodeInfo> ignoredNodes) throws IOException {
     if (nodes != null) {
       for (int i = 0; i < nodes.length; i++) {
-        if (!deadNodes.containsKey(nodes[i])) {
+        if (!deadNodes.containsKey(nodes[i]) &&
+            (ignoredNodes == null || !ignoredNodes.contains(nodes[i]))) {
           return nodes[i];
         }
       }
@@ -1239,6 +1550,23 @@ static DatanodeInfo bestNode(DatanodeInfo nodes[],
     throw new IOException("No live nodes contain current block");
   }
 
+  /**
+   * @return a datanode that is neither dead nor in ignoredNodes, or null if
+   * there is none. Unlike chooseDataNode it never refetches the locations.
+   */
+  private DNAddrPair getBestNodeDNAddrPair(LocatedBlock block,
+      Collection<DatanodeInfo> ignoredNodes) {
+    DatanodeInfo chosenNode;
+    try {
+      chosenNode = bestNode(block.getLocations(), deadNodes, ignoredNodes);
+    } catch (IOException e) {
+      return null;
+    }
+    InetSocketAddress targetAddr = NetUtils.createSocketAddr(
+        chosenNode.getXferAddr(dfsClient.connectToDnViaHostname()));
+    return new DNAddrPair(chosenNode, targetAddr);
+  }
+
   /**
    * Utility class to encapsulate data node info and its address.
    */
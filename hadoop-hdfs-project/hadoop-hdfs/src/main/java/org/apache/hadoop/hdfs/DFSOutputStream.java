@@ -78,12 +78,14 @@
 import java.net.Socket;
 import java.nio.BufferOverflowException;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -128,9 +130,10 @@ public class DFSOutputStream extends FSOutputSummer implements Syncable {
   private String src;
   private final long blockSize;
   private final DataChecksum checksum;
-  // both dataQueue and ackQueue are protected by dataQueue lock
-  private final LinkedList<Packet> dataQueue = new LinkedList<Packet>();
-  private final LinkedList<Packet> ackQueue = new LinkedList<Packet>();
+  // both dataQueue and ackQueue are protected by dataQueue lock. They are
+  // array backed so that queueing a packet does not allocate a list node
+  private final ArrayDeque<Packet> dataQueue = new ArrayDeque<Packet>();
+  private final ArrayDeque<Packet> ackQueue = new ArrayDeque<Packet>();
   private Packet currentPacket = null;
   private DataStreamer streamer;
   private long currentSeqno = 0;
@@ -226,7 +229,8 @@ private class Packet {
       this.seqno = currentSeqno;
       currentSeqno++;
       
-      buf = new byte[PacketHeader.PKT_MAX_HEADER_LEN + pktSize];
+      buf = dfsClient.packetBufferPool
+          .getBuffer(PacketHeader.PKT_MAX_HEADER_LEN + pktSize);
       
       checksumStart = PacketHeader.PKT_MAX_HEADER_LEN;
       checksumPos = checksumStart;
@@ -288,6 +292,17 @@ void writeTo(DataOutputStream stm) throws IOException {
           header.getSerializedSize() + checksumLen + dataLen);
     }
     
+    /**
+     * Give the buffer back to the pool once the packet has been acknowledged
+     * by the pipeline, it is never resent after that.
+     */
+    void releaseBuffer() {
+      if (buf != null && !isHeartbeatPacket()) {
+        dfsClient.packetBufferPool.returnBuffer(buf);
+      }
+      buf = null;
+    }
+
     // get the packet's last byte's offset in the block
     long getLastByteOffsetBlock() {
       return offsetInBlock + dataPos - dataStart;
@@ -765,25 +780,25 @@ public void run() {
               continue;
             }
 
-            // a success ack for a data packet
+            // a success ack for a data packet. The packet is checked and
+            // removed under a single acquisition of the queue lock, the
+            // writer and the streamer contend for it on every packet
             Packet one = null;
             synchronized (dataQueue) {
               one = ackQueue.getFirst();
-            }
-            if (one.seqno != seqno) {
-              throw new IOException("Responseprocessor: Expecting seqno " +
-                  " for block " + block +
-                  one.seqno + " but received " + seqno);
-            }
-            isLastPacketInBlock = one.lastPacketInBlock;
-            // update bytesAcked
-            block.setNumBytes(one.getLastByteOffsetBlock());
-
-            synchronized (dataQueue) {
+              if (one.seqno != seqno) {
+                throw new IOException("Responseprocessor: Expecting seqno " +
+                    " for block " + block +
+                    one.seqno + " but received " + seqno);
+              }
+              isLastPacketInBlock = one.lastPacketInBlock;
+              // update bytesAcked
+              block.setNumBytes(one.getLastByteOffsetBlock());
               lastAckedSeqno = seqno;
               ackQueue.removeFirst();
               dataQueue.notifyAll();
             }
+            one.releaseBuffer();
           } catch (Exception e) {
             if (!responderClosed) {
               if (e instanceof IOException) {
@@ -823,7 +838,10 @@ private boolean processDatanodeError() throws IOException {
 
       // move packets from ack queue to front of the data queue
       synchronized (dataQueue) {
-        dataQueue.addAll(0, ackQueue);
+        for (Iterator<Packet> it = ackQueue.descendingIterator();
+             it.hasNext(); ) {
+          dataQueue.addFirst(it.next());
+        }
         ackQueue.clear();
       }
 
@@ -31,6 +31,9 @@
 import java.net.URI;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class keep track of all namenodes in the cluster. At the start, It
@@ -42,14 +45,23 @@ public class NamenodeSelector extends Thread {
 
   /**
    * Policy for selection next namenode to be used by the client. Current
-   * supported policies are ROUND_ROBIN and RANDOM. RANDOM is the default
-   * policy used if no policy set in the configuation file.
+   * supported policies are ROUND_ROBIN, RANDOM, RANDOM_STICKY, EWMA_LATENCY
+   * and POWER_OF_TWO_CHOICES. RANDOM_STICKY is the default policy used if no
+   * policy set in the configuation file.
+   * <p/>
+   * EWMA_LATENCY picks the namenode with the lowest load score, that is the
+   * client observed latency (EWMA) times the number of outstanding requests
+   * plus one. POWER_OF_TWO_CHOICES picks two random namenodes and uses the
+   * one with the lower load score. Both policies temporarily eject namenodes
+   * whose latency is an outlier compared to the rest of the namenodes.
    */
   enum NNSelectionPolicy {
 
     RANDOM("RANDOM"),
     RANDOM_STICKY("RANDOM_STICKY"),
-    ROUND_ROBIN("ROUND_ROBIN");
+    ROUND_ROBIN("ROUND_ROBIN"),
+    EWMA_LATENCY("EWMA_LATENCY"),
+    POWER_OF_TWO_CHOICES("POWER_OF_TWO_CHOICES");
     private String description = null;
 
     private NNSelectionPolicy(String arg) {
@@ -66,6 +78,11 @@ public static class NamenodeHandle {
 
     final private ClientProtocol namenodeRPCHandle;
     final private ActiveNode namenode;
+    // client observed load of the namenode
+    final private AtomicInteger outstandingRequests = new AtomicInteger();
+    final private AtomicLong selections = new AtomicLong();
+    private volatile double latencyEwma = -1; // ms, -1 until the first reply
+    private volatile long ejectedUntil = 0;
 
     public NamenodeHandle(ClientProtocol proto, ActiveNode an) {
       this.namenode = an;
@@ -80,12 +97,68 @@ public ActiveNode getNamenode() {
       return this.namenode;
     }
 
+    public int getOutstandingRequests() {
+      return outstandingRequests.get();
+    }
+
+    public long getSelections() {
+      return selections.get();
+    }
+
+    /**
+     * @return the exponentially weighted moving average of the latency of the
+     * requests sent to this namenode in ms, or -1 if no request has completed
+     * yet
+     */
+    public double getLatencyEwma() {
+      return latencyEwma;
+    }
+
+    public boolean isEjected() {
+      return isEjected(System.currentTimeMillis());
+    }
+
+    boolean isEjected(long now) {
+      return ejectedUntil > now;
+    }
+
+    synchronized void updateLatency(double latency, double alpha) {
+      if (latencyEwma < 0) {
+        latencyEwma = latency;
+      } else {
+        latencyEwma = alpha * latency + (1 - alpha) * latencyEwma;
+      }
+    }
+
+    synchronized void eject(long until) {
+      ejectedUntil = until;
+      // forget the latency so that the namenode is probed again once the
+      // ejection period is over
+      latencyEwma = -1;
+    }
+
+    /**
+     * Namenodes that have not replied yet get the lowest score so that they
+     * are probed.
+     */
+    double getLoadScore() {
+      double latency = latencyEwma;
+      return (latency < 0 ? 0 : latency) * (outstandingRequests.get() + 1);
+    }
+
     @Override
     public String toString() {
       return "[RPC handle connected to " + namenode.getInetSocketAddress() +
           "] ";
     }
 
+    String getStats() {
+      return namenode.getInetSocketAddress() + " [latencyEwma=" +
+          String.format("%.3f", latencyEwma) + "ms, outstanding=" +
+          outstandingRequests.get() + ", selections=" + selections.get() +
+          (isEjected() ? ", ejected" : "") + "]";
+    }
+
     @Override
     public boolean equals(Object obj) {
       if (!(obj instanceof NamenodeSelector.NamenodeHandle)) {
@@ -114,6 +187,10 @@ public boolean equals(Object obj) {
   private boolean periodicNNListUpdate = true;
   private final Object wiatObjectForUpdate = new Object();
   private final int namenodeListUpdateTimePeriod;
+  private final double latencyEwmaAlpha;
+  private final double ejectionFactor;
+  private final long ejectionPeriod;
+  private final long failurePenalty;
   Random rand = new Random((UUID.randomUUID()).hashCode());
 
 
@@ -129,6 +206,36 @@ public boolean equals(Object obj) {
     this.conf = conf;
     this.policy = NamenodeSelector.NNSelectionPolicy.ROUND_ROBIN;
     this.namenodeListUpdateTimePeriod = -1;
+    this.latencyEwmaAlpha =
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_LATENCY_EWMA_ALPHA_DEFAULT;
+    this.ejectionFactor =
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_FACTOR_DEFAULT;
+    this.ejectionPeriod =
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_PERIOD_MS_DEFAULT;
+    this.failurePenalty =
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_FAILURE_PENALTY_MS_DEFAULT;
+  }
+
+  //only for testing, does not update the list of namenodes
+  NamenodeSelector(Configuration conf, NNSelectionPolicy policy,
+      List<NamenodeSelector.NamenodeHandle> namenodes) {
+    this.defaultUri = null;
+    this.nnList.addAll(namenodes);
+    this.conf = conf;
+    this.policy = policy;
+    this.namenodeListUpdateTimePeriod = -1;
+    this.latencyEwmaAlpha = conf.getFloat(
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_LATENCY_EWMA_ALPHA_KEY,
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_LATENCY_EWMA_ALPHA_DEFAULT);
+    this.ejectionFactor = conf.getFloat(
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_FACTOR_KEY,
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_FACTOR_DEFAULT);
+    this.ejectionPeriod = conf.getLong(
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_PERIOD_MS_KEY,
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_PERIOD_MS_DEFAULT);
+    this.failurePenalty = conf.getLong(
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_FAILURE_PENALTY_MS_KEY,
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_FAILURE_PENALTY_MS_DEFAULT);
   }
 
   public NamenodeSelector(Configuration conf, URI defaultUri) throws IOException {
@@ -150,11 +257,33 @@ public NamenodeSelector(Configuration conf, URI defaultUri) throws IOException {
       policy = NamenodeSelector.NNSelectionPolicy.ROUND_ROBIN;
     }else if (policyName.equals(NamenodeSelector.NNSelectionPolicy.RANDOM_STICKY.toString())) {
       policy = NamenodeSelector.NNSelectionPolicy.RANDOM_STICKY;
+    } else if (policyName.equals(NamenodeSelector.NNSelectionPolicy.EWMA_LATENCY.toString())) {
+      policy = NamenodeSelector.NNSelectionPolicy.EWMA_LATENCY;
+    } else if (policyName.equals(NamenodeSelector.NNSelectionPolicy.POWER_OF_TWO_CHOICES.toString())) {
+      policy = NamenodeSelector.NNSelectionPolicy.POWER_OF_TWO_CHOICES;
     } else {
       policy = NamenodeSelector.NNSelectionPolicy.RANDOM_STICKY;
     }
     LOG.debug("Client's namenode selection policy is " + policy);
 
+    latencyEwmaAlpha = conf.getFloat(
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_LATENCY_EWMA_ALPHA_KEY,
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_LATENCY_EWMA_ALPHA_DEFAULT);
+    if (latencyEwmaAlpha <= 0 || latencyEwmaAlpha > 1) {
+      throw new IllegalArgumentException(
+          DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_LATENCY_EWMA_ALPHA_KEY +
+              " should be in (0, 1], it is " + latencyEwmaAlpha);
+    }
+    ejectionFactor = conf.getFloat(
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_FACTOR_KEY,
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_FACTOR_DEFAULT);
+    ejectionPeriod = conf.getLong(
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_PERIOD_MS_KEY,
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_PERIOD_MS_DEFAULT);
+    failurePenalty = conf.getLong(
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_FAILURE_PENALTY_MS_KEY,
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_FAILURE_PENALTY_MS_DEFAULT);
+
     //get the list of Namenodes
     createNamenodeClientsFromConfiguration();
 
@@ -172,6 +301,9 @@ public void run() {
         }
         if (periodicNNListUpdate) {
           periodicNamenodeClientsUpdate();
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Namenode stats " + getNamenodeStats());
+          }
         }
       } catch (Exception ex) {
         LOG.warn(ex);
@@ -267,9 +399,107 @@ public NamenodeSelector.NamenodeHandle getNextNamenode() throws IOException {
       throw new NoAliveNamenodeException(
           " Started an asynchronous update of the namenode list. ");
     }
+    handle.selections.incrementAndGet();
     return handle;
   }
 
+  /**
+   * Must be called before a request is sent to the namenode. Every call has
+   * to be matched by a call to
+   * {@link #requestFinished(NamenodeSelector.NamenodeHandle, long)} or
+   * {@link #requestFailed(NamenodeSelector.NamenodeHandle)}
+   * @param handle
+   *      the namenode the request is sent to
+   * @return the start time of the request in ns
+   */
+  public long requestStarted(NamenodeSelector.NamenodeHandle handle) {
+    handle.outstandingRequests.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /**
+   * Records the latency of a request the namenode answered and ejects the
+   * namenode for
+   * {@link DFSConfigKeys#DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_PERIOD_MS_KEY}
+   * if its latency has become an outlier. Unlike black listing, the ejection
+   * is not revoked by the namenode list update.
+   * @param handle
+   *      the namenode the request was sent to
+   * @param startTime
+   *      the value returned by
+   *      {@link #requestStarted(NamenodeSelector.NamenodeHandle)}
+   */
+  public void requestFinished(NamenodeSelector.NamenodeHandle handle,
+      long startTime) {
+    handle.outstandingRequests.decrementAndGet();
+    double latency = (System.nanoTime() - startTime) /
+        (double) TimeUnit.MILLISECONDS.toNanos(1);
+    recordLatency(handle, latency);
+  }
+
+  /**
+   * Records a request the namenode did not answer, e.g. because it could not
+   * be reached or the connection timed out, as a request that took
+   * {@link DFSConfigKeys#DFS_CLIENT_NAMENODE_SELECTOR_FAILURE_PENALTY_MS_KEY}.
+   * The time until the failure does not tell anything about the load of the
+   * namenode, and would otherwise make it look fast.
+   * @param handle
+   *      the namenode the request was sent to
+   */
+  public void requestFailed(NamenodeSelector.NamenodeHandle handle) {
+    handle.outstandingRequests.decrementAndGet();
+    recordLatency(handle, failurePenalty);
+  }
+
+  private void recordLatency(NamenodeSelector.NamenodeHandle handle,
+      double latency) {
+    handle.updateLatency(latency, latencyEwmaAlpha);
+    if (isLoadAware() && ejectionFactor > 0) {
+      ejectIfOutlier(handle);
+    }
+  }
+
+  private boolean isLoadAware() {
+    return policy == NamenodeSelector.NNSelectionPolicy.EWMA_LATENCY ||
+        policy == NamenodeSelector.NNSelectionPolicy.POWER_OF_TWO_CHOICES;
+  }
+
+  private void ejectIfOutlier(NamenodeSelector.NamenodeHandle handle) {
+    long now = System.currentTimeMillis();
+    List<Double> latencies = new ArrayList<Double>();
+    int ejected = 0;
+    for (NamenodeSelector.NamenodeHandle other : nnList) {
+      if (other.isEjected(now)) {
+        ejected++;
+      } else if (other != handle && other.getLatencyEwma() >= 0) {
+        latencies.add(other.getLatencyEwma());
+      }
+    }
+    // never eject more than half of the namenodes, the outliers are measured
+    // against the rest
+    if (latencies.isEmpty() || (ejected + 1) * 2 > nnList.size()) {
+      return;
+    }
+    Collections.sort(latencies);
+    double median = latencies.get(latencies.size() / 2);
+    double latency = handle.getLatencyEwma();
+    if (latency > ejectionFactor * median) {
+      synchronized (this) {
+        if (handle.isEjected(now)) {
+          return;
+        }
+        handle.eject(now + ejectionPeriod);
+        if (stickyHandle == handle) {
+          stickyHandle = null;
+        }
+      }
+      LOG.info("Ejecting " + handle + "for " + ejectionPeriod +
+          " ms. Its latency " + String.format("%.3f", latency) +
+          " ms is more than " + ejectionFactor + " times the median " +
+          String.format("%.3f", median) + " ms");
+    }
+  }
+
   private synchronized NamenodeSelector.NamenodeHandle getNextNNBasedOnPolicy() {
     if (policy == NamenodeSelector.NNSelectionPolicy.RANDOM) {
       return getRandomNNInternal();
@@ -294,6 +524,11 @@ private synchronized NamenodeSelector.NamenodeHandle getNextNNBasedOnPolicy() {
         stickyHandle = getRandomNNInternal();
         return stickyHandle;
       }
+    } else if (policy == NamenodeSelector.NNSelectionPolicy.EWMA_LATENCY) {
+      return getLeastLoadedNNInternal();
+    } else if (policy ==
+        NamenodeSelector.NNSelectionPolicy.POWER_OF_TWO_CHOICES) {
+      return getPowerOfTwoChoicesNNInternal();
     } else {
       throw new UnsupportedOperationException(
           "Namenode selection policy is not supported. Selected policy is " +
@@ -314,6 +549,80 @@ private NamenodeSelector.NamenodeHandle getRandomNNInternal(){
     return null;
   }
 
+  // synchronize by the calling method
+  private List<NamenodeSelector.NamenodeHandle> getSelectableNNsInternal() {
+    long now = System.currentTimeMillis();
+    List<NamenodeSelector.NamenodeHandle> selectable =
+        new ArrayList<NamenodeSelector.NamenodeHandle>(nnList.size());
+    for (NamenodeSelector.NamenodeHandle handle : nnList) {
+      if (!handle.isEjected(now) && !blackListedNamenodes.contains(handle)) {
+        selectable.add(handle);
+      }
+    }
+    return selectable;
+  }
+
+  // synchronize by the calling method
+  private NamenodeSelector.NamenodeHandle getLeastLoadedNNInternal() {
+    List<NamenodeSelector.NamenodeHandle> selectable =
+        getSelectableNNsInternal();
+    if (selectable.isEmpty()) {
+      // every namenode is ejected or black listed
+      return getRandomNNInternal();
+    }
+    // start at a random offset so that ties are not always broken in favour
+    // of the same namenode
+    int offset = rand.nextInt(selectable.size());
+    NamenodeSelector.NamenodeHandle best = null;
+    double bestScore = Double.MAX_VALUE;
+    for (int i = 0; i < selectable.size(); i++) {
+      NamenodeSelector.NamenodeHandle handle =
+          selectable.get((offset + i) % selectable.size());
+      double score = handle.getLoadScore();
+      if (best == null || score < bestScore) {
+        best = handle;
+        bestScore = score;
+      }
+    }
+    LOG.debug("EWMA_LATENCY returning " + best);
+    return best;
+  }
+
+  // synchronize by the calling method
+  private NamenodeSelector.NamenodeHandle getPowerOfTwoChoicesNNInternal() {
+    List<NamenodeSelector.NamenodeHandle> selectable =
+        getSelectableNNsInternal();
+    if (selectable.isEmpty()) {
+      // every namenode is ejected or black listed
+      return getRandomNNInternal();
+    } else if (selectable.size() == 1) {
+      return selectable.get(0);
+    }
+    int first = rand.nextInt(selectable.size());
+    int second = rand.nextInt(selectable.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+    NamenodeSelector.NamenodeHandle a = selectable.get(first);
+    NamenodeSelector.NamenodeHandle b = selectable.get(second);
+    NamenodeSelector.NamenodeHandle handle =
+        a.getLoadScore() <= b.getLoadScore() ? a : b;
+    LOG.debug("POWER_OF_TWO_CHOICES returning " + handle);
+    return handle;
+  }
+
+  /**
+   * @return the client observed latency, outstanding requests, selection
+   * count and ejection state of every namenode
+   */
+  public List<String> getNamenodeStats() {
+    List<String> stats = new ArrayList<String>(nnList.size());
+    for (NamenodeSelector.NamenodeHandle namenode : nnList) {
+      stats.add(namenode.getStats());
+    }
+    return stats;
+  }
+
   String printNamenodes() {
     String nns = "Client is connected to namenodes: ";
     for (NamenodeSelector.NamenodeHandle namenode : nnList) {
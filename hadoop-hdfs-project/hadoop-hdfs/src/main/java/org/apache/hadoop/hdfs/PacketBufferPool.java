@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of packet buffers, shared by the output streams of the
+ * process. A buffer is taken when a packet is created and given back once
+ * the packet has been acknowledged by the whole pipeline, so a steady writer
+ * keeps reusing the same few megabytes instead of allocating a new 64 KB
+ * array for every packet. Buffers are pooled by length, as the packets of
+ * an append or of the tail of a block are smaller than the regular ones.
+ */
+class PacketBufferPool {
+  private static final Log LOG = LogFactory.getLog(PacketBufferPool.class);
+
+  private static PacketBufferPool instance;
+
+  private final int maxBuffers;
+  private final ConcurrentMap<Integer, Queue<byte[]>> buffers =
+      new ConcurrentHashMap<Integer, Queue<byte[]>>();
+  // number of buffers currently sitting in the pool
+  private final AtomicInteger pooled = new AtomicInteger();
+  // number of buffers the pool could not serve and had to allocate
+  private final AtomicLong allocated = new AtomicLong();
+
+  static synchronized PacketBufferPool getInstance(int maxBuffers) {
+    // like the socket cache, the first client configures the pool
+    if (instance == null) {
+      instance = new PacketBufferPool(maxBuffers);
+    } else if (instance.maxBuffers != maxBuffers) {
+      LOG.info("packet buffer pool size already set to " +
+          instance.maxBuffers + ". Cannot set it to " + maxBuffers);
+    }
+    return instance;
+  }
+
+  @VisibleForTesting
+  PacketBufferPool(int maxBuffers) {
+    this.maxBuffers = maxBuffers;
+  }
+
+  /**
+   * Get a buffer of exactly the given length. Its content is undefined.
+   */
+  byte[] getBuffer(int length) {
+    if (maxBuffers > 0) {
+      Queue<byte[]> queue = buffers.get(length);
+      if (queue != null) {
+        byte[] buf = queue.poll();
+        if (buf != null) {
+          pooled.decrementAndGet();
+          return buf;
+        }
+      }
+    }
+    allocated.incrementAndGet();
+    return new byte[length];
+  }
+
+  /**
+   * Give a buffer back to the pool. The caller must not touch it afterwards.
+   * The buffer is dropped if the pool is full.
+   */
+  void returnBuffer(byte[] buf) {
+    if (buf == null || maxBuffers <= 0) {
+      return;
+    }
+    if (pooled.incrementAndGet() > maxBuffers) {
+      pooled.decrementAndGet();
+      return;
+    }
+    Queue<byte[]> queue = buffers.get(buf.length);
+    if (queue == null) {
+      // an array backed queue, so that pooling a buffer allocates nothing
+      Queue<byte[]> newQueue = new ArrayBlockingQueue<byte[]>(maxBuffers);
+      queue = buffers.putIfAbsent(buf.length, newQueue);
+      if (queue == null) {
+        queue = newQueue;
+      }
+    }
+    queue.offer(buf);
+  }
+
+  @VisibleForTesting
+  int size() {
+    return pooled.get();
+  }
+
+  @VisibleForTesting
+  long getAllocatedCount() {
+    return allocated.get();
+  }
+}
@@ -507,4 +507,9 @@ public IOStreamPair getStreams() {
     return null;
   }
 
+  @Override
+  public ClientMmapManager.ClientMmap getClientMmap(
+      ClientMmapManager mmapManager) {
+    return null;
+  }
 }
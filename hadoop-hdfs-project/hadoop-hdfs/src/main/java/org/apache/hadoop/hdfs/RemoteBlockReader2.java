@@ -461,4 +461,10 @@ static void checkSuccess(BlockOpResponseProto status, Socket sock,
   public IOStreamPair getStreams() {
     return ioStreams;
   }
+
+  @Override
+  public ClientMmapManager.ClientMmap getClientMmap(
+      ClientMmapManager mmapManager) {
+    return null;
+  }
 }
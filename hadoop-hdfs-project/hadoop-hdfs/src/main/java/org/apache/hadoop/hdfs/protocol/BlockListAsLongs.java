@@ -330,6 +330,108 @@ private void setDelimitingBlock(final int finalizedSzie) {
     blockList[idx + 2] = -1;
   }
 
+  /**
+   * The replicas of a report are grouped into a fixed number of buckets by
+   * their block id, so that the datanode and the namenode can compare the
+   * buckets by their hashes and only the mismatching buckets have to be
+   * reported.
+   *
+   * @return the bucket of the block
+   */
+  public static int getBucket(final long blockId, final int numBuckets) {
+    return (int) ((mix(blockId) & Long.MAX_VALUE) % numBuckets);
+  }
+
+  /**
+   * @return per bucket the sum of the hashes of the replicas of the report
+   * @see #getReplicaHash(long, long, long, ReplicaState)
+   */
+  public long[] getBucketHashes(final int numBuckets) {
+    long[] hashes = new long[numBuckets];
+    int numBlocks = getNumberOfBlocks();
+    for (int i = 0; i < numBlocks; i++) {
+      long id = blockId(i);
+      hashes[getBucket(id, numBuckets)] += getReplicaHash(id, blockLength(i),
+          blockGenerationStamp(i), blockReplicaState(i));
+    }
+    return hashes;
+  }
+
+  /**
+   * The hash of a replica covers its block id, generation stamp and state,
+   * and the length of a finalized replica. The length of a replica that is
+   * still written changes with every packet, so it is left out.
+   *
+   * @return the hash of one replica, as it is summed up in its bucket
+   */
+  public static long getReplicaHash(final long blockId, final long length,
+      final long generationStamp, final ReplicaState state) {
+    long hashedLength = state == ReplicaState.FINALIZED ? length : 0;
+    return mix(mix(mix(mix(blockId) + hashedLength) + generationStamp) +
+        state.getValue());
+  }
+
+  /**
+   * @return a report with only the replicas of the given buckets
+   */
+  public BlockListAsLongs getBuckets(final int[] buckets,
+      final int numBuckets) {
+    boolean[] selected = new boolean[numBuckets];
+    for (int bucket : buckets) {
+      selected[bucket] = true;
+    }
+    int finalizedSize = getNumberOfFinalizedReplicas();
+    int numBlocks = getNumberOfBlocks();
+    int selectedFinalized = 0;
+    int selectedUC = 0;
+    for (int i = 0; i < numBlocks; i++) {
+      if (selected[getBucket(blockId(i), numBuckets)]) {
+        if (i < finalizedSize) {
+          selectedFinalized++;
+        } else {
+          selectedUC++;
+        }
+      }
+    }
+
+    long[] list = new long[HEADER_SIZE +
+        (selectedFinalized + 1) * LONGS_PER_FINALIZED_BLOCK +
+        selectedUC * LONGS_PER_UC_BLOCK];
+    list[0] = selectedFinalized;
+    list[1] = selectedUC;
+    int pos = HEADER_SIZE;
+    for (int i = 0; i < numBlocks; i++) {
+      if (i == finalizedSize) {
+        // the invalid delimiting block
+        list[pos++] = -1;
+        list[pos++] = -1;
+        list[pos++] = -1;
+      }
+      if (selected[getBucket(blockId(i), numBuckets)]) {
+        int length =
+            i < finalizedSize ? LONGS_PER_FINALIZED_BLOCK : LONGS_PER_UC_BLOCK;
+        System.arraycopy(blockList, index2BlockId(i), list, pos, length);
+        pos += length;
+      }
+    }
+    if (numBlocks == finalizedSize) {
+      list[pos++] = -1;
+      list[pos++] = -1;
+      list[pos] = -1;
+    }
+    return new BlockListAsLongs(list);
+  }
+
+  // the 64 bit finalizer of murmur3
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
   public long getMaxGsInBlockList() {
     long maxGs = -1;
     Iterator<Block> iter = getBlockReportIterator();
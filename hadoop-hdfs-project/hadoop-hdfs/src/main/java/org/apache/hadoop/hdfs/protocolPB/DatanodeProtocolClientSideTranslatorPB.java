@@ -32,8 +32,12 @@
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ActiveNamenodeListRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ActiveNamenodeListResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReceivedAndDeletedRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportBucketsRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportBucketsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportSlotRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportSlotResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.CommitBlockSynchronizationRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.DatanodeCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ErrorReportRequestProto;
@@ -42,11 +46,13 @@
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.NameNodeAddressRequestForBlockReportingProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.RegisterDatanodeRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.RegisterDatanodeResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ReleaseBlockReportSlotRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ReportBadBlocksRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.StorageBlockReportProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.StorageReceivedDeletedBlocksProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.VersionRequestProto;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportSlot;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
@@ -203,6 +209,22 @@ public DatanodeCommand blockReport(DatanodeRegistration registration,
       for (int i = 0; i < blocks.length; i++) {
         reportBuilder.addBlocks(blocks[i]);
       }
+      if (r.getBucketHashes() != null) {
+        for (long hash : r.getBucketHashes()) {
+          reportBuilder.addBucketHashes(hash);
+        }
+      }
+      if (r.getReportedBuckets() != null) {
+        reportBuilder.setPartial(true);
+        for (int bucket : r.getReportedBuckets()) {
+          reportBuilder.addReportedBuckets(bucket);
+        }
+        if (r.getRemovedBlocks() != null) {
+          for (long blockId : r.getRemovedBlocks()) {
+            reportBuilder.addRemovedBlocks(blockId);
+          }
+        }
+      }
       builder.addReports(reportBuilder.build());
     }
     BlockReportResponseProto resp;
@@ -337,5 +359,64 @@ public ActiveNode getNextNamenodeToSendBlockReport() throws IOException {
     }
   }
 
+  @Override
+  public int[] getMismatchingBlockReportBuckets(
+      DatanodeRegistration registration, String poolId, long[] bucketHashes,
+      long[] acknowledgedHashes) throws IOException {
+    BlockReportBucketsRequestProto.Builder builder =
+        BlockReportBucketsRequestProto.newBuilder()
+            .setRegistration(PBHelper.convert(registration))
+            .setBlockPoolId(poolId);
+    for (long hash : bucketHashes) {
+      builder.addBucketHashes(hash);
+    }
+    if (acknowledgedHashes != null) {
+      for (long hash : acknowledgedHashes) {
+        builder.addAcknowledgedHashes(hash);
+      }
+    }
+    BlockReportBucketsResponseProto resp;
+    try {
+      resp = rpcProxy
+          .getMismatchingBlockReportBuckets(NULL_CONTROLLER, builder.build());
+    } catch (ServiceException se) {
+      throw ProtobufHelper.getRemoteException(se);
+    }
+    int[] buckets = new int[resp.getMismatchingBucketsCount()];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = resp.getMismatchingBuckets(i);
+    }
+    return buckets;
+  }
+
+  @Override
+  public BlockReportSlot requestBlockReportSlot(
+      DatanodeRegistration registration, long numBlocks) throws IOException {
+    BlockReportSlotRequestProto request =
+        BlockReportSlotRequestProto.newBuilder()
+            .setRegistration(PBHelper.convert(registration))
+            .setNumBlocks(numBlocks).build();
+    try {
+      BlockReportSlotResponseProto response =
+          rpcProxy.requestBlockReportSlot(NULL_CONTROLLER, request);
+      return PBHelper.convert(response);
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
+  @Override
+  public void releaseBlockReportSlot(DatanodeRegistration registration)
+      throws IOException {
+    ReleaseBlockReportSlotRequestProto request =
+        ReleaseBlockReportSlotRequestProto.newBuilder()
+            .setRegistration(PBHelper.convert(registration)).build();
+    try {
+      rpcProxy.releaseBlockReportSlot(NULL_CONTROLLER, request);
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
 
 }
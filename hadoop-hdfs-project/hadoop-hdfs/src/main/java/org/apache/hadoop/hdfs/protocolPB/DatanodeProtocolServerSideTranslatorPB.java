@@ -29,8 +29,12 @@
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ActiveNamenodeListResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReceivedAndDeletedRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReceivedAndDeletedResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportBucketsRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportBucketsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportSlotRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportSlotResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.CommitBlockSynchronizationRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.CommitBlockSynchronizationResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ErrorReportRequestProto;
@@ -41,6 +45,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ReceivedDeletedBlockInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.RegisterDatanodeRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.RegisterDatanodeResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ReleaseBlockReportSlotRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ReleaseBlockReportSlotResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ReportBadBlocksRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ReportBadBlocksResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.StorageBlockReportProto;
@@ -50,6 +56,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.LocatedBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.VersionRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.VersionResponseProto;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportSlot;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
@@ -79,6 +86,9 @@
   private static final CommitBlockSynchronizationResponseProto
       VOID_COMMIT_BLOCK_SYNCHRONIZATION_RESPONSE_PROTO =
       CommitBlockSynchronizationResponseProto.newBuilder().build();
+  private static final ReleaseBlockReportSlotResponseProto
+      VOID_RELEASE_BLOCK_REPORT_SLOT_RESPONSE =
+      ReleaseBlockReportSlotResponseProto.newBuilder().build();
 
   public DatanodeProtocolServerSideTranslatorPB(DatanodeProtocol impl) {
     this.impl = impl;
@@ -146,8 +156,28 @@ public BlockReportResponseProto blockReport(RpcController controller,
       for (int i = 0; i < blockIds.size(); i++) {
         blocks[i] = blockIds.get(i);
       }
+      long[] bucketHashes = null;
+      if (s.getBucketHashesCount() > 0) {
+        bucketHashes = new long[s.getBucketHashesCount()];
+        for (int i = 0; i < bucketHashes.length; i++) {
+          bucketHashes[i] = s.getBucketHashes(i);
+        }
+      }
+      int[] reportedBuckets = null;
+      long[] removedBlocks = null;
+      if (s.getPartial()) {
+        reportedBuckets = new int[s.getReportedBucketsCount()];
+        for (int i = 0; i < reportedBuckets.length; i++) {
+          reportedBuckets[i] = s.getReportedBuckets(i);
+        }
+        removedBlocks = new long[s.getRemovedBlocksCount()];
+        for (int i = 0; i < removedBlocks.length; i++) {
+          removedBlocks[i] = s.getRemovedBlocks(i);
+        }
+      }
       report[index++] =
-          new StorageBlockReport(PBHelper.convert(s.getStorage()), blocks);
+          new StorageBlockReport(PBHelper.convert(s.getStorage()), blocks,
+              bucketHashes, reportedBuckets, removedBlocks);
     }
     try {
       cmd = impl.blockReport(PBHelper.convert(request.getRegistration()),
@@ -283,4 +313,60 @@ public ActiveNodeProtos.ActiveNodeProto getNextNamenodeToSendBlockReport(
     }
   }
 
+  @Override
+  public BlockReportBucketsResponseProto getMismatchingBlockReportBuckets(
+      RpcController controller, BlockReportBucketsRequestProto request)
+      throws ServiceException {
+    long[] bucketHashes = new long[request.getBucketHashesCount()];
+    for (int i = 0; i < bucketHashes.length; i++) {
+      bucketHashes[i] = request.getBucketHashes(i);
+    }
+    long[] acknowledgedHashes = null;
+    if (request.getAcknowledgedHashesCount() > 0) {
+      acknowledgedHashes = new long[request.getAcknowledgedHashesCount()];
+      for (int i = 0; i < acknowledgedHashes.length; i++) {
+        acknowledgedHashes[i] = request.getAcknowledgedHashes(i);
+      }
+    }
+    int[] buckets;
+    try {
+      buckets = impl.getMismatchingBlockReportBuckets(
+          PBHelper.convert(request.getRegistration()),
+          request.getBlockPoolId(), bucketHashes, acknowledgedHashes);
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+    BlockReportBucketsResponseProto.Builder builder =
+        BlockReportBucketsResponseProto.newBuilder();
+    for (int bucket : buckets) {
+      builder.addMismatchingBuckets(bucket);
+    }
+    return builder.build();
+  }
+
+  @Override
+  public BlockReportSlotResponseProto requestBlockReportSlot(
+      RpcController controller, BlockReportSlotRequestProto request)
+      throws ServiceException {
+    try {
+      BlockReportSlot response = impl.requestBlockReportSlot(
+          PBHelper.convert(request.getRegistration()), request.getNumBlocks());
+      return PBHelper.convert(response);
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
+  @Override
+  public ReleaseBlockReportSlotResponseProto releaseBlockReportSlot(
+      RpcController controller, ReleaseBlockReportSlotRequestProto request)
+      throws ServiceException {
+    try {
+      impl.releaseBlockReportSlot(PBHelper.convert(request.getRegistration()));
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+    return VOID_RELEASE_BLOCK_REPORT_SLOT_RESPONSE;
+  }
+
 }
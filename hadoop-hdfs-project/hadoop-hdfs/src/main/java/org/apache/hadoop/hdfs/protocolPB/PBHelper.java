@@ -54,6 +54,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BalancerBandwidthCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockRecoveryCommandProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportSlotResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.DatanodeCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.DatanodeRegistrationProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.DatanodeStorageProto;
@@ -104,6 +105,7 @@
 import org.apache.hadoop.hdfs.server.protocol.BlockCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportSlot;
 import org.apache.hadoop.hdfs.server.protocol.BlocksWithLocations;
 import org.apache.hadoop.hdfs.server.protocol.BlocksWithLocations.BlockWithLocations;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
@@ -1306,6 +1308,21 @@ public static ActiveNodeProto convert(ActiveNode p) {
     anp.setHttpAddress(p.getHttpAddress());
     return anp.build();
   }
+
+  public static BlockReportSlot convert(BlockReportSlotResponseProto p) {
+    return new BlockReportSlot(p.hasNamenode() ? convert(p.getNamenode()) :
+        null, p.getWindow(), p.getRetryAfter());
+  }
+
+  public static BlockReportSlotResponseProto convert(BlockReportSlot slot) {
+    BlockReportSlotResponseProto.Builder builder =
+        BlockReportSlotResponseProto.newBuilder().setWindow(slot.getWindow())
+            .setRetryAfter(slot.getRetryAfter());
+    if (slot.isGranted()) {
+      builder.setNamenode(convert(slot.getNamenode()));
+    }
+    return builder.build();
+  }
   
   public static ActiveNamenodeListResponseProto convert(
       SortedActiveNodeList anlWrapper) {
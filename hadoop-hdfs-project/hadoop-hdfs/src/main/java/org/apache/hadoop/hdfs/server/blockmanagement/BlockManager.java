@@ -79,6 +79,9 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.KeyUpdateCommand;
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
+import org.apache.hadoop.hdfs.util.Holder;
+import org.apache.hadoop.hdfs.util.LongIntHashMap;
+import org.apache.hadoop.hdfs.util.LongLongHashMap;
 import org.apache.hadoop.net.Node;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.Time;
@@ -797,6 +800,33 @@ private List<String> getValidLocations(BlockInfo block)
   private List<LocatedBlock> createLocatedBlockList(final BlockInfo[] blocks,
       final long offset, final long length, final int nrBlocksToReturn,
       final AccessMode mode) throws IOException, StorageException {
+    int[] range = getBlockRange(blocks, offset, length, nrBlocksToReturn);
+    if (range[0] == range[1]) {
+      return Collections.<LocatedBlock>emptyList();
+    }
+    long curPos = 0;
+    for (int curBlk = 0; curBlk < range[0]; curBlk++) {
+      curPos += blocks[curBlk].getNumBytes();
+    }
+    List<LocatedBlock> results = new ArrayList<LocatedBlock>(blocks.length);
+    for (int curBlk = range[0]; curBlk < range[1]; curBlk++) {
+      results.add(createLocatedBlock(blocks[curBlk], curPos, mode));
+      curPos += blocks[curBlk].getNumBytes();
+    }
+    return results;
+  }
+
+  /**
+   * Finds the blocks of a file that overlap the byte range
+   * [offset, offset + length), at most nrBlocksToReturn of them.
+   *
+   * @param blocks
+   *     the blocks of the file ordered by their index, at least one
+   * @return the index of the first block in the range and the index after
+   * the last one, both are the same if the offset is beyond the end of file
+   */
+  public static int[] getBlockRange(final BlockInfo[] blocks,
+      final long offset, final long length, final int nrBlocksToReturn) {
     int curBlk = 0;
     long curPos = 0, blkSize = 0;
     int nrBlocks = (blocks[0].getNumBytes() == 0) ? 0 : blocks.length;
@@ -811,18 +841,17 @@ private List<LocatedBlock> createLocatedBlockList(final BlockInfo[] blocks,
 
     if (nrBlocks > 0 && curBlk == nrBlocks)   // offset >= end of file
     {
-      return Collections.<LocatedBlock>emptyList();
+      return new int[]{curBlk, curBlk};
     }
 
+    int firstBlk = curBlk;
     long endOff = offset + length;
-    List<LocatedBlock> results = new ArrayList<LocatedBlock>(blocks.length);
     do {
-      results.add(createLocatedBlock(blocks[curBlk], curPos, mode));
       curPos += blocks[curBlk].getNumBytes();
       curBlk++;
     } while (curPos < endOff && curBlk < blocks.length &&
-        results.size() < nrBlocksToReturn);
-    return results;
+        curBlk - firstBlk < nrBlocksToReturn);
+    return new int[]{firstBlk, curBlk};
   }
 
   private LocatedBlock createLocatedBlock(final BlockInfo blk, final long pos,
@@ -1735,6 +1764,68 @@ public String toString() {
    */
   public void processReport(final DatanodeID nodeID, final String poolId,
       final BlockListAsLongs newReport) throws IOException {
+    processReport(nodeID, poolId, newReport, null, null, null);
+  }
+
+  /**
+   * Compare the bucket hashes of the next full block report of a datanode to
+   * the hashes of the last report of it that was processed. The datanode
+   * keeps the hashes of that report, the namenodes do not have a table to
+   * store them in. Only the buckets that changed since have to be reported,
+   * all of them if the replicas of the datanode may be out of sync with that
+   * report.
+   *
+   * @param acknowledgedHashes
+   *     hashes of the last processed report, null if there is none
+   * @return the buckets the datanode has to report
+   */
+  public int[] getMismatchingBlockReportBuckets(final DatanodeID nodeID,
+      final long[] bucketHashes, final long[] acknowledgedHashes)
+      throws IOException {
+    final DatanodeDescriptor node = datanodeManager.getDatanode(nodeID);
+    if (node == null || !node.isAlive) {
+      throw new IOException(
+          "Block report buckets from dead or unregistered node: " + nodeID);
+    }
+    final int numBuckets = bucketHashes.length;
+    if (acknowledgedHashes == null || acknowledgedHashes.length != numBuckets ||
+        node.isFirstBlockReport() || namesystem.isInStartupSafeMode()) {
+      int[] all = new int[numBuckets];
+      for (int i = 0; i < numBuckets; i++) {
+        all[i] = i;
+      }
+      return all;
+    }
+
+    List<Integer> mismatching = new ArrayList<Integer>();
+    for (int i = 0; i < numBuckets; i++) {
+      if (bucketHashes[i] != acknowledgedHashes[i]) {
+        mismatching.add(i);
+      }
+    }
+    blockLog.info("BLOCK* getMismatchingBlockReportBuckets: " + nodeID +
+        " has to report " + mismatching.size() + " of " + numBuckets +
+        " buckets");
+    return Ints.toArray(mismatching);
+  }
+
+  /**
+   * The given datanode is reporting all its blocks, or all the blocks of the
+   * given buckets.
+   * Update the (machine-->blocklist) and (block-->machinelist) maps.
+   *
+   * @param bucketHashes
+   *     hashes of all the buckets of the report, null if not hashed
+   * @param reportedBuckets
+   *     buckets whose blocks are reported, null if all of them are
+   * @param removedBlocks
+   *     replicas the datanode removed since its last processed report, only
+   *     used if not all the buckets are reported
+   */
+  public void processReport(final DatanodeID nodeID, final String poolId,
+      final BlockListAsLongs newReport, final long[] bucketHashes,
+      final int[] reportedBuckets, final long[] removedBlocks)
+      throws IOException {
     final long startTime = Time.now(); //after acquiring write lock
     final DatanodeDescriptor node = datanodeManager.getDatanode(nodeID);
     if (node == null || !node.isAlive) {
@@ -1751,12 +1842,18 @@ public void processReport(final DatanodeID nodeID, final String poolId,
       return;
     }
 
+    long[] removed = null;
+    if (reportedBuckets != null && bucketHashes != null &&
+        reportedBuckets.length < bucketHashes.length) {
+      removed = removedBlocks != null ? removedBlocks : new long[0];
+    }
+
     if (node.numBlocks() == 0) {
       // The first block report can be processed a lot more efficiently than
       // ordinary block reports.  This shortens restart times.
       processFirstBlockReport(node, newReport);
     } else {
-      processReport(node, newReport);
+      processReport(node, newReport, removed);
     }
 
     // Now that we have an up-to-date block report, we know that any
@@ -1848,13 +1945,14 @@ public Object performTask() throws IOException {
   }
 
   private void processReport(final DatanodeDescriptor node,
-      final BlockListAsLongs report) throws IOException {
+      final BlockListAsLongs report, final long[] removedBlocks)
+      throws IOException {
     // Normal case:
     // Modify the (block-->datanode) map, according to the difference
     // between the old and new block report.
     //
     Collection<BlockInfo> toAdd = new HashSet<BlockInfo>();
-    Collection<Long> toRemove = new HashSet<Long>();
+    Holder<long[]> toRemove = new Holder<long[]>(new long[0]);
     Collection<Block> toInvalidate = new HashSet<Block>();
     Collection<BlockToMarkCorrupt> toCorrupt =
         new HashSet<BlockToMarkCorrupt>();
@@ -1862,8 +1960,8 @@ private void processReport(final DatanodeDescriptor node,
     
     final boolean firstBlockReport =
         namesystem.isInStartupSafeMode() && node.isFirstBlockReport();
-    reportDiff(node, report, toAdd, toRemove, toInvalidate, toCorrupt, toUC,
-        firstBlockReport);
+    reportDiff(node, report, removedBlocks, toAdd, toRemove, toInvalidate,
+        toCorrupt, toUC, firstBlockReport);
 
     // Process the blocks on each queue
     for (StatefulBlockInfo b : toUC) {
@@ -1894,7 +1992,7 @@ private void processReport(final DatanodeDescriptor node,
       }
       addToInvalidates(toInvalidate, node);
 
-      for (Long b : toRemove) {
+      for (long b : toRemove.held) {
         removeStoredBlockTx(b, node);
       }
     }
@@ -1993,10 +2091,17 @@ public Object performTask() throws IOException {
     }
   }
   
+  /**
+   * @param removedBlocks
+   *     replicas the datanode removed since its last processed report if only
+   *     some buckets are reported, null if the report contains all the
+   *     replicas of the datanode
+   */
   private void reportDiff(final DatanodeDescriptor dn,
-          final BlockListAsLongs newReport, final Collection<BlockInfo> toAdd,
+          final BlockListAsLongs newReport, final long[] removedBlocks,
+          final Collection<BlockInfo> toAdd,
           // add to DatanodeDescriptor
-          final Collection<Long> toRemove,
+          final Holder<long[]> toRemove,
           // remove from DatanodeDescriptor
           final Collection<Block> toInvalidate, // should be removed from DN
           final Collection<BlockToMarkCorrupt> toCorrupt,
@@ -2007,11 +2112,25 @@ private void reportDiff(final DatanodeDescriptor dn,
     if (newReport == null) {
       return;
     }  
-    final Map<Long,Integer> blkAndInodeIdMap = dn.getAllMachineReplicas();
-    final Set<Long> allMachineBlocks = new HashSet<Long>(blkAndInodeIdMap.keySet());
-    final Map<Long,Long> invalidatedReplicas = dn.getAllMachineInvalidatedReplicasWithGenStamp();
+    final boolean partialReport = removedBlocks != null;
+    final LongIntHashMap blkAndInodeIdMap;
+    if (partialReport) {
+      // the replicas of the other buckets did not change, so only the removed
+      // replicas are candidates for removal, and the reported ones are read
+      // with their replicas instead of all the replicas of the datanode
+      blkAndInodeIdMap = new LongIntHashMap(removedBlocks.length);
+      for (long blockId : removedBlocks) {
+        blkAndInodeIdMap.put(blockId, INode.NON_EXISTING_ID);
+      }
+    } else {
+      blkAndInodeIdMap = dn.getAllMachineReplicas();
+    }
+    final LongIntHashMap.KeySet allMachineBlocks =
+        blkAndInodeIdMap.newKeySet();
+    final LongLongHashMap invalidatedReplicas =
+        dn.getAllMachineInvalidatedReplicasWithGenStamp();
     
-    final Set<Long> safeBlocks = new HashSet<Long>(allMachineBlocks);
+    final LongIntHashMap.KeySet safeBlocks = allMachineBlocks.copy();
     
     try {
       final int numOfReportedBlks = newReport.getNumberOfBlocks();
@@ -2042,8 +2161,9 @@ public void acquireLock(TransactionLocks locks) throws IOException {
                   List<Long> unResovedBlkIds = new ArrayList<Long>();
                   
                   for(int i =0 ;i < partOfreportedBlks.length; i++){
-                    Integer inodeId = blkAndInodeIdMap.get(partOfreportedBlks[i]);
-                    if(inodeId  != null){
+                    int inodeId = blkAndInodeIdMap.get(partOfreportedBlks[i],
+                        INode.NON_EXISTING_ID);
+                    if(inodeId != INode.NON_EXISTING_ID){
                       resovedBlkIds.add(partOfreportedBlks[i]);
                       inodeIds.add(inodeId);
                     }else{
@@ -2054,6 +2174,9 @@ public void acquireLock(TransactionLocks locks) throws IOException {
                   locks.add(lf.getBlockReportingLocks(Longs.toArray(resovedBlkIds),
                           Ints.toArray(inodeIds),
                           Longs.toArray(unResovedBlkIds), dn.getSId()));
+                  if (partialReport) {
+                    locks.add(lf.getBlockRelated(BLK.RE));
+                  }
                   
                 }
 
@@ -2068,7 +2191,9 @@ public Object performTask() throws IOException {
                     BlockInfo storedBlock =
                             processReportedBlockOptimizedForBlkRepts(dn, iblk, iState, toAdd, toInvalidate,
                             toCorrupt, toUC, safeBlocks, firstBlockReport,
-                            allMachineBlocks.contains(iblk.getBlockId()), invalidatedReplicas);
+                            partialReport ? null : Boolean.valueOf(
+                                allMachineBlocks.contains(iblk.getBlockId())),
+                            invalidatedReplicas);
                     if (storedBlock != null) {
                       allMachineBlocks.remove(storedBlock.getBlockId());
                     }
@@ -2092,10 +2217,10 @@ public Object performTask() throws IOException {
       }
 
 
-      toRemove.addAll(allMachineBlocks);
+      toRemove.held = allMachineBlocks.toArray();
       if (namesystem.isInStartupSafeMode()) {
-        safeBlocks.removeAll(toRemove);
-        namesystem.adjustSafeModeBlocks(safeBlocks);
+        safeBlocks.removeAll(allMachineBlocks);
+        namesystem.adjustSafeModeBlocks(safeBlocks.toSet());
       }
     } catch (Exception ex) {
       throw new IOException(ex);
@@ -2215,9 +2340,10 @@ private BlockInfo processReportedBlockOptimizedForBlkRepts(final DatanodeDescrip
       final Block block, final ReplicaState reportedState,
       final Collection<BlockInfo> toAdd, final Collection<Block> toInvalidate,
       final Collection<BlockToMarkCorrupt> toCorrupt,
-      final Collection<StatefulBlockInfo> toUC, final Set<Long> safeBlocks,
-      final boolean firstBlockReport, final Boolean replicaAlreadyExists,
-      final Map<Long,Long> allMachineInvalidatedBlocks)
+      final Collection<StatefulBlockInfo> toUC,
+      final LongIntHashMap.KeySet safeBlocks, final boolean firstBlockReport,
+      final Boolean replicaAlreadyExists,
+      final LongLongHashMap allMachineInvalidatedBlocks)
       throws IOException {
     
     if (LOG.isDebugEnabled()) {
@@ -2246,7 +2372,7 @@ private BlockInfo processReportedBlockOptimizedForBlkRepts(final DatanodeDescrip
     if (!firstBlockReport) {
       // Ignore replicas already scheduled to be removed from the DN
       if (allMachineInvalidatedBlocks.containsKey(block.getBlockId()) && 
-             allMachineInvalidatedBlocks.get(block.getBlockId()) == block.getGenerationStamp() ) {
+             allMachineInvalidatedBlocks.get(block.getBlockId(), -1) == block.getGenerationStamp() ) {
        /*  TODO: following assertion is incorrect, see HDFS-2668
         assert storedBlock.findDatanode(dn) < 0 : "Block " + block
         + " in recentInvalidatesSet should not appear in DN " + dn; */
@@ -3960,7 +4086,9 @@ public void acquireLock(TransactionLocks locks) throws IOException {
       public Object performTask() throws IOException {
         BlockInfo block =
             EntityManager.find(BlockInfo.Finder.ByBlockIdAndINodeId, b);
-        removeStoredBlock(block, node);
+        if (block != null) {
+          removeStoredBlock(block, node);
+        }
         return null;
       }
     }.handle(namesystem);
@@ -32,6 +32,8 @@
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.util.LightWeightHashSet;
+import org.apache.hadoop.hdfs.util.LongIntHashMap;
+import org.apache.hadoop.hdfs.util.LongLongHashMap;
 import org.apache.hadoop.util.Time;
 
 import java.io.IOException;
@@ -360,30 +362,51 @@ public Object performTask() throws StorageException, IOException {
     return (List<BlockInfo>) findBlocksHandler.handle();
   }
   
-  public Map<Long,Integer> getAllMachineReplicas() throws IOException {
+  /**
+   * @return the ids of all the replicas stored on this datanode mapped to the
+   * ids of the inodes they belong to
+   */
+  public LongIntHashMap getAllMachineReplicas() throws IOException {
     LightWeightRequestHandler findBlocksHandler = new LightWeightRequestHandler(
         HDFSOperationType.GET_ALL_MACHINE_BLOCKS_IDS) {
       @Override
       public Object performTask() throws StorageException, IOException {
         ReplicaDataAccess da = (ReplicaDataAccess) HdfsStorageFactory
             .getDataAccess(ReplicaDataAccess.class);
-        return da.findBlockAndInodeIdsByStorageId(getSId());
+        Map<Long, Integer> replicas =
+            da.findBlockAndInodeIdsByStorageId(getSId());
+        LongIntHashMap result = new LongIntHashMap(replicas.size());
+        for (Map.Entry<Long, Integer> entry : replicas.entrySet()) {
+          result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
       }
     };
-    return (Map<Long,Integer>)findBlocksHandler.handle();
+    return (LongIntHashMap) findBlocksHandler.handle();
   }
-  
-    public Map<Long,Long> getAllMachineInvalidatedReplicasWithGenStamp() throws IOException {
+
+  /**
+   * @return the ids of the replicas of this datanode that are scheduled for
+   * invalidation mapped to their generation stamps
+   */
+  public LongLongHashMap getAllMachineInvalidatedReplicasWithGenStamp()
+      throws IOException {
     LightWeightRequestHandler findBlocksHandler = new LightWeightRequestHandler(
         HDFSOperationType.GET_ALL_MACHINE_BLOCKS_IDS) {
       @Override
       public Object performTask() throws StorageException, IOException {
         InvalidateBlockDataAccess da = (InvalidateBlockDataAccess) HdfsStorageFactory
             .getDataAccess(InvalidateBlockDataAccess.class);
-        return da.findInvalidatedBlockByStorageIdUsingMySQLServer(getSId());
+        Map<Long, Long> invalidated =
+            da.findInvalidatedBlockByStorageIdUsingMySQLServer(getSId());
+        LongLongHashMap result = new LongLongHashMap(invalidated.size());
+        for (Map.Entry<Long, Long> entry : invalidated.entrySet()) {
+          result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
       }
     };
-    return (Map<Long,Long>)findBlocksHandler.handle();
+    return (LongLongHashMap) findBlocksHandler.handle();
   }
   
   /**
@@ -34,9 +34,11 @@
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolClientSideTranslatorPB;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.BlockReportBuckets;
 import org.apache.hadoop.hdfs.server.protocol.BalancerBandwidthCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportSlot;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
@@ -117,6 +119,16 @@ class BPOfferService implements Runnable {
   // to make sure the "happens-before" consistency.
   private volatile long lastBlockReport = 0;
   private boolean resetBlockReportTime = true;
+  // size of the last full block report, sent along with the slot request,
+  // -1 until the first report was sent
+  private long lastBlockReportSize = -1;
+  // the namenode that granted the slot of the block report being sent
+  private BPServiceActor blockReportSlotGranter = null;
+  // do not ask the leader for a block report slot before this time
+  private volatile long nextBlockReportSlotRequest = 0;
+  // bucket hashes of the last block report the namenodes processed, null
+  // until there is one since the last registration
+  private volatile long[] acknowledgedBucketHashes = null;
   private BPServiceActor blkReportHander = null;
   private List<ActiveNode> nnList = new CopyOnWriteArrayList<ActiveNode>();
   private List<InetSocketAddress> blackListNN =
@@ -361,6 +373,8 @@ void registrationSucceeded(BPServiceActor bpServiceActor,
     } else {
       bpRegistration = reg;
     }
+    // the namenode may have dropped the replicas of the datanode
+    acknowledgedBucketHashes = null;
 
     dn.bpRegistrationSucceeded(bpRegistration, getBlockPoolId());
     // Add the initial block token secret keys to the DN's secret manager.
@@ -765,6 +779,24 @@ DatanodeCommand blockReport() throws IOException {
     DatanodeCommand cmd = null;
     long startTime = now();
     if (startTime - lastBlockReport > dnConf.blockReportInterval) {
+      if (startTime < nextBlockReportSlotRequest) {
+        return null;
+      }
+      // ask the leader for a slot before creating the report
+      BlockReportSlot slot = requestBlockReportSlot();
+      if (slot == null) {
+        LOG.warn("Unable to send block report");
+        return null;
+      } else if (!slot.isGranted()) {
+        LOG.debug("Block report postponed, " + slot);
+        nextBlockReportSlotRequest = startTime + slot.getRetryAfter();
+        return null;
+      }
+      blkReportHander = getAnActor(slot.getNamenode().getInetSocketAddress());
+      if (blkReportHander == null || !blkReportHander.isInitialized()) {
+        releaseBlockReportSlot();
+        return null; //no one is ready to handle the request, return now without changing the values of lastBlockReport. it will be retried in next cycle
+      }
 
       // Flush any block information that precedes the block report. Otherwise
       // we have a chance that we will miss the delHint information
@@ -779,30 +811,58 @@ DatanodeCommand blockReport() throws IOException {
 
       // Send block report
       long brSendStartTime = now();
+      BlockListAsLongs reported = bReport;
+      long[] bucketHashes = null;
+      int[] reportedBuckets = null;
+      long[] removedBlocks = null;
+      if (dnConf.blockReportBuckets > 0) {
+        // only report the buckets that changed since the last report the
+        // namenodes processed, along with the replicas removed since then
+        long[] acknowledgedHashes = null;
+        BlockReportBuckets buckets =
+            dn.getFSDataset().getBlockReportBuckets(getBlockPoolId());
+        if (buckets != null &&
+            buckets.getHashes().length == dnConf.blockReportBuckets) {
+          bucketHashes = buckets.getHashes();
+          removedBlocks = buckets.getRemovedBlocks();
+          if (removedBlocks != null) {
+            acknowledgedHashes = acknowledgedBucketHashes;
+          }
+        } else {
+          bucketHashes = bReport.getBucketHashes(dnConf.blockReportBuckets);
+        }
+        reportedBuckets = blkReportHander
+            .getMismatchingBlockReportBuckets(bpRegistration,
+                getBlockPoolId(), bucketHashes, acknowledgedHashes);
+        reported =
+            bReport.getBuckets(reportedBuckets, dnConf.blockReportBuckets);
+      }
       StorageBlockReport[] report = {new StorageBlockReport(
           new DatanodeStorage(bpRegistration.getStorageID()),
-          bReport.getBlockListAsLongs())};
+          reported.getBlockListAsLongs(), bucketHashes, reportedBuckets,
+          removedBlocks)};
 
-      ActiveNode an = nextNNForBlkReport();
-      if (an != null) {
-        blkReportHander = getAnActor(an.getInetSocketAddress());
-        if (blkReportHander == null || !blkReportHander.isInitialized()) {
-          return null; //no one is ready to handle the request, return now without changing the values of lastBlockReport. it will be retried in next cycle
-        }
-      } else {
-        LOG.warn("Unable to send block report");
-        return null;
+      try {
+        cmd = blkReportHander
+            .blockReport(bpRegistration, getBlockPoolId(), report);
+      } finally {
+        releaseBlockReportSlot();
       }
-
-      cmd =
-          blkReportHander.blockReport(bpRegistration, getBlockPoolId(), report);
+      if (bucketHashes != null) {
+        acknowledgedBucketHashes = bucketHashes;
+        dn.getFSDataset().blockReportAcknowledged(getBlockPoolId());
+      }
+      lastBlockReportSize = bReport.getNumberOfBlocks();
 
       // Log the block report processing stats from Datanode perspective
       long brSendCost = now() - brSendStartTime;
       long brCreateCost = brSendStartTime - brCreateStartTime;
       dn.getMetrics().addBlockReport(brSendCost);
       LOG.info(
-          "BlockReport of " + bReport.getNumberOfBlocks() + " blocks took " +
+          "BlockReport of " + reported.getNumberOfBlocks() + " of " +
+              bReport.getNumberOfBlocks() + " blocks" +
+              (reportedBuckets == null ? "" : " in " + reportedBuckets.length +
+                  " of " + dnConf.blockReportBuckets + " buckets") + " took " +
               brCreateCost + " msec to generate and " + brSendCost +
               " msecs for RPC and NN processing");
 
@@ -839,6 +899,7 @@ void scheduleBlockReportInt(long delay) {
     } else { // send at next heartbeat
       lastBlockReport = 0;
     }
+    nextBlockReportSlotRequest = 0;
     resetBlockReportTime = true; // reset future BRs for randomness
   }
 
@@ -848,6 +909,7 @@ void scheduleBlockReportInt(long delay) {
   void triggerBlockReportForTestsInt() {
     synchronized (pendingIncrementalBR) {
       lastBlockReport = 0;
+      nextBlockReportSlotRequest = 0;
       pendingIncrementalBR.notifyAll();
       while (lastBlockReport == 0) {
         try {
@@ -1047,30 +1109,51 @@ private BPServiceActor nextNNForNonBlkReportRPC() {
     return null;
   }
 
-  private ActiveNode nextNNForBlkReport() {
+  private BlockReportSlot requestBlockReportSlot() {
     if (nnList == null || nnList.isEmpty()) {
       return null;
     }
+    // before the first report after a restart the replicas in the dataset
+    // are the best estimate of its size
+    long numBlocks = lastBlockReportSize >= 0 ? lastBlockReportSize :
+        dn.getFSDataset().getNumReplicas(getBlockPoolId());
 
-    ActiveNode ann = null;
     for (ActiveNode leader : nnList) {  // first element is the leader. if it does not work then ask non leader nodes
       try {
         BPServiceActor leaderActor =
             this.getAnActor(leader.getInetSocketAddress());
         if (leaderActor != null) {
-          ann = leaderActor.nextNNForBlkReport();
+          BlockReportSlot slot = leaderActor.requestBlockReportSlot(numBlocks);
           //no exception
-          if (ann != null) {
-            return ann;
+          if (slot != null) {
+            blockReportSlotGranter = slot.isGranted() ? leaderActor : null;
+            return slot;
           }
         }
       } catch (IOException e) {
         continue;
       }
     }
-    return ann;
+    return null;
   }
   
+  /**
+   * Tell the namenode that granted the slot of the last block report that
+   * the report has been processed. If it cannot be reached the slot is
+   * released when its window expires.
+   */
+  private void releaseBlockReportSlot() {
+    BPServiceActor granter = blockReportSlotGranter;
+    blockReportSlotGranter = null;
+    if (granter != null) {
+      try {
+        granter.releaseBlockReportSlot();
+      } catch (IOException e) {
+        LOG.debug("Unable to release the block report slot", e);
+      }
+    }
+  }
+
   private void forwardRRIndex() {
     synchronized (nnListSync) {
       if (nnList != null && !nnList.isEmpty()) {
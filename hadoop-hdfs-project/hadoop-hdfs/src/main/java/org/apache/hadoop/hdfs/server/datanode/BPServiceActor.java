@@ -18,7 +18,6 @@
 package org.apache.hadoop.hdfs.server.datanode;
 
 import com.google.common.annotations.VisibleForTesting;
-import io.hops.leader_election.node.ActiveNode;
 import io.hops.leader_election.node.SortedActiveNodeList;
 import org.apache.commons.logging.Log;
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -30,6 +29,7 @@
 import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolClientSideTranslatorPB;
 import org.apache.hadoop.hdfs.server.common.IncorrectVersionException;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportSlot;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.DisallowedDatanodeException;
@@ -563,13 +563,26 @@ public DatanodeCommand blockReport(DatanodeRegistration registration,
     return bpNamenode.blockReport(registration, poolId, reports);
   }
 
-  public ActiveNode nextNNForBlkReport() throws IOException {
-    if (bpNamenode != null) {
-      ActiveNode an = bpNamenode.getNextNamenodeToSendBlockReport();
-      return an;
+  public int[] getMismatchingBlockReportBuckets(
+      DatanodeRegistration registration, String poolId, long[] bucketHashes,
+      long[] acknowledgedHashes) throws IOException {
+    return bpNamenode.getMismatchingBlockReportBuckets(registration, poolId,
+        bucketHashes, acknowledgedHashes);
+  }
+
+  public BlockReportSlot requestBlockReportSlot(long numBlocks)
+      throws IOException {
+    if (bpNamenode != null && bpRegistration != null) {
+      return bpNamenode.requestBlockReportSlot(bpRegistration, numBlocks);
     } else {
       return null;
     }
   }
 
+  public void releaseBlockReportSlot() throws IOException {
+    if (bpNamenode != null && bpRegistration != null) {
+      bpNamenode.releaseBlockReportSlot(bpRegistration);
+    }
+  }
+
 }
@@ -61,6 +61,7 @@ class DNConf {
   final long readaheadLength;
   final long heartBeatInterval;
   final long blockReportInterval;
+  final int blockReportBuckets;
   final long deleteReportInterval;
   final long initialBlockReportDelay;
   final int writePacketSize;
@@ -102,6 +103,9 @@ public DNConf(Configuration conf) {
             DFSConfigKeys.DFS_DATANODE_USE_DN_HOSTNAME_DEFAULT);
     this.blockReportInterval = conf.getLong(DFS_BLOCKREPORT_INTERVAL_MSEC_KEY,
         DFS_BLOCKREPORT_INTERVAL_MSEC_DEFAULT);
+    this.blockReportBuckets =
+        conf.getInt(DFSConfigKeys.DFS_BLOCKREPORT_BUCKETS_KEY,
+            DFSConfigKeys.DFS_BLOCKREPORT_BUCKETS_DEFAULT);
     
     long initBRDelay = conf.getLong(DFS_BLOCKREPORT_INITIAL_DELAY_KEY,
         DFS_BLOCKREPORT_INITIAL_DELAY_DEFAULT) * 1000L;
@@ -984,7 +984,7 @@ public InterDatanodeProtocol run() throws IOException {
     }
   }
 
-  DataNodeMetrics getMetrics() {
+  public DataNodeMetrics getMetrics() {
     return metrics;
   }
   
@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * The bucket hashes of the replicas of a block report, and the replicas
+ * removed since the last block report the namenode acknowledged.
+ *
+ * @see FsDatasetSpi#getBlockReportBuckets(String)
+ */
+@InterfaceAudience.Private
+public class BlockReportBuckets {
+  private final long[] hashes;
+  private final long[] removedBlocks;
+
+  public BlockReportBuckets(long[] hashes, long[] removedBlocks) {
+    this.hashes = hashes;
+    this.removedBlocks = removedBlocks;
+  }
+
+  /**
+   * @return the hash of every bucket
+   * @see org.apache.hadoop.hdfs.protocol.BlockListAsLongs#getBucketHashes(int)
+   */
+  public long[] getHashes() {
+    return hashes;
+  }
+
+  /**
+   * @return the ids of the replicas removed since the last acknowledged
+   * report, null if too many were removed to remember them all
+   */
+  public long[] getRemovedBlocks() {
+    return removedBlocks;
+  }
+}
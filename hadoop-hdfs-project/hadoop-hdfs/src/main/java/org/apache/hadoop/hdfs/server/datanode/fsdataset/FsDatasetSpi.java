@@ -114,6 +114,11 @@ public RollingLogs createRollingLogs(String bpid, String prefix)
    */
   public List<Block> getFinalizedBlocks(String bpid);
 
+  /**
+   * @return the number of replicas of the given block pool, in any state.
+   */
+  public int getNumReplicas(String bpid);
+
   /**
    * Check whether the in-memory block record matches the block on the disk,
    * and, in case that they are not matched, update the record or mark it
@@ -315,6 +320,27 @@ public void recoverClose(ExtendedBlock b, long newGS, long expectedBlockLen)
    */
   public BlockListAsLongs getBlockReport(String bpid);
 
+  /**
+   * Returns the bucket hashes of the replicas of the last block report
+   * returned by {@link #getBlockReport(String)}, and the replicas removed
+   * between the last acknowledged report and that one
+   *
+   * @param bpid
+   *     Block Pool Id
+   * @return the buckets of the last report, null if the dataset does not
+   * keep bucket hashes
+   */
+  public BlockReportBuckets getBlockReportBuckets(String bpid);
+
+  /**
+   * The namenode processed the last block report of the block pool, the
+   * replicas removed before it was made do not have to be reported again
+   *
+   * @param bpid
+   *     Block Pool Id
+   */
+  public void blockReportAcknowledged(String bpid);
+
   /**
    * Does the dataset contain the block?
    */
@@ -44,6 +44,7 @@
 import org.apache.hadoop.hdfs.server.datanode.ReplicaNotFoundException;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaUnderRecovery;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaWaitingToBeRecovered;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.BlockReportBuckets;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.LengthInputStream;
@@ -52,6 +53,7 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.RollingLogs;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.RoundRobinVolumeChoosingPolicy;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeChoosingPolicy;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
 import org.apache.hadoop.hdfs.server.datanode.metrics.FSDatasetMBean;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
 import org.apache.hadoop.hdfs.server.protocol.ReplicaRecoveryInfo;
@@ -78,7 +80,6 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -99,13 +100,13 @@ public List<FsVolumeImpl> getVolumes() {
   }
 
   @Override
-  public synchronized FsVolumeImpl getVolume(final ExtendedBlock b) {
+  public FsVolumeImpl getVolume(final ExtendedBlock b) {
     final ReplicaInfo r = volumeMap.get(b.getBlockPoolId(), b.getLocalBlock());
     return r != null ? (FsVolumeImpl) r.getVolume() : null;
   }
 
   @Override // FsDatasetSpi
-  public synchronized Block getStoredBlock(String bpid, long blkid)
+  public Block getStoredBlock(String bpid, long blkid)
       throws IOException {
     File blockfile = getFile(bpid, blkid);
     if (blockfile == null) {
@@ -202,7 +203,9 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
       volArray.add(new FsVolumeImpl(this, storage.getStorageID(), dir, conf));
       LOG.info("Added volume - " + dir);
     }
-    volumeMap = new ReplicaMap(this);
+    volumeMap = new ReplicaMap(this,
+        conf.getInt(DFSConfigKeys.DFS_BLOCKREPORT_BUCKETS_KEY,
+            DFSConfigKeys.DFS_BLOCKREPORT_BUCKETS_DEFAULT));
 
     @SuppressWarnings("unchecked")
     final VolumeChoosingPolicy<FsVolumeImpl> blockChooserImpl = ReflectionUtils
@@ -313,10 +316,7 @@ File getBlockFile(String bpid, Block b) throws IOException {
    * and thus the exists check is redundant.
    */
   private File getBlockFileNoExistsCheck(ExtendedBlock b) throws IOException {
-    final File f;
-    synchronized (this) {
-      f = getFile(b.getBlockPoolId(), b.getLocalBlock().getBlockId());
-    }
+    final File f = getFile(b.getBlockPoolId(), b.getLocalBlock().getBlockId());
     if (f == null) {
       throw new IOException("Block " + b + " is not valid");
     }
@@ -485,7 +485,16 @@ static private void truncateBlock(File blockFile, File metaFile, long oldlen,
 
 
   @Override  // FsDatasetSpi
-  public synchronized ReplicaInPipeline append(ExtendedBlock b, long newGS,
+  public ReplicaInPipeline append(ExtendedBlock b, long newGS,
+      long expectedBlockLen) throws IOException {
+    final long lockWaitStart = System.nanoTime();
+    synchronized (this) {
+      lockAcquired(lockWaitStart);
+      return appendLocked(b, newGS, expectedBlockLen);
+    }
+  }
+
+  private ReplicaInPipeline appendLocked(ExtendedBlock b, long newGS,
       long expectedBlockLen) throws IOException {
     // If the block was successfully finalized because all packets
     // were successfully processed at the Datanode but the ack for
@@ -642,7 +651,16 @@ private ReplicaInfo recoverCheck(ExtendedBlock b, long newGS,
   }
   
   @Override  // FsDatasetSpi
-  public synchronized ReplicaInPipeline recoverAppend(ExtendedBlock b,
+  public ReplicaInPipeline recoverAppend(ExtendedBlock b,
+      long newGS, long expectedBlockLen) throws IOException {
+    final long lockWaitStart = System.nanoTime();
+    synchronized (this) {
+      lockAcquired(lockWaitStart);
+      return recoverAppendLocked(b, newGS, expectedBlockLen);
+    }
+  }
+
+  private ReplicaInPipeline recoverAppendLocked(ExtendedBlock b,
       long newGS, long expectedBlockLen) throws IOException {
     LOG.info("Recover failed append to " + b);
 
@@ -653,7 +671,7 @@ public synchronized ReplicaInPipeline recoverAppend(ExtendedBlock b,
       return append(b.getBlockPoolId(), (FinalizedReplica) replicaInfo, newGS,
           b.getNumBytes());
     } else { //RBW
-      bumpReplicaGS(replicaInfo, newGS);
+      bumpReplicaGS(b.getBlockPoolId(), replicaInfo, newGS);
       return (ReplicaBeingWritten) replicaInfo;
     }
   }
@@ -665,7 +683,7 @@ public void recoverClose(ExtendedBlock b, long newGS, long expectedBlockLen)
     // check replica's state
     ReplicaInfo replicaInfo = recoverCheck(b, newGS, expectedBlockLen);
     // bump the replica's GS
-    bumpReplicaGS(replicaInfo, newGS);
+    bumpReplicaGS(b.getBlockPoolId(), replicaInfo, newGS);
     // finalize the replica if RBW
     if (replicaInfo.getState() == ReplicaState.RBW) {
       finalizeReplica(b.getBlockPoolId(), replicaInfo);
@@ -676,6 +694,8 @@ public void recoverClose(ExtendedBlock b, long newGS, long expectedBlockLen)
    * Bump a replica's generation stamp to a new one.
    * Its on-disk meta file name is renamed to be the new one too.
    *
+   * @param bpid
+   *     block pool id of the replica
    * @param replicaInfo
    *     a replica
    * @param newGS
@@ -683,11 +703,11 @@ public void recoverClose(ExtendedBlock b, long newGS, long expectedBlockLen)
    * @throws IOException
    *     if rename fails
    */
-  private void bumpReplicaGS(ReplicaInfo replicaInfo, long newGS)
-      throws IOException {
+  private void bumpReplicaGS(String bpid, ReplicaInfo replicaInfo,
+      long newGS) throws IOException {
     long oldGS = replicaInfo.getGenerationStamp();
     File oldmeta = replicaInfo.getMetaFile();
-    replicaInfo.setGenerationStampNoPersistance(newGS);
+    volumeMap.setGenerationStamp(bpid, replicaInfo, newGS);
     File newmeta = replicaInfo.getMetaFile();
 
     // rename meta file to new GS
@@ -697,15 +717,38 @@ private void bumpReplicaGS(ReplicaInfo replicaInfo, long newGS)
     try {
       NativeIO.renameTo(oldmeta, newmeta);
     } catch (IOException e) {
-      replicaInfo.setGenerationStampNoPersistance(oldGS); // restore old GS
+      // restore old GS
+      volumeMap.setGenerationStamp(bpid, replicaInfo, oldGS);
       throw new IOException("Block " + replicaInfo + " reopen failed. " +
           " Unable to move meta file  " + oldmeta +
           " to " + newmeta, e);
     }
   }
 
+  /**
+   * Record how long the calling thread waited for the dataset lock.
+   *
+   * @param lockWaitStart
+   *     {@link System#nanoTime()} before the lock was requested
+   */
+  private void lockAcquired(long lockWaitStart) {
+    DataNodeMetrics metrics = datanode != null ? datanode.getMetrics() : null;
+    if (metrics != null) {
+      metrics.addDatasetLockWaitNanos(System.nanoTime() - lockWaitStart);
+    }
+  }
+
   @Override // FsDatasetSpi
-  public synchronized ReplicaInPipeline createRbw(ExtendedBlock b)
+  public ReplicaInPipeline createRbw(ExtendedBlock b)
+      throws IOException {
+    final long lockWaitStart = System.nanoTime();
+    synchronized (this) {
+      lockAcquired(lockWaitStart);
+      return createRbwLocked(b);
+    }
+  }
+
+  private ReplicaInPipeline createRbwLocked(ExtendedBlock b)
       throws IOException {
     ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(), b.getBlockId());
     if (replicaInfo != null) {
@@ -725,7 +768,16 @@ public synchronized ReplicaInPipeline createRbw(ExtendedBlock b)
   }
   
   @Override // FsDatasetSpi
-  public synchronized ReplicaInPipeline recoverRbw(ExtendedBlock b, long newGS,
+  public ReplicaInPipeline recoverRbw(ExtendedBlock b, long newGS,
+      long minBytesRcvd, long maxBytesRcvd) throws IOException {
+    final long lockWaitStart = System.nanoTime();
+    synchronized (this) {
+      lockAcquired(lockWaitStart);
+      return recoverRbwLocked(b, newGS, minBytesRcvd, maxBytesRcvd);
+    }
+  }
+
+  private ReplicaInPipeline recoverRbwLocked(ExtendedBlock b, long newGS,
       long minBytesRcvd, long maxBytesRcvd) throws IOException {
     LOG.info("Recover RBW replica " + b);
 
@@ -765,13 +817,22 @@ public synchronized ReplicaInPipeline recoverRbw(ExtendedBlock b, long newGS,
     }
 
     // bump the replica's generation stamp to newGS
-    bumpReplicaGS(rbw, newGS);
+    bumpReplicaGS(b.getBlockPoolId(), rbw, newGS);
     
     return rbw;
   }
   
   @Override // FsDatasetSpi
-  public synchronized ReplicaInPipeline convertTemporaryToRbw(
+  public ReplicaInPipeline convertTemporaryToRbw(
+      final ExtendedBlock b) throws IOException {
+    final long lockWaitStart = System.nanoTime();
+    synchronized (this) {
+      lockAcquired(lockWaitStart);
+      return convertTemporaryToRbwLocked(b);
+    }
+  }
+
+  private ReplicaInPipeline convertTemporaryToRbwLocked(
       final ExtendedBlock b) throws IOException {
     final long blockId = b.getBlockId();
     final long expectedGs = b.getGenerationStamp();
@@ -832,7 +893,16 @@ public synchronized ReplicaInPipeline convertTemporaryToRbw(
   }
 
   @Override // FsDatasetSpi
-  public synchronized ReplicaInPipeline createTemporary(ExtendedBlock b)
+  public ReplicaInPipeline createTemporary(ExtendedBlock b)
+      throws IOException {
+    final long lockWaitStart = System.nanoTime();
+    synchronized (this) {
+      lockAcquired(lockWaitStart);
+      return createTemporaryLocked(b);
+    }
+  }
+
+  private ReplicaInPipeline createTemporaryLocked(ExtendedBlock b)
       throws IOException {
     ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(), b.getBlockId());
     if (replicaInfo != null) {
@@ -882,7 +952,15 @@ public void adjustCrcChannelPosition(ExtendedBlock b,
    * Complete the block write!
    */
   @Override // FsDatasetSpi
-  public synchronized void finalizeBlock(ExtendedBlock b) throws IOException {
+  public void finalizeBlock(ExtendedBlock b) throws IOException {
+    final long lockWaitStart = System.nanoTime();
+    synchronized (this) {
+      lockAcquired(lockWaitStart);
+      finalizeBlockLocked(b);
+    }
+  }
+
+  private void finalizeBlockLocked(ExtendedBlock b) throws IOException {
     if (Thread.interrupted()) {
       // Don't allow data modifications from interrupted threads
       throw new IOException("Cannot finalize block from Interrupted Thread");
@@ -924,7 +1002,15 @@ private synchronized FinalizedReplica finalizeReplica(String bpid,
    * Remove the temporary block file (if any)
    */
   @Override // FsDatasetSpi
-  public synchronized void unfinalizeBlock(ExtendedBlock b) throws IOException {
+  public void unfinalizeBlock(ExtendedBlock b) throws IOException {
+    final long lockWaitStart = System.nanoTime();
+    synchronized (this) {
+      lockAcquired(lockWaitStart);
+      unfinalizeBlockLocked(b);
+    }
+  }
+
+  private void unfinalizeBlockLocked(ExtendedBlock b) throws IOException {
     ReplicaInfo replicaInfo =
         volumeMap.get(b.getBlockPoolId(), b.getLocalBlock());
     if (replicaInfo != null &&
@@ -970,59 +1056,70 @@ private boolean delBlockFromDisk(File blockFile, File metaFile, Block b) {
   }
 
   /**
-   * Generates a block report from the in-memory block map.
+   * Generates a block report from the in-memory block map. The report is
+   * built from copies of the replicas taken under the lock of the block
+   * pool, so it does not hold the dataset lock and does not stall the
+   * writers while it walks the replicas. The bucket hashes the map keeps are
+   * taken under the same lock, see {@link #getBlockReportBuckets(String)}.
    */
   @Override // FsDatasetSpi
   public BlockListAsLongs getBlockReport(String bpid) {
-    int size = volumeMap.size(bpid);
-    ArrayList<ReplicaInfo> finalized = new ArrayList<ReplicaInfo>(size);
+    List<ReplicaInfo> replicas = volumeMap.snapshot(bpid);
+    ArrayList<ReplicaInfo> finalized =
+        new ArrayList<ReplicaInfo>(replicas.size());
     ArrayList<ReplicaInfo> uc = new ArrayList<ReplicaInfo>();
-    if (size == 0) {
-      return new BlockListAsLongs(finalized, uc);
-    }
-    
-    synchronized (this) {
-      for (ReplicaInfo b : volumeMap.replicas(bpid)) {
-        switch (b.getState()) {
-          case FINALIZED:
-            finalized.add(b);
-            break;
-          case RBW:
-          case RWR:
-            uc.add(b);
-            break;
-          case RUR:
-            ReplicaUnderRecovery rur = (ReplicaUnderRecovery) b;
-            uc.add(rur.getOriginalReplica());
-            break;
-          case TEMPORARY:
-            break;
-          default:
-            assert false : "Illegal ReplicaInfo state.";
-        }
+    for (ReplicaInfo b : replicas) {
+      switch (b.getState()) {
+        case FINALIZED:
+          finalized.add(b);
+          break;
+        case RBW:
+        case RWR:
+          uc.add(b);
+          break;
+        case RUR:
+          ReplicaUnderRecovery rur = (ReplicaUnderRecovery) b;
+          uc.add(rur.getOriginalReplica());
+          break;
+        case TEMPORARY:
+          break;
+        default:
+          assert false : "Illegal ReplicaInfo state.";
       }
-      return new BlockListAsLongs(finalized, uc);
     }
+    return new BlockListAsLongs(finalized, uc);
+  }
+
+  @Override // FsDatasetSpi
+  public BlockReportBuckets getBlockReportBuckets(String bpid) {
+    return volumeMap.getReportedBuckets(bpid);
+  }
+
+  @Override // FsDatasetSpi
+  public void blockReportAcknowledged(String bpid) {
+    volumeMap.acknowledgeReport(bpid);
   }
 
   /**
    * Get the list of finalized blocks from in-memory blockmap for a block pool.
    */
   @Override
-  public synchronized List<Block> getFinalizedBlocks(String bpid) {
-    ArrayList<Block> finalized = new ArrayList<Block>(volumeMap.size(bpid));
-
-    if (volumeMap.replicas(bpid) != null) {
-
-      for (ReplicaInfo b : volumeMap.replicas(bpid)) {
-        if (b.getState() == ReplicaState.FINALIZED) {
-          finalized.add(new Block(b));
-        }
+  public List<Block> getFinalizedBlocks(String bpid) {
+    List<ReplicaInfo> replicas = volumeMap.snapshot(bpid);
+    ArrayList<Block> finalized = new ArrayList<Block>(replicas.size());
+    for (ReplicaInfo b : replicas) {
+      if (b.getState() == ReplicaState.FINALIZED) {
+        finalized.add(new Block(b));
       }
     }
     return finalized;
   }
 
+  @Override // FsDatasetSpi
+  public int getNumReplicas(String bpid) {
+    return volumeMap.size(bpid);
+  }
+
   /**
    * Check whether the given block is a valid one.
    * valid means finalized
@@ -1055,10 +1152,7 @@ private boolean isValid(final ExtendedBlock b, final ReplicaState state) {
    */
   File validateBlockFile(String bpid, Block b) {
     //Should we check for metadata file too?
-    final File f;
-    synchronized (this) {
-      f = getFile(bpid, b.getBlockId());
-    }
+    final File f = getFile(bpid, b.getBlockId());
     
     if (f != null) {
       if (f.exists()) {
@@ -1111,7 +1205,9 @@ public void invalidate(String bpid, Block invalidBlks[]) throws IOException {
     for (int i = 0; i < invalidBlks.length; i++) {
       final File f;
       final FsVolumeImpl v;
+      final long lockWaitStart = System.nanoTime();
       synchronized (this) {
+        lockAcquired(lockWaitStart);
         f = getFile(bpid, invalidBlks[i].getBlockId());
         ReplicaInfo info = volumeMap.get(bpid, invalidBlks[i]);
         if (info == null) {
@@ -1167,7 +1263,7 @@ public void invalidate(String bpid, Block invalidBlks[]) throws IOException {
   }
 
   @Override // FsDatasetSpi
-  public synchronized boolean contains(final ExtendedBlock block) {
+  public boolean contains(final ExtendedBlock block) {
     final long blockId = block.getLocalBlock().getBlockId();
     return getFile(block.getBlockPoolId(), blockId) != null;
   }
@@ -1211,15 +1307,13 @@ public void checkDataDir() throws DiskErrorException {
     synchronized (this) {
       for (FsVolumeImpl fv : failedVols) {
         for (String bpid : fv.getBlockPoolList()) {
-          Iterator<ReplicaInfo> ib = volumeMap.replicas(bpid).iterator();
-          while (ib.hasNext()) {
-            ReplicaInfo b = ib.next();
+          for (ReplicaInfo b : volumeMap.snapshot(bpid)) {
             totalBlocks++;
             // check if the volume block belongs to still valid
             if (b.getVolume() == fv) {
               LOG.warn("Removing replica " + bpid + ":" + b.getBlockId() +
                   " on failed volume " + fv.getCurrentDir().getAbsolutePath());
-              ib.remove();
+              volumeMap.remove(bpid, b.getBlockId());
               removedBlocks++;
             }
           }
@@ -1408,7 +1502,7 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
 
         LOG.warn("Updating generation stamp for block " + blockId + " from " +
             memBlockInfo.getGenerationStamp() + " to " + diskGS);
-        memBlockInfo.setGenerationStampNoPersistance(diskGS);
+        volumeMap.setGenerationStamp(bpid, memBlockInfo, diskGS);
       }
 
       // Compare generation stamp
@@ -1434,7 +1528,7 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
           LOG.warn("Updating generation stamp for block " + blockId + " from " +
               memBlockInfo.getGenerationStamp() + " to " + gs);
 
-          memBlockInfo.setGenerationStampNoPersistance(gs);
+          volumeMap.setGenerationStamp(bpid, memBlockInfo, gs);
         }
       }
 
@@ -1444,7 +1538,7 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
         corruptBlock = new Block(memBlockInfo);
         LOG.warn("Updating size of block " + blockId + " from " +
             memBlockInfo.getNumBytes() + " to " + memFile.length());
-        memBlockInfo.setNumBytesNoPersistance(memFile.length());
+        volumeMap.setNumBytes(bpid, memBlockInfo, memFile.length());
       }
     }
 
@@ -1470,13 +1564,22 @@ public ReplicaInfo getReplica(String bpid, long blockId) {
   }
 
   @Override
-  public synchronized String getReplicaString(String bpid, long blockId) {
+  public String getReplicaString(String bpid, long blockId) {
     final Replica r = volumeMap.get(bpid, blockId);
     return r == null ? "null" : r.toString();
   }
 
   @Override // FsDatasetSpi
-  public synchronized ReplicaRecoveryInfo initReplicaRecovery(
+  public ReplicaRecoveryInfo initReplicaRecovery(
+      RecoveringBlock rBlock) throws IOException {
+    final long lockWaitStart = System.nanoTime();
+    synchronized (this) {
+      lockAcquired(lockWaitStart);
+      return initReplicaRecoveryLocked(rBlock);
+    }
+  }
+
+  private ReplicaRecoveryInfo initReplicaRecoveryLocked(
       RecoveringBlock rBlock) throws IOException {
     return initReplicaRecovery(rBlock.getBlock().getBlockPoolId(), volumeMap,
         rBlock.getBlock().getLocalBlock(), rBlock.getNewGenerationStamp());
@@ -1549,7 +1652,17 @@ static ReplicaRecoveryInfo initReplicaRecovery(String bpid, ReplicaMap map,
   }
 
   @Override // FsDatasetSpi
-  public synchronized String updateReplicaUnderRecovery(
+  public String updateReplicaUnderRecovery(
+      final ExtendedBlock oldBlock, final long recoveryId, final long newlength)
+      throws IOException {
+    final long lockWaitStart = System.nanoTime();
+    synchronized (this) {
+      lockAcquired(lockWaitStart);
+      return updateReplicaUnderRecoveryLocked(oldBlock, recoveryId, newlength);
+    }
+  }
+
+  private String updateReplicaUnderRecoveryLocked(
       final ExtendedBlock oldBlock, final long recoveryId, final long newlength)
       throws IOException {
     //get replica
@@ -1607,7 +1720,7 @@ private FinalizedReplica updateReplicaUnderRecovery(String bpid,
     }
 
     // bump rur's GS to be recovery id
-    bumpReplicaGS(rur, recoveryId);
+    bumpReplicaGS(bpid, rur, recoveryId);
 
     //update length
     final File replicafile = rur.getBlockFile();
@@ -1620,7 +1733,7 @@ private FinalizedReplica updateReplicaUnderRecovery(String bpid,
       truncateBlock(replicafile, rur.getMetaFile(), rur.getNumBytes(),
           newlength);
       // update RUR with the new length
-      rur.setNumBytesNoPersistance(newlength);
+      volumeMap.setNumBytes(bpid, rur, newlength);
     }
 
     // finalize the block
@@ -29,22 +29,25 @@
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The underlying volume used to store replica.
  * <p/>
- * It uses the {@link FsDatasetImpl} object for synchronization.
+ * Changes to the replicas on the volume are synchronized by the
+ * {@link FsDatasetImpl} object. The block pool slices and their disk usage
+ * are safe to use concurrently, so updating the usage of one volume, e.g.
+ * after an asynchronous delete, does not wait for the dataset lock.
  */
 @InterfaceAudience.Private
 class FsVolumeImpl implements FsVolumeSpi {
   private final FsDatasetImpl dataset;
   private final String storageID;
   private final Map<String, BlockPoolSlice> bpSlices =
-      new HashMap<String, BlockPoolSlice>();
+      new ConcurrentHashMap<String, BlockPoolSlice>();
   private final File currentDir;    // <StorageDirectory>/current
   private final DF usage;
   private final long reserved;
@@ -69,20 +72,16 @@ File getRbwDir(String bpid) throws IOException {
   }
   
   void decDfsUsed(String bpid, long value) {
-    synchronized (dataset) {
-      BlockPoolSlice bp = bpSlices.get(bpid);
-      if (bp != null) {
-        bp.decDfsUsed(value);
-      }
+    BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.decDfsUsed(value);
     }
   }
   
   long getDfsUsed() throws IOException {
     long dfsUsed = 0;
-    synchronized (dataset) {
-      for (BlockPoolSlice s : bpSlices.values()) {
-        dfsUsed += s.getDfsUsed();
-      }
+    for (BlockPoolSlice s : bpSlices.values()) {
+      dfsUsed += s.getDfsUsed();
     }
     return dfsUsed;
   }
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaUnderRecovery;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.BlockReportBuckets;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The bucket hashes of the replicas of one block pool, updated on every
+ * change of the {@link ReplicaMap}, so that a block report does not have to
+ * hash all the replicas. A replica is hashed as it is reported, see
+ * {@link BlockListAsLongs#getReplicaHash}.
+ * <p/>
+ * It also remembers the replicas removed since the last report the namenode
+ * acknowledged. A report of only some buckets cannot tell the namenode which
+ * of its replicas are gone, the datanode sends their ids instead.
+ * <p/>
+ * Not thread safe, the {@link ReplicaMap} guards it with the lock of the
+ * block pool.
+ */
+class ReplicaBuckets {
+  // the removals remembered between two acknowledged reports, if more
+  // replicas are removed the next report has to contain all the buckets
+  @VisibleForTesting
+  static final int MAX_REMOVED_REPLICAS = 1000000;
+
+  private final long[] hashes;
+  // block id -> number of the removal
+  private final Map<Long, Long> removed = new HashMap<Long, Long>();
+  private long removals = 0;
+  // the last removal that was forgotten because there were too many, -1 if
+  // all removals since the last acknowledged report are known
+  private long forgottenRemovals = -1;
+  private BlockReportBuckets reported = null;
+  private long reportedRemovals = 0;
+
+  ReplicaBuckets(int numBuckets) {
+    this.hashes = new long[numBuckets];
+  }
+
+  /**
+   * A replica was added to the map, in place of the replaced one if any.
+   */
+  void add(ReplicaInfo replica, ReplicaInfo replaced) {
+    if (replaced != null) {
+      update(replaced, -1);
+    }
+    update(replica, 1);
+    removed.remove(replica.getBlockId());
+  }
+
+  void remove(ReplicaInfo replica) {
+    update(replica, -1);
+    if (replica.getState() == ReplicaState.TEMPORARY) {
+      // never reported, so the namenode does not have it
+      return;
+    }
+    if (removed.size() >= MAX_REMOVED_REPLICAS) {
+      removed.clear();
+      forgottenRemovals = removals;
+    }
+    removed.put(replica.getBlockId(), ++removals);
+  }
+
+  /**
+   * Add or subtract the hash of a replica to its bucket.
+   */
+  void update(ReplicaInfo replica, int sign) {
+    if (replica.getState() == ReplicaState.TEMPORARY) {
+      // not part of the block report
+      return;
+    }
+    ReplicaInfo reportedReplica = replica;
+    if (replica.getState() == ReplicaState.RUR) {
+      // reported as the replica that is recovered
+      reportedReplica = ((ReplicaUnderRecovery) replica).getOriginalReplica();
+    }
+    hashes[BlockListAsLongs.getBucket(replica.getBlockId(), hashes.length)] +=
+        sign * BlockListAsLongs.getReplicaHash(reportedReplica.getBlockId(),
+            reportedReplica.getNumBytes(),
+            reportedReplica.getGenerationStamp(), reportedReplica.getState());
+  }
+
+  /**
+   * Remember the current hashes and removals as those of the block report
+   * that is being created.
+   */
+  void snapshot() {
+    long[] removedBlocks = null;
+    if (forgottenRemovals < 0) {
+      removedBlocks = new long[removed.size()];
+      int i = 0;
+      for (Long blockId : removed.keySet()) {
+        removedBlocks[i++] = blockId;
+      }
+    }
+    reported = new BlockReportBuckets(hashes.clone(), removedBlocks);
+    reportedRemovals = removals;
+  }
+
+  /**
+   * @return the hashes and removals of the last snapshot
+   */
+  BlockReportBuckets getReported() {
+    return reported;
+  }
+
+  /**
+   * The namenode processed the report of the last snapshot, forget the
+   * removals it contained.
+   */
+  void acknowledge() {
+    for (Iterator<Long> it = removed.values().iterator(); it.hasNext(); ) {
+      if (it.next() <= reportedRemovals) {
+        it.remove();
+      }
+    }
+    if (forgottenRemovals >= 0 && forgottenRemovals <= reportedRemovals) {
+      forgottenRemovals = -1;
+    }
+  }
+}
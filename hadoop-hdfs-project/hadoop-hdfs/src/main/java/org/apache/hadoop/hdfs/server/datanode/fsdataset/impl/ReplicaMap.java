@@ -19,29 +19,57 @@
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaBeingWritten;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInPipeline;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaUnderRecovery;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaWaitingToBeRecovered;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.BlockReportBuckets;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Maintains the replica map.
+ * <p/>
+ * The map is read far more often than it is changed, so lookups do not take
+ * any lock. Changes to the replicas of a block pool are serialized on the
+ * map of that block pool, which lets {@link #snapshot(String)} copy a
+ * consistent view of one block pool without waiting for the dataset lock.
+ * Generation stamp and length changes of the replicas in the map go through
+ * the map for the same reason, and so that the {@link ReplicaBuckets} of the
+ * block pool are kept up to date.
+ * Adding and removing block pools is synchronized on the mutex.
  */
 class ReplicaMap {
   // Object using which this class is synchronized
   private final Object mutex;
   
   // Map of block pool Id to another map of block Id to ReplicaInfo.
-  private Map<String, Map<Long, ReplicaInfo>> map =
-      new HashMap<String, Map<Long, ReplicaInfo>>();
+  private final Map<String, Map<Long, ReplicaInfo>> map =
+      new ConcurrentHashMap<String, Map<Long, ReplicaInfo>>();
+
+  // number of block report buckets, 0 if the replicas are not hashed
+  private final int numBuckets;
+  // Map of block pool Id to the bucket hashes of its replicas
+  private final Map<String, ReplicaBuckets> buckets =
+      new ConcurrentHashMap<String, ReplicaBuckets>();
   
   ReplicaMap(Object mutex) {
+    this(mutex, 0);
+  }
+
+  ReplicaMap(Object mutex, int numBuckets) {
     if (mutex == null) {
       throw new HadoopIllegalArgumentException(
           "Object to synchronize on cannot be null");
     }
     this.mutex = mutex;
+    this.numBuckets = numBuckets;
   }
   
   String[] getBlockPoolList() {
@@ -97,10 +125,8 @@ ReplicaInfo get(String bpid, Block block) {
    */
   ReplicaInfo get(String bpid, long blockId) {
     checkBlockPool(bpid);
-    synchronized (mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      return m != null ? m.get(blockId) : null;
-    }
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    return m != null ? m.get(blockId) : null;
   }
   
   /**
@@ -117,14 +143,14 @@ ReplicaInfo get(String bpid, long blockId) {
   ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
     checkBlockPool(bpid);
     checkBlock(replicaInfo);
-    synchronized (mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      if (m == null) {
-        // Add an entry for block pool if it does not exist already
-        m = new HashMap<Long, ReplicaInfo>();
-        map.put(bpid, m);
+    Map<Long, ReplicaInfo> m = getOrCreateBlockPool(bpid);
+    synchronized (m) {
+      ReplicaInfo replaced = m.put(replicaInfo.getBlockId(), replicaInfo);
+      ReplicaBuckets b = buckets.get(bpid);
+      if (b != null) {
+        b.add(replicaInfo, replaced);
       }
-      return m.put(replicaInfo.getBlockId(), replicaInfo);
+      return replaced;
     }
   }
   
@@ -143,14 +169,14 @@ ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
   ReplicaInfo remove(String bpid, Block block) {
     checkBlockPool(bpid);
     checkBlock(block);
-    synchronized (mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      if (m != null) {
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    if (m != null) {
+      synchronized (m) {
         Long key = Long.valueOf(block.getBlockId());
         ReplicaInfo replicaInfo = m.get(key);
         if (replicaInfo != null &&
             block.getGenerationStamp() == replicaInfo.getGenerationStamp()) {
-          return m.remove(key);
+          return removeAndHash(bpid, m, key);
         }
       }
     }
@@ -169,15 +195,25 @@ ReplicaInfo remove(String bpid, Block block) {
    */
   ReplicaInfo remove(String bpid, long blockId) {
     checkBlockPool(bpid);
-    synchronized (mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      if (m != null) {
-        return m.remove(blockId);
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    if (m != null) {
+      synchronized (m) {
+        return removeAndHash(bpid, m, blockId);
       }
     }
     return null;
   }
 
+  private ReplicaInfo removeAndHash(String bpid, Map<Long, ReplicaInfo> m,
+      long blockId) {
+    ReplicaInfo replicaInfo = m.remove(blockId);
+    ReplicaBuckets b = buckets.get(bpid);
+    if (replicaInfo != null && b != null) {
+      b.remove(replicaInfo);
+    }
+    return replicaInfo;
+  }
+
   /**
    * Get the size of the map for given block pool
    *
@@ -186,19 +222,15 @@ ReplicaInfo remove(String bpid, long blockId) {
    * @return the number of replicas in the map
    */
   int size(String bpid) {
-    Map<Long, ReplicaInfo> m = null;
-    synchronized (mutex) {
-      m = map.get(bpid);
-      return m != null ? m.size() : 0;
-    }
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    return m != null ? m.size() : 0;
   }
   
   /**
    * Get a collection of the replicas for given block pool
-   * This method is <b>not synchronized</b>. It needs to be synchronized
-   * externally using the mutex, both for getting the replicas
-   * values from the map and iterating over it. Mutex can be accessed using
-   * {@link #getMutext()} method.
+   * This method is <b>not synchronized</b>. Iterating over the collection
+   * does not fail on concurrent changes, but it may or may not see them.
+   * Use {@link #snapshot(String)} for a consistent view.
    *
    * @param bpid
    *     block pool id
@@ -210,22 +242,182 @@ Collection<ReplicaInfo> replicas(String bpid) {
     return m != null ? m.values() : null;
   }
 
+  /**
+   * Copy the replicas of a block pool. Changes to the block pool, including
+   * the generation stamp and length changes made through
+   * {@link #setGenerationStamp} and {@link #setNumBytes}, are held back while
+   * the replicas are copied, so the copy is the content of the block pool at
+   * one point in time. The copies are detached from the replicas in the map
+   * and must not be used to change them. The bucket hashes of that point in
+   * time are kept for {@link #getReportedBuckets(String)}.
+   *
+   * @param bpid
+   *     block pool id
+   * @return copies of the replicas of the block pool, empty if there are none
+   */
+  List<ReplicaInfo> snapshot(String bpid) {
+    checkBlockPool(bpid);
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    if (m == null) {
+      return new ArrayList<ReplicaInfo>(0);
+    }
+    synchronized (m) {
+      List<ReplicaInfo> replicas = new ArrayList<ReplicaInfo>(m.size());
+      for (ReplicaInfo replicaInfo : m.values()) {
+        replicas.add(copyOf(replicaInfo));
+      }
+      ReplicaBuckets b = buckets.get(bpid);
+      if (b != null) {
+        b.snapshot();
+      }
+      return replicas;
+    }
+  }
+
+  /**
+   * @param bpid
+   *     block pool id
+   * @return the bucket hashes of the last {@link #snapshot(String)} of the
+   * block pool, and the replicas removed between the last acknowledged
+   * snapshot and that one. null if the replicas are not hashed or there was
+   * no snapshot yet
+   */
+  BlockReportBuckets getReportedBuckets(String bpid) {
+    synchronized (getLock(bpid)) {
+      ReplicaBuckets b = buckets.get(bpid);
+      return b != null ? b.getReported() : null;
+    }
+  }
+
+  /**
+   * The namenode processed the block report made from the last
+   * {@link #snapshot(String)} of the block pool.
+   *
+   * @param bpid
+   *     block pool id
+   */
+  void acknowledgeReport(String bpid) {
+    synchronized (getLock(bpid)) {
+      ReplicaBuckets b = buckets.get(bpid);
+      if (b != null) {
+        b.acknowledge();
+      }
+    }
+  }
+
+  private static ReplicaInfo copyOf(ReplicaInfo replicaInfo) {
+    switch (replicaInfo.getState()) {
+      case FINALIZED:
+        return new FinalizedReplica((FinalizedReplica) replicaInfo);
+      case RBW:
+        return new ReplicaBeingWritten((ReplicaBeingWritten) replicaInfo);
+      case RWR:
+        return new ReplicaWaitingToBeRecovered(
+            (ReplicaWaitingToBeRecovered) replicaInfo);
+      case RUR:
+        ReplicaUnderRecovery rur = (ReplicaUnderRecovery) replicaInfo;
+        return new ReplicaUnderRecovery(copyOf(rur.getOriginalReplica()),
+            rur.getRecoveryID());
+      case TEMPORARY:
+        return new ReplicaInPipeline((ReplicaInPipeline) replicaInfo);
+      default:
+        throw new IllegalStateException(
+            "Illegal ReplicaInfo state " + replicaInfo.getState());
+    }
+  }
+
+  /**
+   * Change the generation stamp of a replica in the map, so that
+   * {@link #snapshot(String)} never copies it half way through a change.
+   *
+   * @param bpid
+   *     block pool id
+   * @param replicaInfo
+   *     the replica in the map
+   * @param genStamp
+   *     the new generation stamp
+   */
+  void setGenerationStamp(String bpid, ReplicaInfo replicaInfo,
+      long genStamp) {
+    synchronized (getLock(bpid)) {
+      ReplicaBuckets b = getBucketsOf(bpid, replicaInfo);
+      if (b != null) {
+        b.update(replicaInfo, -1);
+      }
+      replicaInfo.setGenerationStampNoPersistance(genStamp);
+      if (b != null) {
+        b.update(replicaInfo, 1);
+      }
+    }
+  }
+
+  /**
+   * Change the length of a replica in the map, so that
+   * {@link #snapshot(String)} never copies it half way through a change.
+   *
+   * @param bpid
+   *     block pool id
+   * @param replicaInfo
+   *     the replica in the map
+   * @param numBytes
+   *     the new length
+   */
+  void setNumBytes(String bpid, ReplicaInfo replicaInfo, long numBytes) {
+    synchronized (getLock(bpid)) {
+      ReplicaBuckets b = getBucketsOf(bpid, replicaInfo);
+      if (b != null) {
+        b.update(replicaInfo, -1);
+      }
+      replicaInfo.setNumBytesNoPersistance(numBytes);
+      if (b != null) {
+        b.update(replicaInfo, 1);
+      }
+    }
+  }
+
+  /**
+   * @return the buckets of the block pool if the replica is in its map
+   */
+  private ReplicaBuckets getBucketsOf(String bpid, ReplicaInfo replicaInfo) {
+    ReplicaBuckets b = buckets.get(bpid);
+    return b != null && get(bpid, replicaInfo.getBlockId()) == replicaInfo ?
+        b : null;
+  }
+
+  private Object getLock(String bpid) {
+    checkBlockPool(bpid);
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    return m != null ? m : mutex;
+  }
+
   void initBlockPool(String bpid) {
     checkBlockPool(bpid);
-    synchronized (mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      if (m == null) {
-        // Add an entry for block pool if it does not exist already
-        m = new HashMap<Long, ReplicaInfo>();
-        map.put(bpid, m);
+    getOrCreateBlockPool(bpid);
+  }
+
+  private Map<Long, ReplicaInfo> getOrCreateBlockPool(String bpid) {
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    if (m == null) {
+      synchronized (mutex) {
+        m = map.get(bpid);
+        if (m == null) {
+          // Add an entry for block pool if it does not exist already
+          m = new ConcurrentHashMap<Long, ReplicaInfo>();
+          if (numBuckets > 0) {
+            buckets.put(bpid, new ReplicaBuckets(numBuckets));
+          }
+          map.put(bpid, m);
+        }
       }
     }
+    return m;
   }
   
   void cleanUpBlockPool(String bpid) {
     checkBlockPool(bpid);
     synchronized (mutex) {
       map.remove(bpid);
+      buckets.remove(bpid);
     }
   }
   
@@ -112,6 +112,10 @@ public class DataNodeMetrics {
   @Metric
   MutableRate sendDataPacketTransferNanos;
   MutableQuantiles[] sendDataPacketTransferNanosQuantiles;
+
+  @Metric
+  MutableRate datasetLockWaitNanos;
+  MutableQuantiles[] datasetLockWaitNanosQuantiles;
   
 
   final MetricsRegistry registry = new MetricsRegistry("datanode");
@@ -127,6 +131,7 @@ public DataNodeMetrics(String name, String sessionId, int[] intervals) {
     fsyncNanosQuantiles = new MutableQuantiles[len];
     sendDataPacketBlockedOnNetworkNanosQuantiles = new MutableQuantiles[len];
     sendDataPacketTransferNanosQuantiles = new MutableQuantiles[len];
+    datasetLockWaitNanosQuantiles = new MutableQuantiles[len];
     
     for (int i = 0; i < len; i++) {
       int interval = intervals[i];
@@ -147,6 +152,10 @@ public DataNodeMetrics(String name, String sessionId, int[] intervals) {
           .newQuantiles("sendDataPacketTransferNanos" + interval + "s",
               "Time reading from disk and writing to network while sending " +
                   "a packet in ns", "ops", "latency", interval);
+      datasetLockWaitNanosQuantiles[i] = registry
+          .newQuantiles("datasetLockWaitNanos" + interval + "s",
+              "Time waited for the dataset lock in ns", "ops", "latency",
+              interval);
     }
   }
 
@@ -291,4 +300,11 @@ public void addSendDataPacketTransferNanos(long latencyNanos) {
       q.add(latencyNanos);
     }
   }
+
+  public void addDatasetLockWaitNanos(long latencyNanos) {
+    datasetLockWaitNanos.add(latencyNanos);
+    for (MutableQuantiles q : datasetLockWaitNanosQuantiles) {
+      q.add(latencyNanos);
+    }
+  }
 }
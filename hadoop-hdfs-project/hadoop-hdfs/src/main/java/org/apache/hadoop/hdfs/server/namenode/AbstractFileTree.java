@@ -40,13 +40,17 @@
 import org.apache.hadoop.security.AccessControlException;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -56,7 +60,14 @@ abstract class AbstractFileTree {
 
   private final FSNamesystem namesystem;
   private final int subtreeRootId;
-  private final List<Future> activeCollectors = new ArrayList<Future>();
+  /**
+   * Directories whose children have not been read yet. It is used as a stack
+   * so that the tree is walked depth first, which keeps the number of pending
+   * directories close to depth times fan-out instead of the width of the
+   * widest level.
+   */
+  private final Deque<PendingDirectory> pendingDirectories =
+      new ArrayDeque<PendingDirectory>();
   private final FsAction subAccess;
   private volatile IOException exception;
 
@@ -78,17 +89,28 @@ public BuildingUpFileTreeFailedException(Throwable cause) {
     }
   }
 
-  private class ChildCollector implements Runnable {
-    private final int parentId;
+  private static class PendingDirectory {
+    private final int id;
     private final int level;
-    private boolean quotaEnabledBranch;
+    private final boolean quotaEnabledBranch;
 
-    private ChildCollector(int parentId, int level,
-        boolean quotaEnabledBranch) {
-      this.parentId = parentId;
+    private PendingDirectory(int id, int level, boolean quotaEnabledBranch) {
+      this.id = id;
       this.level = level;
       this.quotaEnabledBranch = quotaEnabledBranch;
     }
+  }
+
+  /**
+   * Reads the children of a batch of directories in a single request and
+   * queues the subdirectories it finds.
+   */
+  private class ChildCollector implements Runnable {
+    private final List<PendingDirectory> parents;
+
+    private ChildCollector(List<PendingDirectory> parents) {
+      this.parents = parents;
+    }
 
     @Override
     public void run() {
@@ -99,53 +121,16 @@ public Object performTask() throws StorageException, IOException {
               INodeDataAccess<INode> dataAccess =
                   (INodeDataAccess) HdfsStorageFactory
                       .getDataAccess(INodeDataAccess.class);
-                //START ROOT_LEVEL_SNAPSHOT
-             /*
-               * The semantics of space calculations after taking snapshot are
-               * Consider /A/B/C and /A/D/C
-               * 1. If we B is deleted, then the subtree under B is included in NSQuota and DSQuota for /(Root) and A.
-               * 2. If C is moved to D,i.e, by overwriting the file C. Then C is included in NSQuota, DSQuota of {/,A,D}.
-               *  2.1 The NSQuota of B is decreased by 1 and DSQuota is decreased by the size of C.
-               *  2.2 The NSQUota of D is increased by 1 and DAQuota is increased by the size of C.
-               *  2.3 Similary if C is directory(over-writing an non-empty directory is not allowed), then
-               *     2.3.1 The NSQuota of B is decreased by NSQuota of C and DSQuota of B is decreased by the size(DSQuota) of subtree at C.
-               *     2.3.2 The NSQUota of D is increased by NSQuota of C and DAQuota is increased by the the size(DSQuota) of subtree at C.
-               */
-
-                //END ROOT_LELEVL_SNAPSHOT
-                List<ProjectedINode> children;
-                if(namesystem.isSnapshotAtRootTaken()&&(AbstractFileTree.this instanceof CountingFileTree)){
-                    children = dataAccess.findInodesByParentIdForSubTreeOpsWithReadLockIncludeDeletes(parentId);
-                }else{
-                    children= dataAccess
-                            .findInodesForSubtreeOperationsWithWriteLock(parentId);
-                }
-
-              for (ProjectedINode child : children) {
-                if (namesystem.isPermissionEnabled() && subAccess != null) {
-                  checkAccess(child, subAccess);
-                }
-                addChildNode(level, child, quotaEnabledBranch);
-              }
-
-              if (exception != null) {
-                return null;
-              }
-
-              for (ProjectedINode inode : children) {
-                List<ActiveNode> activeNamenodes = namesystem.getNameNode().
-                    getActiveNameNodes().getActiveNodes();
-                if (SubtreeLockHelper.isSubtreeLocked(inode.isSubtreeLocked(),
-                    inode.getSubtreeLockOwner(), activeNamenodes)) {
-                  exception = new SubtreeLockedException(inode.getName(),
-                      activeNamenodes);
+              List<PendingDirectory> subdirectories =
+                  new ArrayList<PendingDirectory>();
+              for (PendingDirectory parent : parents) {
+                if (!collect(dataAccess, parent, subdirectories)) {
                   return null;
                 }
-                if (inode.isDirectory()) {
-                  synchronized (activeCollectors) {
-                    collectChildren(inode.getId(), level + 1,
-                        inode.isDirWithQuota());
-                  }
+              }
+              synchronized (pendingDirectories) {
+                for (PendingDirectory subdirectory : subdirectories) {
+                  pendingDirectories.push(subdirectory);
                 }
               }
               return null;
@@ -158,6 +143,62 @@ public Object performTask() throws StorageException, IOException {
         setExceptionIfNull(e);
       }
     }
+
+    private boolean collect(INodeDataAccess<INode> dataAccess,
+        PendingDirectory parent, List<PendingDirectory> subdirectories)
+        throws IOException {
+      //START ROOT_LEVEL_SNAPSHOT
+      /*
+       * The semantics of space calculations after taking snapshot are
+       * Consider /A/B/C and /A/D/C
+       * 1. If we B is deleted, then the subtree under B is included in NSQuota and DSQuota for /(Root) and A.
+       * 2. If C is moved to D,i.e, by overwriting the file C. Then C is included in NSQuota, DSQuota of {/,A,D}.
+       *  2.1 The NSQuota of B is decreased by 1 and DSQuota is decreased by the size of C.
+       *  2.2 The NSQUota of D is increased by 1 and DAQuota is increased by the size of C.
+       *  2.3 Similary if C is directory(over-writing an non-empty directory is not allowed), then
+       *     2.3.1 The NSQuota of B is decreased by NSQuota of C and DSQuota of B is decreased by the size(DSQuota) of subtree at C.
+       *     2.3.2 The NSQUota of D is increased by NSQuota of C and DAQuota is increased by the the size(DSQuota) of subtree at C.
+       */
+
+      //END ROOT_LELEVL_SNAPSHOT
+      List<ProjectedINode> children;
+      if (namesystem.isSnapshotAtRootTaken() &&
+          (AbstractFileTree.this instanceof CountingFileTree)) {
+        children = dataAccess
+            .findInodesByParentIdForSubTreeOpsWithReadLockIncludeDeletes(
+                parent.id);
+      } else {
+        children =
+            dataAccess.findInodesForSubtreeOperationsWithWriteLock(parent.id);
+      }
+
+      for (ProjectedINode child : children) {
+        if (namesystem.isPermissionEnabled() && subAccess != null) {
+          checkAccess(child, subAccess);
+        }
+        addChildNode(parent.level, child, parent.quotaEnabledBranch);
+      }
+
+      if (exception != null) {
+        return false;
+      }
+
+      List<ActiveNode> activeNamenodes =
+          namesystem.getNameNode().getActiveNameNodes().getActiveNodes();
+      for (ProjectedINode inode : children) {
+        if (SubtreeLockHelper.isSubtreeLocked(inode.isSubtreeLocked(),
+            inode.getSubtreeLockOwner(), activeNamenodes)) {
+          exception = new SubtreeLockedException(inode.getName(),
+              activeNamenodes);
+          return false;
+        }
+        if (inode.isDirectory()) {
+          subdirectories.add(new PendingDirectory(inode.getId(),
+              parent.level + 1, inode.isDirWithQuota()));
+        }
+      }
+      return true;
+    }
   }
 
   public AbstractFileTree(FSNamesystem namesystem, int subtreeRootId) {
@@ -200,15 +241,35 @@ public void buildUp() throws IOException {
     boolean quotaEnabled =
         subtreeRoot instanceof INodeDirectoryWithQuota ? true : false;
     collectChildren(subtreeRootId, 2, quotaEnabled);
+
+    // Back-pressure: at most maxActiveCollectors batches are submitted at a
+    // time, new batches are only taken from the pending directories once a
+    // running collector finished and queued its subdirectories.
+    int maxActiveCollectors = namesystem.getSubtreeMaxActiveCollectors();
+    int batchSize = namesystem.getSubtreeCollectorBatchSize();
+    CompletionService<Object> collectors =
+        new ExecutorCompletionService<Object>(
+            namesystem.getSubtreeOperationsExecutor());
+    int activeCollectors = 0;
     while (true) {
-      Future future;
-      synchronized (activeCollectors) {
-        if (activeCollectors.size() == 0) {
-          break;
+      synchronized (pendingDirectories) {
+        while (exception == null && activeCollectors < maxActiveCollectors &&
+            !pendingDirectories.isEmpty()) {
+          List<PendingDirectory> batch = new ArrayList<PendingDirectory>(
+              Math.min(batchSize, pendingDirectories.size()));
+          while (batch.size() < batchSize && !pendingDirectories.isEmpty()) {
+            batch.add(pendingDirectories.pop());
+          }
+          collectors.submit(new ChildCollector(batch), null);
+          activeCollectors++;
         }
-        future = activeCollectors.remove(0);
+      }
+      if (activeCollectors == 0) {
+        break;
       }
       try {
+        Future future = collectors.take();
+        activeCollectors--;
         future.get();
       } catch (InterruptedException e) {
         LOG.info("FileTree builder was interrupted");
@@ -284,8 +345,10 @@ public Object performTask() throws StorageException, IOException {
 
   private void collectChildren(int parentId, int level,
       boolean quotaEnabledBranch) {
-    activeCollectors.add(namesystem.getSubtreeOperationsExecutor().
-        submit(new ChildCollector(parentId, level, quotaEnabledBranch)));
+    synchronized (pendingDirectories) {
+      pendingDirectories.push(
+          new PendingDirectory(parentId, level, quotaEnabledBranch));
+    }
   }
 
   /**
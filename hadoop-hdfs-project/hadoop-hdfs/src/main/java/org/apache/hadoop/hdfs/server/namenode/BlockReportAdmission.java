@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import io.hops.leader_election.node.ActiveNode;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportSlot;
+import org.apache.hadoop.util.Time;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out full block report slots on the leader namenode. A slot names the
+ * namenode the datanode has to send its report to and is reserved for a time
+ * window that depends on the size of the report. A namenode gets at most
+ * {@link DFSConfigKeys#DFS_BLOCKREPORT_ADMISSION_MAX_CONCURRENT_KEY} reports
+ * at a time and all the namenodes together at most
+ * {@link DFSConfigKeys#DFS_BLOCKREPORT_ADMISSION_MAX_BLOCKS_KEY} blocks, as
+ * they are all processed against the same database. Datanodes that do not get
+ * a slot are queued in the order they first asked and are admitted in that
+ * order.
+ */
+class BlockReportAdmission {
+
+  static final Log LOG = LogFactory.getLog(BlockReportAdmission.class);
+
+  private static class Slot {
+    private final long namenodeId;
+    private final long numBlocks;
+    private final long expiry;
+
+    Slot(long namenodeId, long numBlocks, long expiry) {
+      this.namenodeId = namenodeId;
+      this.numBlocks = numBlocks;
+      this.expiry = expiry;
+    }
+  }
+
+  private static class Waiter {
+    private final long firstRequest;
+    private long lastRequest;
+
+    Waiter(long firstRequest) {
+      this.firstRequest = firstRequest;
+      this.lastRequest = firstRequest;
+    }
+  }
+
+  private final int maxConcurrentPerNamenode;
+  private final long maxBlocksInFlight;
+  private final long blocksPerSecond;
+  private final long minWindow;
+  private final long retryInterval;
+
+  // datanode -> granted slot
+  private final Map<String, Slot> slots = new HashMap<String, Slot>();
+  // datanodes waiting for a slot in the order they first asked
+  private final LinkedHashMap<String, Waiter> queue =
+      new LinkedHashMap<String, Waiter>();
+  // datanode -> namenode of its last slot. a namenode that has not processed
+  // a report of the datanode yet asks for all the buckets, so the datanode is
+  // sent back to the same namenode if possible
+  private final Map<String, Long> lastNamenode = new HashMap<String, Long>();
+  private int nnIndex = 0;
+
+  BlockReportAdmission(Configuration conf) {
+    this.maxConcurrentPerNamenode =
+        conf.getInt(DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_MAX_CONCURRENT_KEY,
+            DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_MAX_CONCURRENT_DEFAULT);
+    this.maxBlocksInFlight =
+        conf.getLong(DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_MAX_BLOCKS_KEY,
+            DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_MAX_BLOCKS_DEFAULT);
+    this.blocksPerSecond = conf.getLong(
+        DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_BLOCKS_PER_SEC_KEY,
+        DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_BLOCKS_PER_SEC_DEFAULT);
+    this.minWindow =
+        conf.getLong(DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_MIN_WINDOW_KEY,
+            DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_MIN_WINDOW_DEFAULT);
+    this.retryInterval =
+        conf.getLong(DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_RETRY_KEY,
+            DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_RETRY_DEFAULT);
+    if (maxConcurrentPerNamenode <= 0 || maxBlocksInFlight <= 0 ||
+        blocksPerSecond <= 0) {
+      throw new IllegalArgumentException(
+          "Block report admission limits should be positive");
+    }
+  }
+
+  /**
+   * @return the time in ms a slot for a report of numBlocks is reserved for
+   */
+  long getWindow(long numBlocks) {
+    return minWindow + numBlocks * 1000 / blocksPerSecond;
+  }
+
+  /**
+   * Grant a slot to the datanode if one is free and no datanode that asked
+   * before it is still waiting for one. A datanode asking again releases the
+   * slot it was granted before.
+   * @param datanode
+   *      storage id of the datanode
+   * @param numBlocks
+   *      number of blocks in the last full report of the datanode
+   * @param namenodes
+   *      the active namenodes
+   * @return the slot, without a namenode if none was granted
+   */
+  synchronized BlockReportSlot requestSlot(String datanode, long numBlocks,
+      List<ActiveNode> namenodes) {
+    long now = Time.now();
+    slots.remove(datanode);
+    expire(now, namenodes);
+
+    Waiter waiter = queue.get(datanode);
+    if (waiter == null) {
+      waiter = new Waiter(now);
+      queue.put(datanode, waiter);
+    }
+    waiter.lastRequest = now;
+
+    Map<Long, Integer> reportsPerNamenode = new HashMap<Long, Integer>();
+    long blocksInFlight = 0;
+    for (Slot slot : slots.values()) {
+      Integer reports = reportsPerNamenode.get(slot.namenodeId);
+      reportsPerNamenode.put(slot.namenodeId, reports == null ? 1 : reports + 1);
+      blocksInFlight += slot.numBlocks;
+    }
+
+    // the namenode of the last slot if it is not full, otherwise the least
+    // loaded namenode, ties are broken round robin
+    Long previous = lastNamenode.get(datanode);
+    ActiveNode target = null;
+    int targetReports = Integer.MAX_VALUE;
+    int freeSlots = 0;
+    nnIndex = namenodes.isEmpty() ? 0 : (nnIndex + 1) % namenodes.size();
+    for (int i = 0; i < namenodes.size(); i++) {
+      ActiveNode namenode = namenodes.get((nnIndex + i) % namenodes.size());
+      Integer reports = reportsPerNamenode.get(namenode.getId());
+      int nnReports = reports == null ? 0 : reports;
+      if (nnReports < maxConcurrentPerNamenode) {
+        freeSlots += maxConcurrentPerNamenode - nnReports;
+        if (previous != null && namenode.getId() == previous) {
+          target = namenode;
+          targetReports = -1;
+        } else if (nnReports < targetReports) {
+          target = namenode;
+          targetReports = nnReports;
+        }
+      }
+    }
+
+    // a report bigger than the whole budget is admitted on its own
+    boolean admit = target != null &&
+        (blocksInFlight + numBlocks <= maxBlocksInFlight || slots.isEmpty()) &&
+        positionInQueue(datanode) < freeSlots;
+
+    BlockReportSlot slot;
+    if (admit) {
+      queue.remove(datanode);
+      long window = getWindow(numBlocks);
+      slots.put(datanode, new Slot(target.getId(), numBlocks, now + window));
+      lastNamenode.put(datanode, target.getId());
+      slot = new BlockReportSlot(target, window, 0);
+      NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      if (metrics != null) {
+        metrics.addBlockReportAdmissionWait(now - waiter.firstRequest);
+      }
+      LOG.debug("Datanode " + datanode + " got a " + slot + " after waiting " +
+          (now - waiter.firstRequest) + " ms");
+    } else {
+      slot = new BlockReportSlot(null, 0, retryInterval);
+    }
+    updateMetrics();
+    return slot;
+  }
+
+  /**
+   * Release the slot of the datanode once its report has been processed,
+   * before the window of the slot expires.
+   * @param datanode
+   *      storage id of the datanode
+   */
+  synchronized void releaseSlot(String datanode) {
+    if (slots.remove(datanode) != null) {
+      updateMetrics();
+    }
+  }
+
+  synchronized int getQueueLength() {
+    return queue.size();
+  }
+
+  synchronized int getSlotsInUse() {
+    return slots.size();
+  }
+
+  private void expire(long now, List<ActiveNode> namenodes) {
+    Iterator<Slot> slotIt = slots.values().iterator();
+    while (slotIt.hasNext()) {
+      Slot slot = slotIt.next();
+      if (slot.expiry <= now || !NameNode.isNameNodeAlive(namenodes,
+          slot.namenodeId)) {
+        slotIt.remove();
+      }
+    }
+    // datanodes that stopped asking, e.g. because they died or got a slot
+    // from another namenode during a leader change
+    Iterator<Waiter> waiterIt = queue.values().iterator();
+    while (waiterIt.hasNext()) {
+      if (waiterIt.next().lastRequest < now - 3 * retryInterval) {
+        waiterIt.remove();
+      }
+    }
+  }
+
+  private int positionInQueue(String datanode) {
+    int position = 0;
+    for (String waiting : queue.keySet()) {
+      if (waiting.equals(datanode)) {
+        return position;
+      }
+      position++;
+    }
+    return position;
+  }
+
+  private void updateMetrics() {
+    NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.setBlockReportAdmission(queue.size(), slots.size());
+    }
+  }
+}
@@ -1628,6 +1628,13 @@ int unprotectedDelete(String src, List<Block> collectedBlocks, long mtime)
     return filesRemoved;
   }
 
+  /**
+   * @return the maximum number of entries returned by one listing call
+   */
+  int getLsLimit() {
+    return lsLimit;
+  }
+
   /**
    * Get a partial listing of the indicated directory
    *
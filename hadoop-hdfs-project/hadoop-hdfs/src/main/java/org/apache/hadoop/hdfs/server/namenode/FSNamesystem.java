@@ -205,6 +205,14 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_DELEGATION_TOKEN_MAX_LIFETIME_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_DELEGATION_TOKEN_RENEW_INTERVAL_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_DELEGATION_TOKEN_RENEW_INTERVAL_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RECOVERY_PARTITIONED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RECOVERY_PARTITIONED_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RECOVERY_THREADS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RECOVERY_THREADS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_BATCH_SIZE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_BATCH_SIZE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_OBJECTS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_OBJECTS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_REPLICATION_MIN_DEFAULT;
@@ -225,8 +233,14 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_PERSIST_BLOCKS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_REPLICATION_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_REPLICATION_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_DELETE_BATCH_SIZE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_DELETE_BATCH_SIZE_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_EXECUTOR_LIMIT_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_EXECUTOR_LIMIT_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_COLLECTOR_BATCH_SIZE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_COLLECTOR_BATCH_SIZE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_MAX_ACTIVE_COLLECTORS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_MAX_ACTIVE_COLLECTORS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUPPORT_APPEND_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUPPORT_APPEND_KEY;
 import static org.apache.hadoop.util.Time.now;
@@ -397,6 +411,9 @@ public boolean isSnapshotAtRootTaken() {
     }
     //END_ROOT_LEVEL_SNAPSHOT 
   private final ExecutorService subtreeOperationsExecutor;
+  private final int subtreeDeleteBatchSize;
+  private final int subtreeMaxActiveCollectors;
+  private final int subtreeCollectorBatchSize;
   private final boolean erasureCodingEnabled;
   private final ErasureCodingManager erasureCodingManager;
 
@@ -500,6 +517,25 @@ public static FSNamesystem loadFromDisk(Configuration conf, NameNode namenode)
       subtreeOperationsExecutor = Executors.newFixedThreadPool(
           conf.getInt(DFS_SUBTREE_EXECUTOR_LIMIT_KEY,
               DFS_SUBTREE_EXECUTOR_LIMIT_DEFAULT));
+      subtreeDeleteBatchSize = Math.max(1,
+          conf.getInt(DFS_SUBTREE_DELETE_BATCH_SIZE_KEY,
+              DFS_SUBTREE_DELETE_BATCH_SIZE_DEFAULT));
+      subtreeMaxActiveCollectors = Math.max(1,
+          conf.getInt(DFS_SUBTREE_MAX_ACTIVE_COLLECTORS_KEY,
+              DFS_SUBTREE_MAX_ACTIVE_COLLECTORS_DEFAULT));
+      subtreeCollectorBatchSize = Math.max(1,
+          conf.getInt(DFS_SUBTREE_COLLECTOR_BATCH_SIZE_KEY,
+              DFS_SUBTREE_COLLECTOR_BATCH_SIZE_DEFAULT));
+      leaseManager.setRenewalFlushing(
+          conf.getLong(DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_KEY,
+              DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_DEFAULT),
+          conf.getInt(DFS_NAMENODE_LEASE_RENEWAL_FLUSH_BATCH_SIZE_KEY,
+              DFS_NAMENODE_LEASE_RENEWAL_FLUSH_BATCH_SIZE_DEFAULT));
+      leaseManager.setRecoveryConcurrency(
+          conf.getInt(DFS_NAMENODE_LEASE_RECOVERY_THREADS_KEY,
+              DFS_NAMENODE_LEASE_RECOVERY_THREADS_DEFAULT),
+          conf.getBoolean(DFS_NAMENODE_LEASE_RECOVERY_PARTITIONED_KEY,
+              DFS_NAMENODE_LEASE_RECOVERY_PARTITIONED_DEFAULT));
 
       
       LOG.info("fsOwner             = " + fsOwner);
@@ -1042,7 +1078,8 @@ LocatedBlocks getBlockLocations(final String clientMachine, final String src,
           public void acquireLock(TransactionLocks locks) throws IOException {
             LockFactory lf = getInstance();
             locks.add(lf.getINodeLock(nameNode, INodeLockType.WRITE,
-                INodeResolveType.PATH, src)).add(lf.getBlockLock())
+                INodeResolveType.PATH, src))
+                .add(lf.getBlockRangeLock(offset, length))
                 .add(lf.getBlockRelated(BLK.RE, BLK.ER, BLK.CR, BLK.UC));
           }
 
@@ -1088,7 +1125,8 @@ public LocatedBlocks getBlockLocations(final String src, final long offset,
           public void acquireLock(TransactionLocks locks) throws IOException {
             LockFactory lf = getInstance();
             locks.add(lf.getINodeLock(nameNode, INodeLockType.READ,
-                INodeResolveType.PATH, src)).add(lf.getBlockLock())
+                INodeResolveType.PATH, src))
+                .add(lf.getBlockRangeLock(offset, length))
                 .add(lf.getBlockRelated(BLK.RE, BLK.ER, BLK.CR, BLK.UC));
           }
 
@@ -3518,6 +3556,13 @@ public Object performTask() throws IOException {
    * Renew the lease(s) held by the given client
    */
   void renewLease(final String holder) throws IOException {
+    if (isInSafeMode()) {
+      throw new SafeModeException("Cannot renew lease for " + holder,
+          safeMode);
+    }
+    if (leaseManager.bufferRenewal(holder)) {
+      return;
+    }
     new HopsTransactionalRequestHandler(HDFSOperationType.RENEW_LEASE) {
       @Override
       public void acquireLock(TransactionLocks locks) throws IOException {
@@ -3527,10 +3572,6 @@ public void acquireLock(TransactionLocks locks) throws IOException {
 
       @Override
       public Object performTask() throws IOException {
-        if (isInSafeMode()) {
-          throw new SafeModeException("Cannot renew lease for " + holder,
-              safeMode);
-        }
         leaseManager.renewLease(holder);
         return null;
       }
@@ -3563,8 +3604,8 @@ DirectoryListing getListing(final String src, final byte[] startAfter,
           @Override
           public void acquireLock(TransactionLocks locks) throws IOException {
             LockFactory lf = LockFactory.getInstance();
-            locks.add(lf.getINodeLock(true/*skip INodeAttr*/, nameNode, INodeLockType.READ,
-                INodeResolveType.PATH_AND_IMMEDIATE_CHILDREN, src));
+            locks.add(lf.getListingINodeLock(nameNode, src, startAfter,
+                dir.getLsLimit()));
             if(needLocation){
                 locks
                 .add(lf.getBlockLock())
@@ -3770,6 +3811,19 @@ public int getExpiredHeartbeats() {
     return datanodeStatistics.getExpiredHeartbeats();
   }
 
+  @Metric({"IdAllocationLatency50thPercentileNanos",
+      "Median latency of an id allocation in ns, as a power of two bound"})
+  public long getIdAllocationLatency50thPercentile() {
+    return IDsMonitor.getInstance().getAllocationLatencyPercentile(50);
+  }
+
+  @Metric({"IdAllocationLatency99thPercentileNanos",
+      "99th percentile latency of an id allocation in ns, as a power of two " +
+          "bound"})
+  public long getIdAllocationLatency99thPercentile() {
+    return IDsMonitor.getInstance().getAllocationLatencyPercentile(99);
+  }
+
   /**
    * @see ClientProtocol#getStats()
    */
@@ -5868,6 +5922,14 @@ boolean isPermissionEnabled() {
   ExecutorService getSubtreeOperationsExecutor() {
     return subtreeOperationsExecutor;
   }
+
+  int getSubtreeMaxActiveCollectors() {
+    return subtreeMaxActiveCollectors;
+  }
+
+  int getSubtreeCollectorBatchSize() {
+    return subtreeCollectorBatchSize;
+  }
   
   boolean isLegacyDeleteEnabled() {
     return legacyDeleteEnabled;
@@ -6647,7 +6709,14 @@ private boolean multiTransactionalDeleteInternal(final String path,
         } else {
 
           for (int i = fileTree.getHeight(); i > 0; i--) {
-            if (deleteTreeLevel(path, fileTree, i, null) == false) {
+            boolean deleted;
+            if (subtreeDeleteBatchSize > 1 &&
+                i > AbstractFileTree.FileTree.ROOT_LEVEL) {
+              deleted = deleteTreeLevelInBatches(fileTree, i);
+            } else {
+              deleted = deleteTreeLevel(path, fileTree, i, null);
+            }
+            if (deleted == false) {
               return false;
             }
           }
@@ -6778,6 +6847,122 @@ public Object performTask() throws IOException {
     return result;
   }
 
+  /**
+   * Deletes a level of the subtree with one transaction per batch of up to
+   * {@link #subtreeDeleteBatchSize} siblings. Each transaction locks the
+   * parent by its id and the siblings with one batched read instead of
+   * resolving the path of every inode.
+   * Does not handle the subtree root or the snapshot bookkeeping, see
+   * {@link #deleteTreeLevel}.
+   */
+  private boolean deleteTreeLevelInBatches(
+      final AbstractFileTree.FileTree fileTree, int level) {
+    Map<Integer, List<ProjectedINode>> inodesByParent =
+        new HashMap<Integer, List<ProjectedINode>>();
+    for (ProjectedINode inode : fileTree.getInodesByLevel(level)) {
+      List<ProjectedINode> siblings = inodesByParent.get(inode.getParentId());
+      if (siblings == null) {
+        siblings = new ArrayList<ProjectedINode>();
+        inodesByParent.put(inode.getParentId(), siblings);
+      }
+      siblings.add(inode);
+    }
+
+    ArrayList<Future> barrier = new ArrayList<Future>();
+    for (Map.Entry<Integer, List<ProjectedINode>> entry : inodesByParent
+        .entrySet()) {
+      final int parentId = entry.getKey();
+      for (final List<ProjectedINode> batch : Lists
+          .partition(entry.getValue(), subtreeDeleteBatchSize)) {
+        Future f = subtreeOperationsExecutor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            return deleteSiblings(parentId, batch);
+          }
+        });
+        barrier.add(f);
+      }
+    }
+
+    boolean result = true;
+    for (Future f : barrier) {
+      try {
+        if (((Boolean) f.get()) == false) {
+          result = false;
+        }
+      } catch (Exception e) {
+        result = false;
+        LOG.error("Exception was thrown during partial delete", e);
+      }
+    }
+    return result;
+  }
+
+  private boolean deleteSiblings(final int parentId,
+      final List<ProjectedINode> siblings) throws IOException {
+    final String[] names = new String[siblings.size()];
+    final int[] inodeIds = new int[siblings.size()];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = siblings.get(i).getName();
+      inodeIds[i] = siblings.get(i).getId();
+    }
+
+    HopsTransactionalRequestHandler deleteHandler =
+        new HopsTransactionalRequestHandler(
+            HDFSOperationType.SUBTREE_BATCHED_DELETE) {
+          @Override
+          public void acquireLock(TransactionLocks locks) throws IOException {
+            LockFactory lf = LockFactory.getInstance();
+            locks.add(lf.getSiblingINodesLock(INodeLockType.WRITE, parentId,
+                names))
+                .add(lf.getLeaseLock(LockType.WRITE))
+                .add(lf.getLeasePathLock(LockType.WRITE))
+                .add(lf.getBlockLock()).add(
+                lf.getBlockRelated(BLK.RE, BLK.CR, BLK.UC, BLK.UR, BLK.PE,
+                    BLK.IV));
+            if (dir.isQuotaEnabled()) {
+              locks.add(lf.getQuotaUpdateLock(inodeIds));
+            }
+            if (erasureCodingEnabled) {
+              locks.add(
+                  lf.getBatchedEncodingStatusLock(LockType.WRITE, inodeIds));
+            }
+          }
+
+          @Override
+          public Object performTask() throws IOException {
+            INode parent = EntityManager.find(INode.Finder.ByINodeId, parentId);
+            if (parent == null) {
+              LOG.error("INode disappeared during deletion");
+              return false;
+            }
+            boolean result = true;
+            ArrayList<Block> collectedBlocks = new ArrayList<Block>();
+            for (String name : names) {
+              INode inode = EntityManager
+                  .find(INode.Finder.ByNameAndParentId, name, parentId);
+              if (inode == null) {
+                LOG.error("INode disappeared during deletion");
+                result = false;
+                continue;
+              }
+              dir.removeChildNonRecursively(new INode[]{parent, inode}, 1);
+              NameNode.getNameNodeMetrics().incrFilesDeleted(1);
+
+              if (inode instanceof INodeFile) {
+                ((INodeFile) inode).collectSubtreeBlocksAndClear(
+                    collectedBlocks);
+              }
+            }
+            parent.setModificationTime(now());
+            removeBlocks(collectedBlocks); // Incremental deletion of blocks
+            collectedBlocks.clear();
+            return result;
+          }
+        };
+    return (Boolean) deleteHandler.handle(this);
+  }
+
   /**
    * Lock a subtree of the filesystem tree.
    * Locking a subtree prevents it from any concurrent write operations.
@@ -19,9 +19,12 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.hops.common.INodeUtil;
 import io.hops.exception.StorageException;
 import io.hops.exception.TransactionContextException;
+import io.hops.leader_election.node.ActiveNode;
+import io.hops.leader_election.node.SortedActiveNodeList;
 import io.hops.metadata.HdfsStorageFactory;
 import io.hops.metadata.hdfs.dal.LeaseDataAccess;
 import io.hops.metadata.hdfs.dal.LeasePathDataAccess;
@@ -42,6 +45,7 @@
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.util.Daemon;
 
 import java.io.IOException;
@@ -53,6 +57,12 @@
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.hops.transaction.lock.LockFactory.BLK;
 import static io.hops.transaction.lock.LockFactory.getInstance;
@@ -93,6 +103,12 @@ public class LeaseManager {
   private Daemon lmthread;
   private volatile boolean shouldRunMonitor;
 
+  private LeaseRenewalBuffer renewals;
+
+  private int recoveryThreads = 1;
+  private boolean partitionedRecovery = false;
+  private ExecutorService recoveryPool;
+
   LeaseManager(FSNamesystem fsnamesystem) {
     this.fsnamesystem = fsnamesystem;
   }
@@ -312,6 +328,75 @@ void renewLease(Lease lease)
     }
   }
 
+  /**
+   * Buffer lease renewals in memory and write them to the database every
+   * flushInterval ms. Other namenodes see a renewal up to one interval
+   * late, so the interval has to stay well below the soft limit.
+   *
+   * @param flushInterval
+   *     0 renews every lease in its own transaction
+   */
+  void setRenewalFlushing(long flushInterval, int batchSize) {
+    Preconditions.checkArgument(
+        flushInterval < HdfsConstants.LEASE_SOFTLIMIT_PERIOD / 2,
+        "Lease renewal flush interval " + flushInterval +
+            " ms must be below half of the lease soft limit");
+    Preconditions.checkState(lmthread == null, "Lease Monitor already running");
+    renewals = flushInterval > 0 ?
+        new LeaseRenewalBuffer(fsnamesystem, flushInterval,
+            Math.max(1, batchSize)) : null;
+  }
+
+  /**
+   * Recover expired leases with up to threads concurrent transactions.
+   *
+   * @param partitioned
+   *     if true every active namenode recovers the expired leases of the
+   *     holders that hash to it, otherwise the leader recovers all of them
+   */
+  void setRecoveryConcurrency(int threads, boolean partitioned) {
+    Preconditions.checkState(lmthread == null, "Lease Monitor already running");
+    this.recoveryThreads = Math.max(1, threads);
+    this.partitionedRecovery = partitioned;
+  }
+
+  /**
+   * Renew the lease(s) held by the given client without a transaction, the
+   * renewal is written to the database by the next flush.
+   *
+   * @return false if renewals are not buffered, the caller has to renew the
+   * lease in a transaction
+   */
+  boolean bufferRenewal(String holder) {
+    if (renewals == null || !renewals.isRunning()) {
+      return false;
+    }
+    renewals.renew(holder, now());
+    return true;
+  }
+
+  /**
+   * Write the buffered lease renewals of this namenode to the database.
+   */
+  void flushRenewals() throws IOException {
+    if (renewals != null) {
+      renewals.flush();
+    }
+  }
+
+  /**
+   * @return the time of the last renewal of the lease, including a renewal
+   * that is still buffered in this namenode
+   */
+  private long getLastRenewal(Lease lease) {
+    long lastUpdate = lease.getLastUpdate();
+    if (renewals != null) {
+      lastUpdate =
+          Math.max(lastUpdate, renewals.getPendingRenewal(lease.getHolder()));
+    }
+    return lastUpdate;
+  }
+
   //HOP: method arguments changed for bug fix HDFS-4248
 //  void changeLease(String src, String dst)
 //      throws StorageException, TransactionContextException {
@@ -433,6 +518,8 @@ public void setLeasePeriod(long softLimit, long hardLimit) {
    * ***************************************************
    * Monitor checks for leases that have expired,
    * and disposes of them.
+   * The expired holders are partitioned over the active namenodes by hash
+   * and each namenode recovers its holders on a pool of recoveryThreads.
    * ****************************************************
    */
   //HOP: FIXME: needSync logic added for bug fix HDFS-4186
@@ -446,22 +533,12 @@ class Monitor implements Runnable {
     public void run() {
       for (; shouldRunMonitor && fsnamesystem.isRunning(); ) {
         try {
-          if (fsnamesystem.isLeader()) {
-            try {
-              if (!fsnamesystem.isInSafeMode()) {
-                SortedSet<Lease> sortedLeases =
-                    (SortedSet<Lease>) findExpiredLeaseHandler
-                        .handle(fsnamesystem);
-                if (sortedLeases != null) {
-                  for (Lease expiredLease : sortedLeases) {
-                    expiredLeaseHandler.setParams(expiredLease.getHolder())
-                        .handle(fsnamesystem);
-                  }
-                }
-              }
-            } catch (IOException ex) {
-              LOG.error(ex);
+          try {
+            if (!fsnamesystem.isInSafeMode()) {
+              recoverExpiredLeases();
             }
+          } catch (IOException ex) {
+            LOG.error(ex);
           }
           Thread.sleep(HdfsServerConstants.NAMENODE_LEASE_RECHECK_INTERVAL);
         } catch (InterruptedException ie) {
@@ -472,6 +549,76 @@ public void run() {
       }
     }
 
+    /**
+     * Recover the expired leases of the holders in the partition of this
+     * namenode, oldest first, and wait for all of them to finish.
+     */
+    private void recoverExpiredLeases()
+        throws IOException, InterruptedException {
+      int[] partition = getRecoveryPartition();
+      if (partition == null) {
+        return;
+      }
+      SortedSet<Lease> sortedLeases =
+          (SortedSet<Lease>) findExpiredLeaseHandler.handle(fsnamesystem);
+      List<String> holders = new ArrayList<String>();
+      if (sortedLeases != null) {
+        for (Lease expiredLease : sortedLeases) {
+          String holder = expiredLease.getHolder();
+          if (isInRecoveryPartition(holder, partition)) {
+            holders.add(holder);
+          }
+        }
+      }
+
+      final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      final AtomicInteger backlog = new AtomicInteger(holders.size());
+      if (metrics != null) {
+        metrics.setExpiredLeaseBacklog(holders.size());
+      }
+      List<Future<?>> recoveries = new ArrayList<Future<?>>(holders.size());
+      for (final String holder : holders) {
+        recoveries.add(recoveryPool.submit(new Callable<Object>() {
+          @Override
+          public Object call() throws IOException {
+            long start = now();
+            try {
+              return newExpiredLeaseHandler().setParams(holder)
+                  .handle(fsnamesystem);
+            } finally {
+              int remaining = backlog.decrementAndGet();
+              if (metrics != null) {
+                metrics.setExpiredLeaseBacklog(remaining);
+                metrics.addLeaseRecovery(now() - start);
+              }
+            }
+          }
+        }));
+      }
+
+      for (int i = 0; i < recoveries.size(); i++) {
+        while (true) {
+          try {
+            recoveries.get(i).get();
+            break;
+          } catch (ExecutionException e) {
+            LOG.error("Cannot recover the lease of " + holders.get(i),
+                e.getCause());
+            break;
+          } catch (InterruptedException ie) {
+            // triggerMonitorCheckNow only asks for the next round to start
+            // early, a stop cancels the recoveries that did not start yet
+            if (!shouldRunMonitor) {
+              for (Future<?> recovery : recoveries) {
+                recovery.cancel(false);
+              }
+              throw ie;
+            }
+          }
+        }
+      }
+    }
+
     LightWeightRequestHandler findExpiredLeaseHandler =
         new LightWeightRequestHandler(
             HDFSOperationType.PREPARE_LEASE_MANAGER_MONITOR) {
@@ -484,46 +631,47 @@ public Object performTask() throws StorageException, IOException {
           }
         };
 
-    HopsTransactionalRequestHandler expiredLeaseHandler =
-        new HopsTransactionalRequestHandler(
-            HDFSOperationType.LEASE_MANAGER_MONITOR) {
-          private Set<String> leasePaths = null;
-
-          @Override
-          public void setUp() throws StorageException {
-            String holder = (String) getParams()[0];
-            leasePaths = INodeUtil.findPathsByLeaseHolder(holder);
-            if(leasePaths!=null){
-              LOG.debug("Total Paths "+leasePaths.size()+" Paths: "+Arrays.toString(leasePaths.toArray()));
-            }
-            
+    HopsTransactionalRequestHandler newExpiredLeaseHandler() {
+      return new HopsTransactionalRequestHandler(
+          HDFSOperationType.LEASE_MANAGER_MONITOR) {
+        private Set<String> leasePaths = null;
+
+        @Override
+        public void setUp() throws StorageException {
+          String holder = (String) getParams()[0];
+          leasePaths = INodeUtil.findPathsByLeaseHolder(holder);
+          if(leasePaths!=null){
+            LOG.debug("Total Paths "+leasePaths.size()+" Paths: "+Arrays.toString(leasePaths.toArray()));
           }
+          
+        }
 
-          @Override
-          public void acquireLock(TransactionLocks locks) throws IOException {
-            String holder = (String) getParams()[0];
-            LockFactory lf = getInstance();
-            
-            locks.add(
-                lf.getINodeLock(fsnamesystem.getNameNode(), INodeLockType.WRITE,
-                    INodeResolveType.PATH,
-                    leasePaths.toArray(new String[leasePaths.size()])))
-                .add(lf.getNameNodeLeaseLock(LockType.WRITE))
-                .add(lf.getLeaseLock(LockType.WRITE, holder))
-                .add(lf.getLeasePathLock(LockType.WRITE, leasePaths.size()))
-                .add(lf.getBlockLock()).add(
-                lf.getBlockRelated(BLK.RE, BLK.CR, BLK.ER, BLK.UC, BLK.UR));
-          }
+        @Override
+        public void acquireLock(TransactionLocks locks) throws IOException {
+          String holder = (String) getParams()[0];
+          LockFactory lf = getInstance();
+          
+          locks.add(
+              lf.getINodeLock(fsnamesystem.getNameNode(), INodeLockType.WRITE,
+                  INodeResolveType.PATH,
+                  leasePaths.toArray(new String[leasePaths.size()])))
+              .add(lf.getLeaseLock(LockType.WRITE,
+                  Arrays.asList(holder, getRecoveryLeaseHolder(holder))))
+              .add(lf.getLeasePathLock(LockType.WRITE, leasePaths.size()))
+              .add(lf.getBlockLock()).add(
+              lf.getBlockRelated(BLK.RE, BLK.CR, BLK.ER, BLK.UC, BLK.UR));
+        }
 
-          @Override
-          public Object performTask() throws StorageException, IOException {
-            String holder = (String) getParams()[0];
-            if (holder != null) {
-              checkLeases(holder);
-            }
-            return null;
+        @Override
+        public Object performTask() throws StorageException, IOException {
+          String holder = (String) getParams()[0];
+          if (holder != null) {
+            checkLeases(holder);
           }
-        };
+          return null;
+        }
+      };
+    }
   }
 
   /**
@@ -561,7 +709,7 @@ private boolean checkLeases(String holder)
         boolean leaseReleased = false;
         leaseReleased = fsnamesystem
             .internalReleaseLease(oldest, lPath.getPath(),
-                HdfsServerConstants.NAMENODE_LEASE_HOLDER);
+                getRecoveryLeaseHolder(holder));
         if (leaseReleased) {
           LOG.info("Lease recovery for file " + lPath +
               " is complete. File closed.");
@@ -595,8 +743,14 @@ private boolean checkLeases(String holder)
   void startMonitor() {
     Preconditions.checkState(lmthread == null, "Lease Monitor already running");
     shouldRunMonitor = true;
+    recoveryPool = Executors.newFixedThreadPool(recoveryThreads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("LeaseRecovery #%d").build());
     lmthread = new Daemon(new Monitor());
     lmthread.start();
+    if (renewals != null) {
+      renewals.start();
+    }
   }
   
   void stopMonitor() {
@@ -610,6 +764,13 @@ void stopMonitor() {
       }
       lmthread = null;
     }
+    if (recoveryPool != null) {
+      recoveryPool.shutdownNow();
+      recoveryPool = null;
+    }
+    if (renewals != null) {
+      renewals.stop();
+    }
   }
 
   /**
@@ -622,11 +783,79 @@ void triggerMonitorCheckNow() {
     lmthread.interrupt();
   }
   
+  /**
+   * @return the index of this namenode among the namenodes that recover
+   * expired leases and their number, or null if this namenode does not
+   * recover any
+   */
+  private int[] getRecoveryPartition() {
+    NameNode nameNode = fsnamesystem.getNameNode();
+    SortedActiveNodeList activeNodes = null;
+    if (partitionedRecovery) {
+      activeNodes = nameNode.getActiveNameNodes();
+    }
+    return getRecoveryPartition(
+        activeNodes == null ? null : activeNodes.getSortedActiveNodes(),
+        nameNode.getId(), fsnamesystem.isLeader());
+  }
+
+  /**
+   * @param nodes
+   *     the sorted active namenodes, or null if the recovery is not
+   *     partitioned
+   * @return the index of the namenode with the given id among the nodes and
+   * their number, or null if it does not recover any expired lease
+   */
+  @VisibleForTesting
+  static int[] getRecoveryPartition(List<ActiveNode> nodes, long nameNodeId,
+      boolean isLeader) {
+    if (nodes != null) {
+      for (int i = 0; i < nodes.size(); i++) {
+        if (nodes.get(i).getId() == nameNodeId) {
+          return new int[]{i, nodes.size()};
+        }
+      }
+    }
+    // until this namenode is in the active list the leader recovers all
+    return isLeader ? new int[]{0, 1} : null;
+  }
+
+  @VisibleForTesting
+  static boolean isInRecoveryPartition(String holder, int[] partition) {
+    return (Lease.getHolderId(holder) & Integer.MAX_VALUE) % partition[1] ==
+        partition[0];
+  }
+
+  /**
+   * The namenode takes over the files of an expired holder under a lease of
+   * its own for that holder, so that concurrent recoveries do not all
+   * update the one lease of {@link HdfsServerConstants#NAMENODE_LEASE_HOLDER}.
+   *
+   * @return the holder the files of the given holder are reassigned to
+   * while their last block is recovered
+   */
+  @VisibleForTesting
+  static String getRecoveryLeaseHolder(String holder) {
+    if (isNameNodeLeaseHolder(holder)) {
+      return holder;
+    }
+    return HdfsServerConstants.NAMENODE_LEASE_HOLDER + "-" + holder;
+  }
+
+  /**
+   * @return true if the holder is {@link
+   * HdfsServerConstants#NAMENODE_LEASE_HOLDER} or one of the recovery
+   * holders derived from it by {@link #getRecoveryLeaseHolder(String)}
+   */
+  public static boolean isNameNodeLeaseHolder(String holder) {
+    return holder.startsWith(HdfsServerConstants.NAMENODE_LEASE_HOLDER);
+  }
+
   private boolean expiredHardLimit(Lease lease) {
-    return now() - lease.getLastUpdate() > hardLimit;
+    return now() - getLastRenewal(lease) > hardLimit;
   }
 
   public boolean expiredSoftLimit(Lease lease) {
-    return now() - lease.getLastUpdate() > softLimit;
+    return now() - getLastRenewal(lease) > softLimit;
   }
 }
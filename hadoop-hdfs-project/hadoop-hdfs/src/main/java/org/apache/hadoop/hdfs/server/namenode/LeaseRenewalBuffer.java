@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import io.hops.transaction.EntityManager;
+import io.hops.transaction.handler.HDFSOperationType;
+import io.hops.transaction.handler.HopsTransactionalRequestHandler;
+import io.hops.transaction.lock.LockFactory;
+import io.hops.transaction.lock.TransactionLockTypes.LockType;
+import io.hops.transaction.lock.TransactionLocks;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+import org.apache.hadoop.util.Daemon;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.hadoop.util.Time.now;
+
+/**
+ * Coalesces the lease renewals received by this namenode. A renewal only
+ * records its time in memory, a daemon writes the latest renewal time of
+ * every holder to the database once per flush interval, at most batchSize
+ * holders per transaction.
+ * A holder stays in the buffer until its renewal is in the database, so
+ * the lease expiry checks of this namenode always see the buffered time.
+ * Other namenodes see a renewal at most one flush interval late.
+ */
+class LeaseRenewalBuffer {
+
+  static final Log LOG = LogFactory.getLog(LeaseRenewalBuffer.class);
+
+  private final FSNamesystem namesystem;
+  private final long flushInterval;
+  private final int batchSize;
+
+  private final ConcurrentHashMap<String, Long> pending =
+      new ConcurrentHashMap<String, Long>();
+  private final Object flushLock = new Object();
+
+  private Daemon flusher;
+  private volatile boolean shouldRun;
+
+  LeaseRenewalBuffer(FSNamesystem namesystem, long flushInterval,
+      int batchSize) {
+    this.namesystem = namesystem;
+    this.flushInterval = flushInterval;
+    this.batchSize = batchSize;
+  }
+
+  void start() {
+    shouldRun = true;
+    flusher = new Daemon(new Flusher());
+    flusher.start();
+  }
+
+  void stop() {
+    if (flusher == null) {
+      return;
+    }
+    shouldRun = false;
+    try {
+      flusher.interrupt();
+      flusher.join(3000);
+    } catch (InterruptedException ie) {
+      LOG.warn("Encountered exception ", ie);
+    }
+    flusher = null;
+    try {
+      flush();
+    } catch (IOException e) {
+      LOG.warn("Could not flush " + pending.size() + " lease renewals", e);
+    }
+  }
+
+  boolean isRunning() {
+    return shouldRun;
+  }
+
+  /**
+   * Record a renewal of the lease of the given holder. Never moves the
+   * buffered renewal time of the holder backwards.
+   */
+  void renew(String holder, long time) {
+    Long previous = pending.putIfAbsent(holder, time);
+    while (previous != null && previous < time) {
+      if (pending.replace(holder, previous, time)) {
+        return;
+      }
+      previous = pending.putIfAbsent(holder, time);
+    }
+  }
+
+  /**
+   * @return the renewal time of the holder that is not in the database yet,
+   * or 0 if there is none
+   */
+  long getPendingRenewal(String holder) {
+    Long time = pending.get(holder);
+    return time == null ? 0 : time;
+  }
+
+  int size() {
+    return pending.size();
+  }
+
+  /**
+   * Write all the buffered renewals to the database. A renewal is only
+   * removed from the buffer once it is committed, and only if the holder
+   * did not renew again in the meantime.
+   */
+  void flush() throws IOException {
+    synchronized (flushLock) {
+      Map<String, Long> batch = new TreeMap<String, Long>();
+      for (Map.Entry<String, Long> entry : pending.entrySet()) {
+        batch.put(entry.getKey(), entry.getValue());
+        if (batch.size() >= batchSize) {
+          flushBatch(batch);
+          batch = new TreeMap<String, Long>();
+        }
+      }
+      if (!batch.isEmpty()) {
+        flushBatch(batch);
+      }
+    }
+  }
+
+  private void flushBatch(final Map<String, Long> batch) throws IOException {
+    final long start = now();
+    new HopsTransactionalRequestHandler(
+        HDFSOperationType.FLUSH_LEASE_RENEWALS) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        locks.add(lf.getLeaseLock(LockType.WRITE, batch.keySet()));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        for (Map.Entry<String, Long> entry : batch.entrySet()) {
+          Lease lease = namesystem.getLeaseManager().getLease(entry.getKey());
+          // the lease may have been released or recovered since the renewal
+          if (lease != null && lease.getLastUpdate() < entry.getValue()) {
+            lease.setLastUpdate(entry.getValue());
+            EntityManager.update(lease);
+          }
+        }
+        return null;
+      }
+    }.handle(namesystem);
+
+    for (Map.Entry<String, Long> entry : batch.entrySet()) {
+      pending.remove(entry.getKey(), entry.getValue());
+    }
+    NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addLeaseRenewalFlush(batch.size(), now() - start);
+    }
+  }
+
+  private class Flusher implements Runnable {
+    @Override
+    public void run() {
+      while (shouldRun && namesystem.isRunning()) {
+        try {
+          Thread.sleep(flushInterval);
+        } catch (InterruptedException ie) {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Lease renewal flusher is interrupted", ie);
+          }
+          continue;
+        }
+        try {
+          flush();
+        } catch (IOException e) {
+          LOG.error("Could not flush " + pending.size() + " lease renewals",
+              e);
+        }
+      }
+    }
+  }
+}
@@ -48,7 +48,9 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
 import org.apache.hadoop.hdfs.server.common.StorageInfo;
 import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportSlot;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeRegistration;
@@ -230,6 +232,8 @@ public long getProtocolVersion(String protocol, long clientVersion)
 
   protected LeaderElection leaderElection;
 
+  private BlockReportAdmission blockReportAdmission;
+
 
   /**
    * Format a new filesystem. Destroys any filesystem that may already exist
@@ -428,6 +432,7 @@ protected void initialize(Configuration conf) throws IOException {
 
     NameNode.initMetrics(conf, this.getRole());
     loadNamesystem(conf);
+    blockReportAdmission = new BlockReportAdmission(conf);
 
     rpcServer = createRpcServer(conf);
 
@@ -1086,6 +1091,37 @@ public ActiveNode getNextNamenodeToSendBlockReport() throws IOException {
     }
   }
 
+  /**
+   * Only the leader coordinates the full block reports. Another namenode is
+   * only asked if the leader could not be reached, e.g. during a leader
+   * change, and grants a slot on a random namenode without any admission
+   * control.
+   * @see DatanodeProtocol#requestBlockReportSlot(DatanodeRegistration, long)
+   */
+  public BlockReportSlot requestBlockReportSlot(
+      DatanodeRegistration registration, long numBlocks) throws IOException {
+    if (isLeader()) {
+      return blockReportAdmission.requestSlot(registration.getStorageID(),
+          numBlocks, getActiveNameNodes().getActiveNodes());
+    } else {
+      return new BlockReportSlot(getNextNamenodeToSendBlockReport(),
+          blockReportAdmission.getWindow(numBlocks), 0);
+    }
+  }
+
+  /**
+   * A namenode that is not the leader did not hand out the slot, or lost
+   * the slots it handed out when the leadership changed, so there is
+   * nothing to release.
+   * @see DatanodeProtocol#releaseBlockReportSlot(DatanodeRegistration)
+   */
+  public void releaseBlockReportSlot(DatanodeRegistration registration)
+      throws IOException {
+    if (isLeader()) {
+      blockReportAdmission.releaseSlot(registration.getStorageID());
+    }
+  }
+
   private static void dropAndCreateDB(Configuration conf) throws IOException {
     HdfsStorageFactory.setConfiguration(conf);
     HdfsStorageFactory.getConnector().dropAndRecreateDB();
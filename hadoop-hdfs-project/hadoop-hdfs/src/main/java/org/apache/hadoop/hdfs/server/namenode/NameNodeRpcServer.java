@@ -66,6 +66,7 @@
 import org.apache.hadoop.hdfs.server.common.StorageInfo;
 import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.namenode.web.resources.NamenodeWebHdfsMethods;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportSlot;
 import org.apache.hadoop.hdfs.server.protocol.BlocksWithLocations;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
@@ -820,10 +821,21 @@ public DatanodeCommand blockReport(DatanodeRegistration nodeReg,
               blist.getNumberOfBlocks() + " blocks");
     }
 
-    namesystem.getBlockManager().processReport(nodeReg, poolId, blist);
+    namesystem.getBlockManager().processReport(nodeReg, poolId, blist,
+        reports[0].getBucketHashes(), reports[0].getReportedBuckets(),
+        reports[0].getRemovedBlocks());
     return new FinalizeCommand(poolId);
   }
 
+  @Override // DatanodeProtocol
+  public int[] getMismatchingBlockReportBuckets(DatanodeRegistration nodeReg,
+      String poolId, long[] bucketHashes, long[] acknowledgedHashes)
+      throws IOException {
+    verifyRequest(nodeReg);
+    return namesystem.getBlockManager().getMismatchingBlockReportBuckets(
+        nodeReg, bucketHashes, acknowledgedHashes);
+  }
+
   @Override // DatanodeProtocol
   public void blockReceivedAndDeleted(DatanodeRegistration nodeReg,
       String poolId, StorageReceivedDeletedBlocks[] receivedAndDeletedBlocks)
@@ -989,6 +1001,18 @@ public SortedActiveNodeList getActiveNamenodes() throws IOException {
   public ActiveNode getNextNamenodeToSendBlockReport() throws IOException {
     return nn.getNextNamenodeToSendBlockReport();
   }
+
+  @Override
+  public BlockReportSlot requestBlockReportSlot(
+      DatanodeRegistration registration, long numBlocks) throws IOException {
+    return nn.requestBlockReportSlot(registration, numBlocks);
+  }
+
+  @Override
+  public void releaseBlockReportSlot(DatanodeRegistration registration)
+      throws IOException {
+    nn.releaseBlockReportSlot(registration);
+  }
   
   @Override
   public void ping() throws IOException {
@@ -15,6 +15,8 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.hops.common.IDsGeneratorFactory;
 import io.hops.exception.StorageException;
 import io.hops.exception.TransactionContextException;
@@ -35,6 +37,7 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.util.Daemon;
 
 import java.io.IOException;
@@ -42,8 +45,16 @@
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.hadoop.util.ExitUtil.terminate;
 
@@ -52,6 +63,13 @@
  * Each operation that affects the quota adds a log entry to our database.
  * This daemon periodically reads a batch of these updates, combines them if
  * possible and applies them.
+ * The batch is partitioned by inode id over a pool of workers, so all the
+ * updates of a directory are always merged and applied by the same worker.
+ * Each worker applies the merged updates of up to
+ * {@link DFSConfigKeys#DFS_NAMENODE_QUOTA_UPDATE_DIRS_PER_TX_KEY}
+ * directories per transaction. The parent id and name of recently updated
+ * directories are remembered, so that the directories of a transaction can
+ * mostly be locked with one batched primary key read.
  */
 public class QuotaUpdateManager {
 
@@ -61,12 +79,36 @@ public class QuotaUpdateManager {
 
   private final int updateInterval;
   private final int updateLimit;
+  private final int numWorkers;
+  private final int dirsPerTransaction;
 
   private final Daemon updateThread = new Daemon(new QuotaUpdateMonitor());
+  private ExecutorService workers;
 
   private final ConcurrentLinkedQueue<Iterator<Integer>> prioritizedUpdates =
       new ConcurrentLinkedQueue<Iterator<Integer>>();
 
+  /**
+   * The number of directories whose parent id and name are remembered.
+   */
+  @VisibleForTesting
+  static final int KNOWN_DIRECTORIES = 10000;
+
+  private final Map<Integer, INodeIdentifier> knownDirectories =
+      Collections.synchronizedMap(
+          new LinkedHashMap<Integer, INodeIdentifier>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<Integer, INodeIdentifier> eldest) {
+              return size() > KNOWN_DIRECTORIES;
+            }
+          });
+
+  /**
+   * Updates read in the current round that are not applied yet.
+   */
+  private final AtomicInteger pendingUpdates = new AtomicInteger();
+
   public QuotaUpdateManager(FSNamesystem namesystem, Configuration conf) {
     this.namesystem = namesystem;
     updateInterval =
@@ -74,14 +116,27 @@ public QuotaUpdateManager(FSNamesystem namesystem, Configuration conf) {
             DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_INTERVAL_DEFAULT);
     updateLimit = conf.getInt(DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_LIMIT_KEY,
         DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_LIMIT_DEFAULT);
+    numWorkers = Math.max(1,
+        conf.getInt(DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_THREADS_KEY,
+            DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_THREADS_DEFAULT));
+    dirsPerTransaction = Math.max(1,
+        conf.getInt(DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_DIRS_PER_TX_KEY,
+            DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_DIRS_PER_TX_DEFAULT));
   }
 
   public void activate() {
-    LOG.debug("QuotaUpdateMonitor is running");
+    LOG.debug("QuotaUpdateMonitor is running with " + numWorkers +
+        " workers");
+    workers = Executors.newFixedThreadPool(numWorkers,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("QuotaUpdateWorker #%d").build());
     updateThread.start();
   }
 
   public void close() {
+    if (workers != null) {
+      workers.shutdownNow();
+    }
     if (updateThread != null) {
       updateThread.interrupt();
       try {
@@ -145,7 +200,7 @@ public void run() {
     }
   }
 
-  private final Comparator<QuotaUpdate> quotaUpdateComparator =
+  private static final Comparator<QuotaUpdate> quotaUpdateComparator =
       new Comparator<QuotaUpdate>() {
         @Override
         public int compare(QuotaUpdate quotaUpdate, QuotaUpdate quotaUpdate2) {
@@ -172,10 +227,12 @@ public Object performTask() throws IOException {
         };
 
     List<QuotaUpdate> quotaUpdates = (List<QuotaUpdate>) findHandler.handle();
+    setPendingUpdates(quotaUpdates.size());
     applyBatchedUpdate(quotaUpdates);
   }
 
-  private void processNextUpdateBatch() throws IOException {
+  private void processNextUpdateBatch()
+      throws IOException, InterruptedException {
     LightWeightRequestHandler findHandler =
         new LightWeightRequestHandler(HDFSOperationType.GET_NEXT_QUOTA_BATCH) {
           @Override
@@ -188,22 +245,110 @@ public Object performTask() throws IOException {
         };
 
     List<QuotaUpdate> quotaUpdates = (List<QuotaUpdate>) findHandler.handle();
-    Collections.sort(quotaUpdates, quotaUpdateComparator);
+    NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.setQuotaUpdatesRead(quotaUpdates.size());
+    }
+    setPendingUpdates(quotaUpdates.size());
+    if (quotaUpdates.isEmpty()) {
+      return;
+    }
 
-    ArrayList<QuotaUpdate> batch = new ArrayList<QuotaUpdate>();
+    List<List<QuotaUpdate>> shards = shard(quotaUpdates, numWorkers);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    for (final List<QuotaUpdate> shard : shards) {
+      if (shard.isEmpty()) {
+        continue;
+      }
+      futures.add(workers.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          applyShard(shard);
+          return null;
+        }
+      }));
+    }
+
+    try {
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Partitions the updates by inode id, so all the updates of a directory
+   * end up in the same shard.
+   */
+  @VisibleForTesting
+  static List<List<QuotaUpdate>> shard(List<QuotaUpdate> quotaUpdates,
+      int numShards) {
+    List<List<QuotaUpdate>> shards = new ArrayList<List<QuotaUpdate>>();
+    for (int i = 0; i < numShards; i++) {
+      shards.add(new ArrayList<QuotaUpdate>());
+    }
     for (QuotaUpdate update : quotaUpdates) {
+      shards.get((update.getInodeId() & Integer.MAX_VALUE) % numShards)
+          .add(update);
+    }
+    return shards;
+  }
+
+  /**
+   * Groups the updates of a shard per directory, and the directories into
+   * transactions of at most dirsPerTransaction directories each.
+   */
+  @VisibleForTesting
+  static List<List<List<QuotaUpdate>>> groupByDirectory(
+      List<QuotaUpdate> shard, int dirsPerTransaction) {
+    Collections.sort(shard, quotaUpdateComparator);
+
+    List<List<List<QuotaUpdate>>> transactions =
+        new ArrayList<List<List<QuotaUpdate>>>();
+    List<List<QuotaUpdate>> dirUpdates = new ArrayList<List<QuotaUpdate>>();
+    ArrayList<QuotaUpdate> batch = new ArrayList<QuotaUpdate>();
+    for (QuotaUpdate update : shard) {
       if (batch.size() == 0 ||
           batch.get(0).getInodeId() == update.getInodeId()) {
         batch.add(update);
       } else {
-        applyBatchedUpdate(batch);
+        dirUpdates.add(batch);
         batch = new ArrayList<QuotaUpdate>();
         batch.add(update);
       }
+      if (dirUpdates.size() == dirsPerTransaction) {
+        transactions.add(dirUpdates);
+        dirUpdates = new ArrayList<List<QuotaUpdate>>();
+      }
     }
 
     if (batch.size() != 0) {
-      applyBatchedUpdate(batch);
+      dirUpdates.add(batch);
+    }
+    if (dirUpdates.size() != 0) {
+      transactions.add(dirUpdates);
+    }
+    return transactions;
+  }
+
+  /**
+   * Merges the updates of each directory in the shard and applies them,
+   * {@link #dirsPerTransaction} directories per transaction.
+   */
+  private void applyShard(List<QuotaUpdate> shard) throws IOException {
+    for (List<List<QuotaUpdate>> dirUpdates : groupByDirectory(shard,
+        dirsPerTransaction)) {
+      applyBatchedUpdates(dirUpdates);
     }
   }
 
@@ -212,88 +357,157 @@ private void applyBatchedUpdate(final List<QuotaUpdate> updates)
     if (updates.size() == 0) {
       return;
     }
+    applyBatchedUpdates(Collections.singletonList(updates));
+  }
+
+  /**
+   * Applies the merged updates of several directories in one transaction.
+   *
+   * @param dirUpdates
+   *     one list of updates per directory, all updates of a list belong to
+   *     the same inode
+   */
+  private void applyBatchedUpdates(final List<List<QuotaUpdate>> dirUpdates)
+      throws IOException {
+    final long startTime = System.currentTimeMillis();
     new HopsTransactionalRequestHandler(HDFSOperationType.APPLY_QUOTA_UPDATE) {
-      INodeIdentifier iNodeIdentifier;
+      List<INodeIdentifier> inodeIdentifiers;
 
       @Override
       public void setUp() throws IOException {
         super.setUp();
-        iNodeIdentifier = new INodeIdentifier(updates.get(0).getInodeId());
+        inodeIdentifiers = new ArrayList<INodeIdentifier>(dirUpdates.size());
+        for (List<QuotaUpdate> updates : dirUpdates) {
+          inodeIdentifiers.add(getINodeIdentifier(updates.get(0).getInodeId()));
+        }
       }
 
       @Override
       public void acquireLock(TransactionLocks locks) throws IOException {
         LockFactory lf = LockFactory.getInstance();
-        locks.add(
-            lf.getIndividualINodeLock(TransactionLockTypes.INodeLockType.WRITE,
-                iNodeIdentifier));
+        locks.add(lf.getINodeIdsLock(TransactionLockTypes.INodeLockType.WRITE,
+            inodeIdentifiers));
       }
 
       @Override
       public Object performTask() throws IOException {
-        INodeDirectory dir = (INodeDirectory) EntityManager
-            .find(INode.Finder.ByINodeId, updates.get(0).getInodeId());
-        if (dir != null && SubtreeLockHelper
-            .isSubtreeLocked(dir.isSubtreeLocked(), dir.getSubtreeLockOwner(),
-                namesystem.getNameNode().getActiveNameNodes()
-                    .getActiveNodes())) {
-          /*
-           * We cannot process updates to keep move operations consistent. Otherwise the calculated size of the subtree
-           * could differ from the view of the parent if outstanding quota updates are applied after being considered
-           * by the QuotaCountingFileTree but before successfully moving the subtree.
-           */
-          return null;
+        for (List<QuotaUpdate> updates : dirUpdates) {
+          applyUpdates(updates);
         }
+        return null;
+      }
+    }.handle(this);
 
-        long namespaceDelta = 0;
-        long diskspaceDelta = 0;
-        for (QuotaUpdate update : updates) {
-          namespaceDelta += update.getNamespaceDelta();
-          diskspaceDelta += update.getDiskspaceDelta();
-          LOG.debug("handling " + update);
-          EntityManager.remove(update);
-        }
+    int applied = 0;
+    for (List<QuotaUpdate> updates : dirUpdates) {
+      applied += updates.size();
+    }
+    NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addQuotaUpdateApply(System.currentTimeMillis() - startTime);
+      metrics.setQuotaUpdatesPending(pendingUpdates.addAndGet(-applied));
+    }
+  }
 
-        if (dir == null) {
-          LOG.debug("dropping update for " + updates.get(0) + " ns " +
-              namespaceDelta + " ds " + diskspaceDelta +
-              " because of deletion");
-          return null;
-        }
-        if (namespaceDelta == 0 && diskspaceDelta == 0) {
-          return null;
-        }
+  private void setPendingUpdates(int pending) {
+    pendingUpdates.set(pending);
+    NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.setQuotaUpdatesPending(pending);
+    }
+  }
 
-        if (dir != null && dir.isQuotaSet()) {
-          INodeDirectoryWithQuota quotaDir = (INodeDirectoryWithQuota) dir;
-          INodeAttributes attributes = quotaDir.getINodeAttributes();
-  //START ROOT_LEVEL_SNAPSHOT
-          /**
-           * Since the original quota values are changed in the INodeAttributes table for this directory with quota, we take a backup of that row.
-           */
-          if(namesystem.isSnapshotAtRootTaken()&&quotaDir.getStatus()!= SnapShotConstants.New&&attributes.getStatus()==SnapShotConstants.Original){
-              INodeAttributes backUpRecord = new INodeAttributes(-attributes.getInodeId(),  attributes.getNsQuota(),attributes.getNsCount(), attributes.getDsQuota(), attributes.getDiskspace(), SnapShotConstants.Original);
-              attributes.setStatus(SnapShotConstants.Modified);
-              EntityManager.add(backUpRecord);
-          }
-          //END ROOT_LEVEL_SNAPSHOT
-          attributes.setNsCount(attributes.getNsCount() + namespaceDelta);
-          attributes.setDiskspace(attributes.getDiskspace() + diskspaceDelta);
-          LOG.debug("applying aggregated update for directory " + dir.getId() +
-              " with namespace delta " + namespaceDelta +
-              " and diskspace delta " + diskspaceDelta);
-        }
+  /**
+   * @return the id of the directory, with its parent id and name if they
+   * are known
+   */
+  @VisibleForTesting
+  INodeIdentifier getINodeIdentifier(int inodeId) {
+    INodeIdentifier inodeIdentifier = new INodeIdentifier(inodeId);
+    INodeIdentifier known = knownDirectories.get(inodeId);
+    if (known != null) {
+      inodeIdentifier.setName(known.getName());
+      inodeIdentifier.setPid(known.getPid());
+    }
+    return inodeIdentifier;
+  }
 
-        if (dir != null && dir.getId() != INodeDirectory.ROOT_ID) {
-          QuotaUpdate parentUpdate =
-              new QuotaUpdate(nextId(), dir.getParentId(), namespaceDelta,
-                  diskspaceDelta);
-          EntityManager.add(parentUpdate);
-          LOG.debug("adding parent update " + parentUpdate);
-        }
-        return null;
+  @VisibleForTesting
+  void rememberDirectory(INode dir) {
+    INodeIdentifier inodeIdentifier = new INodeIdentifier(dir.getId());
+    inodeIdentifier.setName(dir.getLocalName());
+    inodeIdentifier.setPid(dir.getParentId());
+    knownDirectories.put(dir.getId(), inodeIdentifier);
+  }
+
+  /**
+   * Applies the merged updates of one directory. Must run within a
+   * transaction holding a write lock on the directory.
+   */
+  private void applyUpdates(List<QuotaUpdate> updates)
+      throws IOException {
+    INodeDirectory dir = (INodeDirectory) EntityManager
+        .find(INode.Finder.ByINodeId, updates.get(0).getInodeId());
+    if (dir != null && SubtreeLockHelper
+        .isSubtreeLocked(dir.isSubtreeLocked(), dir.getSubtreeLockOwner(),
+            namesystem.getNameNode().getActiveNameNodes()
+                .getActiveNodes())) {
+      /*
+       * We cannot process updates to keep move operations consistent. Otherwise the calculated size of the subtree
+       * could differ from the view of the parent if outstanding quota updates are applied after being considered
+       * by the QuotaCountingFileTree but before successfully moving the subtree.
+       */
+      return;
+    }
+
+    long namespaceDelta = 0;
+    long diskspaceDelta = 0;
+    for (QuotaUpdate update : updates) {
+      namespaceDelta += update.getNamespaceDelta();
+      diskspaceDelta += update.getDiskspaceDelta();
+      LOG.debug("handling " + update);
+      EntityManager.remove(update);
+    }
+
+    if (dir == null) {
+      knownDirectories.remove(updates.get(0).getInodeId());
+      LOG.debug("dropping update for " + updates.get(0) + " ns " +
+          namespaceDelta + " ds " + diskspaceDelta +
+          " because of deletion");
+      return;
+    }
+    rememberDirectory(dir);
+    if (namespaceDelta == 0 && diskspaceDelta == 0) {
+      return;
+    }
+
+    if (dir.isQuotaSet()) {
+      INodeDirectoryWithQuota quotaDir = (INodeDirectoryWithQuota) dir;
+      INodeAttributes attributes = quotaDir.getINodeAttributes();
+//START ROOT_LEVEL_SNAPSHOT
+      /**
+       * Since the original quota values are changed in the INodeAttributes table for this directory with quota, we take a backup of that row.
+       */
+      if(namesystem.isSnapshotAtRootTaken()&&quotaDir.getStatus()!= SnapShotConstants.New&&attributes.getStatus()==SnapShotConstants.Original){
+          INodeAttributes backUpRecord = new INodeAttributes(-attributes.getInodeId(),  attributes.getNsQuota(),attributes.getNsCount(), attributes.getDsQuota(), attributes.getDiskspace(), SnapShotConstants.Original);
+          attributes.setStatus(SnapShotConstants.Modified);
+          EntityManager.add(backUpRecord);
       }
-    }.handle(this);
+      //END ROOT_LEVEL_SNAPSHOT
+      attributes.setNsCount(attributes.getNsCount() + namespaceDelta);
+      attributes.setDiskspace(attributes.getDiskspace() + diskspaceDelta);
+      LOG.debug("applying aggregated update for directory " + dir.getId() +
+          " with namespace delta " + namespaceDelta +
+          " and diskspace delta " + diskspaceDelta);
+    }
+
+    if (dir.getId() != INodeDirectory.ROOT_ID) {
+      QuotaUpdate parentUpdate =
+          new QuotaUpdate(nextId(), dir.getParentId(), namespaceDelta,
+              diskspaceDelta);
+      EntityManager.add(parentUpdate);
+      LOG.debug("adding parent update " + parentUpdate);
+    }
   }
 
   /**
@@ -29,6 +29,7 @@
 import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.lib.MutableStat;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 
 import static org.apache.hadoop.metrics2.impl.MsInfo.ProcessName;
@@ -50,6 +51,8 @@ public class NameNodeMetrics {
   MutableCounterLong filesAppended;
   @Metric
   MutableCounterLong getBlockLocations;
+  @Metric("Block, replica and corrupt replica rows read by getBlockLocations")
+  MutableCounterLong blockLocationsRowsRead;
   @Metric
   MutableCounterLong filesRenamed;
   @Metric
@@ -70,6 +73,16 @@ public class NameNodeMetrics {
   MutableCounterLong getLinkTargetOps;
   @Metric
   MutableCounterLong filesInGetListingOps;
+  @Metric("Paths resolved with one batched read of the resolving cache ids")
+  MutableCounterLong batchedPathResolutionHits;
+  @Metric("Batched resolutions that fell back to the component walk")
+  MutableCounterLong batchedPathResolutionMisses;
+  @Metric("Paths resolved by the local tier of the resolving cache")
+  MutableCounterLong resolvingCacheLocalHits;
+  @Metric("Paths the local tier of the resolving cache did not have")
+  MutableCounterLong resolvingCacheLocalMisses;
+  @Metric("Gets served by the remote tier of the resolving cache")
+  MutableRate resolvingCacheRemoteGet;
 
   @Metric("Journal transactions")
   MutableRate transactions;
@@ -82,6 +95,29 @@ public class NameNodeMetrics {
   MutableRate blockReport;
   MutableQuantiles[] blockReportQuantiles;
 
+  @Metric("Quota updates read in the last quota update round")
+  MutableGaugeInt quotaUpdatesRead;
+  @Metric("Quota updates read by the leader that are not applied yet")
+  MutableGaugeInt quotaUpdatesPending;
+  @Metric("Quota update apply transactions")
+  MutableRate quotaUpdateApply;
+
+  @Metric(value = "Lease holders written per lease renewal flush",
+      sampleName = "Flushes", valueName = "Holders")
+  MutableStat leaseRenewalFlushBatchSize;
+  @Metric("Lease renewal flush transactions")
+  MutableRate leaseRenewalFlush;
+  @Metric("Expired lease holders this namenode has still to recover")
+  MutableGaugeInt expiredLeaseBacklog;
+  @Metric("Expired lease recovery transactions")
+  MutableRate leaseRecovery;
+  @Metric("Datanodes waiting for a full block report slot")
+  MutableGaugeInt blockReportAdmissionQueue;
+  @Metric("Full block report slots in use")
+  MutableGaugeInt blockReportSlotsInUse;
+  @Metric("Time datanodes waited for a full block report slot")
+  MutableRate blockReportAdmissionWait;
+
   @Metric("Duration in SafeMode at startup")
   MutableGaugeInt safeModeTime;
   @Metric("Time loading FS Image at startup")
@@ -165,10 +201,34 @@ public void incrFilesInGetListingOps(int delta) {
     filesInGetListingOps.incr(delta);
   }
 
+  public void incrBlockLocationsRowsRead(long rows) {
+    blockLocationsRowsRead.incr(rows);
+  }
+
   public void incrFileInfoOps() {
     fileInfoOps.incr();
   }
 
+  public void incrBatchedPathResolutionHits() {
+    batchedPathResolutionHits.incr();
+  }
+
+  public void incrBatchedPathResolutionMisses() {
+    batchedPathResolutionMisses.incr();
+  }
+
+  public void incrResolvingCacheLocalHits() {
+    resolvingCacheLocalHits.incr();
+  }
+
+  public void incrResolvingCacheLocalMisses() {
+    resolvingCacheLocalMisses.incr();
+  }
+
+  public void addResolvingCacheRemoteGet(long latency) {
+    resolvingCacheRemoteGet.add(latency);
+  }
+
   public void incrCreateSymlinkOps() {
     createSymlinkOps.incr();
   }
@@ -203,6 +263,40 @@ public void addBlockReport(long latency) {
     }
   }
 
+  public void setQuotaUpdatesRead(int read) {
+    quotaUpdatesRead.set(read);
+  }
+
+  public void setQuotaUpdatesPending(int pending) {
+    quotaUpdatesPending.set(pending);
+  }
+
+  public void addQuotaUpdateApply(long latency) {
+    quotaUpdateApply.add(latency);
+  }
+
+  public void addLeaseRenewalFlush(int holders, long latency) {
+    leaseRenewalFlushBatchSize.add(holders);
+    leaseRenewalFlush.add(latency);
+  }
+
+  public void setExpiredLeaseBacklog(int holders) {
+    expiredLeaseBacklog.set(holders);
+  }
+
+  public void addLeaseRecovery(long latency) {
+    leaseRecovery.add(latency);
+  }
+
+  public void setBlockReportAdmission(int queued, int slotsInUse) {
+    blockReportAdmissionQueue.set(queued);
+    blockReportSlotsInUse.set(slotsInUse);
+  }
+
+  public void addBlockReportAdmissionWait(long wait) {
+    blockReportAdmissionWait.add(wait);
+  }
+
   public void setSafeModeTime(long elapsed) {
     safeModeTime.set((int) elapsed);
   }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.protocol;
+
+import io.hops.leader_election.node.ActiveNode;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Response to {@link DatanodeProtocol#requestBlockReportSlot}. If a slot was
+ * granted, the datanode has the window to send its full block report to the
+ * given namenode. Otherwise it should not ask again before retryAfter ms.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class BlockReportSlot {
+  private final ActiveNode namenode;
+  private final long window;
+  private final long retryAfter;
+
+  public BlockReportSlot(ActiveNode namenode, long window, long retryAfter) {
+    this.namenode = namenode;
+    this.window = window;
+    this.retryAfter = retryAfter;
+  }
+
+  /**
+   * @return the namenode to send the block report to, or null if no slot was
+   * granted
+   */
+  public ActiveNode getNamenode() {
+    return namenode;
+  }
+
+  public boolean isGranted() {
+    return namenode != null;
+  }
+
+  /**
+   * @return time in ms the slot is reserved for the datanode
+   */
+  public long getWindow() {
+    return window;
+  }
+
+  /**
+   * @return time in ms after which the datanode may ask for a slot again
+   */
+  public long getRetryAfter() {
+    return retryAfter;
+  }
+
+  @Override
+  public String toString() {
+    return isGranted() ? "slot on " + namenode.getInetSocketAddress() +
+        " for " + window + " ms" : "no slot, retry after " + retryAfter + " ms";
+  }
+}
@@ -190,4 +190,48 @@ public void commitBlockSynchronization(ExtendedBlock block,
    */
   public ActiveNode getNextNamenodeToSendBlockReport() throws IOException;
 
+  /**
+   * The datanode asks the leader namenode for a slot to send its next full
+   * block report in. The leader hands out slots based on the number of block
+   * reports and blocks each namenode is currently processing, so that a mass
+   * restart of datanodes does not overload the namenodes and the database.
+   * @param registration
+   *      datanode registration
+   * @param numBlocks
+   *      number of blocks in the last full block report of the datanode
+   * @return the granted slot, or a slot without a namenode if the datanode
+   * has to ask again later
+   */
+  public BlockReportSlot requestBlockReportSlot(
+      DatanodeRegistration registration, long numBlocks) throws IOException;
+
+  /**
+   * The datanode tells the leader namenode that the block report it was
+   * granted a slot for has been processed, so that the slot can be handed
+   * to the next datanode before its window expires.
+   * @param registration
+   *      datanode registration
+   */
+  public void releaseBlockReportSlot(DatanodeRegistration registration)
+      throws IOException;
+
+  /**
+   * The datanode sends the hashes of the buckets of its full block report
+   * first, and then only reports the blocks of the buckets whose hash changed
+   * since the last report the namenodes processed.
+   * @param registration
+   *      datanode registration
+   * @param poolId
+   *      block pool ID for the blocks
+   * @param bucketHashes
+   *      hashes of all the buckets of the report
+   * @param acknowledgedHashes
+   *      hashes of the last processed report, null if there is none
+   * @return the buckets the datanode has to report
+   * @see org.apache.hadoop.hdfs.protocol.BlockListAsLongs#getBucketHashes(int)
+   */
+  public int[] getMismatchingBlockReportBuckets(
+      DatanodeRegistration registration, String poolId, long[] bucketHashes,
+      long[] acknowledgedHashes) throws IOException;
+
 }
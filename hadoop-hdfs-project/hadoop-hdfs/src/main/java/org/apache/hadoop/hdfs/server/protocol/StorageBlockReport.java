@@ -24,10 +24,25 @@
 public class StorageBlockReport {
   private final DatanodeStorage storage;
   private final long[] blocks;
+  // hashes of all the buckets of the storage, null if the datanode does not
+  // hash its report
+  private final long[] bucketHashes;
+  // buckets the blocks belong to, null if all the buckets are reported
+  private final int[] reportedBuckets;
+  // replicas removed since the last processed report, with reportedBuckets
+  private final long[] removedBlocks;
   
   public StorageBlockReport(DatanodeStorage storage, long[] blocks) {
+    this(storage, blocks, null, null, null);
+  }
+
+  public StorageBlockReport(DatanodeStorage storage, long[] blocks,
+      long[] bucketHashes, int[] reportedBuckets, long[] removedBlocks) {
     this.storage = storage;
     this.blocks = blocks;
+    this.bucketHashes = bucketHashes;
+    this.reportedBuckets = reportedBuckets;
+    this.removedBlocks = removedBlocks;
   }
 
   public DatanodeStorage getStorage() {
@@ -37,4 +52,16 @@ public DatanodeStorage getStorage() {
   public long[] getBlocks() {
     return blocks;
   }
+
+  public long[] getBucketHashes() {
+    return bucketHashes;
+  }
+
+  public int[] getReportedBuckets() {
+    return reportedBuckets;
+  }
+
+  public long[] getRemovedBlocks() {
+    return removedBlocks;
+  }
 }
@@ -0,0 +1,264 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An open addressing hash map from primitive long keys to primitive int
+ * values. Keys and values are kept in flat arrays so that a map of millions
+ * of entries costs a few bytes per entry instead of the boxed key, value and
+ * entry objects of a {@link java.util.HashMap}. Entries cannot be removed.
+ * <p/>
+ * This class is not thread safe for writers. Once filled it can be read by
+ * any number of threads.
+ */
+public class LongIntHashMap {
+  static final float LOAD_FACTOR = 0.75f;
+  static final int MINIMUM_CAPACITY = 16;
+
+  private long[] keys;
+  private int[] values;
+  private boolean[] used;
+  private int size;
+  private int threshold;
+
+  public LongIntHashMap() {
+    this(MINIMUM_CAPACITY);
+  }
+
+  /**
+   * @param expectedSize
+   *     number of entries the map can hold without being resized
+   */
+  public LongIntHashMap(int expectedSize) {
+    allocate(capacityFor(expectedSize));
+  }
+
+  static int capacityFor(int expectedSize) {
+    long needed = (long) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR);
+    int capacity = MINIMUM_CAPACITY;
+    while (capacity < needed) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    used = new boolean[capacity];
+    threshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  /**
+   * @return the slot holding the key, or the free slot where it would be
+   * inserted
+   */
+  private int slot(long key) {
+    int mask = keys.length - 1;
+    int i = hash(key) & mask;
+    while (used[i] && keys[i] != key) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  public void put(long key, int value) {
+    int i = slot(key);
+    if (!used[i]) {
+      if (size >= threshold) {
+        resize();
+        i = slot(key);
+      }
+      used[i] = true;
+      keys[i] = key;
+      size++;
+    }
+    values[i] = value;
+  }
+
+  private void resize() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    boolean[] oldUsed = used;
+    allocate(keys.length << 1);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldUsed[i]) {
+        int j = slot(oldKeys[i]);
+        used[j] = true;
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+
+  public boolean containsKey(long key) {
+    return used[slot(key)];
+  }
+
+  /**
+   * @return the value of the key, or defaultValue if the map does not contain
+   * the key
+   */
+  public int get(long key, int defaultValue) {
+    int i = slot(key);
+    return used[i] ? values[i] : defaultValue;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return the index of the slot holding the key, or -1 if the map does not
+   * contain the key. Indexes stay valid as long as no key is added.
+   */
+  int indexOf(long key) {
+    int i = slot(key);
+    return used[i] ? i : -1;
+  }
+
+  public long[] keys() {
+    long[] result = new long[size];
+    int j = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (used[i]) {
+        result[j++] = keys[i];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return a set of the keys of this map backed by a bit per slot. Keys can
+   * only be removed from the returned set and the map must not be modified
+   * while the set is in use.
+   */
+  public KeySet newKeySet() {
+    return new KeySet(this);
+  }
+
+  /**
+   * A removable subset of the keys of a {@link LongIntHashMap}, one bit per
+   * slot of the map. All methods are synchronized.
+   */
+  public static class KeySet {
+    private final LongIntHashMap map;
+    private final BitSet bits;
+
+    private KeySet(LongIntHashMap map) {
+      this.map = map;
+      this.bits = new BitSet(map.keys.length);
+      for (int i = 0; i < map.used.length; i++) {
+        if (map.used[i]) {
+          bits.set(i);
+        }
+      }
+    }
+
+    private KeySet(KeySet other) {
+      this.map = other.map;
+      synchronized (other) {
+        this.bits = (BitSet) other.bits.clone();
+      }
+    }
+
+    public KeySet copy() {
+      return new KeySet(this);
+    }
+
+    public synchronized boolean contains(long key) {
+      int i = map.indexOf(key);
+      return i >= 0 && bits.get(i);
+    }
+
+    public synchronized boolean remove(long key) {
+      int i = map.indexOf(key);
+      if (i >= 0 && bits.get(i)) {
+        bits.clear(i);
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Removes all the keys contained in the other set. Both sets must be
+     * backed by the same map.
+     */
+    public void removeAll(KeySet other) {
+      if (other.map != map) {
+        throw new IllegalArgumentException(
+            "Both key sets must be backed by the same map");
+      }
+      BitSet toRemove;
+      synchronized (other) {
+        toRemove = (BitSet) other.bits.clone();
+      }
+      synchronized (this) {
+        bits.andNot(toRemove);
+      }
+    }
+
+    public synchronized int size() {
+      return bits.cardinality();
+    }
+
+    public synchronized boolean isEmpty() {
+      return bits.isEmpty();
+    }
+
+    public synchronized long[] toArray() {
+      long[] result = new long[bits.cardinality()];
+      int j = 0;
+      for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+        result[j++] = map.keys[i];
+      }
+      return result;
+    }
+
+    /**
+     * @return the keys boxed in a {@link java.util.Set}, for the callers that
+     * need one
+     */
+    public synchronized Set<Long> toSet() {
+      Set<Long> result = new HashSet<Long>(bits.cardinality() * 2);
+      for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+        result.add(map.keys[i]);
+      }
+      return result;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return Arrays.toString(toArray());
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+/**
+ * An open addressing hash map from primitive long keys to primitive long
+ * values, see {@link LongIntHashMap}. Entries cannot be removed.
+ * <p/>
+ * This class is not thread safe for writers. Once filled it can be read by
+ * any number of threads.
+ */
+public class LongLongHashMap {
+  private long[] keys;
+  private long[] values;
+  private boolean[] used;
+  private int size;
+  private int threshold;
+
+  public LongLongHashMap() {
+    this(LongIntHashMap.MINIMUM_CAPACITY);
+  }
+
+  /**
+   * @param expectedSize
+   *     number of entries the map can hold without being resized
+   */
+  public LongLongHashMap(int expectedSize) {
+    allocate(LongIntHashMap.capacityFor(expectedSize));
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new long[capacity];
+    used = new boolean[capacity];
+    threshold = (int) (capacity * LongIntHashMap.LOAD_FACTOR);
+  }
+
+  private int slot(long key) {
+    int mask = keys.length - 1;
+    int i = LongIntHashMap.hash(key) & mask;
+    while (used[i] && keys[i] != key) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  public void put(long key, long value) {
+    int i = slot(key);
+    if (!used[i]) {
+      if (size >= threshold) {
+        resize();
+        i = slot(key);
+      }
+      used[i] = true;
+      keys[i] = key;
+      size++;
+    }
+    values[i] = value;
+  }
+
+  private void resize() {
+    long[] oldKeys = keys;
+    long[] oldValues = values;
+    boolean[] oldUsed = used;
+    allocate(keys.length << 1);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldUsed[i]) {
+        int j = slot(oldKeys[i]);
+        used[j] = true;
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+
+  public boolean containsKey(long key) {
+    return used[slot(key)];
+  }
+
+  /**
+   * @return the value of the key, or defaultValue if the map does not contain
+   * the key
+   */
+  public long get(long key, long defaultValue) {
+    int i = slot(key);
+    return used[i] ? values[i] : defaultValue;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+}
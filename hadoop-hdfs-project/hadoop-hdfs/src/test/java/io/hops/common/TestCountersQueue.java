@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestCountersQueue {
+
+  @Test
+  public void testIdsAreHandedOutInOrderWithinARange() {
+    CountersQueue queue = new CountersQueue();
+    queue.addCounter(10, 13);
+    queue.addCounter(20, 22);
+    assertTrue(queue.has(5));
+    assertFalse(queue.has(6));
+
+    assertEquals(10, queue.next());
+    assertEquals(11, queue.next());
+    assertEquals(12, queue.next());
+    assertEquals(20, queue.next());
+    assertEquals(21, queue.next());
+    assertFalse(queue.has(1));
+
+    try {
+      queue.next();
+      fail("the queue should be empty");
+    } catch (CountersQueue.EmptyCountersQueueException e) {
+    }
+  }
+
+  @Test
+  public void testChunksDoNotCrossRanges() {
+    CountersQueue queue = new CountersQueue(4);
+    queue.addCounter(0, 6);
+    queue.addCounter(100, 102);
+
+    List<Long> ids = new ArrayList<Long>();
+    for (int i = 0; i < 8; i++) {
+      ids.add(queue.next());
+    }
+    assertEquals(8, new HashSet<Long>(ids).size());
+    for (long id : ids) {
+      assertTrue((id >= 0 && id < 6) || (id >= 100 && id < 102));
+    }
+  }
+
+  @Test
+  public void testConcurrentAllocationsAreUnique() throws Exception {
+    final int threads = 16;
+    final int idsPerThread = 10000;
+    final CountersQueue queue = new CountersQueue(8);
+    for (int i = 0; i < threads; i++) {
+      queue.addCounter((long) i * idsPerThread, (long) (i + 1) * idsPerThread);
+    }
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<long[]> allocated = new ArrayList<long[]>();
+    List<Thread> workers = new ArrayList<Thread>();
+    for (int i = 0; i < threads; i++) {
+      final long[] ids = new long[idsPerThread];
+      allocated.add(ids);
+      Thread worker = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int j = 0; j < ids.length; j++) {
+            ids[j] = queue.next();
+          }
+        }
+      };
+      workers.add(worker);
+      worker.start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    Set<Long> unique = new HashSet<Long>();
+    for (long[] ids : allocated) {
+      for (long id : ids) {
+        assertTrue("id " + id + " was handed out twice", unique.add(id));
+      }
+    }
+    assertEquals(threads * idsPerThread, unique.size());
+  }
+
+  @Test
+  public void testLatencyHistogramBuckets() {
+    assertEquals(0, LatencyHistogram.bucket(0));
+    assertEquals(1, LatencyHistogram.bucket(1));
+    assertEquals(2, LatencyHistogram.bucket(2));
+    assertEquals(2, LatencyHistogram.bucket(3));
+    assertEquals(11, LatencyHistogram.bucket(1024));
+
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getPercentile(99));
+    for (int i = 0; i < 99; i++) {
+      histogram.record(100);
+    }
+    histogram.record(5000);
+    assertEquals(128, histogram.getPercentile(50));
+    assertEquals(128, histogram.getPercentile(99));
+    assertEquals(8192, histogram.getPercentile(100));
+  }
+
+  @Test
+  public void testLatencyHistogramConcurrentRecords() throws Exception {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final int threads = 32;
+    final int recordsPerThread = 10000;
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<Thread>();
+    for (int i = 0; i < threads; i++) {
+      Thread worker = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int j = 0; j < recordsPerThread; j++) {
+            histogram.record(100);
+          }
+        }
+      };
+      workers.add(worker);
+      worker.start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    long[] counts = histogram.getCounts();
+    assertEquals(threads * recordsPerThread,
+        counts[LatencyHistogram.bucket(100)]);
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    assertEquals(threads * recordsPerThread, total);
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.resolvingcache;
+
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.server.namenode.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestLocalCache {
+
+  private static final PermissionStatus PERMS =
+      new PermissionStatus("user", "group", FsPermission.getDefault());
+
+  private static INode inode(String name, int id, int parentId) {
+    INode inode = new INodeDirectory(name, PERMS);
+    inode.setIdNoPersistance(id);
+    inode.setParentIdNoPersistance(parentId);
+    return inode;
+  }
+
+  private static final INode ROOT = inode(INodeDirectory.ROOT_NAME,
+      INodeDirectory.ROOT_ID, INodeDirectory.ROOT_PARENT_ID);
+  private static final INode A = inode("a", 10, INodeDirectory.ROOT_ID);
+  private static final INode B = inode("b", 11, 10);
+  private static final INode C = inode("c", 12, 11);
+
+  @Test
+  public void testSetPath() {
+    LocalCache cache = new LocalCache(100);
+    assertNull(cache.get("/a/b"));
+    cache.set(Arrays.asList(ROOT, A, B));
+    assertArrayEquals(new int[]{INodeDirectory.ROOT_ID, 10, 11},
+        cache.get("/a/b"));
+    // a path is only resolved if every component is cached
+    assertNull(cache.get("/a/b/c"));
+  }
+
+  @Test
+  public void testSetINode() {
+    LocalCache cache = new LocalCache(100);
+    cache.set(Arrays.asList(ROOT, A, B));
+    cache.set(C);
+    assertArrayEquals(new int[]{INodeDirectory.ROOT_ID, 10, 11, 12},
+        cache.get("/a/b/c"));
+  }
+
+  @Test
+  public void testSetIds() {
+    LocalCache cache = new LocalCache(100);
+    cache.set("/a/b/c", new int[]{INodeDirectory.ROOT_ID, 10});
+    assertArrayEquals(new int[]{INodeDirectory.ROOT_ID, 10},
+        cache.get("/a"));
+    assertNull(cache.get("/a/b"));
+  }
+
+  @Test
+  public void testDeleteINode() {
+    LocalCache cache = new LocalCache(100);
+    cache.set(Arrays.asList(ROOT, A, B, C));
+    cache.delete(B);
+    assertNull(cache.get("/a/b"));
+    assertArrayEquals(new int[]{INodeDirectory.ROOT_ID, 10}, cache.get("/a"));
+  }
+
+  @Test
+  public void testDeletePath() {
+    LocalCache cache = new LocalCache(100);
+    cache.set(Arrays.asList(ROOT, A, B));
+    cache.delete("/a/b");
+    assertNull(cache.get("/a"));
+    assertNull(cache.get("/a/b"));
+  }
+
+  @Test
+  public void testClear() {
+    LocalCache cache = new LocalCache(100);
+    cache.set(Arrays.asList(ROOT, A, B));
+    cache.clear();
+    assertNull(cache.get("/a"));
+  }
+}
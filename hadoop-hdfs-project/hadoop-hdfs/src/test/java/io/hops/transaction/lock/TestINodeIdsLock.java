@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.transaction.lock;
+
+import io.hops.metadata.hdfs.entity.INodeIdentifier;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestINodeIdsLock {
+
+  private static List<INodeIdentifier> identifiers(int... inodeIds) {
+    List<INodeIdentifier> inodeIdentifiers = new ArrayList<INodeIdentifier>();
+    for (int inodeId : inodeIds) {
+      inodeIdentifiers.add(new INodeIdentifier(inodeId));
+    }
+    return inodeIdentifiers;
+  }
+
+  @Test
+  public void testIdsAreLockedInAscendingOrder() {
+    List<INodeIdentifier> inodeIdentifiers = identifiers(7, 3, 11, 5);
+    INodeIdsLock lock = new INodeIdsLock(
+        TransactionLockTypes.INodeLockType.WRITE, inodeIdentifiers);
+    assertArrayEquals(new int[]{3, 5, 7, 11}, lock.getINodeIds());
+    // the caller's list is left untouched
+    assertEquals(7, inodeIdentifiers.get(0).getInodeId().intValue());
+  }
+
+  @Test
+  public void testOnlyNamedINodesAreReadByName() {
+    List<INodeIdentifier> inodeIdentifiers = identifiers(7, 3, 11);
+    inodeIdentifiers.get(0).setName("a");
+    inodeIdentifiers.get(0).setPid(1);
+    inodeIdentifiers.get(2).setName("b");
+    inodeIdentifiers.get(2).setPid(1);
+    // a name without a parent id is not enough
+    inodeIdentifiers.get(1).setName("c");
+    INodeIdsLock lock = new INodeIdsLock(
+        TransactionLockTypes.INodeLockType.WRITE, inodeIdentifiers);
+    List<INodeIdentifier> named = lock.getNamedINodes();
+    assertEquals(2, named.size());
+    assertEquals(7, named.get(0).getInodeId().intValue());
+    assertEquals(11, named.get(1).getInodeId().intValue());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParentLockIsRejected() {
+    new INodeIdsLock(
+        TransactionLockTypes.INodeLockType.WRITE_ON_TARGET_AND_PARENT,
+        identifiers(1, 2));
+  }
+}
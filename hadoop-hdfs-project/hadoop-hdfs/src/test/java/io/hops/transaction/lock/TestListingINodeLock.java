@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.transaction.lock;
+
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.server.namenode.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestListingINodeLock {
+
+  private static final byte[] FROM_START = new byte[0];
+
+  /**
+   * Children named c0, c1, ... in the order a directory listing sorts them.
+   */
+  private static List<INode> children(int count) {
+    PermissionStatus perms =
+        new PermissionStatus("user", null, FsPermission.getDefault());
+    List<INode> children = new ArrayList<INode>();
+    for (int i = 0; i < count; i++) {
+      children.add(new INodeDirectory("c" + i, perms));
+    }
+    return children;
+  }
+
+  private static void assertPage(List<INode> page, String... names) {
+    assertEquals(names.length, page.size());
+    for (int i = 0; i < names.length; i++) {
+      assertEquals(names[i], page.get(i).getLocalName());
+    }
+  }
+
+  @Test
+  public void testFirstPage() {
+    List<INode> page = ListingINodeLock.getPage(children(5), FROM_START, 2);
+    assertPage(page, "c0", "c1");
+  }
+
+  @Test
+  public void testPageStartsAfterStartAfter() {
+    List<INode> children = children(5);
+    assertPage(ListingINodeLock.getPage(children, DFSUtil.string2Bytes("c1"),
+        2), "c2", "c3");
+    // a startAfter that is not a child starts at the next name in order
+    assertPage(ListingINodeLock.getPage(children, DFSUtil.string2Bytes("c1a"),
+        2), "c2", "c3");
+  }
+
+  @Test
+  public void testLastPage() {
+    List<INode> children = children(5);
+    // the last page is shorter than the limit
+    assertPage(ListingINodeLock.getPage(children, DFSUtil.string2Bytes("c2"),
+        4), "c3", "c4");
+    // the page ends exactly at the last child
+    assertPage(ListingINodeLock.getPage(children, DFSUtil.string2Bytes("c2"),
+        2), "c3", "c4");
+    assertPage(ListingINodeLock.getPage(children, FROM_START, 5), "c0", "c1",
+        "c2", "c3", "c4");
+  }
+
+  @Test
+  public void testEmptyPage() {
+    assertTrue(ListingINodeLock.getPage(children(0), FROM_START, 3).isEmpty());
+    List<INode> children = children(5);
+    // nothing sorts after the last child
+    assertTrue(ListingINodeLock.getPage(children, DFSUtil.string2Bytes("c4"),
+        3).isEmpty());
+    assertTrue(ListingINodeLock.getPage(children, DFSUtil.string2Bytes("d"),
+        3).isEmpty());
+    assertTrue(ListingINodeLock.getPage(children, FROM_START, 0).isEmpty());
+  }
+
+  @Test
+  public void testLargeLimitDoesNotOverflow() {
+    assertPage(ListingINodeLock.getPage(children(3), DFSUtil.string2Bytes("c0"),
+        Integer.MAX_VALUE), "c1", "c2");
+  }
+}
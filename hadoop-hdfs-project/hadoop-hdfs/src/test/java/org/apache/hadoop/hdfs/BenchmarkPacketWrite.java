@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.logging.impl.Log4JLogger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Level;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the client write path: the throughput of writing files through a
+ * mini cluster and the memory the writing thread allocates for it, which is
+ * where the packets and their buffers are created. The packet buffer pool is
+ * shared by the process and configured by its first client, so compare the
+ * pooled and the unpooled write path in two runs, e.g.
+ * <pre>
+ *   BenchmarkPacketWrite -Ddfs.client.write.packet.pool.size=0 [#reps]
+ *   BenchmarkPacketWrite [#reps]
+ * </pre>
+ */
+public class BenchmarkPacketWrite extends Configured implements Tool {
+
+  private static void printUsage() {
+    ToolRunner.printGenericCommandUsage(System.err);
+    System.err.println("Usage: packetwrite [#reps]");
+    System.err.println("Config properties:\n" +
+        "  packetwrite.file.size:\tsize of each file (1GB)\n" +
+        "  packetwrite.buffer.size:\tbuffer size for write (64k)\n" +
+        "  dfs.client.write.packet.pool.size:\tpooled packet buffers\n");
+  }
+
+  private static long getAllocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private static long getGcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory
+        .getGarbageCollectorMXBeans()) {
+      count += Math.max(0, gc.getCollectionCount());
+    }
+    return count;
+  }
+
+  private void writeFile(FileSystem fs, Path f, long total, int bufferSize)
+      throws IOException {
+    byte[] data = new byte[bufferSize];
+    long startAllocated = getAllocatedBytes();
+    long startGc = getGcCount();
+    long startTime = Time.now();
+    FSDataOutputStream out = fs.create(f, true);
+    for (long size = 0; size < total; size += bufferSize) {
+      out.write(data);
+    }
+    out.close();
+    long elapsed = Math.max(1, Time.now() - startTime);
+    long allocated = getAllocatedBytes() - startAllocated;
+    System.out.println("Writing " + f + ": " +
+        (total * 1000 / elapsed / (1024 * 1024)) + " MB/s, " +
+        (startAllocated < 0 ? "n/a" : (allocated * 1000 / elapsed / 1024)) +
+        " KB/s allocated by the writer, " + (getGcCount() - startGc) +
+        " collections");
+  }
+
+  @Override
+  public int run(String[] args) throws IOException {
+    // silence the minidfs cluster
+    Log hadoopLog = LogFactory.getLog("org");
+    if (hadoopLog instanceof Log4JLogger) {
+      ((Log4JLogger) hadoopLog).getLogger().setLevel(Level.WARN);
+    }
+    int reps = 3;
+    if (args.length == 1) {
+      try {
+        reps = Integer.parseInt(args[0]);
+      } catch (NumberFormatException e) {
+        printUsage();
+        return -1;
+      }
+    } else if (args.length > 1) {
+      printUsage();
+      return -1;
+    }
+    Configuration conf = getConf();
+    long size = conf.getLong("packetwrite.file.size", 1024L * 1024 * 1024);
+    int bufferSize = conf.getInt("packetwrite.buffer.size", 64 * 1024);
+    System.out.println("Packet buffer pool size = " + conf.getInt(
+        DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_POOL_SIZE_KEY,
+        DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_POOL_SIZE_DEFAULT));
+
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      FileSystem dfs = cluster.getFileSystem();
+      for (int i = 0; i < reps; ++i) {
+        Path f = new Path("/packetwrite/file" + i);
+        writeFile(dfs, f, size, bufferSize);
+        dfs.delete(f, true);
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int res = ToolRunner
+        .run(new HdfsConfiguration(), new BenchmarkPacketWrite(), args);
+    System.exit(res);
+  }
+}
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.hdfs.ClientMmapManager.ClientMmap;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TestClientMmapManager {
+  private static final String POOL = "pool";
+  private static final int BLOCK_LENGTH = 4096;
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = new File(System.getProperty("test.build.data", "build/test/data"),
+        "TestClientMmapManager");
+    dir.mkdirs();
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  private File createBlockFile(long blockId) throws IOException {
+    File f = new File(dir, "blk_" + blockId);
+    byte[] data = new byte[BLOCK_LENGTH];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (blockId + i);
+    }
+    FileOutputStream out = new FileOutputStream(f);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+    return f;
+  }
+
+  private ClientMmap fetch(ClientMmapManager manager, long blockId)
+      throws IOException {
+    File f = createBlockFile(blockId);
+    FileInputStream in = new FileInputStream(f);
+    try {
+      return manager.fetch(f.getPath(),
+          new ExtendedBlock(POOL, blockId, BLOCK_LENGTH, 1000), in);
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testMappingIsSharedAndReferenceCounted() throws IOException {
+    ClientMmapManager manager = new ClientMmapManager(2, 60 * 1000);
+    ClientMmap mmap = fetch(manager, 1);
+    assertNotNull(mmap);
+    ByteBuffer buf = mmap.getMappedByteBuffer();
+    assertEquals(BLOCK_LENGTH, buf.capacity());
+    assertEquals((byte) 1, buf.get(0));
+    assertEquals((byte) (1 + 100), buf.get(100));
+
+    assertSame(mmap, fetch(manager, 1));
+    assertEquals(1, manager.size());
+    mmap.unref();
+    assertEquals(0, manager.evictableSize());
+    mmap.unref();
+    assertEquals(1, manager.evictableSize());
+
+    // referencing it again takes it out of the evictable mappings
+    assertSame(mmap, fetch(manager, 1));
+    assertEquals(0, manager.evictableSize());
+    mmap.unref();
+  }
+
+  @Test
+  public void testFullCacheEvictsUnreferencedMappings() throws IOException {
+    ClientMmapManager manager = new ClientMmapManager(2, 60 * 1000);
+    ClientMmap first = fetch(manager, 1);
+    ClientMmap second = fetch(manager, 2);
+    // every mapping is in use
+    assertNull(fetch(manager, 3));
+
+    first.unref();
+    ClientMmap third = fetch(manager, 3);
+    assertNotNull(third);
+    assertEquals(2, manager.size());
+    assertEquals((byte) 3, third.getMappedByteBuffer().get(0));
+    second.unref();
+    third.unref();
+  }
+
+  @Test
+  public void testStaleMappingsAreEvicted() throws Exception {
+    ClientMmapManager manager = new ClientMmapManager(2, 1);
+    ClientMmap mmap = fetch(manager, 1);
+    mmap.unref();
+    Thread.sleep(10);
+    manager.evictStale();
+    assertEquals(0, manager.size());
+  }
+
+  @Test
+  public void testDisabledCache() throws IOException {
+    ClientMmapManager manager = new ClientMmapManager(0, 60 * 1000);
+    assertNull(fetch(manager, 1));
+  }
+}
@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.ReadOption;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.ElasticByteBufferPool;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the zero-copy reads of DFSInputStream through short-circuit local
+ * reads, and their fallback to copying reads.
+ */
+public class TestEnhancedByteBufferAccess {
+  private static final int BLOCK_SIZE = 4096;
+  private static final EnumSet<ReadOption> SKIP_CHECKSUMS =
+      EnumSet.of(ReadOption.SKIP_CHECKSUMS);
+
+  private static MiniDFSCluster cluster;
+  private static DistributedFileSystem fs;
+
+  @BeforeClass
+  public static void setupCluster() throws Exception {
+    HdfsConfiguration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setBoolean(DFSConfigKeys.DFS_CLIENT_READ_SHORTCIRCUIT_KEY, true);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_CLIENT_READ_SHORTCIRCUIT_SKIP_CHECKSUM_KEY, false);
+    conf.set(DFSConfigKeys.DFS_BLOCK_LOCAL_PATH_ACCESS_USER_KEY,
+        UserGroupInformation.getCurrentUser().getShortUserName());
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @AfterClass
+  public static void teardownCluster() throws Exception {
+    if (fs != null) {
+      fs.close();
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static byte[] createFile(Path path, int length) throws Exception {
+    byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    FSDataOutputStream out = fs.create(path, (short) 1);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+    return data;
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  private static byte[] range(byte[] data, int from, int length) {
+    byte[] bytes = new byte[length];
+    System.arraycopy(data, from, bytes, 0, length);
+    return bytes;
+  }
+
+  @Test
+  public void testZeroCopyReadsAreMapped() throws Exception {
+    Path path = new Path("/testZeroCopyReadsAreMapped");
+    byte[] data = createFile(path, 2 * BLOCK_SIZE);
+    ByteBufferPool pool = new ElasticByteBufferPool();
+    FSDataInputStream in = fs.open(path);
+    try {
+      // a mapped slice never crosses the end of a block
+      ByteBuffer first = in.read(pool, 3 * BLOCK_SIZE, SKIP_CHECKSUMS);
+      assertTrue(first.isReadOnly());
+      assertArrayEquals(range(data, 0, BLOCK_SIZE), toArray(first));
+
+      ByteBuffer second = in.read(pool, 100, SKIP_CHECKSUMS);
+      assertTrue(second.isReadOnly());
+      assertArrayEquals(range(data, BLOCK_SIZE, 100), toArray(second));
+      assertEquals(BLOCK_SIZE + 100, in.getPos());
+
+      // a copying read continues where the mapped ones stopped
+      byte[] rest = new byte[BLOCK_SIZE - 100];
+      in.readFully(rest);
+      assertArrayEquals(range(data, BLOCK_SIZE + 100, BLOCK_SIZE - 100),
+          rest);
+      assertNull(in.read(pool, 100, SKIP_CHECKSUMS));
+
+      in.releaseBuffer(first);
+      in.releaseBuffer(second);
+      try {
+        in.releaseBuffer(first);
+        fail("A buffer can only be released once");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    } finally {
+      in.close();
+    }
+    // nothing references the mappings anymore
+    ClientMmapManager mmapManager = fs.getClient().mmapManager;
+    assertEquals(mmapManager.size(), mmapManager.evictableSize());
+  }
+
+  @Test
+  public void testChecksummedReadsAreCopied() throws Exception {
+    Path path = new Path("/testChecksummedReadsAreCopied");
+    byte[] data = createFile(path, BLOCK_SIZE);
+    ByteBufferPool pool = new ElasticByteBufferPool();
+    FSDataInputStream in = fs.open(path);
+    try {
+      ByteBuffer buffer =
+          in.read(pool, BLOCK_SIZE, EnumSet.noneOf(ReadOption.class));
+      assertFalse(buffer.isReadOnly());
+      assertArrayEquals(range(data, 0, buffer.remaining()), toArray(buffer));
+      in.releaseBuffer(buffer);
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testFilesUnderConstructionAreCopied() throws Exception {
+    Path path = new Path("/testFilesUnderConstructionAreCopied");
+    byte[] data = new byte[BLOCK_SIZE / 2];
+    new Random(1).nextBytes(data);
+    FSDataOutputStream out = fs.create(path, (short) 1);
+    try {
+      out.write(data);
+      out.hflush();
+      ByteBufferPool pool = new ElasticByteBufferPool();
+      FSDataInputStream in = fs.open(path);
+      try {
+        ByteBuffer buffer = in.read(pool, BLOCK_SIZE, SKIP_CHECKSUMS);
+        assertFalse(buffer.isReadOnly());
+        assertArrayEquals(range(data, 0, buffer.remaining()),
+            toArray(buffer));
+        in.releaseBuffer(buffer);
+      } finally {
+        in.close();
+      }
+    } finally {
+      out.close();
+    }
+  }
+}
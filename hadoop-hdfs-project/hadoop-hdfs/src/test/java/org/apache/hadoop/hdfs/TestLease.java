@@ -98,6 +98,25 @@ public Object performTask() throws IOException {
   }
 
 
+  static long leaseLastUpdate(final MiniDFSCluster cluster, final Path src)
+      throws IOException {
+    return (Long) new HopsTransactionalRequestHandler(
+        HDFSOperationType.TEST) {
+
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        locks.add(new TestLeaseLock(LockType.READ, LockType.READ,
+            src.toString()));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        return NameNodeAdapter.getLeaseManager(cluster.getNamesystem())
+            .getLeaseByPath(src.toString()).getLastUpdate();
+      }
+    }.handle();
+  }
+
   static int leaseCount(MiniDFSCluster cluster) throws IOException {
     return NameNodeAdapter.getLeaseManager(cluster.getNamesystem())
         .countLease();
@@ -351,6 +370,39 @@ public void testLease() throws Exception {
     }
   }
 
+  @Test
+  public void testBufferedLeaseRenewal() throws Exception {
+    Configuration renewalConf = new HdfsConfiguration();
+    // long enough for the flusher not to run during the test
+    renewalConf.setLong(
+        DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_KEY,
+        HdfsConstants.LEASE_SOFTLIMIT_PERIOD / 2 - 1);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(renewalConf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path a = new Path(dir, "a");
+      FSDataOutputStream out = fs.create(a);
+      out.writeBytes("something");
+
+      long created = leaseLastUpdate(cluster, a);
+      Thread.sleep(100);
+      cluster.getNameNodeRpc().renewLease(fs.getClient().getClientName());
+      Assert.assertEquals("renewal was written before the flush", created,
+          leaseLastUpdate(cluster, a));
+
+      NameNodeAdapter.flushLeaseRenewals(cluster.getNamesystem());
+      Assert.assertTrue("renewal was not written by the flush",
+          leaseLastUpdate(cluster, a) > created);
+
+      out.close();
+      Assert.assertFalse(hasLease(cluster, a));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   @Test
   public void testFactory() throws Exception {
     final String[] groups = new String[]{"supergroup"};
@@ -46,7 +46,9 @@
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
@@ -312,6 +314,62 @@ public void testHardLeaseRecovery() throws Exception {
     AppendTestUtil.checkFullFile(dfs, filepath, size, buffer, filestr);
   }
   
+  /**
+   * Several clients stop renewing their leases at once. The lease monitor
+   * recovers their leases concurrently and every file gets closed with its
+   * full length.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testConcurrentHardLeaseRecovery() throws Exception {
+    final int numClients = 4;
+    List<DistributedFileSystem> clients =
+        new ArrayList<DistributedFileSystem>();
+    List<FSDataOutputStream> streams = new ArrayList<FSDataOutputStream>();
+    String[] files = new String[numClients];
+    int[] sizes = new int[numClients];
+    try {
+      for (int i = 0; i < numClients; i++) {
+        DistributedFileSystem client =
+            (DistributedFileSystem) FileSystem.newInstance(cluster.getURI(),
+                conf);
+        clients.add(client);
+        files[i] = "/concurrentHardLeaseRecovery" + i;
+        FSDataOutputStream stm = client
+            .create(new Path(files[i]), true, BUF_SIZE, REPLICATION_NUM,
+                BLOCK_SIZE);
+        streams.add(stm);
+        sizes[i] = AppendTestUtil.nextInt(FILE_SIZE - 1) + 1;
+        stm.write(buffer, 0, sizes[i]);
+        stm.hflush();
+        client.dfs.getLeaseRenewer().interruptAndJoin();
+      }
+
+      cluster.setLeasePeriod(LONG_LEASE_PERIOD, SHORT_LEASE_PERIOD);
+
+      for (int i = 0; i < numClients; i++) {
+        LocatedBlocks locatedBlocks;
+        do {
+          Thread.sleep(SHORT_LEASE_PERIOD);
+          locatedBlocks = dfs.dfs.getLocatedBlocks(files[i], 0L, sizes[i]);
+        } while (locatedBlocks.isUnderConstruction());
+        assertEquals(sizes[i], locatedBlocks.getFileLength());
+        AppendTestUtil
+            .checkFullFile(dfs, new Path(files[i]), sizes[i], buffer, files[i]);
+      }
+    } finally {
+      cluster.setLeasePeriod(HdfsConstants.LEASE_SOFTLIMIT_PERIOD,
+          HdfsConstants.LEASE_HARDLIMIT_PERIOD);
+      for (FSDataOutputStream stm : streams) {
+        IOUtils.closeStream(stm);
+      }
+      for (DistributedFileSystem client : clients) {
+        IOUtils.closeStream(client);
+      }
+    }
+  }
+
   /**
    * This test makes the client does not renew its lease and also
    * set the soft lease expiration period to be short 1s. Thus triggering
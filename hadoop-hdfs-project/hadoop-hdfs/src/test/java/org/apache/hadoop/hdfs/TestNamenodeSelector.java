@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import io.hops.leader_election.node.ActiveNodePBImpl;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class TestNamenodeSelector {
+
+  private static List<NamenodeSelector.NamenodeHandle> namenodes(int count) {
+    List<NamenodeSelector.NamenodeHandle> namenodes =
+        new ArrayList<NamenodeSelector.NamenodeHandle>();
+    for (int i = 1; i <= count; i++) {
+      namenodes.add(new NamenodeSelector.NamenodeHandle(
+          mock(ClientProtocol.class),
+          new ActiveNodePBImpl(i, "localhost", "127.0.0.1", 9000 + i,
+              "0.0.0.0:5007" + i)));
+    }
+    return namenodes;
+  }
+
+  private static Configuration noEjection() {
+    Configuration conf = new Configuration();
+    conf.setFloat(
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_FACTOR_KEY, 0);
+    return conf;
+  }
+
+  /**
+   * Record a request to the namenode that the namenode answered after the
+   * given number of ms.
+   */
+  private static void answered(NamenodeSelector selector,
+      NamenodeSelector.NamenodeHandle handle, long latency) {
+    long startTime = selector.requestStarted(handle) -
+        TimeUnit.MILLISECONDS.toNanos(latency);
+    selector.requestFinished(handle, startTime);
+  }
+
+  @Test
+  public void testEwmaLatencyPicksLeastLoaded() throws Exception {
+    List<NamenodeSelector.NamenodeHandle> namenodes = namenodes(3);
+    NamenodeSelector selector = new NamenodeSelector(noEjection(),
+        NamenodeSelector.NNSelectionPolicy.EWMA_LATENCY, namenodes);
+    answered(selector, namenodes.get(0), 10);
+    answered(selector, namenodes.get(1), 2);
+    answered(selector, namenodes.get(2), 5);
+    for (int i = 0; i < 10; i++) {
+      assertSame(namenodes.get(1), selector.getNextNamenode());
+    }
+
+    // outstanding requests raise the score of the fastest namenode, 2 * 3
+    // is more than 5 * 1
+    selector.requestStarted(namenodes.get(1));
+    selector.requestStarted(namenodes.get(1));
+    assertEquals(2, namenodes.get(1).getOutstandingRequests());
+    assertSame(namenodes.get(2), selector.getNextNamenode());
+  }
+
+  @Test
+  public void testEwmaLatencyProbesUnknownNamenodes() throws Exception {
+    List<NamenodeSelector.NamenodeHandle> namenodes = namenodes(2);
+    NamenodeSelector selector = new NamenodeSelector(noEjection(),
+        NamenodeSelector.NNSelectionPolicy.EWMA_LATENCY, namenodes);
+    answered(selector, namenodes.get(0), 1);
+    assertSame(namenodes.get(1), selector.getNextNamenode());
+  }
+
+  @Test
+  public void testPowerOfTwoChoices() throws Exception {
+    List<NamenodeSelector.NamenodeHandle> namenodes = namenodes(2);
+    NamenodeSelector selector = new NamenodeSelector(noEjection(),
+        NamenodeSelector.NNSelectionPolicy.POWER_OF_TWO_CHOICES, namenodes);
+    answered(selector, namenodes.get(0), 10);
+    answered(selector, namenodes.get(1), 1);
+    // with two namenodes both are always compared
+    for (int i = 0; i < 10; i++) {
+      assertSame(namenodes.get(1), selector.getNextNamenode());
+    }
+    assertEquals(10, namenodes.get(1).getSelections());
+    assertEquals(0, namenodes.get(0).getSelections());
+  }
+
+  @Test
+  public void testEjectionOfOutliers() throws Exception {
+    List<NamenodeSelector.NamenodeHandle> namenodes = namenodes(4);
+    NamenodeSelector selector = new NamenodeSelector(new Configuration(),
+        NamenodeSelector.NNSelectionPolicy.POWER_OF_TWO_CHOICES, namenodes);
+    for (NamenodeSelector.NamenodeHandle handle : namenodes) {
+      answered(selector, handle, 10);
+    }
+    assertFalse(namenodes.get(3).isEjected());
+
+    answered(selector, namenodes.get(3), 1000);
+    assertTrue(namenodes.get(3).isEjected());
+    for (int i = 0; i < 20; i++) {
+      assertFalse(selector.getNextNamenode() == namenodes.get(3));
+    }
+
+    // at most half of the namenodes are ejected
+    answered(selector, namenodes.get(2), 1000);
+    assertTrue(namenodes.get(2).isEjected());
+    answered(selector, namenodes.get(1), 1000);
+    assertFalse(namenodes.get(1).isEjected());
+  }
+
+  @Test
+  public void testEjectionPeriod() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setLong(
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_EJECTION_PERIOD_MS_KEY, 100);
+    List<NamenodeSelector.NamenodeHandle> namenodes = namenodes(3);
+    NamenodeSelector selector = new NamenodeSelector(conf,
+        NamenodeSelector.NNSelectionPolicy.EWMA_LATENCY, namenodes);
+    answered(selector, namenodes.get(0), 10);
+    answered(selector, namenodes.get(1), 10);
+    answered(selector, namenodes.get(2), 1000);
+    assertTrue(namenodes.get(2).isEjected());
+    // the latency is forgotten, so the namenode is probed once it is back
+    assertTrue(namenodes.get(2).getLatencyEwma() < 0);
+    Thread.sleep(200);
+    assertFalse(namenodes.get(2).isEjected());
+    assertSame(namenodes.get(2), selector.getNextNamenode());
+  }
+
+  @Test
+  public void testFailuresArePenalized() throws Exception {
+    Configuration conf = noEjection();
+    conf.setLong(
+        DFSConfigKeys.DFS_CLIENT_NAMENODE_SELECTOR_FAILURE_PENALTY_MS_KEY,
+        500);
+    List<NamenodeSelector.NamenodeHandle> namenodes = namenodes(2);
+    NamenodeSelector selector = new NamenodeSelector(conf,
+        NamenodeSelector.NNSelectionPolicy.EWMA_LATENCY, namenodes);
+    answered(selector, namenodes.get(0), 10);
+    answered(selector, namenodes.get(1), 20);
+
+    // a failure right away must not make the namenode look fast
+    selector.requestStarted(namenodes.get(0));
+    selector.requestFailed(namenodes.get(0));
+    assertEquals(0, namenodes.get(0).getOutstandingRequests());
+    assertTrue(namenodes.get(0).getLatencyEwma() > 20);
+    assertSame(namenodes.get(1), selector.getNextNamenode());
+  }
+
+  @Test
+  public void testFailuresEject() throws Exception {
+    List<NamenodeSelector.NamenodeHandle> namenodes = namenodes(3);
+    NamenodeSelector selector = new NamenodeSelector(new Configuration(),
+        NamenodeSelector.NNSelectionPolicy.EWMA_LATENCY, namenodes);
+    for (NamenodeSelector.NamenodeHandle handle : namenodes) {
+      answered(selector, handle, 10);
+    }
+    selector.requestStarted(namenodes.get(0));
+    selector.requestFailed(namenodes.get(0));
+    assertTrue(namenodes.get(0).isEjected());
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TestPacketBufferPool {
+
+  @Test
+  public void testReuse() {
+    PacketBufferPool pool = new PacketBufferPool(2);
+    byte[] buf = pool.getBuffer(100);
+    assertEquals(100, buf.length);
+    assertEquals(1, pool.getAllocatedCount());
+
+    pool.returnBuffer(buf);
+    assertEquals(1, pool.size());
+    assertSame(buf, pool.getBuffer(100));
+    assertEquals(0, pool.size());
+    assertEquals(1, pool.getAllocatedCount());
+  }
+
+  @Test
+  public void testBuffersArePooledByLength() {
+    PacketBufferPool pool = new PacketBufferPool(2);
+    byte[] small = new byte[10];
+    pool.returnBuffer(small);
+    byte[] large = pool.getBuffer(20);
+    assertEquals(20, large.length);
+    assertEquals(1, pool.getAllocatedCount());
+    assertSame(small, pool.getBuffer(10));
+  }
+
+  @Test
+  public void testPoolIsBounded() {
+    PacketBufferPool pool = new PacketBufferPool(2);
+    byte[] first = new byte[10];
+    pool.returnBuffer(first);
+    pool.returnBuffer(new byte[10]);
+    pool.returnBuffer(new byte[10]);
+    assertEquals(2, pool.size());
+    assertSame(first, pool.getBuffer(10));
+    pool.getBuffer(10);
+    assertEquals(0, pool.size());
+    assertEquals(0, pool.getAllocatedCount());
+    pool.getBuffer(10);
+    assertEquals(1, pool.getAllocatedCount());
+  }
+
+  @Test
+  public void testDisabledPool() {
+    PacketBufferPool pool = new PacketBufferPool(0);
+    byte[] buf = pool.getBuffer(10);
+    pool.returnBuffer(buf);
+    assertEquals(0, pool.size());
+    assertNotSame(buf, pool.getBuffer(10));
+    assertEquals(2, pool.getAllocatedCount());
+  }
+}
@@ -22,6 +22,7 @@
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.datatransfer.DataTransferProtocol;
 import org.apache.hadoop.hdfs.server.datanode.SimulatedFSDataset;
 import org.apache.log4j.Level;
@@ -29,8 +30,12 @@
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -245,6 +250,129 @@ private void dfsPreadTest(boolean disableTransferTo, boolean verifyChecksum)
     }
   }
   
+  @Test
+  public void testHedgedPreadDFS() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 4096);
+    conf.setLong(DFSConfigKeys.DFS_CLIENT_READ_PREFETCH_SIZE_KEY, 4096);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_HEDGED_READ_THREADPOOL_SIZE, 5);
+    // hedge every read that has not completed immediately
+    conf.setLong(DFSConfigKeys.DFS_CLIENT_HEDGED_READ_THRESHOLD_MILLIS, 0);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    DistributedFileSystem fileSys = cluster.getFileSystem();
+    DFSHedgedReadMetrics metrics = fileSys.getClient().getHedgedReadMetrics();
+    long hedgedReadOps = metrics.getHedgedReadOps();
+    try {
+      Path file1 = new Path("hedgedpreadtest.dat");
+      writeFile(fileSys, file1);
+      pReadFile(fileSys, file1);
+      assertTrue(metrics.getHedgedReadOps() > hedgedReadOps);
+      assertTrue(metrics.getHedgedReadWins() <= metrics.getHedgedReadOps());
+      cleanupFile(fileSys, file1);
+    } finally {
+      fileSys.close();
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * The first datanode a read is sent to answers slowly, so the read is
+   * hedged to another replica, which wins.
+   */
+  @Test
+  public void testHedgedReadFromSlowReplica() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_HEDGED_READ_THREADPOOL_SIZE, 5);
+    conf.setLong(DFSConfigKeys.DFS_CLIENT_HEDGED_READ_THRESHOLD_MILLIS, 100);
+    final AtomicReference<DatanodeInfo> slowNode =
+        new AtomicReference<DatanodeInfo>();
+    DFSClientFaultInjector.instance = new DFSClientFaultInjector() {
+      @Override
+      public void fetchFromDatanode(DatanodeInfo datanode)
+          throws IOException {
+        slowNode.compareAndSet(null, datanode);
+        if (datanode.equals(slowNode.get())) {
+          try {
+            Thread.sleep(1000);
+          } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+          }
+        }
+      }
+    };
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    DistributedFileSystem fileSys = cluster.getFileSystem();
+    DFSHedgedReadMetrics metrics = fileSys.getClient().getHedgedReadMetrics();
+    long hedgedReadWins = metrics.getHedgedReadWins();
+    try {
+      Path file = new Path("/hedgedslowreplica.dat");
+      byte[] expected = writeReplicatedFile(fileSys, file, (short) 3);
+      FSDataInputStream in = fileSys.open(file);
+      byte[] actual = new byte[expected.length];
+      in.readFully(0, actual);
+      in.close();
+      assertArrayEquals(expected, actual);
+      assertTrue(metrics.getHedgedReadWins() > hedgedReadWins);
+    } finally {
+      DFSClientFaultInjector.instance = new DFSClientFaultInjector();
+      fileSys.close();
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * The only replica fails the first hedged read. Once there is no request
+   * left in flight, the locations are refetched and the replica is asked
+   * again rather than being ignored until the read gives up.
+   */
+  @Test
+  public void testHedgedReadRetriesFailedReplica() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_HEDGED_READ_THREADPOOL_SIZE, 5);
+    conf.setLong(DFSConfigKeys.DFS_CLIENT_HEDGED_READ_THRESHOLD_MILLIS, 100);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_RETRY_WINDOW_BASE, 10);
+    final AtomicInteger failures = new AtomicInteger(1);
+    DFSClientFaultInjector.instance = new DFSClientFaultInjector() {
+      @Override
+      public void fetchFromDatanode(DatanodeInfo datanode)
+          throws IOException {
+        if (failures.getAndDecrement() > 0) {
+          throw new IOException("Injected failure of " + datanode);
+        }
+      }
+    };
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    DistributedFileSystem fileSys = cluster.getFileSystem();
+    try {
+      Path file = new Path("/hedgedfailedreplica.dat");
+      byte[] expected = writeReplicatedFile(fileSys, file, (short) 1);
+      FSDataInputStream in = fileSys.open(file);
+      byte[] actual = new byte[expected.length];
+      in.readFully(0, actual);
+      in.close();
+      assertArrayEquals(expected, actual);
+      assertTrue(failures.get() < 0);
+    } finally {
+      DFSClientFaultInjector.instance = new DFSClientFaultInjector();
+      fileSys.close();
+      cluster.shutdown();
+    }
+  }
+
+  private static byte[] writeReplicatedFile(FileSystem fileSys, Path name,
+      short replication) throws IOException {
+    byte[] data = new byte[blockSize];
+    new Random(seed).nextBytes(data);
+    DataOutputStream stm =
+        fileSys.create(name, true, 4096, replication, blockSize);
+    stm.write(data);
+    stm.close();
+    return data;
+  }
+
   @Test
   public void testPreadDFSSimulated() throws IOException {
     simulatedStorage = true;
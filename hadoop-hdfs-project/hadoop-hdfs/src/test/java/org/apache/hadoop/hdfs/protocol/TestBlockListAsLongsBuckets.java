@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaBeingWritten;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestBlockListAsLongsBuckets {
+
+  private static final int NUM_BUCKETS = 16;
+
+  private static BlockListAsLongs report(List<Block> finalized,
+      List<ReplicaInfo> uc) {
+    return new BlockListAsLongs(finalized, uc);
+  }
+
+  private static List<Block> finalized(int count) {
+    List<Block> blocks = new ArrayList<Block>();
+    for (int i = 1; i <= count; i++) {
+      blocks.add(new Block(i, i * 10, 1000 + i));
+    }
+    return blocks;
+  }
+
+  @Test
+  public void testHashesOnlyChangeInTheChangedBucket() {
+    List<Block> blocks = finalized(100);
+    long[] before = report(blocks, null).getBucketHashes(NUM_BUCKETS);
+
+    Block changed = blocks.get(42);
+    blocks.set(42, new Block(changed.getBlockId(), changed.getNumBytes(),
+        changed.getGenerationStamp() + 1));
+    long[] after = report(blocks, null).getBucketHashes(NUM_BUCKETS);
+
+    int bucket = BlockListAsLongs.getBucket(changed.getBlockId(), NUM_BUCKETS);
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      if (i == bucket) {
+        assertFalse(before[i] == after[i]);
+      } else {
+        assertEquals(before[i], after[i]);
+      }
+    }
+
+    // the order of the replicas does not matter
+    List<Block> reversed = new ArrayList<Block>(blocks);
+    Collections.reverse(reversed);
+    assertTrue(Arrays.equals(after,
+        report(reversed, null).getBucketHashes(NUM_BUCKETS)));
+  }
+
+  @Test
+  public void testGetBuckets() {
+    List<ReplicaInfo> uc = new ArrayList<ReplicaInfo>();
+    uc.add(new ReplicaBeingWritten(1001, 5, 2000, null, null, null));
+    uc.add(new ReplicaBeingWritten(1002, 5, 2000, null, null, null));
+    BlockListAsLongs full = report(finalized(100), uc);
+
+    int[] buckets = {0, 3, 7};
+    Set<Integer> selected = new HashSet<Integer>();
+    for (int bucket : buckets) {
+      selected.add(bucket);
+    }
+    BlockListAsLongs partial = full.getBuckets(buckets, NUM_BUCKETS);
+
+    Set<Long> expected = new HashSet<Long>();
+    for (Block b : full) {
+      if (selected.contains(
+          BlockListAsLongs.getBucket(b.getBlockId(), NUM_BUCKETS))) {
+        expected.add(b.getBlockId());
+      }
+    }
+    Set<Long> actual = new HashSet<Long>();
+    for (Block b : partial) {
+      actual.add(b.getBlockId());
+    }
+    assertEquals(expected, actual);
+    assertEquals(expected.size(), partial.getNumberOfBlocks());
+
+    long[] fullHashes = full.getBucketHashes(NUM_BUCKETS);
+    long[] partialHashes = partial.getBucketHashes(NUM_BUCKETS);
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      assertEquals(selected.contains(i) ? fullHashes[i] : 0, partialHashes[i]);
+    }
+  }
+
+  @Test
+  public void testReplicaHash() {
+    final ReplicaState finalized = ReplicaState.FINALIZED;
+    long hash = BlockListAsLongs.getReplicaHash(1, 100, 1000, finalized);
+    assertEquals(hash,
+        BlockListAsLongs.getReplicaHash(1, 100, 1000, finalized));
+    // a change of any field of the replica changes its hash
+    assertFalse(
+        hash == BlockListAsLongs.getReplicaHash(2, 100, 1000, finalized));
+    assertFalse(
+        hash == BlockListAsLongs.getReplicaHash(1, 101, 1000, finalized));
+    assertFalse(
+        hash == BlockListAsLongs.getReplicaHash(1, 100, 1001, finalized));
+    assertFalse(hash ==
+        BlockListAsLongs.getReplicaHash(1, 100, 1000, ReplicaState.RBW));
+
+    // except the length of a replica that is being written
+    assertEquals(BlockListAsLongs.getReplicaHash(1, 100, 1000, ReplicaState.RBW),
+        BlockListAsLongs.getReplicaHash(1, 200, 1000, ReplicaState.RBW));
+  }
+}
@@ -738,4 +738,28 @@ public void testSafeModeIBRAfterIncremental() throws Exception {
     verify(node).receivedBlockReport();
     assertFalse(node.isFirstBlockReport());
   }
+
+  @Test
+  public void testGetBlockRange() {
+    BlockInfo[] blocks = new BlockInfo[4];
+    for (int i = 0; i < blocks.length; i++) {
+      blocks[i] = new BlockInfo(new Block(i, i < 3 ? 100 : 50, 1), 1);
+    }
+    // the range starts inside the second block and ends inside the third
+    assertRange(1, 3, BlockManager.getBlockRange(blocks, 150, 100, 10));
+    // a range ending at a block boundary does not include the next block
+    assertRange(0, 1, BlockManager.getBlockRange(blocks, 0, 100, 10));
+    assertRange(0, 4,
+        BlockManager.getBlockRange(blocks, 0, Long.MAX_VALUE - 1, 10));
+    assertRange(0, 2,
+        BlockManager.getBlockRange(blocks, 0, Long.MAX_VALUE - 1, 2));
+    assertRange(3, 4, BlockManager.getBlockRange(blocks, 349, 1, 10));
+    // the offset is beyond the end of the file
+    assertRange(4, 4, BlockManager.getBlockRange(blocks, 350, 10, 10));
+  }
+
+  private void assertRange(int first, int end, int[] range) {
+    assertEquals(first, range[0]);
+    assertEquals(end, range[1]);
+  }
 }
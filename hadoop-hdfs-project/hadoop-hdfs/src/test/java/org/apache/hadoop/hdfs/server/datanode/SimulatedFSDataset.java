@@ -25,6 +25,7 @@
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsBlocksMetadata;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.BlockReportBuckets;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.LengthInputStream;
@@ -469,6 +470,15 @@ public synchronized BlockListAsLongs getBlockReport(String bpid) {
     return new BlockListAsLongs(blocks, null);
   }
 
+  @Override // FsDatasetSpi
+  public BlockReportBuckets getBlockReportBuckets(String bpid) {
+    return null;
+  }
+
+  @Override // FsDatasetSpi
+  public void blockReportAcknowledged(String bpid) {
+  }
+
   @Override // FSDatasetMBean
   public long getCapacity() {
     return storage.getCapacity();
@@ -992,6 +1002,12 @@ public List<Block> getFinalizedBlocks(String bpid) {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public synchronized int getNumReplicas(String bpid) {
+    final Map<Block, BInfo> map = blockMap.get(bpid);
+    return map != null ? map.size() : 0;
+  }
+
   @Override
   public Map<String, Object> getVolumeInfoMap() {
     throw new UnsupportedOperationException();
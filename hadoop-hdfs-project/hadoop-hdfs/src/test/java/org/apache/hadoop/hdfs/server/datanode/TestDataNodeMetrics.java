@@ -99,6 +99,24 @@ public void testSendDataPacketMetrics() throws Exception {
     }
   }
 
+  @Test
+  public void testDatasetLockWaitMetrics() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      FileSystem fs = cluster.getFileSystem();
+      DFSTestUtil.createFile(fs, new Path("/tmp.txt"), (long) 1, (short) 1, 1L);
+      DataNode datanode = cluster.getDataNodes().get(0);
+      MetricsRecordBuilder rb = getMetrics(datanode.getMetrics().name());
+      // at least the creation and the finalization of the replica
+      assertTrue(getLongCounter("DatasetLockWaitNanosNumOps", rb) >= 2);
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   @Test
   public void testReceivePacketMetrics() throws Exception {
     Configuration conf = new HdfsConfiguration();
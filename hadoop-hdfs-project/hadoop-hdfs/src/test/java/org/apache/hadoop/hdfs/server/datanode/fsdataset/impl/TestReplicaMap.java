@@ -18,11 +18,24 @@
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaBeingWritten;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaUnderRecovery;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.BlockReportBuckets;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
@@ -110,4 +123,112 @@ public void testRemove() {
     map.add(bpid, new FinalizedReplica(block, null, null));
     assertNotNull(map.remove(bpid, block.getBlockId()));
   }
+
+  @Test
+  public void testSnapshot() {
+    List<ReplicaInfo> snapshot = map.snapshot(bpid);
+    assertEquals(1, snapshot.size());
+
+    // later changes are not seen by the snapshot
+    map.add(bpid, new FinalizedReplica(new Block(5678, 5678, 5678), null,
+        null));
+    assertNotNull(map.remove(bpid, block));
+    assertEquals(1, snapshot.size());
+    assertEquals(block.getBlockId(), snapshot.get(0).getBlockId());
+    assertEquals(1, map.snapshot(bpid).size());
+
+    // unknown block pool
+    assertEquals(0, map.snapshot("BP-UNKNOWN").size());
+  }
+
+  @Test
+  public void testSnapshotCopiesReplicas() {
+    ReplicaInfo replica = map.get(bpid, block.getBlockId());
+    map.add(bpid, new ReplicaUnderRecovery(replica, 2000));
+    List<ReplicaInfo> snapshot = map.snapshot(bpid);
+    assertEquals(1, snapshot.size());
+    ReplicaInfo copy = snapshot.get(0);
+    assertNotSame(replica, copy);
+    assertEquals(ReplicaState.RUR, copy.getState());
+    assertNotSame(replica,
+        ((ReplicaUnderRecovery) copy).getOriginalReplica());
+
+    // changes made through the map after the snapshot are not seen by it
+    ReplicaInfo rur = map.get(bpid, block.getBlockId());
+    map.setGenerationStamp(bpid, rur, 2000);
+    map.setNumBytes(bpid, rur, 10);
+    assertEquals(block.getGenerationStamp(), copy.getGenerationStamp());
+    assertEquals(block.getNumBytes(), copy.getNumBytes());
+    assertEquals(2000, map.snapshot(bpid).get(0).getGenerationStamp());
+    assertEquals(10, map.snapshot(bpid).get(0).getNumBytes());
+  }
+
+  /**
+   * The bucket hashes kept by the map are those of a block report made from
+   * a snapshot, whatever changes were made to the replicas before it.
+   */
+  @Test
+  public void testBucketHashes() {
+    final int numBuckets = 8;
+    ReplicaMap hashed = new ReplicaMap(TestReplicaMap.class, numBuckets);
+    assertNull(hashed.getReportedBuckets(bpid));
+    for (long id = 1; id <= 20; id++) {
+      hashed.add(bpid, new FinalizedReplica(new Block(id, id * 10, 1000),
+          null, null));
+    }
+    hashed.add(bpid, new ReplicaBeingWritten(21, 5, 1000, null, null, null));
+    assertBucketHashes(hashed, numBuckets);
+    assertEquals(0,
+        hashed.getReportedBuckets(bpid).getRemovedBlocks().length);
+    hashed.acknowledgeReport(bpid);
+
+    // replace, remove, recover and change replicas
+    hashed.add(bpid, new FinalizedReplica(new Block(21, 7, 1001), null,
+        null));
+    assertNotNull(hashed.remove(bpid, 1));
+    assertNotNull(hashed.remove(bpid, new Block(2, 20, 1000)));
+    ReplicaInfo replica = hashed.get(bpid, 3);
+    hashed.add(bpid, new ReplicaUnderRecovery(replica, 2000));
+    hashed.setGenerationStamp(bpid, hashed.get(bpid, 4), 1002);
+    hashed.setNumBytes(bpid, hashed.get(bpid, 5), 55);
+    ReplicaInfo rbw = new ReplicaBeingWritten(22, 5, 1000, null, null, null);
+    hashed.add(bpid, rbw);
+    hashed.setNumBytes(bpid, rbw, 500);
+    assertBucketHashes(hashed, numBuckets);
+
+    // the removals are reported until the namenode acknowledged them
+    long[] removed = hashed.getReportedBuckets(bpid).getRemovedBlocks();
+    Arrays.sort(removed);
+    assertArrayEquals(new long[]{1, 2}, removed);
+    assertNotNull(hashed.remove(bpid, 6));
+    hashed.acknowledgeReport(bpid);
+    hashed.snapshot(bpid);
+    assertArrayEquals(new long[]{6},
+        hashed.getReportedBuckets(bpid).getRemovedBlocks());
+
+    // a replica added again is not removed
+    hashed.add(bpid, new FinalizedReplica(new Block(6, 60, 1000), null,
+        null));
+    hashed.snapshot(bpid);
+    assertEquals(0,
+        hashed.getReportedBuckets(bpid).getRemovedBlocks().length);
+  }
+
+  private void assertBucketHashes(ReplicaMap hashed, int numBuckets) {
+    List<ReplicaInfo> finalized = new ArrayList<ReplicaInfo>();
+    List<ReplicaInfo> uc = new ArrayList<ReplicaInfo>();
+    for (ReplicaInfo replica : hashed.snapshot(bpid)) {
+      if (replica.getState() == ReplicaState.FINALIZED) {
+        finalized.add(replica);
+      } else if (replica.getState() == ReplicaState.RUR) {
+        uc.add(((ReplicaUnderRecovery) replica).getOriginalReplica());
+      } else {
+        uc.add(replica);
+      }
+    }
+    BlockReportBuckets buckets = hashed.getReportedBuckets(bpid);
+    assertArrayEquals(
+        new BlockListAsLongs(finalized, uc).getBucketHashes(numBuckets),
+        buckets.getHashes());
+  }
 }
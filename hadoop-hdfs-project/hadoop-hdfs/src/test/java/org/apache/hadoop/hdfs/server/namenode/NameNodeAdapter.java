@@ -113,6 +113,11 @@ public static LeaseManager getLeaseManager(final FSNamesystem ns) {
     return ns.leaseManager;
   }
 
+  public static void flushLeaseRenewals(final FSNamesystem ns)
+      throws IOException {
+    ns.leaseManager.flushRenewals();
+  }
+
   /**
    * Set the softLimit and hardLimit of client lease periods.
    */
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.Test;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestBatchedPathResolution {
+
+  private static final String NN_METRICS = "NameNodeActivity";
+
+  private static long hits() {
+    return getLongCounter("BatchedPathResolutionHits", getMetrics(NN_METRICS));
+  }
+
+  private static long misses() {
+    return getLongCounter("BatchedPathResolutionMisses",
+        getMetrics(NN_METRICS));
+  }
+
+  @Test
+  public void testResolveFromResolvingCache() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_RESOLVING_CACHE_ENABLED, true);
+    conf.setBoolean(DFSConfigKeys.DFS_BATCHED_PATH_RESOLUTION_ENABLED, true);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+
+      Path file = new Path("/a/b/c/d/e/f/file");
+      DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+
+      // the path is in the resolving cache now, it is read in one batch
+      long hits = hits();
+      assertEquals(1024, fs.getFileStatus(file).getLen());
+      assertTrue(hits() > hits);
+
+      // the cached ids of the old path no longer chain, the path is walked
+      assertTrue(fs.rename(new Path("/a/b/c"), new Path("/a/x")));
+      long misses = misses();
+      assertFalse(fs.exists(file));
+      assertTrue(misses() > misses);
+
+      Path renamed = new Path("/a/x/d/e/f/file");
+      assertEquals(1024, fs.getFileStatus(renamed).getLen());
+      hits = hits();
+      assertEquals(1024, fs.getFileStatus(renamed).getLen());
+      assertTrue(hits() > hits);
+
+      // the cache only knows the parent, which is read in the same batch as
+      // the missing file and is not dropped from the cache
+      hits = hits();
+      assertFalse(fs.exists(new Path("/a/x/d/e/f/missing")));
+      assertTrue(hits() > hits);
+      hits = hits();
+      assertEquals(1024, fs.getFileStatus(renamed).getLen());
+      assertTrue(hits() > hits);
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import io.hops.leader_election.node.ActiveNode;
+import io.hops.leader_election.node.ActiveNodePBImpl;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportSlot;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestBlockReportAdmission {
+
+  private static List<ActiveNode> namenodes(int count) {
+    List<ActiveNode> namenodes = new ArrayList<ActiveNode>();
+    for (int i = 1; i <= count; i++) {
+      namenodes.add(new ActiveNodePBImpl(i, "localhost", "127.0.0.1",
+          9000 + i, "0.0.0.0:5007" + i));
+    }
+    return namenodes;
+  }
+
+  @Test
+  public void testSlotsPerNamenode() {
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_MAX_CONCURRENT_KEY, 1);
+    BlockReportAdmission admission = new BlockReportAdmission(conf);
+    List<ActiveNode> namenodes = namenodes(2);
+
+    BlockReportSlot first = admission.requestSlot("dn1", 100, namenodes);
+    BlockReportSlot second = admission.requestSlot("dn2", 100, namenodes);
+    assertTrue(first.isGranted());
+    assertTrue(second.isGranted());
+    assertTrue(first.getNamenode().getId() != second.getNamenode().getId());
+
+    BlockReportSlot third = admission.requestSlot("dn3", 100, namenodes);
+    assertFalse(third.isGranted());
+    assertTrue(third.getRetryAfter() > 0);
+    assertEquals(1, admission.getQueueLength());
+
+    // asking again releases the slot of dn1, the queued dn3 comes first
+    assertFalse(admission.requestSlot("dn1", 100, namenodes).isGranted());
+    assertTrue(admission.requestSlot("dn3", 100, namenodes).isGranted());
+    assertEquals(1, admission.getQueueLength());
+    assertEquals(2, admission.getSlotsInUse());
+  }
+
+  @Test
+  public void testReleaseSlot() {
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_MAX_CONCURRENT_KEY, 1);
+    BlockReportAdmission admission = new BlockReportAdmission(conf);
+    List<ActiveNode> namenodes = namenodes(1);
+
+    assertTrue(admission.requestSlot("dn1", 100, namenodes).isGranted());
+    assertFalse(admission.requestSlot("dn2", 100, namenodes).isGranted());
+
+    // a processed report frees its slot before the window expires
+    admission.releaseSlot("dn1");
+    assertEquals(0, admission.getSlotsInUse());
+    assertTrue(admission.requestSlot("dn2", 100, namenodes).isGranted());
+    // releasing twice or without a slot is harmless
+    admission.releaseSlot("dn1");
+    admission.releaseSlot("dn3");
+    assertEquals(1, admission.getSlotsInUse());
+  }
+
+  @Test
+  public void testBlocksInFlight() {
+    Configuration conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_MAX_BLOCKS_KEY, 1000);
+    BlockReportAdmission admission = new BlockReportAdmission(conf);
+    List<ActiveNode> namenodes = namenodes(2);
+
+    // a report bigger than the budget is admitted when nothing is in flight
+    assertTrue(admission.requestSlot("dn1", 5000, namenodes).isGranted());
+    assertFalse(admission.requestSlot("dn2", 10, namenodes).isGranted());
+    admission.requestSlot("dn1", 500, namenodes);
+    assertTrue(admission.requestSlot("dn2", 500, namenodes).isGranted());
+  }
+
+  @Test
+  public void testWindow() {
+    Configuration conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_MIN_WINDOW_KEY, 1000);
+    conf.setLong(DFSConfigKeys.DFS_BLOCKREPORT_ADMISSION_BLOCKS_PER_SEC_KEY,
+        100);
+    BlockReportAdmission admission = new BlockReportAdmission(conf);
+    assertEquals(1000, admission.getWindow(0));
+    assertEquals(3000, admission.getWindow(200));
+  }
+}
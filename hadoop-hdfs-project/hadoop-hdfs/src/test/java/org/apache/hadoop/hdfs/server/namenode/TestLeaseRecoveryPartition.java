@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import io.hops.leader_election.node.ActiveNode;
+import io.hops.leader_election.node.ActiveNodePBImpl;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestLeaseRecoveryPartition {
+
+  private static List<ActiveNode> namenodes(int count) {
+    List<ActiveNode> namenodes = new ArrayList<ActiveNode>();
+    for (int i = 1; i <= count; i++) {
+      namenodes.add(new ActiveNodePBImpl(i, "localhost", "127.0.0.1",
+          9000 + i, "0.0.0.0:5007" + i));
+    }
+    return namenodes;
+  }
+
+  @Test
+  public void testPartitionOfActiveNamenode() {
+    List<ActiveNode> namenodes = namenodes(3);
+    assertArrayEquals(new int[]{0, 3},
+        LeaseManager.getRecoveryPartition(namenodes, 1, true));
+    assertArrayEquals(new int[]{2, 3},
+        LeaseManager.getRecoveryPartition(namenodes, 3, false));
+  }
+
+  @Test
+  public void testOnlyLeaderRecoversOutsideTheActiveList() {
+    List<ActiveNode> namenodes = namenodes(2);
+    assertArrayEquals(new int[]{0, 1},
+        LeaseManager.getRecoveryPartition(namenodes, 7, true));
+    assertNull(LeaseManager.getRecoveryPartition(namenodes, 7, false));
+    assertNull(LeaseManager.getRecoveryPartition(
+        Collections.<ActiveNode>emptyList(), 1, false));
+  }
+
+  @Test
+  public void testOnlyLeaderRecoversWithoutPartitioning() {
+    assertArrayEquals(new int[]{0, 1},
+        LeaseManager.getRecoveryPartition(null, 1, true));
+    assertNull(LeaseManager.getRecoveryPartition(null, 2, false));
+  }
+
+  @Test
+  public void testEveryHolderIsInExactlyOnePartition() {
+    int numNamenodes = 3;
+    for (int h = 0; h < 100; h++) {
+      String holder = "DFSClient_NONMAPREDUCE_" + h;
+      int owners = 0;
+      for (int i = 0; i < numNamenodes; i++) {
+        if (LeaseManager.isInRecoveryPartition(holder,
+            new int[]{i, numNamenodes})) {
+          owners++;
+        }
+      }
+      assertEquals(1, owners);
+      assertTrue(LeaseManager.isInRecoveryPartition(holder, new int[]{0, 1}));
+    }
+  }
+
+  @Test
+  public void testRecoveryLeaseHolder() {
+    String holder = "DFSClient_NONMAPREDUCE_1";
+    String recoveryHolder = LeaseManager.getRecoveryLeaseHolder(holder);
+    assertTrue(LeaseManager.isNameNodeLeaseHolder(recoveryHolder));
+    assertTrue(LeaseManager.isNameNodeLeaseHolder(
+        HdfsServerConstants.NAMENODE_LEASE_HOLDER));
+    assertFalse(LeaseManager.isNameNodeLeaseHolder(holder));
+    assertFalse(recoveryHolder.equals(HdfsServerConstants.NAMENODE_LEASE_HOLDER));
+    assertFalse(recoveryHolder.equals(LeaseManager.getRecoveryLeaseHolder(
+        "DFSClient_NONMAPREDUCE_2")));
+    // a lease that expires again during recovery keeps its holder
+    assertEquals(recoveryHolder,
+        LeaseManager.getRecoveryLeaseHolder(recoveryHolder));
+    assertEquals(HdfsServerConstants.NAMENODE_LEASE_HOLDER,
+        LeaseManager.getRecoveryLeaseHolder(
+            HdfsServerConstants.NAMENODE_LEASE_HOLDER));
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import io.hops.metadata.hdfs.entity.INodeIdentifier;
+import io.hops.metadata.hdfs.entity.QuotaUpdate;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestQuotaUpdateBatching {
+
+  private static List<QuotaUpdate> updates(int... inodeIds) {
+    List<QuotaUpdate> updates = new ArrayList<QuotaUpdate>();
+    for (int i = 0; i < inodeIds.length; i++) {
+      updates.add(new QuotaUpdate(i, inodeIds[i], 1, 1));
+    }
+    return updates;
+  }
+
+  @Test
+  public void testUpdatesOfADirectoryShareAShard() {
+    List<List<QuotaUpdate>> shards =
+        QuotaUpdateManager.shard(updates(1, 2, 3, 4, 5, 1, 3, 5), 2);
+    assertEquals(2, shards.size());
+    assertEquals(2, shards.get(0).size());
+    assertEquals(6, shards.get(1).size());
+    for (int i = 0; i < shards.size(); i++) {
+      for (QuotaUpdate update : shards.get(i)) {
+        assertEquals(i, update.getInodeId() % 2);
+      }
+    }
+  }
+
+  @Test
+  public void testNegativeInodeIdsAreSharded() {
+    List<List<QuotaUpdate>> shards =
+        QuotaUpdateManager.shard(updates(-1, -2, -3), 3);
+    int total = 0;
+    for (List<QuotaUpdate> shard : shards) {
+      total += shard.size();
+    }
+    assertEquals(3, total);
+  }
+
+  @Test
+  public void testGroupByDirectory() {
+    List<List<List<QuotaUpdate>>> transactions =
+        QuotaUpdateManager.groupByDirectory(updates(3, 1, 2, 1, 3, 1, 4), 2);
+    // four directories, two per transaction
+    assertEquals(2, transactions.size());
+
+    List<List<QuotaUpdate>> first = transactions.get(0);
+    assertEquals(2, first.size());
+    assertEquals(3, first.get(0).size());
+    for (QuotaUpdate update : first.get(0)) {
+      assertEquals(1, update.getInodeId());
+    }
+    assertEquals(1, first.get(1).size());
+    assertEquals(2, first.get(1).get(0).getInodeId());
+
+    List<List<QuotaUpdate>> second = transactions.get(1);
+    assertEquals(2, second.size());
+    assertEquals(2, second.get(0).size());
+    assertEquals(3, second.get(0).get(0).getInodeId());
+    assertEquals(1, second.get(1).size());
+    assertEquals(4, second.get(1).get(0).getInodeId());
+  }
+
+  @Test
+  public void testGroupByDirectoryLastTransactionIsPartial() {
+    List<List<List<QuotaUpdate>>> transactions =
+        QuotaUpdateManager.groupByDirectory(updates(1, 2, 3), 2);
+    assertEquals(2, transactions.size());
+    assertEquals(2, transactions.get(0).size());
+    assertEquals(1, transactions.get(1).size());
+    assertEquals(3, transactions.get(1).get(0).get(0).getInodeId());
+  }
+
+  @Test
+  public void testGroupByDirectoryEmptyShard() {
+    assertEquals(0, QuotaUpdateManager
+        .groupByDirectory(new ArrayList<QuotaUpdate>(), 2).size());
+  }
+
+  @Test
+  public void testKnownDirectoriesAreIdentifiedByName() {
+    QuotaUpdateManager manager =
+        new QuotaUpdateManager(null, new Configuration());
+    INodeIdentifier unknown = manager.getINodeIdentifier(7);
+    assertEquals(7, unknown.getInodeId().intValue());
+    assertNull(unknown.getName());
+    assertNull(unknown.getPid());
+
+    for (int i = 0; i <= QuotaUpdateManager.KNOWN_DIRECTORIES; i++) {
+      manager.rememberDirectory(directory(i, "dir" + i, 1));
+    }
+    INodeIdentifier known = manager.getINodeIdentifier(100);
+    assertEquals(100, known.getInodeId().intValue());
+    assertEquals("dir100", known.getName());
+    assertEquals(1, known.getPid().intValue());
+    // the least recently updated directory is forgotten
+    assertNull(manager.getINodeIdentifier(0).getName());
+  }
+
+  private static INodeDirectory directory(int id, String name, int parentId) {
+    INodeDirectory dir = new INodeDirectory(name,
+        new PermissionStatus("user", null, FsPermission.getDefault()));
+    dir.setIdNoPersistance(id);
+    dir.setParentIdNoPersistance(parentId);
+    return dir;
+  }
+}
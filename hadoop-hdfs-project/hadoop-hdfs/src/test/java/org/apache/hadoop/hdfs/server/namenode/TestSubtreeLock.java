@@ -32,6 +32,7 @@
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
@@ -407,6 +408,50 @@ public void testDeleteUnclosed() throws IOException, InterruptedException {
     }
   }
 
+  @Test
+  public void testDeleteInBatches() throws IOException {
+    MiniDFSCluster cluster = null;
+    try {
+      Configuration conf = new HdfsConfiguration();
+      conf.setInt(DFSConfigKeys.DFS_CLIENT_RETRIES_ON_FAILURE_KEY, 0);
+      conf.setInt(DFSConfigKeys.DFS_SUBTREE_DELETE_BATCH_SIZE_KEY, 3);
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      assertTrue(fs.mkdir(new Path("/foo"), FsPermission.getDefault()));
+      assertTrue(fs.mkdir(new Path("/keep"), FsPermission.getDefault()));
+      DFSTestUtil.createFile(fs, new Path("/keep/file"), 1024, (short) 1, 0L);
+
+      // both levels below /foo hold more siblings than fit in one batch
+      for (int i = 0; i < 7; i++) {
+        DFSTestUtil.createFile(fs, new Path("/foo/file" + i), 1024, (short) 1,
+            0L);
+      }
+      for (int i = 0; i < 2; i++) {
+        Path dir = new Path("/foo/dir" + i);
+        assertTrue(fs.mkdir(dir, FsPermission.getDefault()));
+        for (int j = 0; j < 5; j++) {
+          DFSTestUtil.createFile(fs, new Path(dir, "file" + j), 1024,
+              (short) 1, 0L);
+        }
+      }
+      TestFileCreation.createFile(fs, new Path("/foo/dir0/unclosed"), 1);
+
+      assertTrue(fs.delete(new Path("/foo"), true));
+      assertFalse(fs.exists(new Path("/foo")));
+      assertFalse(fs.exists(new Path("/foo/dir0")));
+      assertTrue(fs.exists(new Path("/keep/file")));
+      assertTrue(fs.listStatus(new Path("/")).length == 1);
+      assertTrue(cluster.getNamesystem().getBlocksTotal() == 1);
+
+      assertFalse("Not All subtree locks were removed after operation ", subTreeLocksExists());
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   @Test
   public void testMove() throws IOException {
     MiniDFSCluster cluster = null;
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares the heap use and time of the boxed collections that block report
+ * processing used to load the replicas of a datanode with
+ * {@link LongIntHashMap} and its key sets. The user should invoke the main of
+ * this class and optionally give the number of replicas, 5M by default.
+ * Run it with a heap big enough for the boxed collections, e.g. -Xmx4g.
+ */
+public class ReplicaMapsBenchmark {
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static void print(String name, long start, long heapBefore,
+      long heapAfter) {
+    System.out.println(name + " time: " +
+        (System.currentTimeMillis() - start) + " ms, heap: " +
+        (heapAfter - heapBefore) / (1024 * 1024) + " MB");
+  }
+
+  private static long[] reported(int numReplicas) {
+    Random rand = new Random(0);
+    long[] reported = new long[numReplicas];
+    for (int i = 0; i < numReplicas; i++) {
+      // a few percent of the report is not known to the namenode
+      reported[i] = rand.nextInt(100) < 2 ? -i : i;
+    }
+    return reported;
+  }
+
+  static int boxed(int numReplicas, long[] reported) {
+    long heapBefore = usedHeap();
+    long start = System.currentTimeMillis();
+    Map<Long, Integer> replicas = new HashMap<Long, Integer>();
+    for (int i = 0; i < numReplicas; i++) {
+      replicas.put((long) i, i);
+    }
+    Set<Long> allMachineBlocks = new HashSet<Long>(replicas.keySet());
+    Set<Long> safeBlocks = new HashSet<Long>(allMachineBlocks);
+    for (long blockId : reported) {
+      if (replicas.get(blockId) != null) {
+        allMachineBlocks.remove(blockId);
+      } else {
+        safeBlocks.remove(blockId);
+      }
+    }
+    long heapAfter = usedHeap();
+    print("boxed    ", start, heapBefore, heapAfter);
+    return replicas.size() + allMachineBlocks.size() + safeBlocks.size();
+  }
+
+  static int primitive(int numReplicas, long[] reported) {
+    long heapBefore = usedHeap();
+    long start = System.currentTimeMillis();
+    LongIntHashMap replicas = new LongIntHashMap(numReplicas);
+    for (int i = 0; i < numReplicas; i++) {
+      replicas.put(i, i);
+    }
+    LongIntHashMap.KeySet allMachineBlocks = replicas.newKeySet();
+    LongIntHashMap.KeySet safeBlocks = allMachineBlocks.copy();
+    for (long blockId : reported) {
+      if (replicas.get(blockId, -1) != -1) {
+        allMachineBlocks.remove(blockId);
+      } else {
+        safeBlocks.remove(blockId);
+      }
+    }
+    long heapAfter = usedHeap();
+    print("primitive", start, heapBefore, heapAfter);
+    return replicas.size() + allMachineBlocks.size() + safeBlocks.size();
+  }
+
+  public static void main(String[] args) {
+    int numReplicas = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+    long[] reported = reported(numReplicas);
+    System.out.println("Replicas: " + numReplicas);
+    int check = boxed(numReplicas, reported);
+    if (check != primitive(numReplicas, reported)) {
+      throw new IllegalStateException("Both implementations must agree");
+    }
+  }
+}
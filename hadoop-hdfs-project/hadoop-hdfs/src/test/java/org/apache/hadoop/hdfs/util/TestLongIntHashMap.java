@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestLongIntHashMap {
+
+  private static final int NUM = 10000;
+
+  @Test
+  public void testPutAndGet() {
+    Random rand = new Random(0);
+    Map<Long, Integer> expected = new HashMap<Long, Integer>();
+    LongIntHashMap map = new LongIntHashMap();
+    for (int i = 0; i < NUM; i++) {
+      long key = rand.nextLong();
+      int value = rand.nextInt();
+      expected.put(key, value);
+      map.put(key, value);
+    }
+    assertEquals(expected.size(), map.size());
+    for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+      assertTrue(map.containsKey(entry.getKey()));
+      assertEquals((int) entry.getValue(), map.get(entry.getKey(), -1));
+    }
+    assertFalse(map.containsKey(rand.nextLong()));
+    assertEquals(-1, map.get(rand.nextLong(), -1));
+  }
+
+  @Test
+  public void testOverwrite() {
+    LongIntHashMap map = new LongIntHashMap(1);
+    map.put(0, 1);
+    map.put(0, 2);
+    assertEquals(1, map.size());
+    assertEquals(2, map.get(0, -1));
+  }
+
+  @Test
+  public void testKeySet() {
+    LongIntHashMap map = new LongIntHashMap(NUM);
+    for (long key = 0; key < NUM; key++) {
+      map.put(key, (int) key);
+    }
+    LongIntHashMap.KeySet keys = map.newKeySet();
+    LongIntHashMap.KeySet copy = keys.copy();
+    assertEquals(NUM, keys.size());
+
+    for (long key = 0; key < NUM; key += 2) {
+      assertTrue(keys.remove(key));
+      assertFalse(keys.remove(key));
+    }
+    assertFalse(keys.remove(NUM));
+    assertEquals(NUM / 2, keys.size());
+    assertEquals(NUM, copy.size());
+    for (long key = 0; key < NUM; key++) {
+      assertEquals(key % 2 == 1, keys.contains(key));
+    }
+
+    copy.removeAll(keys);
+    long[] remaining = copy.toArray();
+    Arrays.sort(remaining);
+    assertEquals(NUM / 2, remaining.length);
+    for (int i = 0; i < remaining.length; i++) {
+      assertEquals(2L * i, remaining[i]);
+    }
+    Set<Long> boxed = copy.toSet();
+    assertEquals(NUM / 2, boxed.size());
+    assertTrue(boxed.contains(0L));
+  }
+
+  @Test
+  public void testLongLongHashMap() {
+    Random rand = new Random(0);
+    LongLongHashMap map = new LongLongHashMap();
+    long[] keys = new long[NUM];
+    for (int i = 0; i < NUM; i++) {
+      keys[i] = rand.nextLong();
+      map.put(keys[i], ~keys[i]);
+    }
+    assertEquals(NUM, map.size());
+    for (long key : keys) {
+      assertEquals(~key, map.get(key, 0));
+    }
+    assertEquals(0, map.get(rand.nextLong(), 0));
+  }
+
+  @Test
+  public void testKeys() {
+    LongIntHashMap map = new LongIntHashMap();
+    long[] keys = {5, -3, Long.MAX_VALUE, Long.MIN_VALUE, 0};
+    for (long key : keys) {
+      map.put(key, 0);
+    }
+    long[] result = map.keys();
+    Arrays.sort(result);
+    Arrays.sort(keys);
+    assertArrayEquals(keys, result);
+  }
+}
@@ -1313,6 +1313,36 @@ public class YarnConfiguration extends Configuration {
   public static String HOPS_PENDING_EVENTS_BATCH =
       HOPS_RM_PREFIX + "pending-events.batch";
   public static int DEFAULT_HOPS_PENDING_EVENTS_BATCH = 0;
+  //Channel notifying the scheduler of committed pending events, polling is
+  //only a fallback when it is set
+  public static final String HOPS_PENDING_EVENTS_CHANNEL_CLASS =
+      HOPS_RM_PREFIX + "pending-events.channel.class";
+  public static final String HOPS_PENDING_EVENTS_FALLBACK_PERIOD =
+      HOPS_RM_PREFIX + "pending-events.fallback-retrieval.period";
+  public static final int DEFAULT_HOPS_PENDING_EVENTS_FALLBACK_PERIOD = 5000;
+  //Port and addresses of the RMs for the UdpPendingEventChannel, the
+  //addresses default to the RM hostnames
+  public static final String HOPS_PENDING_EVENTS_CHANNEL_PORT =
+      HOPS_RM_PREFIX + "pending-events.channel.udp.port";
+  public static final int DEFAULT_HOPS_PENDING_EVENTS_CHANNEL_PORT = 8035;
+  public static final String HOPS_PENDING_EVENTS_CHANNEL_ADDRESSES =
+      HOPS_RM_PREFIX + "pending-events.channel.udp.addresses";
+
+  //Group commit of finished transaction states
+  public static final String HOPS_GROUP_COMMIT_ENABLED =
+      HOPS_RM_PREFIX + "group-commit.enable";
+  public static final boolean DEFAULT_HOPS_GROUP_COMMIT_ENABLED = false;
+  public static final String HOPS_GROUP_COMMIT_MAX_BATCH =
+      HOPS_RM_PREFIX + "group-commit.max-batch";
+  public static final int DEFAULT_HOPS_GROUP_COMMIT_MAX_BATCH = 64;
+  public static final String HOPS_GROUP_COMMIT_MAX_LINGER_MS =
+      HOPS_RM_PREFIX + "group-commit.max-linger-ms";
+  public static final long DEFAULT_HOPS_GROUP_COMMIT_MAX_LINGER_MS = 0;
+
+  //Number of tables NDBRMStateStore loads concurrently on recovery
+  public static final String HOPS_RM_STATE_LOAD_THREADS =
+      HOPS_RM_PREFIX + "state-load.threads";
+  public static final int DEFAULT_HOPS_RM_STATE_LOAD_THREADS = 8;
 
   static {
 
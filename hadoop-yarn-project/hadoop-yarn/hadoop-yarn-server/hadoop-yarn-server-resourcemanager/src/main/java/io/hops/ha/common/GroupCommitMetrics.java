@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.ha.common;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.metrics2.annotation.Metric;
+import org.apache.hadoop.metrics2.annotation.Metrics;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.lib.MutableStat;
+
+@InterfaceAudience.Private
+@Metrics(about = "Group commit of transaction states", context = "yarn")
+public class GroupCommitMetrics {
+
+  private static volatile GroupCommitMetrics INSTANCE = null;
+
+  @Metric(value = "Transaction states persisted per group commit",
+      sampleName = "Commits", valueName = "States")
+  MutableStat batchSize;
+  @Metric("Group commit latency")
+  MutableRate commitLatency;
+  @Metric("Transaction states waiting to be committed")
+  MutableGaugeInt backlog;
+  @Metric("Transaction states of failed group commits")
+  MutableCounterLong failedStates;
+
+  public static GroupCommitMetrics getMetrics() {
+    if (INSTANCE == null) {
+      synchronized (GroupCommitMetrics.class) {
+        if (INSTANCE == null) {
+          GroupCommitMetrics metrics = new GroupCommitMetrics();
+          DefaultMetricsSystem.instance().register("GroupCommitMetrics",
+              "Group commit of transaction states", metrics);
+          INSTANCE = metrics;
+        }
+      }
+    }
+    return INSTANCE;
+  }
+
+  public void addCommit(int states, long latency) {
+    batchSize.add(states);
+    commitLatency.add(latency);
+  }
+
+  public void setBacklog(int states) {
+    backlog.set(states);
+  }
+
+  public void incrFailedStates(int states) {
+    failedStates.incr(states);
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.ha.common;
+
+import io.hops.metadata.util.RMUtilities;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists finished transaction states in groups. States are queued in the
+ * order they finished and a single thread takes up to maxBatch consecutive
+ * states off the queue and persists them in one database transaction, so
+ * the order of the RPCs is kept and the database commit latency is paid once
+ * per group instead of once per RPC.
+ *
+ * If a group cannot be persisted its states are dropped and logged, like a
+ * single state that cannot be persisted. They are not retried one by one:
+ * persisting a state changes some of its add and remove sets, so a state
+ * that was part of a failed group is no longer the state that was submitted.
+ *
+ * The committer is shared by all the resource managers of the process, it
+ * is stopped when the last one that started it stops it.
+ */
+public class TransactionStateCommitter implements Runnable {
+
+  private static final Log LOG =
+      LogFactory.getLog(TransactionStateCommitter.class);
+
+  private static volatile TransactionStateCommitter instance = null;
+  private static int references = 0;
+
+  private final BlockingQueue<TransactionStateImpl> queue =
+      new LinkedBlockingQueue<TransactionStateImpl>();
+  private final int maxBatch;
+  private final long maxLingerNanos;
+  private final GroupCommitMetrics metrics;
+  private volatile boolean running = true;
+  private Thread thread;
+
+  private TransactionStateCommitter(int maxBatch, long maxLingerMs) {
+    this.maxBatch = Math.max(1, maxBatch);
+    this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMs);
+    this.metrics = GroupCommitMetrics.getMetrics();
+  }
+
+  /**
+   * Starts the committer if group commit is enabled in the configuration,
+   * or takes another reference on the running committer.
+   *
+   * @return true if the caller holds a reference and has to call
+   * {@link #stop()}
+   */
+  public static synchronized boolean start(Configuration conf) {
+    if (!conf.getBoolean(YarnConfiguration.HOPS_GROUP_COMMIT_ENABLED,
+        YarnConfiguration.DEFAULT_HOPS_GROUP_COMMIT_ENABLED)) {
+      return false;
+    }
+    references++;
+    if (instance != null) {
+      return true;
+    }
+    instance = new TransactionStateCommitter(
+        conf.getInt(YarnConfiguration.HOPS_GROUP_COMMIT_MAX_BATCH,
+            YarnConfiguration.DEFAULT_HOPS_GROUP_COMMIT_MAX_BATCH),
+        conf.getLong(YarnConfiguration.HOPS_GROUP_COMMIT_MAX_LINGER_MS,
+            YarnConfiguration.DEFAULT_HOPS_GROUP_COMMIT_MAX_LINGER_MS));
+    instance.thread = new Thread(instance, "TransactionStateCommitter");
+    instance.thread.setDaemon(true);
+    instance.thread.start();
+    LOG.info("started group commit of transaction states, max batch " +
+        instance.maxBatch + ", max linger " + instance.maxLingerNanos + " ns");
+    return true;
+  }
+
+  /**
+   * Releases a reference taken by {@link #start(Configuration)}. The
+   * committer is stopped after the queued states are persisted once the
+   * last reference is released.
+   */
+  public static synchronized void stop() throws InterruptedException {
+    if (references > 0) {
+      references--;
+    }
+    if (instance != null && references == 0) {
+      // the thread notices within one poll interval, it is not interrupted
+      // so that a group that is being persisted is not aborted
+      instance.running = false;
+      instance.thread.join();
+      instance = null;
+    }
+  }
+
+  static TransactionStateCommitter getInstance() {
+    return instance;
+  }
+
+  void submit(TransactionStateImpl ts) {
+    queue.add(ts);
+  }
+
+  @Override
+  public void run() {
+    List<TransactionStateImpl> batch =
+        new ArrayList<TransactionStateImpl>(maxBatch);
+    while (running) {
+      try {
+        TransactionStateImpl first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        fillBatch(batch);
+      } catch (InterruptedException e) {
+        if (running) {
+          LOG.warn("TransactionStateCommitter interrupted", e);
+        }
+      }
+      if (!batch.isEmpty()) {
+        commit(batch);
+        batch.clear();
+      }
+    }
+    // persist what was queued before stopping
+    while (queue.drainTo(batch, maxBatch) > 0) {
+      commit(batch);
+      batch.clear();
+    }
+  }
+
+  private void fillBatch(List<TransactionStateImpl> batch)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + maxLingerNanos;
+    while (batch.size() < maxBatch) {
+      queue.drainTo(batch, maxBatch - batch.size());
+      long remaining = deadline - System.nanoTime();
+      if (batch.size() >= maxBatch || remaining <= 0) {
+        return;
+      }
+      TransactionStateImpl next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        return;
+      }
+      batch.add(next);
+    }
+  }
+
+  private void commit(List<TransactionStateImpl> batch) {
+    metrics.setBacklog(queue.size());
+    long start = System.currentTimeMillis();
+    try {
+      RMUtilities.finishRPCBatch(batch);
+      metrics.addCommit(batch.size(), System.currentTimeMillis() - start);
+    } catch (IOException e) {
+      metrics.incrFailedStates(batch.size());
+      LOG.error("HOP :: Error commiting group of " + batch.size() +
+          " transaction states, first rpc " + batch.get(0).getId(), e);
+    }
+  }
+}
@@ -136,7 +136,13 @@ public TransactionStateImpl(int rcpID, TransactionType type, String rpcType,
   
   @Override
   void commit() throws IOException {
-    GlobalThreadPool.getExecutorService().execute(new RPCFinisher(this));
+    TransactionStateCommitter committer =
+        TransactionStateCommitter.getInstance();
+    if (committer != null) {
+      committer.submit(this);
+    } else {
+      GlobalThreadPool.getExecutorService().execute(new RPCFinisher(this));
+    }
   }
 
   public FairSchedulerNodeInfo getFairschedulerNodeInfo() {
@@ -202,7 +208,7 @@ private void persitApplicationToAdd() throws IOException {
               .getDataAccess(ApplicationStateDataAccess.class);
       List<ApplicationState> newAppStates = new ArrayList<ApplicationState>();
       for (RMAppImpl app : applicationsToAdd) {
-        if (!applicationsStateToRemove.remove(app.getApplicationId())) {
+        if (!applicationsStateToRemove.contains(app.getApplicationId())) {
           ApplicationStateDataPBImpl appStateData =
               (ApplicationStateDataPBImpl) ApplicationStateDataPBImpl
                   .newApplicationStateData(app.getSubmitTime(),
@@ -233,8 +239,16 @@ private void persistApplicationStateToRemove() throws StorageException {
       ApplicationStateDataAccess DA =
           (ApplicationStateDataAccess) RMStorageFactory
               .getDataAccess(ApplicationStateDataAccess.class);
+      Set<ApplicationId> added = new HashSet<ApplicationId>();
+      for (RMAppImpl app : applicationsToAdd) {
+        added.add(app.getApplicationId());
+      }
       List<ApplicationState> appToRemove = new ArrayList<ApplicationState>();
       for (ApplicationId appId : applicationsStateToRemove) {
+        if (added.contains(appId)) {
+          // added and removed by this transaction, it was never persisted
+          continue;
+        }
         LOG.debug("removing app state " + appId.toString());
         appToRemove.add(new ApplicationState(appId.toString()));
       }
@@ -307,7 +321,7 @@ private void persistAllocateResponsesToAdd() throws IOException {
               .getDataAccess(AllocateResponseDataAccess.class);
       List<AllocateResponse> toAdd = new ArrayList<AllocateResponse>();
       for (ApplicationAttemptId id : allocateResponsesToAdd.keySet()) {
-        if (!allocateResponsesToRemove.remove(id)) {
+        if (!allocateResponsesToRemove.contains(id)) {
           AllocateResponseLock lock = allocateResponsesToAdd.get(id);
           synchronized (lock) {
             AllocateResponsePBImpl lastResponse = (AllocateResponsePBImpl) lock.
@@ -334,6 +348,10 @@ private void persistAllocateResponsesToRemove() throws IOException {
               .getDataAccess(AllocateResponseDataAccess.class);
       List<AllocateResponse> toRemove = new ArrayList<AllocateResponse>();
       for (ApplicationAttemptId id : allocateResponsesToRemove) {
+        if (allocateResponsesToAdd.containsKey(id)) {
+          // added and removed by this transaction, it was never persisted
+          continue;
+        }
         toRemove.add(new AllocateResponse(id.toString()));
       }
       da.removeAll(toRemove);
@@ -491,6 +509,10 @@ private void persistFiCaSchedulerNodeToRemove(ResourceDataAccess resourceDA,
       ArrayList<LaunchedContainers> toRemoveLaunchedContainers =
           new ArrayList<LaunchedContainers>();
       for (String nodeId : ficaSchedulerNodeInfoToRemove.keySet()) {
+        if (ficaSchedulerNodeInfoToAdd.containsKey(nodeId)) {
+          // added and removed by this transaction, it was never persisted
+          continue;
+        }
         LOG.debug("remove ficaschedulernodes " + nodeId);
         toRemoveFiCaSchedulerNodes.add(new FiCaSchedulerNode(nodeId,
             ficaSchedulerNodeInfoToRemove.get(nodeId).getNodeName(),
@@ -543,7 +565,7 @@ public void persistFiCaSchedulerNodeToAdd(ResourceDataAccess resourceDA,
       ArrayList<LaunchedContainers> toAddLaunchedContainers =
           new ArrayList<LaunchedContainers>();
       for (String nodeId : ficaSchedulerNodeInfoToAdd.keySet()) {
-        if (ficaSchedulerNodeInfoToRemove.remove(nodeId) == null) {
+        if (!ficaSchedulerNodeInfoToRemove.containsKey(nodeId)) {
           
           org.apache.hadoop.yarn.server.resourcemanager.scheduler.common.fica.FiCaSchedulerNode
               node = ficaSchedulerNodeInfoToAdd.get(nodeId);
@@ -621,6 +643,17 @@ public void addPendingEventToAdd(String rmnodeId, byte type, byte status,
     this.rmNode = rmNode;
   }
 
+  /**
+   * @return the nodes this transaction state adds pending events for
+   */
+  public Set<String> getPendingEventNodeIds() {
+    Set<String> rmNodeIds = new HashSet<String>();
+    for (PendingEvent pendingEvent : persistedEventsToAdd) {
+      rmNodeIds.add(pendingEvent.getRmnodeId());
+    }
+    return rmNodeIds;
+  }
+
   public RMNodeImpl getRMNode() {
     return this.rmNode;
   }
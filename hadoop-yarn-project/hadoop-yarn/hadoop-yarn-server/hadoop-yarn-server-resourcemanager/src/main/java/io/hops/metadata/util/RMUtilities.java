@@ -114,6 +114,7 @@
 import org.apache.hadoop.yarn.server.api.protocolrecords.impl.pb.NodeHeartbeatResponsePBImpl;
 import org.apache.hadoop.yarn.server.api.records.MasterKey;
 import org.apache.hadoop.yarn.server.api.records.impl.pb.MasterKeyPBImpl;
+import org.apache.hadoop.yarn.server.resourcemanager.PendingEventChannel;
 import org.apache.hadoop.yarn.server.resourcemanager.RMContext;
 import org.apache.hadoop.yarn.server.resourcemanager.recovery.NDBRMStateStore;
 import org.apache.hadoop.yarn.server.resourcemanager.recovery.RMStateStore;
@@ -131,9 +132,12 @@
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -2116,14 +2120,43 @@ public static void finishRPCs(TransactionStateImpl ts, int rpcID) {
   public static void finishRPC(final TransactionStateImpl ts, final int rpcID) {
 
     LOG.debug("HOP :: finishRPC - START:" + rpcID);
+    try {
+      persistTransactionStates(Collections.singletonList(ts),
+          new int[]{rpcID});
+    } catch (IOException ex) {
+      LOG.error("HOP :: Error commiting finishRPC", ex);
+    }
+  }
 
+  /**
+   * Persists a batch of finished transaction states in a single database
+   * transaction. The states are applied in the order of the list, so that a
+   * later state overwrites the rows written by an earlier one.
+   *
+   * @throws IOException
+   *     if the transaction failed, none of the states is persisted then
+   */
+  public static void finishRPCBatch(final List<TransactionStateImpl> batch)
+      throws IOException {
+    int[] rpcIDs = new int[batch.size()];
+    for (int i = 0; i < rpcIDs.length; i++) {
+      rpcIDs[i] = batch.get(i).getId();
+    }
+    LOG.debug("HOP :: finishRPCBatch - START: " + batch.size() + " rpcs");
+    persistTransactionStates(batch, rpcIDs);
+  }
+
+  private static void persistTransactionStates(
+      final List<TransactionStateImpl> states, final int[] rpcIDs)
+      throws IOException {
     LightWeightRequestHandler setfinishRPCHandler =
         new LightWeightRequestHandler(YARNOperationType.TEST) {
           @Override
           public Object performTask() throws IOException {
             connector.beginTransaction();
             connector.writeLock();
-            LOG.debug("HOP :: finishRPC() - handler for rpc: " + rpcID);
+            LOG.debug("HOP :: finishRPC() - handler for rpcs: " +
+                Arrays.toString(rpcIDs));
 
             RPCDataAccess DA = (RPCDataAccess) RMStorageFactory
                 .getDataAccess(RPCDataAccess.class);
@@ -2178,38 +2211,51 @@ public Object performTask() throws IOException {
                 (NextHeartbeatDataAccess) RMStorageFactory
                     .getDataAccess(NextHeartbeatDataAccess.class);
 
-            if (rpcID >= 0) {
-              RPC hop = new RPC(rpcID);
-              DA.remove(hop);
+            for (int i = 0; i < states.size(); i++) {
+              TransactionStateImpl ts = states.get(i);
+              if (rpcIDs[i] >= 0) {
+                RPC hop = new RPC(rpcIDs[i]);
+                DA.remove(hop);
+              }
+              //TODO put all of this in ts.persist
+              ts.persistRMNodeToUpdate(rmnodeDA);
+              ts.persistRmcontextInfo(rmnodeDA, resourceDA, nodeDA,
+                  rmctxInactiveNodesDA);
+
+              ts.persistRMNodeInfo(hbDA, cidToCleanDA,
+                  justLaunchedContainersDA, updatedContainerInfoDA, faDA,
+                  csDA);
+              ts.persist();
+              ts.persistFicaSchedulerNodeInfo(resourceDA, ficaNodeDA,
+                  rmcontainerDA, launchedContainersDA);
+              ts.persistFairSchedulerNodeInfo(FSSNodeDA);
+              ts.persistSchedulerApplicationInfo(QMDA);
+              ts.persistPendingEvents(persistedEventDA);
             }
-            //TODO put all of this in ts.persist
-            ts.persistRMNodeToUpdate(rmnodeDA);
-            ts.persistRmcontextInfo(rmnodeDA, resourceDA, nodeDA,
-                rmctxInactiveNodesDA);
-
-            ts.persistRMNodeInfo(hbDA, cidToCleanDA, justLaunchedContainersDA,
-                updatedContainerInfoDA, faDA, csDA);
-            ts.persist();
-            ts.persistFicaSchedulerNodeInfo(resourceDA, ficaNodeDA,
-                rmcontainerDA, launchedContainersDA);
-            ts.persistFairSchedulerNodeInfo(FSSNodeDA);
-            ts.persistSchedulerApplicationInfo(QMDA);
-            ts.persistPendingEvents(persistedEventDA);
 
             connector.commit();
 
-            if (ts.getRMNode() != null) {
-              ts.getRMNode().setPersisted(true);
+            for (TransactionStateImpl ts : states) {
+              if (ts.getRMNode() != null) {
+                ts.getRMNode().setPersisted(true);
+              }
             }
 
-            LOG.debug("HOP :: finishRPC - FINISH:" + rpcID);
+            LOG.debug("HOP :: finishRPC - FINISH:" + Arrays.toString(rpcIDs));
             return null;
           }
         };
-    try {
-      setfinishRPCHandler.handle();
-    } catch (IOException ex) {
-      LOG.error("HOP :: Error commiting finishRPC", ex);
+    setfinishRPCHandler.handle();
+
+    PendingEventChannel channel = PendingEventChannel.getInstance();
+    if (channel != null) {
+      Set<String> rmNodeIds = new HashSet<String>();
+      for (TransactionStateImpl ts : states) {
+        rmNodeIds.addAll(ts.getPendingEventNodeIds());
+      }
+      if (!rmNodeIds.isEmpty()) {
+        channel.publish(rmNodeIds, System.currentTimeMillis());
+      }
     }
   }
 
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.resourcemanager;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link PendingEventChannel} that delivers the notifications to the
+ * listeners of the same process, for resource tracker and scheduler RMs
+ * that share a JVM such as in the tests. When they run in separate processes
+ * use {@link UdpPendingEventChannel}.
+ */
+public class LocalPendingEventChannel extends PendingEventChannel {
+
+  private static final Log LOG =
+      LogFactory.getLog(LocalPendingEventChannel.class);
+
+  private final List<Listener> listeners =
+      new CopyOnWriteArrayList<Listener>();
+
+  @Override
+  public void publish(Collection<String> rmNodeIds, long commitTime) {
+    for (Listener listener : listeners) {
+      try {
+        listener.pendingEventsCommitted(rmNodeIds, commitTime);
+      } catch (RuntimeException e) {
+        LOG.warn("HOP :: Error while notifying pending events", e);
+      }
+    }
+  }
+
+  @Override
+  public void subscribe(Listener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void unsubscribe(Listener listener) {
+    listeners.remove(listener);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.resourcemanager;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+
+import java.util.Collection;
+
+/**
+ * Channel over which the resource tracker RMs tell the scheduler RM that
+ * pending events of some nodes were committed, so that they are retrieved
+ * right away instead of at the next poll. The events themselves are always
+ * read from the database, a notification that gets lost only delays them
+ * until the next fallback poll.
+ * <p/>
+ * One channel is shared by all the RMs of a process, its class is set with
+ * {@link YarnConfiguration#HOPS_PENDING_EVENTS_CHANNEL_CLASS}.
+ * {@link UdpPendingEventChannel} reaches the RMs of other processes,
+ * {@link LocalPendingEventChannel} only those of the same process.
+ */
+public abstract class PendingEventChannel {
+
+  private static final Log LOG = LogFactory.getLog(PendingEventChannel.class);
+
+  public interface Listener {
+    /**
+     * @param rmNodeIds
+     *     the nodes that have new pending events
+     * @param commitTime
+     *     the time the events were committed
+     */
+    void pendingEventsCommitted(Collection<String> rmNodeIds, long commitTime);
+  }
+
+  private static volatile PendingEventChannel instance;
+
+  /**
+   * Create the channel of this process if it is configured and does not
+   * exist yet.
+   *
+   * @return the channel of this process, or null if none is configured
+   */
+  public static synchronized PendingEventChannel init(Configuration conf) {
+    if (instance == null) {
+      Class<? extends PendingEventChannel> channelClass =
+          conf.getClass(YarnConfiguration.HOPS_PENDING_EVENTS_CHANNEL_CLASS,
+              null, PendingEventChannel.class);
+      if (channelClass != null) {
+        if (LocalPendingEventChannel.class.isAssignableFrom(channelClass)) {
+          LOG.warn("HOP :: " + channelClass.getName() + " only notifies the " +
+              "scheduler if it runs in this process, resource trackers of " +
+              "other processes need " + UdpPendingEventChannel.class.getName());
+        }
+        instance = ReflectionUtils.newInstance(channelClass, conf);
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * @return the channel of this process, or null if there is none
+   */
+  public static PendingEventChannel getInstance() {
+    return instance;
+  }
+
+  /**
+   * Called after the pending events of the nodes were committed.
+   */
+  public abstract void publish(Collection<String> rmNodeIds, long commitTime);
+
+  public abstract void subscribe(Listener listener);
+
+  public abstract void unsubscribe(Listener listener);
+}
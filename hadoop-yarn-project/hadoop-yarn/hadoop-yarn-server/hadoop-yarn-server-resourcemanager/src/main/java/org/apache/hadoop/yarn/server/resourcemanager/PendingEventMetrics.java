@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.resourcemanager;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.metrics2.MetricsSystem;
+import org.apache.hadoop.metrics2.annotation.Metric;
+import org.apache.hadoop.metrics2.annotation.Metrics;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+
+/**
+ * Metrics of the pending events retrieved by the scheduler RM.
+ */
+@InterfaceAudience.Private
+@Metrics(about = "Pending event retrieval metrics", context = "yarn")
+public class PendingEventMetrics {
+
+  private static final int[] INTERVALS = {60, 300};
+
+  private static PendingEventMetrics INSTANCE = null;
+
+  final MetricsRegistry registry = new MetricsRegistry("PendingEventMetrics");
+
+  @Metric("Time from the commit of pending events to their scheduler events")
+  MutableRate eventToSchedule;
+  MutableQuantiles[] eventToScheduleQuantiles;
+  @Metric("Retrievals woken up by a pending event notification")
+  MutableCounterLong notifiedRetrievals;
+  @Metric("Retrievals done by the fallback poll")
+  MutableCounterLong polledRetrievals;
+
+  private PendingEventMetrics() {
+    registry.tag("ProcessName", "Process name", "ResourceManager");
+    eventToScheduleQuantiles = new MutableQuantiles[INTERVALS.length];
+    for (int i = 0; i < INTERVALS.length; i++) {
+      eventToScheduleQuantiles[i] = registry
+          .newQuantiles("eventToSchedule" + INTERVALS[i] + "s",
+              "Time from the commit of pending events to their scheduler " +
+                  "events", "ops", "latency", INTERVALS[i]);
+    }
+  }
+
+  public static synchronized PendingEventMetrics getMetrics() {
+    if (INSTANCE == null) {
+      INSTANCE = new PendingEventMetrics();
+      MetricsSystem ms = DefaultMetricsSystem.instance();
+      if (ms != null) {
+        ms.register("PendingEventMetrics", "Pending event retrieval metrics",
+            INSTANCE);
+      }
+    }
+    return INSTANCE;
+  }
+
+  public void addEventToSchedule(long latency) {
+    eventToSchedule.add(latency);
+    for (MutableQuantiles q : eventToScheduleQuantiles) {
+      q.add(latency);
+    }
+  }
+
+  public void incrNotifiedRetrievals() {
+    notifiedRetrievals.incr();
+  }
+
+  public void incrPolledRetrievals() {
+    polledRetrievals.incr();
+  }
+}
@@ -26,10 +26,14 @@
 import org.apache.hadoop.yarn.server.resourcemanager.rmnode.RMNode;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
@@ -37,8 +41,12 @@
  * Periodically retrieves and processes pending events created by the
  * ResourceManagers.
  * <p/>
+ * If the process has a {@link PendingEventChannel} the events are retrieved
+ * as soon as their commit is notified, and the periodic retrieval only
+ * catches up with lost notifications.
  */
-public class PendingEventRetrievalBatch extends PendingEventRetrieval {
+public class PendingEventRetrievalBatch extends PendingEventRetrieval
+    implements PendingEventChannel.Listener {
 
   private static final Log LOG =
       LogFactory.getLog(PendingEventRetrievalBatch.class);//recovered
@@ -50,6 +58,13 @@ public class PendingEventRetrievalBatch extends PendingEventRetrieval {
   private final ConcurrentLinkedQueue<String> pendingNMs =
       new ConcurrentLinkedQueue<String>();
   private final WriteLock writeLock;
+  private final PendingEventChannel channel;
+  private final Semaphore notifications = new Semaphore(0);
+  //Commit time of the oldest notified events of each node that were not
+  //turned into scheduler events yet
+  private final ConcurrentHashMap<String, Long> commitTimes =
+      new ConcurrentHashMap<String, Long>();
+  private final PendingEventMetrics metrics = PendingEventMetrics.getMetrics();
 
   /**
    * @param rmContext
@@ -58,14 +73,40 @@ public class PendingEventRetrievalBatch extends PendingEventRetrieval {
   public PendingEventRetrievalBatch(RMContext rmContext, Configuration conf) {
     super(rmContext, conf);
     this.firstRetrieval = true;
-    this.period =
+    this.channel = PendingEventChannel.getInstance();
+    this.period = channel == null ?
         conf.getInt(YarnConfiguration.HOPS_PENDING_EVENTS_RETRIEVAL_PERIOD,
-            YarnConfiguration.DEFAULT_HOPS_PENDING_EVENTS_RETRIEVAL_PERIOD);
+            YarnConfiguration.DEFAULT_HOPS_PENDING_EVENTS_RETRIEVAL_PERIOD) :
+        conf.getInt(YarnConfiguration.HOPS_PENDING_EVENTS_FALLBACK_PERIOD,
+            YarnConfiguration.DEFAULT_HOPS_PENDING_EVENTS_FALLBACK_PERIOD);
     LOG.debug("PendingEventRetrieval period=" + period);
     this.pendingEvents =
         new HashMap<String, ConcurrentSkipListSet<PendingEvent>>();
     ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     this.writeLock = lock.writeLock();
+    if (channel != null) {
+      channel.subscribe(this);
+    }
+  }
+
+  @Override
+  public void pendingEventsCommitted(Collection<String> rmNodeIds,
+      long commitTime) {
+    for (String id : rmNodeIds) {
+      commitTimes.putIfAbsent(id, commitTime);
+    }
+    if (notifications.availablePermits() == 0) {
+      notifications.release();
+    }
+  }
+
+  @Override
+  public void finish() {
+    super.finish();
+    if (channel != null) {
+      channel.unsubscribe(this);
+    }
+    notifications.release();
   }
 
   @Override
@@ -101,8 +142,16 @@ public void run() {
         } finally {
           writeLock.unlock();
         }
-        Thread.sleep(
-            Math.max(0, period - (System.currentTimeMillis() - startTime)));
+        //Wait for a notification, or until the next poll
+        boolean notified = notifications.tryAcquire(
+            Math.max(0, period - (System.currentTimeMillis() - startTime)),
+            TimeUnit.MILLISECONDS);
+        notifications.drainPermits();
+        if (notified) {
+          metrics.incrNotifiedRetrievals();
+        } else {
+          metrics.incrPolledRetrievals();
+        }
       } catch (IOException ex) {
         LOG.error("HOP :: Error while retrieving PendingEvents", ex);
       } catch (InterruptedException ex) {
@@ -146,6 +195,11 @@ public void run() {
           for (PendingEvent pendingEvent : eventsToRemove) {
             triggerEvent(rmNode, pendingEvent);
           }
+          Long commitTime = commitTimes.remove(id);
+          if (commitTime != null) {
+            metrics.addEventToSchedule(
+                System.currentTimeMillis() - commitTime);
+          }
           try {
             writeLock.lock();
             //Remove processed events
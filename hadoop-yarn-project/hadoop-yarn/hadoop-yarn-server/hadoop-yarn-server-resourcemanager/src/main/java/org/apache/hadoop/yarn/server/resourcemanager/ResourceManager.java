@@ -18,6 +18,7 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import io.hops.common.GlobalThreadPool;
+import io.hops.ha.common.TransactionStateCommitter;
 import io.hops.metadata.util.RMStorageFactory;
 import io.hops.metadata.util.YarnAPIStorageFactory;
 import io.hops.metadata.yarn.entity.appmasterrpc.RPC;
@@ -184,6 +185,7 @@ public class ResourceManager extends CompositeService implements Recoverable {
   private Configuration conf;
 
   private UserGroupInformation rmLoginUGI;
+  private boolean groupCommitStarted = false;
 
   public ResourceManager() {
     super("ResourceManager");
@@ -319,6 +321,8 @@ protected void serviceInit(Configuration conf) throws Exception {
 
     validateConfigs(this.conf);
 
+    groupCommitStarted = TransactionStateCommitter.start(this.conf);
+
     // register the handlers for all AlwaysOn services using setupDispatcher().
     rmDispatcher = setupDispatcher();
     addIfService(rmDispatcher);
@@ -349,6 +353,7 @@ protected void serviceInit(Configuration conf) throws Exception {
     //If distributed RT is enabled start the services of the non-leader machines
     if (conf.getBoolean(YarnConfiguration.HOPS_DISTRIBUTED_RT_ENABLED,
         YarnConfiguration.DEFAULT_HOPS_DISTRIBUTED_RT_ENABLED)) {
+      PendingEventChannel.init(conf);
       startDistributedRTServices(this);
     }
     super.serviceInit(this.conf);
@@ -1042,6 +1047,10 @@ protected void serviceStop() throws Exception {
       configurationProvider.close();
     }
     super.serviceStop();
+    if (groupCommitStarted) {
+      groupCommitStarted = false;
+      TransactionStateCommitter.stop();
+    }
     LOG.info("transition to standby serviceStop");
     transitionToStandby(false);
     rmContext.setHAServiceState(HAServiceState.STOPPING);
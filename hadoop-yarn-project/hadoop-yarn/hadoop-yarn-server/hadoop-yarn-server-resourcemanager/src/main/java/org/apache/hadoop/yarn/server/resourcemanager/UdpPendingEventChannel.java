@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.resourcemanager;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.yarn.conf.HAUtil;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link PendingEventChannel} that sends the notifications as UDP datagrams,
+ * for resource tracker and scheduler RMs that run in different processes.
+ * <p/>
+ * Every RM that has a listener receives on
+ * {@link YarnConfiguration#HOPS_PENDING_EVENTS_CHANNEL_PORT}, and every
+ * notification is sent to all the addresses of
+ * {@link YarnConfiguration#HOPS_PENDING_EVENTS_CHANNEL_ADDRESSES}, which
+ * default to the hostnames of the RMs. Only the leader has a listener, so
+ * the notifications follow it when it fails over. A datagram that is lost
+ * is caught up by the fallback poll.
+ */
+public class UdpPendingEventChannel extends PendingEventChannel
+    implements Configurable {
+
+  private static final Log LOG =
+      LogFactory.getLog(UdpPendingEventChannel.class);
+
+  //Stay below the usual MTU so that the datagrams are not fragmented
+  static final int MAX_DATAGRAM_SIZE = 1400;
+
+  private final List<Listener> listeners =
+      new CopyOnWriteArrayList<Listener>();
+  private Configuration conf;
+  private int port;
+  private List<InetSocketAddress> addresses;
+  private DatagramSocket sendSocket;
+  private DatagramSocket receiveSocket;
+  private Thread receiver;
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    this.port = conf.getInt(YarnConfiguration.HOPS_PENDING_EVENTS_CHANNEL_PORT,
+        YarnConfiguration.DEFAULT_HOPS_PENDING_EVENTS_CHANNEL_PORT);
+    this.addresses = new ArrayList<InetSocketAddress>();
+    for (String address : getAddresses(conf)) {
+      addresses.add(NetUtils.createSocketAddr(address, port));
+    }
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  private static Collection<String> getAddresses(Configuration conf) {
+    Collection<String> addresses = conf.getTrimmedStringCollection(
+        YarnConfiguration.HOPS_PENDING_EVENTS_CHANNEL_ADDRESSES);
+    if (!addresses.isEmpty()) {
+      return addresses;
+    }
+    addresses = new ArrayList<String>();
+    if (HAUtil.isHAEnabled(conf)) {
+      for (String rmId : HAUtil.getRMHAIds(conf)) {
+        String host = conf.get(
+            HAUtil.addSuffix(YarnConfiguration.RM_HOSTNAME, rmId));
+        if (host != null) {
+          addresses.add(host);
+        }
+      }
+    } else {
+      addresses.add(conf.get(YarnConfiguration.RM_HOSTNAME, "0.0.0.0"));
+    }
+    return addresses;
+  }
+
+  @Override
+  public void publish(Collection<String> rmNodeIds, long commitTime) {
+    try {
+      for (byte[] datagram : encode(rmNodeIds, commitTime)) {
+        send(datagram);
+      }
+    } catch (IOException e) {
+      LOG.warn("HOP :: Error while notifying pending events", e);
+    }
+  }
+
+  private synchronized void send(byte[] datagram) throws IOException {
+    if (sendSocket == null) {
+      sendSocket = new DatagramSocket();
+    }
+    for (InetSocketAddress address : addresses) {
+      if (address.isUnresolved()) {
+        address = new InetSocketAddress(address.getHostName(),
+            address.getPort());
+        if (address.isUnresolved()) {
+          LOG.debug("HOP :: Unresolved pending event channel address " +
+              address);
+          continue;
+        }
+      }
+      sendSocket.send(
+          new DatagramPacket(datagram, datagram.length, address));
+    }
+  }
+
+  @Override
+  public synchronized void subscribe(Listener listener) {
+    listeners.add(listener);
+    if (receiveSocket == null) {
+      try {
+        receiveSocket = new DatagramSocket(port);
+      } catch (SocketException e) {
+        LOG.warn("HOP :: Cannot receive pending event notifications on port " +
+            port + ", relying on the fallback retrieval", e);
+        return;
+      }
+      receiver = new Thread(new Receiver(receiveSocket),
+          "UdpPendingEventChannel receiver");
+      receiver.setDaemon(true);
+      receiver.start();
+    }
+  }
+
+  @Override
+  public synchronized void unsubscribe(Listener listener) {
+    listeners.remove(listener);
+    if (listeners.isEmpty() && receiveSocket != null) {
+      receiveSocket.close();
+      receiveSocket = null;
+      receiver = null;
+    }
+  }
+
+  /**
+   * @return the port notifications are received on, or -1 if there is no
+   * listener
+   */
+  @VisibleForTesting
+  synchronized int getLocalPort() {
+    return receiveSocket == null ? -1 : receiveSocket.getLocalPort();
+  }
+
+  /**
+   * Split the notification in datagrams of at most
+   * {@link #MAX_DATAGRAM_SIZE} bytes that each carry the commit time.
+   */
+  @VisibleForTesting
+  static List<byte[]> encode(Collection<String> rmNodeIds, long commitTime)
+      throws IOException {
+    List<byte[]> datagrams = new ArrayList<byte[]>();
+    List<byte[]> ids = new ArrayList<byte[]>();
+    int size = 12;
+    for (String rmNodeId : rmNodeIds) {
+      byte[] id = rmNodeId.getBytes("UTF-8");
+      if (!ids.isEmpty() && size + 2 + id.length > MAX_DATAGRAM_SIZE) {
+        datagrams.add(encode(ids, commitTime));
+        ids.clear();
+        size = 12;
+      }
+      ids.add(id);
+      size += 2 + id.length;
+    }
+    if (!ids.isEmpty()) {
+      datagrams.add(encode(ids, commitTime));
+    }
+    return datagrams;
+  }
+
+  private static byte[] encode(List<byte[]> ids, long commitTime)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeLong(commitTime);
+    out.writeInt(ids.size());
+    for (byte[] id : ids) {
+      out.writeShort(id.length);
+      out.write(id);
+    }
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private class Receiver implements Runnable {
+    private final DatagramSocket socket;
+
+    Receiver(DatagramSocket socket) {
+      this.socket = socket;
+    }
+
+    @Override
+    public void run() {
+      byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+      while (!socket.isClosed()) {
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        List<String> rmNodeIds;
+        long commitTime;
+        try {
+          socket.receive(packet);
+          DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+              packet.getData(), packet.getOffset(), packet.getLength()));
+          commitTime = in.readLong();
+          int count = in.readInt();
+          rmNodeIds = new ArrayList<String>(count);
+          for (int i = 0; i < count; i++) {
+            byte[] id = new byte[in.readUnsignedShort()];
+            in.readFully(id);
+            rmNodeIds.add(new String(id, "UTF-8"));
+          }
+        } catch (IOException e) {
+          if (!socket.isClosed()) {
+            LOG.warn("HOP :: Error while receiving pending events", e);
+          }
+          continue;
+        }
+        for (Listener listener : listeners) {
+          try {
+            listener.pendingEventsCommitted(rmNodeIds, commitTime);
+          } catch (RuntimeException e) {
+            LOG.warn("HOP :: Error while notifying pending events", e);
+          }
+        }
+      }
+    }
+  }
+}
@@ -29,6 +29,7 @@
 import org.apache.hadoop.security.Credentials;
 import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
 import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.hadoop.yarn.exceptions.YarnRuntimeException;
 import org.apache.hadoop.yarn.proto.YarnServerCommonServiceProtos;
 import org.apache.hadoop.yarn.proto.YarnServerResourceManagerServiceProtos.ApplicationAttemptStateDataProto;
@@ -53,6 +54,11 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * MySQL Cluster implementation of the RMStateStore abstract class.
@@ -66,8 +72,14 @@ public class NDBRMStateStore extends RMStateStore {
       newInstance(1, 0);
   public static final Log LOG = LogFactory.getLog(NDBRMStateStore.class);
 
+  private int loadThreads =
+      YarnConfiguration.DEFAULT_HOPS_RM_STATE_LOAD_THREADS;
+
   @Override
   protected void initInternal(Configuration conf) throws Exception {
+    loadThreads = Math.max(1,
+        conf.getInt(YarnConfiguration.HOPS_RM_STATE_LOAD_THREADS,
+            YarnConfiguration.DEFAULT_HOPS_RM_STATE_LOAD_THREADS));
   }
 
   @Override
@@ -114,39 +126,247 @@ protected RMStateVersion getCurrentVersion() {
     return CURRENT_VERSION_INFO;
   }
 
+  /**
+   * One table, or a group of tables that have to be read together, of the
+   * state loaded by {@link #loadState()}.
+   */
+  private abstract class TableLoad implements Callable<Long> {
+    private final String name;
+
+    TableLoad(String name) {
+      this.name = name;
+    }
+
+    abstract void load() throws Exception;
+
+    @Override
+    public Long call() throws Exception {
+      long start = System.currentTimeMillis();
+      load();
+      return System.currentTimeMillis() - start;
+    }
+  }
+
+  /**
+   * Loads the tables concurrently, at most loadThreads at a time. The
+   * application attempts are read while the application states are, and
+   * the time each table took is logged once all of them are loaded.
+   */
   @Override
   public RMState loadState() throws Exception {
-    RMState rmState = new RMState();
-    // recover DelegationTokenSecretManager
-    loadRMDTSecretManagerState(rmState);
-    // recover RM applications
-    loadRMAppState(rmState);
-    loadNMTokenSecretMamagerCurrentKey(rmState);
-    loadAllocateResponses(rmState);
-    loadRPCs(rmState);
-    loadAppSchedulingInfos(rmState);
-    loadSchedulerApplications(rmState);
-    loadFiCaSchedulerNodes(rmState);
-    loadLaunchedContainers(rmState);
-    loadNewlyAllocatedContainers(rmState);
-    loadLiveContainers(rmState);
-    loadResourceRequests(rmState);
-    loadBlackLists(rmState);
-    loadAllQueueMetrics(rmState);
-    loadNodeHeartBeatResponses(rmState);
-    loadContainersToClean(rmState);
-    loadFinishedApplications(rmState);
-    loadNodesResources(rmState);
-    loadAllContainers(rmState);
-    loadAllRMContainers(rmState);
-    loadAllRMContextActiveNodes(rmState);
-    loadAllRMNodes(rmState);
-    loadAllRMNodesNextHeartbeat(rmState);
-    loadAllNodes(rmState);
-    loadRMContextInactiveNodes(rmState);
-    loadAllUpdatedContainerInfos(rmState);
-    loadAllContainerStatus(rmState);
-    loadAllJustLaunchedContainers(rmState);
+    final RMState rmState = new RMState();
+    long start = System.currentTimeMillis();
+    ExecutorService pool = Executors.newFixedThreadPool(loadThreads);
+    try {
+      // submitted first so that it never waits behind loadRMAppState
+      final Future<Map<String, List<io.hops.metadata.yarn.entity.rmstatestore.ApplicationAttemptState>>>
+          attemptStates = pool.submit(
+          new Callable<Map<String, List<io.hops.metadata.yarn.entity.rmstatestore.ApplicationAttemptState>>>() {
+            @Override
+            public Map<String, List<io.hops.metadata.yarn.entity.rmstatestore.ApplicationAttemptState>> call()
+                throws IOException {
+              return RMUtilities.getAllApplicationAttemptStates();
+            }
+          });
+
+      List<TableLoad> tables = new ArrayList<TableLoad>();
+      // recover DelegationTokenSecretManager
+      tables.add(new TableLoad("RMDTSecretManagerState") {
+        @Override
+        void load() throws Exception {
+          loadRMDTSecretManagerState(rmState);
+        }
+      });
+      // recover RM applications
+      tables.add(new TableLoad("RMAppState") {
+        @Override
+        void load() throws Exception {
+          allHopApplicationAttemptStates = attemptStates.get();
+          loadRMAppState(rmState);
+        }
+      });
+      tables.add(new TableLoad("NMTokenSecretMamagerCurrentKey") {
+        @Override
+        void load() throws Exception {
+          loadNMTokenSecretMamagerCurrentKey(rmState);
+        }
+      });
+      tables.add(new TableLoad("AllocateResponses") {
+        @Override
+        void load() throws Exception {
+          loadAllocateResponses(rmState);
+        }
+      });
+      tables.add(new TableLoad("RPCs") {
+        @Override
+        void load() throws Exception {
+          loadRPCs(rmState);
+        }
+      });
+      tables.add(new TableLoad("AppSchedulingInfos") {
+        @Override
+        void load() throws Exception {
+          loadAppSchedulingInfos(rmState);
+        }
+      });
+      tables.add(new TableLoad("SchedulerApplications") {
+        @Override
+        void load() throws Exception {
+          loadSchedulerApplications(rmState);
+        }
+      });
+      tables.add(new TableLoad("FiCaSchedulerNodes") {
+        @Override
+        void load() throws Exception {
+          loadFiCaSchedulerNodes(rmState);
+        }
+      });
+      tables.add(new TableLoad("LaunchedContainers") {
+        @Override
+        void load() throws Exception {
+          loadLaunchedContainers(rmState);
+        }
+      });
+      tables.add(new TableLoad("NewlyAllocatedContainers") {
+        @Override
+        void load() throws Exception {
+          loadNewlyAllocatedContainers(rmState);
+        }
+      });
+      tables.add(new TableLoad("LiveContainers") {
+        @Override
+        void load() throws Exception {
+          loadLiveContainers(rmState);
+        }
+      });
+      tables.add(new TableLoad("ResourceRequests") {
+        @Override
+        void load() throws Exception {
+          loadResourceRequests(rmState);
+        }
+      });
+      tables.add(new TableLoad("BlackLists") {
+        @Override
+        void load() throws Exception {
+          loadBlackLists(rmState);
+        }
+      });
+      tables.add(new TableLoad("AllQueueMetrics") {
+        @Override
+        void load() throws Exception {
+          loadAllQueueMetrics(rmState);
+        }
+      });
+      tables.add(new TableLoad("NodeHeartBeatResponses") {
+        @Override
+        void load() throws Exception {
+          loadNodeHeartBeatResponses(rmState);
+        }
+      });
+      tables.add(new TableLoad("ContainersToClean") {
+        @Override
+        void load() throws Exception {
+          loadContainersToClean(rmState);
+        }
+      });
+      tables.add(new TableLoad("FinishedApplications") {
+        @Override
+        void load() throws Exception {
+          loadFinishedApplications(rmState);
+        }
+      });
+      tables.add(new TableLoad("NodesResources") {
+        @Override
+        void load() throws Exception {
+          loadNodesResources(rmState);
+        }
+      });
+      tables.add(new TableLoad("AllContainers") {
+        @Override
+        void load() throws Exception {
+          loadAllContainers(rmState);
+        }
+      });
+      tables.add(new TableLoad("AllRMContainers") {
+        @Override
+        void load() throws Exception {
+          loadAllRMContainers(rmState);
+        }
+      });
+      tables.add(new TableLoad("AllRMContextActiveNodes") {
+        @Override
+        void load() throws Exception {
+          loadAllRMContextActiveNodes(rmState);
+        }
+      });
+      tables.add(new TableLoad("AllRMNodes") {
+        @Override
+        void load() throws Exception {
+          loadAllRMNodes(rmState);
+        }
+      });
+      tables.add(new TableLoad("AllRMNodesNextHeartbeat") {
+        @Override
+        void load() throws Exception {
+          loadAllRMNodesNextHeartbeat(rmState);
+        }
+      });
+      tables.add(new TableLoad("AllNodes") {
+        @Override
+        void load() throws Exception {
+          loadAllNodes(rmState);
+        }
+      });
+      tables.add(new TableLoad("RMContextInactiveNodes") {
+        @Override
+        void load() throws Exception {
+          loadRMContextInactiveNodes(rmState);
+        }
+      });
+      tables.add(new TableLoad("AllUpdatedContainerInfos") {
+        @Override
+        void load() throws Exception {
+          loadAllUpdatedContainerInfos(rmState);
+        }
+      });
+      tables.add(new TableLoad("AllContainerStatus") {
+        @Override
+        void load() throws Exception {
+          loadAllContainerStatus(rmState);
+        }
+      });
+      tables.add(new TableLoad("AllJustLaunchedContainers") {
+        @Override
+        void load() throws Exception {
+          loadAllJustLaunchedContainers(rmState);
+        }
+      });
+
+      List<Future<Long>> loads = new ArrayList<Future<Long>>(tables.size());
+      for (TableLoad table : tables) {
+        loads.add(pool.submit(table));
+      }
+      StringBuilder timings = new StringBuilder();
+      for (int i = 0; i < loads.size(); i++) {
+        long elapsed;
+        try {
+          elapsed = loads.get(i).get();
+        } catch (ExecutionException e) {
+          LOG.error("Could not load " + tables.get(i).name, e.getCause());
+          if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+          }
+          throw e;
+        }
+        timings.append(i == 0 ? "" : ", ").append(tables.get(i).name)
+            .append('=').append(elapsed).append("ms");
+      }
+      LOG.info("Loaded the RM state in " +
+          (System.currentTimeMillis() - start) + "ms with " + loadThreads +
+          " threads: " + timings);
+    } finally {
+      pool.shutdownNow();
+    }
     return rmState;
   }
 
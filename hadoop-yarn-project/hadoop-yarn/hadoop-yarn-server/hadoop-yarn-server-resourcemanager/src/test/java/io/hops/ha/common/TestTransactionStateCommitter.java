@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.ha.common;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestTransactionStateCommitter {
+
+  @After
+  public void tearDown() throws InterruptedException {
+    while (TransactionStateCommitter.getInstance() != null) {
+      TransactionStateCommitter.stop();
+    }
+  }
+
+  private static Configuration groupCommit(boolean enabled) {
+    Configuration conf = new YarnConfiguration();
+    conf.setBoolean(YarnConfiguration.HOPS_GROUP_COMMIT_ENABLED, enabled);
+    return conf;
+  }
+
+  @Test
+  public void testDisabled() throws InterruptedException {
+    assertFalse(TransactionStateCommitter.start(groupCommit(false)));
+    assertNull(TransactionStateCommitter.getInstance());
+  }
+
+  @Test
+  public void testSharedByResourceManagers() throws InterruptedException {
+    assertTrue(TransactionStateCommitter.start(groupCommit(true)));
+    TransactionStateCommitter committer =
+        TransactionStateCommitter.getInstance();
+    assertNotNull(committer);
+    assertTrue(TransactionStateCommitter.start(groupCommit(true)));
+    assertSame(committer, TransactionStateCommitter.getInstance());
+
+    // the first resource manager to stop leaves the committer running
+    TransactionStateCommitter.stop();
+    assertSame(committer, TransactionStateCommitter.getInstance());
+
+    TransactionStateCommitter.stop();
+    assertNull(TransactionStateCommitter.getInstance());
+
+    // a new resource manager gets a new committer
+    assertTrue(TransactionStateCommitter.start(groupCommit(true)));
+    assertNotNull(TransactionStateCommitter.getInstance());
+    TransactionStateCommitter.stop();
+    assertNull(TransactionStateCommitter.getInstance());
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.resourcemanager;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+public class TestLocalPendingEventChannel {
+
+  private static class RecordingListener
+      implements PendingEventChannel.Listener {
+    final List<String> rmNodeIds = new ArrayList<String>();
+    long commitTime;
+
+    @Override
+    public void pendingEventsCommitted(Collection<String> ids, long time) {
+      rmNodeIds.addAll(ids);
+      commitTime = time;
+    }
+  }
+
+  @Test
+  public void testPublishToSubscribers() {
+    LocalPendingEventChannel channel = new LocalPendingEventChannel();
+    RecordingListener first = new RecordingListener();
+    RecordingListener second = new RecordingListener();
+    channel.subscribe(first);
+    channel.subscribe(second);
+
+    channel.publish(Arrays.asList("host1:1234", "host2:1234"), 42);
+    Assert.assertEquals(Arrays.asList("host1:1234", "host2:1234"),
+        first.rmNodeIds);
+    Assert.assertEquals(42, first.commitTime);
+    Assert.assertEquals(first.rmNodeIds, second.rmNodeIds);
+
+    channel.unsubscribe(first);
+    channel.publish(Arrays.asList("host3:1234"), 43);
+    Assert.assertEquals(2, first.rmNodeIds.size());
+    Assert.assertEquals(3, second.rmNodeIds.size());
+    Assert.assertEquals(43, second.commitTime);
+  }
+
+  @Test
+  public void testFailingListener() {
+    LocalPendingEventChannel channel = new LocalPendingEventChannel();
+    channel.subscribe(new PendingEventChannel.Listener() {
+      @Override
+      public void pendingEventsCommitted(Collection<String> ids, long time) {
+        throw new IllegalStateException("listener failure");
+      }
+    });
+    RecordingListener listener = new RecordingListener();
+    channel.subscribe(listener);
+
+    channel.publish(Arrays.asList("host1:1234"), 42);
+    Assert.assertEquals(Arrays.asList("host1:1234"), listener.rmNodeIds);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.resourcemanager;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestUdpPendingEventChannel {
+
+  private static class RecordingListener
+      implements PendingEventChannel.Listener {
+    final List<String> rmNodeIds = new ArrayList<String>();
+    final CountDownLatch latch;
+    long commitTime;
+
+    RecordingListener(int expected) {
+      latch = new CountDownLatch(expected);
+    }
+
+    @Override
+    public synchronized void pendingEventsCommitted(Collection<String> ids,
+        long time) {
+      rmNodeIds.addAll(ids);
+      commitTime = time;
+      for (int i = 0; i < ids.size(); i++) {
+        latch.countDown();
+      }
+    }
+  }
+
+  /**
+   * The resource tracker and the scheduler each have their own channel, as
+   * when they run in different processes.
+   */
+  @Test(timeout = 30000)
+  public void testPublishToOtherChannel() throws Exception {
+    Configuration conf = new YarnConfiguration();
+    conf.setInt(YarnConfiguration.HOPS_PENDING_EVENTS_CHANNEL_PORT, 0);
+    UdpPendingEventChannel scheduler = new UdpPendingEventChannel();
+    scheduler.setConf(conf);
+    RecordingListener listener = new RecordingListener(2);
+    scheduler.subscribe(listener);
+    int port = scheduler.getLocalPort();
+    Assert.assertTrue(port > 0);
+
+    conf.set(YarnConfiguration.HOPS_PENDING_EVENTS_CHANNEL_ADDRESSES,
+        "127.0.0.1:" + port);
+    UdpPendingEventChannel tracker = new UdpPendingEventChannel();
+    tracker.setConf(conf);
+    tracker.publish(Arrays.asList("host1:1234", "host2:1234"), 42);
+
+    Assert.assertTrue(listener.latch.await(20, TimeUnit.SECONDS));
+    synchronized (listener) {
+      Assert.assertEquals(Arrays.asList("host1:1234", "host2:1234"),
+          listener.rmNodeIds);
+      Assert.assertEquals(42, listener.commitTime);
+    }
+
+    scheduler.unsubscribe(listener);
+    Assert.assertEquals(-1, scheduler.getLocalPort());
+  }
+
+  @Test
+  public void testEncodeSplitsLargeNotifications() throws Exception {
+    List<String> rmNodeIds = new ArrayList<String>();
+    for (int i = 0; i < 1000; i++) {
+      rmNodeIds.add("host" + i + ".example.com:1234");
+    }
+    List<byte[]> datagrams = UdpPendingEventChannel.encode(rmNodeIds, 42);
+    Assert.assertTrue(datagrams.size() > 1);
+    for (byte[] datagram : datagrams) {
+      Assert.assertTrue(
+          datagram.length <= UdpPendingEventChannel.MAX_DATAGRAM_SIZE);
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A matrix over GF(2^8) applied to whole buffers: output row r is the sum of
+ * coefficient(r, c) times input c. Both Reed-Solomon encoding and decoding
+ * are linear, so a codec computes its matrix once and then codes a buffer
+ * with one table lookup and one XOR per byte and coefficient.
+ *
+ * Buffers are processed in chunks of {@link #CHUNK_SIZE} bytes so that the
+ * output chunk and the inputs stay in the cache while all the coefficients
+ * are applied.
+ */
+class CodingMatrix {
+  static final int CHUNK_SIZE = 4096;
+
+  private final int rows;
+  private final int columns;
+  private final int[][] coefficients;
+  private final byte[][][] tables;
+
+  /**
+   * @param coefficients
+   *     rows of coefficients, every row has one coefficient per input
+   */
+  CodingMatrix(GaloisField gf, int[][] coefficients) {
+    this.rows = coefficients.length;
+    this.columns = rows == 0 ? 0 : coefficients[0].length;
+    this.coefficients = coefficients;
+    this.tables = new byte[rows][columns][];
+    for (int r = 0; r < rows; r++) {
+      for (int c = 0; c < columns; c++) {
+        tables[r][c] = gf.getMultiplicationTable(coefficients[r][c]);
+      }
+    }
+  }
+
+  int getRows() {
+    return rows;
+  }
+
+  int getColumns() {
+    return columns;
+  }
+
+  int getCoefficient(int row, int column) {
+    return coefficients[row][column];
+  }
+
+  /**
+   * Computes the first len bytes of every output.
+   */
+  void multiply(byte[][] inputs, byte[][] outputs, int len) {
+    int[] inputOffsets = new int[columns];
+    int[] outputOffsets = new int[rows];
+    multiply(inputs, inputOffsets, outputs, outputOffsets, len);
+  }
+
+  void multiply(byte[][] inputs, int[] inputOffsets, byte[][] outputs,
+      int[] outputOffsets, int len) {
+    for (int start = 0; start < len; start += CHUNK_SIZE) {
+      int chunk = Math.min(CHUNK_SIZE, len - start);
+      for (int r = 0; r < rows; r++) {
+        multiplyRow(r, inputs, inputOffsets, start, outputs[r],
+            outputOffsets[r] + start, chunk);
+      }
+    }
+  }
+
+  /**
+   * Computes len bytes of every output, reading and writing from the
+   * current positions of the buffers. The positions are not changed.
+   * Heap buffers are coded in place, direct buffers are staged through
+   * chunk sized arrays.
+   */
+  void multiply(ByteBuffer[] inputs, ByteBuffer[] outputs, int len) {
+    if (allHaveArrays(inputs) && allHaveArrays(outputs)) {
+      byte[][] in = new byte[columns][];
+      int[] inOffsets = new int[columns];
+      for (int c = 0; c < columns; c++) {
+        in[c] = inputs[c].array();
+        inOffsets[c] = inputs[c].arrayOffset() + inputs[c].position();
+      }
+      byte[][] out = new byte[rows][];
+      int[] outOffsets = new int[rows];
+      for (int r = 0; r < rows; r++) {
+        out[r] = outputs[r].array();
+        outOffsets[r] = outputs[r].arrayOffset() + outputs[r].position();
+      }
+      multiply(in, inOffsets, out, outOffsets, len);
+      return;
+    }
+
+    byte[][] in = new byte[columns][CHUNK_SIZE];
+    int[] inOffsets = new int[columns];
+    byte[] out = new byte[CHUNK_SIZE];
+    for (int start = 0; start < len; start += CHUNK_SIZE) {
+      int chunk = Math.min(CHUNK_SIZE, len - start);
+      for (int c = 0; c < columns; c++) {
+        ByteBuffer input = inputs[c].duplicate();
+        input.position(input.position() + start);
+        input.get(in[c], 0, chunk);
+      }
+      for (int r = 0; r < rows; r++) {
+        multiplyRow(r, in, inOffsets, 0, out, 0, chunk);
+        ByteBuffer output = outputs[r].duplicate();
+        output.position(output.position() + start);
+        output.put(out, 0, chunk);
+      }
+    }
+  }
+
+  private void multiplyRow(int r, byte[][] inputs, int[] inputOffsets,
+      int start, byte[] output, int outputOffset, int len) {
+    boolean first = true;
+    for (int c = 0; c < columns; c++) {
+      int coefficient = coefficients[r][c];
+      if (coefficient == 0) {
+        continue;
+      }
+      byte[] input = inputs[c];
+      int inputOffset = inputOffsets[c] + start;
+      if (coefficient == 1) {
+        if (first) {
+          System.arraycopy(input, inputOffset, output, outputOffset, len);
+        } else {
+          for (int k = 0; k < len; k++) {
+            output[outputOffset + k] ^= input[inputOffset + k];
+          }
+        }
+      } else {
+        byte[] table = tables[r][c];
+        if (first) {
+          for (int k = 0; k < len; k++) {
+            output[outputOffset + k] = table[input[inputOffset + k] & 0xFF];
+          }
+        } else {
+          for (int k = 0; k < len; k++) {
+            output[outputOffset + k] ^= table[input[inputOffset + k] & 0xFF];
+          }
+        }
+      }
+      first = false;
+    }
+    if (first) {
+      Arrays.fill(output, outputOffset, outputOffset + len, (byte) 0);
+    }
+  }
+
+  private static boolean allHaveArrays(ByteBuffer[] buffers) {
+    for (ByteBuffer buffer : buffers) {
+      if (!buffer.hasArray()) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -18,6 +18,7 @@
 
 package io.hops.erasure_coding;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.hops.erasure_coding.BaseEncodingManager.LOGTYPES;
 import io.hops.erasure_coding.StripeReader.LocationPair;
 import org.apache.commons.logging.Log;
@@ -41,8 +42,16 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.CRC32;
 
 /**
@@ -54,8 +63,13 @@ public class Decoder {
       LogFactory.getLog("org.apache.hadoop.raid.Decoder");
   private final Log DECODER_METRICS_LOG = LogFactory.getLog("RaidMetrics");
   public static final int DEFAULT_PARALLELISM = 4;
+  public static final String PIPELINE_DEPTH_KEY =
+      "raid.decoder.pipeline.depth";
+  public static final int DEFAULT_PIPELINE_DEPTH = 2;
   protected Configuration conf;
   protected int parallelism;
+  protected int pipelineDepth;
+  protected final ReconstructionMetrics metrics = new ReconstructionMetrics();
   protected Codec codec;
   protected ErasureCode code;
   protected Random rand;
@@ -64,6 +78,10 @@ public class Decoder {
   protected byte[][] writeBufs;
   private int numMissingBlocksInStripe;
   private long numReadBytes;
+  /**
+   * Writes the decoded stripes, the thread exits when the decoder is idle.
+   */
+  private final ThreadPoolExecutor writeExecutor;
 
   public static class BlockChecksumException extends IOException {
     public BlockChecksumException() {
@@ -90,8 +108,14 @@ public Decoder(Configuration conf, Codec codec) {
     this.code = codec.createErasureCode(conf);
     this.rand = new Random();
     this.bufSize = conf.getInt("raid.decoder.bufsize", 1024 * 1024);
+    this.pipelineDepth =
+        Math.max(1, conf.getInt(PIPELINE_DEPTH_KEY, DEFAULT_PIPELINE_DEPTH));
     this.writeBufs = new byte[codec.parityLength][];
     this.readBufs = new byte[codec.parityLength + codec.stripeLength][];
+    this.writeExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder()
+        .setDaemon(true).setNameFormat("DecoderStripeWriter #%d").build());
+    this.writeExecutor.allowCoreThreadTimeOut(true);
     //allocateBuffers();
     //writeBufs will be allocated when the writeBufs.length is known and
     //writeBufs array can be initialized.
@@ -104,6 +128,14 @@ public int getNumMissingBlocksInStripe() {
   public long getNumReadBytes() {
     return numReadBytes;
   }
+
+  public Codec getCodec() {
+    return codec;
+  }
+
+  public ReconstructionMetrics getMetrics() {
+    return metrics;
+  }
   
   private void allocateBuffers() {
     for (int i = 0; i < writeBufs.length; i++) {
@@ -185,6 +217,74 @@ public void recoverBlockToFile(FileSystem srcFs, Path srcPath,
     }
   }
 
+  /**
+   * Recovers several corrupt blocks of the same stripe to local files. The
+   * stripe is read only once for all of them.
+   *
+   * @param fixSource
+   *     Whether the blocks belong to the source file or to the parity file.
+   * @param blockOffsets
+   *     The offsets of the blocks to recover, all in the same stripe.
+   * @param localBlockFiles
+   *     The files to write the blocks to.
+   * @param limits
+   *     The maximum number of bytes to be written out for each block.
+   */
+  public void recoverBlocksToFiles(FileSystem srcFs, Path srcPath,
+      FileSystem parityFs, Path parityPath, boolean fixSource, long blockSize,
+      long[] blockOffsets, File[] localBlockFiles, long[] limits,
+      Context context) throws IOException, InterruptedException {
+    if (blockOffsets.length == 1) {
+      if (fixSource) {
+        recoverBlockToFile(srcFs, srcPath, parityFs, parityPath, blockSize,
+            blockOffsets[0], localBlockFiles[0], limits[0], context);
+      } else {
+        recoverParityBlockToFile(srcFs, srcPath, parityFs, parityPath,
+            blockSize, blockOffsets[0], localBlockFiles[0], context);
+      }
+      return;
+    }
+
+    DistributedFileSystem dfs = (DistributedFileSystem) srcFs;
+    String checksumPath = fixSource ? srcPath.toUri().getPath() :
+        parityPath.toUri().toString();
+    long[] oldCrcs = new long[blockOffsets.length];
+    CRC32[] crcs = new CRC32[blockOffsets.length];
+    for (int i = 0; i < blockOffsets.length; i++) {
+      oldCrcs[i] = dfs.getClient().getBlockChecksum(checksumPath,
+          (int) (blockOffsets[i] / blockSize));
+      crcs[i] = new CRC32();
+    }
+
+    Progressable reporter = context;
+    if (reporter == null) {
+      reporter = RaidUtils.NULL_PROGRESSABLE;
+    }
+
+    OutputStream[] outs = new OutputStream[blockOffsets.length];
+    try {
+      for (int i = 0; i < outs.length; i++) {
+        outs[i] = new FileOutputStream(localBlockFiles[i]);
+      }
+      fixErasedBlocksImpl(srcFs, srcPath, parityFs, parityPath, fixSource,
+          blockSize, blockOffsets, limits, false, outs, reporter, crcs);
+    } finally {
+      for (OutputStream out : outs) {
+        if (out != null) {
+          out.close();
+        }
+      }
+    }
+
+    for (int i = 0; i < blockOffsets.length; i++) {
+      if (crcs[i].getValue() != oldCrcs[i]) {
+        throw new BlockChecksumException(String.format(
+            "Repair of %s at offset %d failed. Checksum differs from stored checksum",
+            fixSource ? srcPath : parityPath, blockOffsets[i]));
+      }
+    }
+  }
+
   DecoderInputStream generateAlternateStream(FileSystem srcFs, Path srcFile,
       FileSystem parityFs, Path parityFile, long blockSize, long errorOffset,
       long limit, Context context) {
@@ -233,35 +333,73 @@ long fixErasedBlockImpl(FileSystem srcFs, Path srcFile, FileSystem parityFs,
       Path parityFile, boolean fixSource, long blockSize, long errorOffset,
       long limit, boolean partial, OutputStream out, Progressable reporter,
       CRC32 crc) throws IOException {
+    return fixErasedBlocksImpl(srcFs, srcFile, parityFs, parityFile, fixSource,
+        blockSize, new long[]{errorOffset}, new long[]{limit}, partial,
+        new OutputStream[]{out}, reporter, new CRC32[]{crc});
+  }
+
+  /**
+   * Reconstructs one or more erased blocks of the same stripe in a single
+   * pass over the stripe. Reading, decoding and writing are pipelined: the
+   * parallel reader fetches the next chunk of the stripe while the current
+   * one is decoded and the previous one is written out by a {@link
+   * StripeWriter}.
+   *
+   * @return the number of bytes written for the largest of the blocks
+   */
+  long fixErasedBlocksImpl(FileSystem srcFs, Path srcFile, FileSystem parityFs,
+      Path parityFile, boolean fixSource, long blockSize, long[] errorOffsets,
+      long[] limits, boolean partial, OutputStream[] outs,
+      Progressable reporter, CRC32[] crcs) throws IOException {
     long startTime = System.currentTimeMillis();
-    if (crc != null) {
-      crc.reset();
-    }
-    int blockIdx = (int) (errorOffset / blockSize);
+    int numTargets = errorOffsets.length;
     LocationPair lp = null;
-    int erasedLocationToFix;
-    if (fixSource) {
-      lp = StripeReader.getBlockLocation(codec, blockIdx);
-      erasedLocationToFix = codec.parityLength + lp.getBlockIdxInStripe();
-    } else {
-      lp = StripeReader.getParityBlockLocation(codec, blockIdx);
-      erasedLocationToFix = lp.getBlockIdxInStripe();
+    int[] erasedLocationsToFix = new int[numTargets];
+    List<Integer> erasedLocations = new ArrayList<Integer>();
+    long limit = 0;
+    for (int j = 0; j < numTargets; j++) {
+      if (crcs[j] != null) {
+        crcs[j].reset();
+      }
+      int blockIdx = (int) (errorOffsets[j] / blockSize);
+      LocationPair targetLp;
+      if (fixSource) {
+        targetLp = StripeReader.getBlockLocation(codec, blockIdx);
+        erasedLocationsToFix[j] =
+            codec.parityLength + targetLp.getBlockIdxInStripe();
+      } else {
+        targetLp = StripeReader.getParityBlockLocation(codec, blockIdx);
+        erasedLocationsToFix[j] = targetLp.getBlockIdxInStripe();
+      }
+      if (lp == null) {
+        lp = targetLp;
+      } else if (lp.getStripeIdx() != targetLp.getStripeIdx()) {
+        throw new IllegalArgumentException(
+            "All blocks to fix must belong to the same stripe");
+      }
+      // Start off with the erased locations we were asked to fix.
+      erasedLocations.add(erasedLocationsToFix[j]);
+      limit = Math.max(limit, limits[j]);
+    }
+    if (partial && numTargets > 1) {
+      throw new IllegalArgumentException(
+          "Partial reconstruction of more than one block is not supported");
     }
+    long errorOffset = errorOffsets[0];
 
     FileStatus srcStat = srcFs.getFileStatus(srcFile);
     FileStatus parityStat = parityFs.getFileStatus(parityFile);
 
     InputStream[] inputs = null;
-    List<Integer> erasedLocations = new ArrayList<Integer>();
-    // Start off with one erased location.
-    erasedLocations.add(erasedLocationToFix);
     List<Integer> locationsToRead =
         new ArrayList<Integer>(codec.parityLength + codec.stripeLength);
 
     int boundedBufferCapacity = 2;
     ParallelStreamReader parallelReader = null;
+    StripeWriter writer = null;
     LOG.info("Need to write " + limit +
-        " bytes for erased location index " + erasedLocationToFix);
+        " bytes for erased location indices " +
+        Arrays.toString(erasedLocationsToFix));
     
     long startOffsetInBlock = 0;
     if (partial) {
@@ -272,6 +410,7 @@ long fixErasedBlockImpl(FileSystem srcFs, Path srcFile, FileSystem parityFs,
     int[] erasedLocationsArray = new int[0];
     int[] locationsToReadArray = new int[0];
     int[] locationsNotToReadArray = new int[0];
+    int[] writeBufIndices = new int[numTargets];
 
     try {
       numReadBytes = 0;
@@ -337,8 +476,19 @@ long fixErasedBlockImpl(FileSystem srcFs, Path srcFile, FileSystem parityFs,
               }
             }
 
-            this.writeBufs = new byte[erasedLocations.size()][];
-            allocateBuffers();
+            /*
+             * Find the decoded buffer of every block we have to write.
+             */
+            for (int j = 0; j < numTargets; j++) {
+              for (i = 0; i < erasedLocationsArray.length; i++) {
+                if (erasedLocationsArray[i] == erasedLocationsToFix[j]) {
+                  writeBufIndices[j] = i;
+                  break;
+                }
+              }
+            }
+
+            writer = new StripeWriter(outs, crcs, erasedLocations.size());
 
             assert (parallelReader == null);
             parallelReader = new ParallelStreamReader(reporter, inputs,
@@ -349,27 +499,33 @@ long fixErasedBlockImpl(FileSystem srcFs, Path srcFile, FileSystem parityFs,
           ParallelStreamReader.ReadResult readResult =
               readFromInputs(erasedLocations, limit, reporter, parallelReader);
           
-          code.decodeBulk(readResult.readBufs, writeBufs, erasedLocationsArray,
-              locationsToReadArray, locationsNotToReadArray);
-          
           // get the number of bytes read through hdfs.
+          long readBytes = 0;
           for (int readNum : readResult.numRead) {
-            numReadBytes += readNum;
+            readBytes += readNum;
           }
+          numReadBytes += readBytes;
+          metrics.add(ReconstructionMetrics.Stage.READ, readBytes,
+              readResult.readNanos);
 
-          int toWrite = (int) Math.min((long) bufSize, limit - written);
-          for (int i = 0; i < erasedLocationsArray.length; i++) {
-            if (erasedLocationsArray[i] == erasedLocationToFix) {
-              if (out != null) {
-                out.write(writeBufs[i], 0, toWrite);
-              }
-              if (crc != null) {
-                crc.update(writeBufs[i], 0, toWrite);
-              }
-              written += toWrite;
-              break;
-            }
+          int[] toWrite = new int[numTargets];
+          long decodedBytes = 0;
+          for (int j = 0; j < numTargets; j++) {
+            toWrite[j] =
+                (int) Math.max(0, Math.min((long) bufSize, limits[j] - written));
+            decodedBytes += toWrite[j];
           }
+
+          byte[][] decodeBufs = writer.takeBuffers();
+          long decodeStart = System.nanoTime();
+          code.decodeBulk(readResult.readBufs, decodeBufs, erasedLocationsArray,
+              locationsToReadArray, locationsNotToReadArray);
+          metrics.add(ReconstructionMetrics.Stage.DECODE, decodedBytes,
+              System.nanoTime() - decodeStart);
+          parallelReader.release(readResult);
+
+          writer.write(decodeBufs, writeBufIndices, toWrite);
+          written += Math.min((long) bufSize, limit - written);
         } catch (IOException e) {
           if (e instanceof TooManyErasedLocations) {
             logRaidReconstructionMetrics("FAILURE", 0, codec,
@@ -378,6 +534,12 @@ long fixErasedBlockImpl(FileSystem srcFs, Path srcFile, FileSystem parityFs,
                 LOGTYPES.OFFLINE_RECONSTRUCTION, srcFs);
             throw e;
           }
+          if (writer != null) {
+            // Wait for the stripes already decoded, a failed write cannot be
+            // retried as later stripes may have been written already.
+            writer.close();
+            writer = null;
+          }
           // Re-create inputs from the new erased locations.
           if (parallelReader != null) {
             parallelReader.shutdown();
@@ -386,6 +548,10 @@ long fixErasedBlockImpl(FileSystem srcFs, Path srcFile, FileSystem parityFs,
           RaidUtils.closeStreams(inputs);
         }
       }
+      if (writer != null) {
+        writer.close();
+        writer = null;
+      }
       logRaidReconstructionMetrics("SUCCESS", written, codec,
           System.currentTimeMillis() - startTime, erasedLocations.size(),
           numReadBytes, srcFile, errorOffset, LOGTYPES.OFFLINE_RECONSTRUCTION,
@@ -393,6 +559,9 @@ long fixErasedBlockImpl(FileSystem srcFs, Path srcFile, FileSystem parityFs,
       return written;
     } finally {
       numMissingBlocksInStripe = erasedLocations.size();
+      if (writer != null) {
+        writer.abort();
+      }
       if (parallelReader != null) {
         parallelReader.shutdown();
       }
@@ -400,6 +569,107 @@ long fixErasedBlockImpl(FileSystem srcFs, Path srcFile, FileSystem parityFs,
     }
   }
 
+  /**
+   * Writes decoded stripes to the outputs on the write thread of the decoder
+   * so that the next stripe can be decoded while the previous one is
+   * written. The number of stripes in flight is bounded by the buffer sets
+   * in the pool.
+   */
+  class StripeWriter {
+    private final OutputStream[] outs;
+    private final CRC32[] crcs;
+    private final BlockingQueue<byte[][]> freeBufs;
+    private volatile IOException error;
+    private volatile boolean aborted = false;
+    // the writes run in order on a single thread, waiting for the last one
+    // waits for all of them
+    private Future<?> lastWrite;
+
+    StripeWriter(OutputStream[] outs, CRC32[] crcs, int numErasedLocations) {
+      this.outs = outs;
+      this.crcs = crcs;
+      this.freeBufs = new ArrayBlockingQueue<byte[][]>(pipelineDepth);
+      for (int i = 0; i < pipelineDepth; i++) {
+        freeBufs.add(new byte[numErasedLocations][bufSize]);
+      }
+    }
+
+    byte[][] takeBuffers() throws IOException {
+      checkError();
+      try {
+        return freeBufs.take();
+      } catch (InterruptedException e) {
+        throw new IOException("Interrupted while waiting for a write buffer");
+      }
+    }
+
+    void write(final byte[][] bufs, final int[] bufIndices,
+        final int[] lengths) {
+      lastWrite = writeExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            if (error != null || aborted) {
+              return;
+            }
+            long start = System.nanoTime();
+            long bytes = 0;
+            for (int j = 0; j < outs.length; j++) {
+              if (lengths[j] == 0) {
+                continue;
+              }
+              byte[] buf = bufs[bufIndices[j]];
+              if (outs[j] != null) {
+                outs[j].write(buf, 0, lengths[j]);
+              }
+              if (crcs[j] != null) {
+                crcs[j].update(buf, 0, lengths[j]);
+              }
+              bytes += lengths[j];
+            }
+            metrics.add(ReconstructionMetrics.Stage.WRITE, bytes,
+                System.nanoTime() - start);
+          } catch (IOException e) {
+            error = e;
+          } finally {
+            freeBufs.offer(bufs);
+          }
+        }
+      });
+    }
+
+    void checkError() throws IOException {
+      if (error != null) {
+        throw error;
+      }
+    }
+
+    /**
+     * Waits for the pending writes.
+     */
+    void close() throws IOException {
+      if (lastWrite != null) {
+        try {
+          lastWrite.get();
+        } catch (InterruptedException e) {
+          abort();
+          throw new IOException(
+              "Interrupted while waiting for pending writes");
+        } catch (ExecutionException e) {
+          throw new IOException(e.getCause());
+        }
+      }
+      checkError();
+    }
+
+    /**
+     * Drops the pending writes, a write in progress is completed.
+     */
+    void abort() {
+      aborted = true;
+    }
+  }
+
   ParallelStreamReader.ReadResult readFromInputs(List<Integer> erasedLocations,
       long limit, Progressable reporter, ParallelStreamReader parallelReader)
       throws IOException {
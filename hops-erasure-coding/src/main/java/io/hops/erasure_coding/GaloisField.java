@@ -31,6 +31,7 @@ public class GaloisField {
   private final int[] powTable;
   private final int[][] mulTable;
   private final int[][] divTable;
+  private final byte[][] byteMulTable;
   private final int fieldSize;
   private final int primitivePeriod;
   private final int primitivePolynomial;
@@ -103,6 +104,17 @@ private GaloisField(int fieldSize, int primitivePolynomial) {
         mulTable[i][j] = z;
       }
     }
+    // byte copy of the multiplication table for the bulk coding kernels
+    if (fieldSize <= 256) {
+      byteMulTable = new byte[fieldSize][fieldSize];
+      for (int i = 0; i < fieldSize; i++) {
+        for (int j = 0; j < fieldSize; j++) {
+          byteMulTable[i][j] = (byte) mulTable[i][j];
+        }
+      }
+    } else {
+      byteMulTable = null;
+    }
     // building division table
     for (int i = 0; i < fieldSize; i++) {
       for (int j = 1; j < fieldSize; j++) {
@@ -118,6 +130,22 @@ private GaloisField(int fieldSize, int primitivePolynomial) {
     }
   }
 
+  /**
+   * Return the products of x with every element of the field, indexed by
+   * the element. Only available for fields of up to 256 elements.
+   *
+   * @param x
+   *     the coefficient
+   * @return the multiplication table of x, must not be modified
+   */
+  public byte[] getMultiplicationTable(int x) {
+    if (byteMulTable == null) {
+      throw new UnsupportedOperationException(
+          "Byte tables need a field of at most 256 elements");
+    }
+    return byteMulTable[x];
+  }
+
   /**
    * Return number of elements in the field
    *
@@ -31,6 +31,7 @@ public class LocalBlockRepairManager extends BlockRepairManager {
       LogFactory.getLog(LocalBlockRepairManager.class);
 
   private BlockReconstructor blockReconstructor;
+  private final ReconstructionMetrics metrics = new ReconstructionMetrics();
 
   public LocalBlockRepairManager(Configuration conf) {
     super(conf);
@@ -48,6 +49,8 @@ public void repairSourceBlocks(String codecId, Path sourceFile,
       LOG.error("Exception", e);
     } catch (InterruptedException e) {
       LOG.error("Exception", e);
+    } finally {
+      reportMetrics(decoder);
     }
   }
 
@@ -62,9 +65,23 @@ public void repairParityBlocks(String codecId, Path sourceFile,
       LOG.error("Exception", e);
     } catch (InterruptedException e) {
       LOG.error("Exception", e);
+    } finally {
+      reportMetrics(decoder);
     }
   }
 
+  private void reportMetrics(Decoder decoder) {
+    metrics.add(decoder.getMetrics());
+    LOG.info("Repair throughput: " + metrics);
+  }
+
+  /**
+   * @return the accumulated counters of all repairs run by this manager
+   */
+  public ReconstructionMetrics getMetrics() {
+    return metrics;
+  }
+
   @Override
   public List<Report> computeReports() {
     throw new NotImplementedException();
@@ -71,7 +71,16 @@ public class MapReduceBlockRepairManager extends BlockRepairManager {
 
   static enum Counter {
     FILES_SUCCEEDED,
-    FILES_FAILED
+    FILES_FAILED,
+    BLOCKS_RECONSTRUCTED,
+    READ_BYTES,
+    READ_MILLIS,
+    DECODE_BYTES,
+    DECODE_MILLIS,
+    WRITE_BYTES,
+    WRITE_MILLIS,
+    SEND_BYTES,
+    SEND_MILLIS
   }
 
   private static final String REPAIR_TYPE = "repair_type";
@@ -148,6 +157,14 @@ public Path getOutDir() {
     public long getStartTime() {
       return startTime;
     }
+
+    public long getCounter(Counter counter) throws IOException {
+      if (job != null) {
+        return job.getCounters().findCounter(counter).getValue();
+      } else {
+        return runningJob.getCounters().getCounter(counter);
+      }
+    }
   }
 
   private Map<String, ActiveRepair> currentRepairs =
@@ -477,6 +494,32 @@ public void map(LongWritable key, Text fileText, Mapper.Context context)
       }
       context.progress();
     }
+
+    @Override
+    protected void cleanup(Context context)
+        throws IOException, InterruptedException {
+      if (decoder != null) {
+        ReconstructionMetrics metrics = decoder.getMetrics();
+        context.getCounter(Counter.BLOCKS_RECONSTRUCTED)
+            .increment(metrics.getBlocksReconstructed());
+        incrStageCounters(context, metrics, ReconstructionMetrics.Stage.READ,
+            Counter.READ_BYTES, Counter.READ_MILLIS);
+        incrStageCounters(context, metrics, ReconstructionMetrics.Stage.DECODE,
+            Counter.DECODE_BYTES, Counter.DECODE_MILLIS);
+        incrStageCounters(context, metrics, ReconstructionMetrics.Stage.WRITE,
+            Counter.WRITE_BYTES, Counter.WRITE_MILLIS);
+        incrStageCounters(context, metrics, ReconstructionMetrics.Stage.SEND,
+            Counter.SEND_BYTES, Counter.SEND_MILLIS);
+      }
+      super.cleanup(context);
+    }
+
+    private void incrStageCounters(Context context,
+        ReconstructionMetrics metrics, ReconstructionMetrics.Stage stage,
+        Counter bytes, Counter millis) {
+      context.getCounter(bytes).increment(metrics.getBytes(stage));
+      context.getCounter(millis).increment(metrics.getMillis(stage));
+    }
   }
 
   @Override
@@ -491,6 +534,7 @@ public List<Report> computeReports() throws IOException {
       try {
         if (job.isComplete() && job.isSuccessful()) {
           LOG.info("REPAIR COMPLETE");
+          logStageThroughput(fileName, job);
           reports.add(new Report(fileName, Report.Status.FINISHED));
           cleanup(job);
         } else if (job.isComplete() && !job.isSuccessful()) {
@@ -531,6 +575,25 @@ public List<Report> computeReports() throws IOException {
     return reports;
   }
 
+  private void logStageThroughput(String fileName, ActiveRepair job)
+      throws IOException {
+    LOG.info("Repaired " + job.getCounter(Counter.BLOCKS_RECONSTRUCTED) +
+        " blocks of " + fileName + ": read " +
+        throughput(job, Counter.READ_BYTES, Counter.READ_MILLIS) +
+        "B/s, decode " +
+        throughput(job, Counter.DECODE_BYTES, Counter.DECODE_MILLIS) +
+        "B/s, write " +
+        throughput(job, Counter.WRITE_BYTES, Counter.WRITE_MILLIS) +
+        "B/s, send " +
+        throughput(job, Counter.SEND_BYTES, Counter.SEND_MILLIS) + "B/s");
+  }
+
+  private long throughput(ActiveRepair job, Counter bytes, Counter millis)
+      throws IOException {
+    return ReconstructionMetrics
+        .throughput(job.getCounter(bytes), job.getCounter(millis));
+  }
+
   @Override
   public void cancelAll() {
     initialize();
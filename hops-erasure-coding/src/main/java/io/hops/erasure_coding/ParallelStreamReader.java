@@ -55,6 +55,7 @@ public static class ReadResult {
     public byte[][] readBufs;
     public int[] numRead;
     public IOException[] ioExceptions;
+    public long readNanos;
 
     ReadResult(int numStreams, int bufSize) {
       this.readBufs = new byte[numStreams][];
@@ -65,6 +66,12 @@ public static class ReadResult {
       }
       this.ioExceptions = new IOException[readBufs.length];
     }
+
+    void reset() {
+      Arrays.fill(numRead, 0);
+      Arrays.fill(ioExceptions, null);
+      readNanos = 0;
+    }
     
     void setException(int idx, Exception e) {
       synchronized (ioExceptions) {
@@ -93,6 +100,9 @@ IOException getException() {
   }
 
   BlockingQueue<ReadResult> boundedBuffer;
+  // Results handed back by the consumer, reused instead of allocating a new
+  // set of buffers for every stripe.
+  BlockingQueue<ReadResult> freeResults;
   Thread mainThread;
 
   /**
@@ -134,6 +144,8 @@ public ParallelStreamReader(Progressable reporter, InputStream[] streams,
     this.bufSize = bufSize;
     this.boundedBuffer =
         new ArrayBlockingQueue<ReadResult>(boundedBufferCapacity);
+    this.freeResults =
+        new ArrayBlockingQueue<ReadResult>(boundedBufferCapacity + 1);
     if (numThreads > streams.length) {
       this.numThreads = streams.length;
     } else {
@@ -175,10 +187,24 @@ public ReadResult getReadResult() throws InterruptedException {
     return boundedBuffer.take();
   }
 
+  /**
+   * Returns a result obtained from {@link #getReadResult()} so that its
+   * buffers can be reused for a later stripe. The caller must not touch the
+   * result after releasing it.
+   */
+  public void release(ReadResult readResult) {
+    freeResults.offer(readResult);
+  }
+
   class MainThread extends Thread {
     public void run() {
       while (running) {
-        ReadResult readResult = new ReadResult(streams.length, bufSize);
+        ReadResult readResult = freeResults.poll();
+        if (readResult == null) {
+          readResult = new ReadResult(streams.length, bufSize);
+        } else {
+          readResult.reset();
+        }
         try {
           // Do not try to read more data if the desired amount of data has
           // been read.
@@ -202,6 +228,7 @@ public void run() {
    */
   private void performReads(ReadResult readResult) throws InterruptedException {
     long start = System.currentTimeMillis();
+    long startNanos = System.nanoTime();
     for (int i = 0; i < streams.length; ) {
       boolean acquired = slots.tryAcquire(1, 10, TimeUnit.SECONDS);
       reporter.progress();
@@ -221,6 +248,7 @@ private void performReads(ReadResult readResult) throws InterruptedException {
       }
     }
 
+    readResult.readNanos = System.nanoTime() - startNanos;
     readTime += (System.currentTimeMillis() - start);
   }
 
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.erasure_coding;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the stages of the block reconstruction pipeline. Stripes are
+ * read from the surviving blocks, decoded, written to a local file and
+ * finally sent to the datanode that receives the repaired block. Every stage
+ * reports the number of bytes it processed and the time it spent on them.
+ */
+public class ReconstructionMetrics {
+
+  public enum Stage {
+    READ,
+    DECODE,
+    WRITE,
+    SEND
+  }
+
+  private final AtomicLong[] bytes = new AtomicLong[Stage.values().length];
+  private final AtomicLong[] nanos = new AtomicLong[Stage.values().length];
+  private final AtomicLong blocksReconstructed = new AtomicLong();
+
+  public ReconstructionMetrics() {
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = new AtomicLong();
+      nanos[i] = new AtomicLong();
+    }
+  }
+
+  public void add(Stage stage, long numBytes, long elapsedNanos) {
+    bytes[stage.ordinal()].addAndGet(numBytes);
+    nanos[stage.ordinal()].addAndGet(elapsedNanos);
+  }
+
+  /**
+   * Adds the counters of another instance to this one.
+   */
+  public void add(ReconstructionMetrics other) {
+    for (Stage stage : Stage.values()) {
+      bytes[stage.ordinal()].addAndGet(other.bytes[stage.ordinal()].get());
+      nanos[stage.ordinal()].addAndGet(other.nanos[stage.ordinal()].get());
+    }
+    blocksReconstructed.addAndGet(other.getBlocksReconstructed());
+  }
+
+  public void incrBlocksReconstructed() {
+    blocksReconstructed.incrementAndGet();
+  }
+
+  public long getBytes(Stage stage) {
+    return bytes[stage.ordinal()].get();
+  }
+
+  public long getMillis(Stage stage) {
+    return nanos[stage.ordinal()].get() / 1000000L;
+  }
+
+  public long getBlocksReconstructed() {
+    return blocksReconstructed.get();
+  }
+
+  /**
+   * @return the throughput of the stage in bytes per second
+   */
+  public long getThroughput(Stage stage) {
+    return throughput(getBytes(stage), getMillis(stage));
+  }
+
+  static long throughput(long numBytes, long millis) {
+    if (millis <= 0) {
+      return 0;
+    }
+    return numBytes * 1000L / millis;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("blocks=").append(getBlocksReconstructed());
+    for (Stage stage : Stage.values()) {
+      sb.append(", ").append(stage.name().toLowerCase()).append("=")
+          .append(getBytes(stage)).append("B/").append(getMillis(stage))
+          .append("ms (").append(getThroughput(stage)).append("B/s)");
+    }
+    return sb.toString();
+  }
+}
@@ -21,6 +21,7 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Set;
 
@@ -36,6 +37,13 @@ public class ReedSolomonCode extends ErasureCode {
   private int[] errSignature;
   private int[] paritySymbolLocations;
   private int[] dataBuff;
+  private CodingMatrix encodingMatrix;
+  // the decoding matrix of the last erasure pattern, a decoder codes all the
+  // buffers of a block with the same pattern
+  private int[] decodedLocations;
+  private int[] solvedLocations;
+  private int[] zeroedLocations;
+  private CodingMatrix decodingMatrix;
 
   @Deprecated
   public ReedSolomonCode(int stripeSize, int paritySize) {
@@ -79,6 +87,24 @@ private void init(int stripeSize, int paritySize) {
     }
     // generating polynomial has all generating roots
     generatingPolynomial = gen;
+
+    // column i of the encoding matrix is the parity of the i-th unit message
+    int[][] coefficients = new int[paritySize][stripeSize];
+    int[] message = new int[stripeSize];
+    int[] parity = new int[paritySize];
+    for (int i = 0; i < stripeSize; i++) {
+      message[i] = 1;
+      encode(message, parity);
+      message[i] = 0;
+      for (int j = 0; j < paritySize; j++) {
+        coefficients[j][i] = parity[j];
+      }
+    }
+    encodingMatrix = new CodingMatrix(GF, coefficients);
+  }
+
+  int[] getGeneratingPolynomial() {
+    return generatingPolynomial;
   }
 
   @Override
@@ -96,32 +122,21 @@ public void encode(int[] message, int[] parity) {
     }
   }
   
-  /**
-   * This function (actually, the GF.remainder() function) will modify
-   * the "inputs" parameter.
-   */
   @Override
   public void encodeBulk(byte[][] inputs, byte[][] outputs) {
-    final int stripeSize = stripeSize();
-    final int paritySize = paritySize();
     assert (stripeSize == inputs.length);
     assert (paritySize == outputs.length);
-    
-    for (int i = 0; i < outputs.length; i++) {
-      Arrays.fill(outputs[i], (byte) 0);
-    }
-    
-    byte[][] data = new byte[stripeSize + paritySize][];
+    encodingMatrix.multiply(inputs, outputs, outputs[0].length);
+  }
 
-    for (int i = 0; i < paritySize; i++) {
-      data[i] = outputs[i];
-    }
-    for (int i = 0; i < stripeSize; i++) {
-      data[i + paritySize] = inputs[i];
-    }
-    
-    // Compute the remainder
-    GF.remainder(data, generatingPolynomial);
+  /**
+   * Encodes the remaining bytes of the outputs from the inputs, starting at
+   * the current positions. The positions are not changed.
+   */
+  public void encodeBulk(ByteBuffer[] inputs, ByteBuffer[] outputs) {
+    assert (stripeSize == inputs.length);
+    assert (paritySize == outputs.length);
+    encodingMatrix.multiply(inputs, outputs, outputs[0].remaining());
   }
 
   @Override
@@ -170,18 +185,8 @@ public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
     if (erasedLocation.length == 0) {
       return;
     }
-    
-    // cleanup the write buffer
-    for (int i = 0; i < writeBufs.length; i++) {
-      Arrays.fill(writeBufs[i], (byte) 0);
-    }
-    
-    for (int i = 0; i < erasedLocation.length; i++) {
-      errSignature[i] = primitivePower[erasedLocation[i]];
-      GF.substitute(readBufs, writeBufs[i], primitivePower[i]);
-    }
-    GF.solveVandermondeSystem(errSignature, writeBufs, erasedLocation.length,
-        readBufs[0].length);
+    getDecodingMatrix(erasedLocation, erasedLocation, new int[0])
+        .multiply(readBufs, writeBufs, readBufs[0].length);
   }
 
   /**
@@ -191,23 +196,86 @@ public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
   @Override
   public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
       int[] erasedLocations, int[] locationsToRead, int[] locationsNotToRead) {
-    int[] tmpInput = new int[readBufs.length];
-    int[] tmpOutput = new int[erasedLocations.length];
+    getDecodingMatrix(erasedLocations, locationsNotToRead, locationsNotToRead)
+        .multiply(readBufs, writeBufs, readBufs[0].length);
+  }
+
+  /**
+   * Decodes the remaining bytes of the write buffers from the read buffers,
+   * starting at the current positions. The positions are not changed.
+   *
+   * @see #decodeBulk(byte[][], byte[][], int[], int[], int[])
+   */
+  public void decodeBulk(ByteBuffer[] readBufs, ByteBuffer[] writeBufs,
+      int[] erasedLocations, int[] locationsToRead, int[] locationsNotToRead) {
+    getDecodingMatrix(erasedLocations, locationsNotToRead, locationsNotToRead)
+        .multiply(readBufs, writeBufs, writeBufs[0].remaining());
+  }
 
-    int numBytes = readBufs[0].length;
-    for (int idx = 0; idx < numBytes; idx++) {
-      for (int i = 0; i < tmpOutput.length; i++) {
-        tmpOutput[i] = 0;
+  /**
+   * Returns the matrix computing the erased locations from all the stripe
+   * and parity locations. The system is solved for the solved locations,
+   * with the zeroed locations taken as 0, and the erased locations are
+   * picked out of the solution, the same way {@link #decode(int[], int[],
+   * int[], int[], int[])} solves for the locations not to read. Decoding is
+   * linear, so column l is the decoding of the unit vector of location l.
+   */
+  private CodingMatrix getDecodingMatrix(int[] erasedLocations,
+      int[] solved, int[] zeroed) {
+    if (decodingMatrix != null &&
+        Arrays.equals(decodedLocations, erasedLocations) &&
+        Arrays.equals(solvedLocations, solved) &&
+        Arrays.equals(zeroedLocations, zeroed)) {
+      return decodingMatrix;
+    }
+
+    int length = stripeSize + paritySize;
+    int[] signature = new int[solved.length];
+    for (int i = 0; i < solved.length; i++) {
+      signature[i] = primitivePower[solved[i]];
+    }
+    int[][] solutions = new int[length][];
+    int[] unit = new int[length];
+    for (int l = 0; l < length; l++) {
+      int[] values = new int[solved.length];
+      solutions[l] = values;
+      if (contains(zeroed, l)) {
+        continue;
       }
-      for (int i = 0; i < tmpInput.length; i++) {
-        tmpInput[i] = readBufs[i][idx] & 0x000000FF;
+      unit[l] = 1;
+      for (int i = 0; i < solved.length; i++) {
+        values[i] = GF.substitute(unit, primitivePower[i]);
       }
-      decode(tmpInput, erasedLocations, tmpOutput, locationsToRead,
-          locationsNotToRead);
-      for (int i = 0; i < tmpOutput.length; i++) {
-        writeBufs[i][idx] = (byte) tmpOutput[i];
+      unit[l] = 0;
+      GF.solveVandermondeSystem(signature, values, solved.length);
+    }
+
+    int[][] coefficients = new int[erasedLocations.length][length];
+    for (int i = 0; i < erasedLocations.length; i++) {
+      for (int j = 0; j < solved.length; j++) {
+        if (erasedLocations[i] == solved[j]) {
+          for (int l = 0; l < length; l++) {
+            coefficients[i][l] = solutions[l][j];
+          }
+          break;
+        }
+      }
+    }
+
+    decodedLocations = erasedLocations.clone();
+    solvedLocations = solved.clone();
+    zeroedLocations = zeroed.clone();
+    decodingMatrix = new CodingMatrix(GF, coefficients);
+    return decodingMatrix;
+  }
+
+  private static boolean contains(int[] locations, int location) {
+    for (int l : locations) {
+      if (l == location) {
+        return true;
       }
     }
+    return false;
   }
 
   @Override
@@ -18,9 +18,11 @@
 
 package org.apache.hadoop.hdfs.server.datanode;
 
+import io.hops.erasure_coding.Codec;
 import io.hops.erasure_coding.Decoder;
 import io.hops.erasure_coding.Helper;
 import io.hops.erasure_coding.RaidUtils;
+import io.hops.erasure_coding.ReconstructionMetrics;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -41,6 +43,14 @@
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * this class implements the actual reconstructing functionality
@@ -75,47 +85,16 @@ public boolean processFile(Path sourceFile, Path parityFile,
       LocatedBlocks missingBlocks, Decoder decoder, Context context)
       throws IOException, InterruptedException {
     LOG.info("Processing file " + sourceFile.toString());
-    Progressable progress = context;
-    if (progress == null) {
-      progress = RaidUtils.NULL_PROGRESSABLE;
-    }
 
     DistributedFileSystem srcFs = Helper.getDFS(getConf(), sourceFile);
     FileStatus sourceStatus = srcFs.getFileStatus(sourceFile);
     DistributedFileSystem parityFs = Helper.getDFS(getConf(), parityFile);
     long blockSize = sourceStatus.getBlockSize();
     long srcFileSize = sourceStatus.getLen();
-    String uriPath = sourceFile.toUri().getPath();
-
-    int numBlocksReconstructed = 0;
-    for (LocatedBlock lb : missingBlocks.getLocatedBlocks()) {
-      Block lostBlock = lb.getBlock().getLocalBlock();
-      long lostBlockOffset = lb.getStartOffset();
-
-      LOG.info("Found lost block " + lostBlock +
-          ", offset " + lostBlockOffset);
-
-      final long blockContentsSize =
-          Math.min(blockSize, srcFileSize - lostBlockOffset);
-      File localBlockFile =
-          File.createTempFile(lostBlock.getBlockName(), ".tmp");
-      localBlockFile.deleteOnExit();
-      try {
-        decoder.recoverBlockToFile(srcFs, sourceFile, parityFs, parityFile,
-            blockSize, lostBlockOffset, localBlockFile, blockContentsSize,
-            context);
-
-        // Now that we have recovered the file block locally, send it.
-        sendRepairedBlock(srcFs, sourceFile, parityFile, false, lb,
-            localBlockFile);
-
-        numBlocksReconstructed++;
 
-      } finally {
-        localBlockFile.delete();
-      }
-      progress.progress();
-    }
+    int numBlocksReconstructed =
+        reconstructBlocks(srcFs, sourceFile, parityFs, parityFile, false,
+            blockSize, srcFileSize, missingBlocks, decoder, context);
 
     LOG.info(
         "Reconstructed " + numBlocksReconstructed + " blocks in " + sourceFile);
@@ -142,54 +121,151 @@ public boolean processParityFile(Path sourceFile, Path parityFile,
       throws IOException, InterruptedException {
     LOG.info("Processing parity file for " + sourceFile.toString());
 
-    Progressable progress = context;
-    if (progress == null) {
-      progress = RaidUtils.NULL_PROGRESSABLE;
-    }
-
     DistributedFileSystem srcFs = Helper.getDFS(getConf(), sourceFile);
-    Path srcPath = sourceFile;
     DistributedFileSystem parityFs = Helper.getDFS(getConf(), parityFile);
-    Path parityPath = parityFile;
-    FileStatus parityStat = parityFs.getFileStatus(parityPath);
+    FileStatus parityStat = parityFs.getFileStatus(parityFile);
     long blockSize = parityStat.getBlockSize();
-    FileStatus srcStat = srcFs.getFileStatus(srcPath);
 
-    int numBlocksReconstructed = 0;
-    for (LocatedBlock lb : missingBlocks.getLocatedBlocks()) {
-      Block lostBlock = lb.getBlock().getLocalBlock();
-      long lostBlockOffset = lb.getStartOffset();
+    int numBlocksReconstructed =
+        reconstructBlocks(srcFs, sourceFile, parityFs, parityFile, true,
+            blockSize, parityStat.getLen(), missingBlocks, decoder, context);
 
-      LOG.info("Found lost block " + lostBlock +
-          ", offset " + lostBlockOffset);
+    LOG.info(
+        "Reconstructed " + numBlocksReconstructed + " blocks in " + parityFile);
+    return true;
+  }
 
-      File localBlockFile =
-          File.createTempFile(lostBlock.getBlockName(), ".tmp");
-      localBlockFile.deleteOnExit();
+  /**
+   * Reconstructs the missing blocks stripe by stripe. All lost blocks of a
+   * stripe are decoded in one pass and the repaired blocks of a stripe are
+   * sent to their datanodes while the next stripe is decoded.
+   *
+   * @return the number of reconstructed blocks
+   */
+  private int reconstructBlocks(final DistributedFileSystem srcFs,
+      final Path sourceFile, final DistributedFileSystem parityFs,
+      final Path parityFile, final boolean isParityFile, long blockSize,
+      long fileSize, LocatedBlocks missingBlocks, Decoder decoder,
+      Context context) throws IOException, InterruptedException {
+    Progressable progress = context;
+    if (progress == null) {
+      progress = RaidUtils.NULL_PROGRESSABLE;
+    }
 
-      try {
-        decoder.recoverParityBlockToFile(srcFs, srcPath, parityFs, parityPath,
-            blockSize, lostBlockOffset, localBlockFile, context);
+    Codec codec = decoder.getCodec();
+    int blocksPerStripe =
+        isParityFile ? codec.parityLength : codec.stripeLength;
+    TreeMap<Long, List<LocatedBlock>> stripes =
+        new TreeMap<Long, List<LocatedBlock>>();
+    for (LocatedBlock lb : missingBlocks.getLocatedBlocks()) {
+      long stripeIdx = lb.getStartOffset() / blockSize / blocksPerStripe;
+      List<LocatedBlock> blocks = stripes.get(stripeIdx);
+      if (blocks == null) {
+        blocks = new ArrayList<LocatedBlock>();
+        stripes.put(stripeIdx, blocks);
+      }
+      blocks.add(lb);
+    }
 
-        // Now that we have recovered the parity file block locally, send it.
-        sendRepairedBlock(parityFs, sourceFile, parityFile, true, lb,
-            localBlockFile);
+    final ReconstructionMetrics metrics = decoder.getMetrics();
+    ExecutorService sender = Executors.newSingleThreadExecutor();
+    Future<Integer> pendingSend = null;
+    int numBlocksReconstructed = 0;
+    try {
+      for (final List<LocatedBlock> blocks : stripes.values()) {
+        long[] offsets = new long[blocks.size()];
+        long[] limits = new long[blocks.size()];
+        final File[] localBlockFiles = new File[blocks.size()];
+        boolean submitted = false;
+        try {
+          for (int i = 0; i < blocks.size(); i++) {
+            LocatedBlock lb = blocks.get(i);
+            Block lostBlock = lb.getBlock().getLocalBlock();
+            offsets[i] = lb.getStartOffset();
+            LOG.info("Found lost block " + lostBlock +
+                ", offset " + offsets[i]);
+            limits[i] = isParityFile ? blockSize :
+                Math.min(blockSize, fileSize - offsets[i]);
+            localBlockFiles[i] =
+                File.createTempFile(lostBlock.getBlockName(), ".tmp");
+            localBlockFiles[i].deleteOnExit();
+          }
+
+          decoder.recoverBlocksToFiles(srcFs, sourceFile, parityFs,
+              parityFile, !isParityFile, blockSize, offsets, localBlockFiles,
+              limits, context);
+
+          // The previous stripe was sent while this one was decoded.
+          if (pendingSend != null) {
+            numBlocksReconstructed += waitForSend(pendingSend);
+            pendingSend = null;
+          }
+
+          // Now that we have recovered the blocks locally, send them.
+          pendingSend = sender.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+              try {
+                for (int i = 0; i < blocks.size(); i++) {
+                  sendRepairedBlock(isParityFile ? parityFs : srcFs,
+                      sourceFile, parityFile, isParityFile, blocks.get(i),
+                      localBlockFiles[i], metrics);
+                  metrics.incrBlocksReconstructed();
+                }
+                return blocks.size();
+              } finally {
+                deleteFiles(localBlockFiles);
+              }
+            }
+          });
+          submitted = true;
+        } finally {
+          if (!submitted) {
+            deleteFiles(localBlockFiles);
+          }
+        }
+        for (int i = 0; i < blocks.size(); i++) {
+          progress.progress();
+        }
+      }
+      if (pendingSend != null) {
+        numBlocksReconstructed += waitForSend(pendingSend);
+        pendingSend = null;
+      }
+    } finally {
+      if (pendingSend != null) {
+        pendingSend.cancel(true);
+      }
+      sender.shutdownNow();
+    }
+    LOG.info("Reconstruction stages: " + metrics);
+    return numBlocksReconstructed;
+  }
 
-        numBlocksReconstructed++;
-      } finally {
-        localBlockFile.delete();
+  private int waitForSend(Future<Integer> send)
+      throws IOException, InterruptedException {
+    try {
+      return send.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
       }
-      progress.progress();
+      throw new IOException(e.getCause());
     }
+  }
 
-    LOG.info(
-        "Reconstructed " + numBlocksReconstructed + " blocks in " + parityPath);
-    return true;
+  private static void deleteFiles(File[] files) {
+    for (File file : files) {
+      if (file != null) {
+        file.delete();
+      }
+    }
   }
 
   private void sendRepairedBlock(DistributedFileSystem dfs, Path sourceFile,
-      Path parityFile, boolean isParityBlock, LocatedBlock lb, File block)
-      throws IOException {
+      Path parityFile, boolean isParityBlock, LocatedBlock lb, File block,
+      ReconstructionMetrics metrics) throws IOException {
+    long start = System.nanoTime();
     LocatedBlock blockReceivers = dfs.getClient()
         .getRepairedBlockLocations(sourceFile.toUri().getPath(),
             parityFile.toUri().getPath(), lb, isParityBlock);
@@ -214,6 +290,8 @@ private void sendRepairedBlock(DistributedFileSystem dfs, Path sourceFile,
           out.write(buff, 0, read);
         }
         LOG.info("Send repaired block " + lb.toString());
+        metrics.add(ReconstructionMetrics.Stage.SEND, block.length(),
+            System.nanoTime() - start);
         try {
           out.close();
         } catch (IOException e) {
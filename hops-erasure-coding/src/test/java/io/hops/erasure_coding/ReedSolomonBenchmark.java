@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the throughput of the table driven bulk Reed-Solomon coding with
+ * the symbol by symbol coding it replaced, for a few (k, m) settings.
+ *
+ * Usage: ReedSolomonBenchmark [bufferSize] [iterations]
+ */
+public class ReedSolomonBenchmark {
+
+  private static final int[][] SETTINGS = {{6, 3}, {10, 4}, {12, 4}};
+
+  public static void main(String[] args) {
+    int bufSize = args.length > 0 ? Integer.parseInt(args[0]) : 1024 * 1024;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    Random random = new Random(0);
+
+    for (int[] setting : SETTINGS) {
+      int stripeSize = setting[0];
+      int paritySize = setting[1];
+      ReedSolomonCode code = new ReedSolomonCode(stripeSize, paritySize);
+      byte[][] message = new byte[stripeSize][bufSize];
+      for (byte[] buffer : message) {
+        random.nextBytes(buffer);
+      }
+      byte[][] parity = new byte[paritySize][bufSize];
+      byte[][] data = new byte[stripeSize + paritySize][];
+      System.arraycopy(parity, 0, data, 0, paritySize);
+      System.arraycopy(message, 0, data, paritySize, stripeSize);
+      int[] erased = new int[paritySize];
+      for (int i = 0; i < paritySize; i++) {
+        erased[i] = paritySize + i;
+      }
+      byte[][] writeBufs = new byte[paritySize][bufSize];
+      long bytes = (long) stripeSize * bufSize * iterations;
+
+      // warm up both code paths before measuring
+      for (int i = 0; i < 3; i++) {
+        encodeSymbols(code, message, parity);
+        code.encodeBulk(message, parity);
+        decodeSymbols(code, data, writeBufs, erased);
+        code.decodeBulk(data, writeBufs, erased, new int[0], erased);
+      }
+
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        encodeSymbols(code, message, parity);
+      }
+      double oldEncode = throughput(bytes, System.nanoTime() - start);
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        code.encodeBulk(message, parity);
+      }
+      double newEncode = throughput(bytes, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        decodeSymbols(code, data, writeBufs, erased);
+      }
+      double oldDecode = throughput(bytes, System.nanoTime() - start);
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        code.decodeBulk(data, writeBufs, erased, new int[0], erased);
+      }
+      double newDecode = throughput(bytes, System.nanoTime() - start);
+
+      System.out.println(String.format(
+          "RS(%d,%d) encode: %.1f MB/s -> %.1f MB/s, " +
+              "decode: %.1f MB/s -> %.1f MB/s", stripeSize, paritySize,
+          oldEncode, newEncode, oldDecode, newDecode));
+    }
+  }
+
+  /**
+   * The polynomial division encodeBulk used to do.
+   */
+  private static void encodeSymbols(ReedSolomonCode code, byte[][] message,
+      byte[][] parity) {
+    byte[][] dividend = new byte[message.length + parity.length][];
+    for (int i = 0; i < parity.length; i++) {
+      Arrays.fill(parity[i], (byte) 0);
+      dividend[i] = parity[i];
+    }
+    System.arraycopy(message, 0, dividend, parity.length, message.length);
+    GaloisField.getInstance()
+        .remainder(dividend, code.getGeneratingPolynomial());
+  }
+
+  /**
+   * The symbol by symbol decoding decodeBulk used to do.
+   */
+  private static void decodeSymbols(ReedSolomonCode code, byte[][] readBufs,
+      byte[][] writeBufs, int[] erased) {
+    int[] input = new int[readBufs.length];
+    int[] output = new int[erased.length];
+    for (int k = 0; k < readBufs[0].length; k++) {
+      for (int i = 0; i < input.length; i++) {
+        input[i] = readBufs[i][k] & 0xFF;
+      }
+      code.decode(input, erased, output, new int[0], erased);
+      for (int i = 0; i < output.length; i++) {
+        writeBufs[i][k] = (byte) output[i];
+      }
+    }
+  }
+
+  private static double throughput(long bytes, long nanos) {
+    return (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+  }
+}
@@ -20,6 +20,7 @@
 
 import junit.framework.TestCase;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Random;
@@ -194,6 +195,116 @@ public void verifyRSEncodeDecodeBulk(int stripeSize, int paritySize) {
     assertTrue("Decode failed", Arrays.equals(copy, writeBufs[0]));
   }
 
+  public void testBulkCodingMatchesSymbolCoding() {
+    for (int n = 0; n < 20; n++) {
+      int stripeSize = RAND.nextInt(20) + 1;
+      int paritySize = RAND.nextInt(6) + 1;
+      int bufSize = RAND.nextInt(3 * CodingMatrix.CHUNK_SIZE) + 1;
+      ReedSolomonCode rsCode = new ReedSolomonCode(stripeSize, paritySize);
+
+      byte[][] message = randomBuffers(stripeSize, bufSize);
+      byte[][] parity = new byte[paritySize][bufSize];
+      rsCode.encodeBulk(message, parity);
+
+      // the polynomial division the bulk encoding used to do
+      byte[][] dividend = new byte[stripeSize + paritySize][];
+      for (int i = 0; i < paritySize; i++) {
+        dividend[i] = new byte[bufSize];
+      }
+      for (int i = 0; i < stripeSize; i++) {
+        dividend[i + paritySize] = message[i].clone();
+      }
+      GaloisField.getInstance()
+          .remainder(dividend, rsCode.getGeneratingPolynomial());
+      for (int i = 0; i < paritySize; i++) {
+        assertTrue("Encode differs", Arrays.equals(dividend[i], parity[i]));
+      }
+
+      byte[][] data = new byte[stripeSize + paritySize][];
+      System.arraycopy(parity, 0, data, 0, paritySize);
+      System.arraycopy(message, 0, data, paritySize, stripeSize);
+      int[] erasedLocations =
+          randomErasedLocation(RAND.nextInt(paritySize) + 1, data.length);
+      int[] locationsNotToRead = erasedLocations;
+      byte[][] writeBufs = new byte[erasedLocations.length][bufSize];
+      rsCode.decodeBulk(data, writeBufs, erasedLocations, new int[0],
+          locationsNotToRead);
+
+      int[] symbols = new int[data.length];
+      int[] values = new int[erasedLocations.length];
+      for (int k = 0; k < bufSize; k++) {
+        for (int i = 0; i < data.length; i++) {
+          symbols[i] = data[i][k] & 0xFF;
+        }
+        rsCode.decode(symbols, erasedLocations, values, new int[0],
+            locationsNotToRead);
+        for (int i = 0; i < erasedLocations.length; i++) {
+          assertEquals("Decode differs", (byte) values[i], writeBufs[i][k]);
+          assertEquals("Decode failed", data[erasedLocations[i]][k],
+              writeBufs[i][k]);
+        }
+      }
+    }
+  }
+
+  public void testByteBufferCoding() {
+    int stripeSize = 10;
+    int paritySize = 4;
+    int bufSize = 2 * CodingMatrix.CHUNK_SIZE + 17;
+    ReedSolomonCode rsCode = new ReedSolomonCode(stripeSize, paritySize);
+    byte[][] message = randomBuffers(stripeSize, bufSize);
+    byte[][] parity = new byte[paritySize][bufSize];
+    rsCode.encodeBulk(message, parity);
+
+    for (boolean direct : new boolean[]{false, true}) {
+      ByteBuffer[] inputs = new ByteBuffer[stripeSize];
+      for (int i = 0; i < stripeSize; i++) {
+        inputs[i] = allocate(direct, bufSize);
+        inputs[i].put(message[i]).flip();
+      }
+      ByteBuffer[] outputs = new ByteBuffer[paritySize];
+      for (int i = 0; i < paritySize; i++) {
+        outputs[i] = allocate(direct, bufSize);
+      }
+      rsCode.encodeBulk(inputs, outputs);
+      for (int i = 0; i < paritySize; i++) {
+        assertEquals(0, outputs[i].position());
+        byte[] encoded = new byte[bufSize];
+        outputs[i].get(encoded);
+        assertTrue("Encode differs", Arrays.equals(parity[i], encoded));
+      }
+
+      int erased = paritySize + 3;
+      ByteBuffer[] data = new ByteBuffer[stripeSize + paritySize];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = allocate(direct, bufSize);
+        if (i != erased) {
+          data[i].put(i < paritySize ? parity[i] : message[i - paritySize]);
+        }
+        data[i].flip();
+        data[i].limit(bufSize);
+      }
+      ByteBuffer[] writeBufs = new ByteBuffer[]{allocate(direct, bufSize)};
+      rsCode.decodeBulk(data, writeBufs, new int[]{erased}, new int[0],
+          new int[]{erased});
+      byte[] decoded = new byte[bufSize];
+      writeBufs[0].get(decoded);
+      assertTrue("Decode failed", Arrays.equals(message[3], decoded));
+    }
+  }
+
+  private ByteBuffer allocate(boolean direct, int size) {
+    return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+  }
+
+  private byte[][] randomBuffers(int count, int size) {
+    byte[][] buffers = new byte[count][size];
+    for (byte[] buffer : buffers) {
+      RAND.nextBytes(buffer);
+    }
+    return buffers;
+  }
+
   public void testXorPerformance() {
     Random RAND = new Random();
     int stripeSize = 10;
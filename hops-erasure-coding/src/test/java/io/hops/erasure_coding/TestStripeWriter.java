@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.conf.Configuration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.CRC32;
+
+public class TestStripeWriter extends TestCase {
+  private static final int BUF_SIZE = 16;
+
+  /**
+   * Blocks every write until the gate is opened and remembers the thread
+   * that wrote.
+   */
+  private static class GatedOutputStream extends ByteArrayOutputStream {
+    private final CountDownLatch gate;
+    private volatile String writerThread;
+
+    GatedOutputStream(CountDownLatch gate) {
+      this.gate = gate;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      try {
+        gate.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      writerThread = Thread.currentThread().getName();
+      super.write(b, off, len);
+    }
+  }
+
+  private static Decoder newDecoder() {
+    Configuration conf = new Configuration();
+    conf.setInt("raid.decoder.bufsize", BUF_SIZE);
+    return new Decoder(conf, Util.getCodec(Util.Codecs.SRC));
+  }
+
+  private static void writeStripe(Decoder.StripeWriter writer, int stripe)
+      throws IOException {
+    byte[][] bufs = writer.takeBuffers();
+    Arrays.fill(bufs[0], (byte) stripe);
+    Arrays.fill(bufs[1], (byte) (stripe + 100));
+    writer.write(bufs, new int[]{0, 1}, new int[]{BUF_SIZE, BUF_SIZE});
+  }
+
+  public void testWritesOverlapDecoding() throws IOException {
+    Decoder decoder = newDecoder();
+    CountDownLatch gate = new CountDownLatch(1);
+    GatedOutputStream[] outs = new GatedOutputStream[]{
+        new GatedOutputStream(gate), new GatedOutputStream(gate)};
+    CRC32[] crcs = new CRC32[]{new CRC32(), new CRC32()};
+    Decoder.StripeWriter writer = decoder.new StripeWriter(outs, crcs, 2);
+
+    // the first stripe is being written while the next one is decoded into
+    // the second set of buffers
+    writeStripe(writer, 0);
+    writeStripe(writer, 1);
+    assertEquals(0, outs[0].size());
+    gate.countDown();
+    for (int stripe = 2; stripe < 6; stripe++) {
+      writeStripe(writer, stripe);
+    }
+    writer.close();
+
+    for (int j = 0; j < outs.length; j++) {
+      byte[] expected = new byte[6 * BUF_SIZE];
+      for (int stripe = 0; stripe < 6; stripe++) {
+        Arrays.fill(expected, stripe * BUF_SIZE, (stripe + 1) * BUF_SIZE,
+            (byte) (stripe + j * 100));
+      }
+      assertTrue(Arrays.equals(expected, outs[j].toByteArray()));
+      CRC32 crc = new CRC32();
+      crc.update(expected);
+      assertEquals(crc.getValue(), crcs[j].getValue());
+      assertTrue(outs[j].writerThread.startsWith("DecoderStripeWriter"));
+    }
+  }
+
+  public void testWriterThreadIsReused() throws IOException {
+    Decoder decoder = newDecoder();
+    CountDownLatch open = new CountDownLatch(0);
+    String[] threads = new String[2];
+    for (int i = 0; i < threads.length; i++) {
+      GatedOutputStream[] outs = new GatedOutputStream[]{
+          new GatedOutputStream(open), new GatedOutputStream(open)};
+      Decoder.StripeWriter writer =
+          decoder.new StripeWriter(outs, new CRC32[2], 2);
+      writeStripe(writer, i);
+      writer.close();
+      threads[i] = outs[0].writerThread;
+    }
+    assertEquals(threads[0], threads[1]);
+  }
+
+  public void testWriteErrorIsReported() throws IOException {
+    Decoder decoder = newDecoder();
+    OutputStream failing = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("write failed");
+      }
+    };
+    Decoder.StripeWriter writer = decoder.new StripeWriter(
+        new OutputStream[]{failing, failing}, new CRC32[2], 2);
+    writeStripe(writer, 0);
+    try {
+      writer.close();
+      fail("the write error was not reported");
+    } catch (IOException e) {
+      assertEquals("write failed", e.getMessage());
+    }
+  }
+}